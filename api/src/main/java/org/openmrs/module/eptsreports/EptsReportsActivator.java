@@ -17,19 +17,35 @@ package org.openmrs.module.eptsreports;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.openmrs.api.context.Context;
+import org.openmrs.api.context.Daemon;
 import org.openmrs.module.BaseModuleActivator;
+import org.openmrs.module.DaemonToken;
+import org.openmrs.module.DaemonTokenAware;
+import org.openmrs.module.eptsreports.api.EptsReportsService;
 import org.openmrs.module.eptsreports.metadata.MetadataLookupException;
 import org.openmrs.module.eptsreports.reporting.EptsReportInitializer;
+import org.openmrs.module.eptsreports.reporting.evaluation.EvaluationCancellation;
+import org.openmrs.module.eptsreports.reporting.evaluation.ReportRunner;
+import org.openmrs.module.eptsreports.reporting.utils.EptsReportConstants;
+import org.openmrs.module.eptsreports.reporting.utils.EptsReportUtils;
 
 /**
  * This class contains the logic that is run every time this module is either started or shutdown
  */
-public class EptsReportsActivator extends BaseModuleActivator {
+public class EptsReportsActivator extends BaseModuleActivator implements DaemonTokenAware {
 
   private Log log = LogFactory.getLog(this.getClass());
 
   private EptsReportInitializer reportsInitializer = new EptsReportInitializer();
 
+  private DaemonToken daemonToken;
+
+  @Override
+  public void setDaemonToken(DaemonToken token) {
+    daemonToken = token;
+    reportsInitializer.setDaemonToken(token);
+  }
+
   @Override
   public void contextRefreshed() {
     log.debug("EPTS Reports Module refreshed");
@@ -48,11 +64,16 @@ public class EptsReportsActivator extends BaseModuleActivator {
   @Override
   public void willStop() {
     log.debug("Stopping EPTS Reports Module");
-    try {
-      reportsInitializer.purgeReports();
-      log.debug("EPTS Reports purged");
-    } catch (Exception e) {
-      log.error("An error occured trying to purge EPTS reports", e);
+    // reports are kept unless asked, to be skipped on the next start when they did not change, as
+    // the activator is not told whether the module is removed or only stopped
+    if (EptsReportUtils.getBooleanGlobalProperty(
+        EptsReportConstants.GLOBAL_PROPERTY_PURGE_REPORTS_ON_STOP, false)) {
+      try {
+        reportsInitializer.purgeReports();
+        log.debug("EPTS Reports purged");
+      } catch (Exception e) {
+        log.error("An error occured trying to purge EPTS reports", e);
+      }
     }
   }
 
@@ -60,6 +81,8 @@ public class EptsReportsActivator extends BaseModuleActivator {
   public void started() {
     try {
       reportsInitializer.initializeReports();
+      buildLatestObsIndex();
+      Context.getRegisteredComponents(ReportRunner.class).get(0).setDaemonToken(daemonToken);
       log.info("Started EPTS Reports Module");
     } catch (MetadataLookupException e) {
       Context.getAlertService().notifySuperUsers("eptsreports.startuperror.globalproperties", null);
@@ -70,8 +93,43 @@ public class EptsReportsActivator extends BaseModuleActivator {
     }
   }
 
+  /**
+   * Builds the concepts of the latest obs index that were not built yet, in a low priority daemon
+   * thread so that a first build over the obs does not hold the startup. The reports find the
+   * latest obs of a concept from the obs table until it is built.
+   */
+  private void buildLatestObsIndex() {
+    final Runnable build =
+        new Runnable() {
+
+          @Override
+          public void run() {
+            try {
+              Context.getService(EptsReportsService.class).buildLatestObsIndex();
+            } catch (RuntimeException e) {
+              log.error("Failed to build the latest obs index, left to the daily rebuild", e);
+            }
+          }
+        };
+    if (daemonToken == null) {
+      build.run();
+      return;
+    }
+    Daemon.runInDaemonThread(
+        new Runnable() {
+
+          @Override
+          public void run() {
+            Thread.currentThread().setPriority(Thread.MIN_PRIORITY);
+            build.run();
+          }
+        },
+        daemonToken);
+  }
+
   /** @see #stopped() */
   public void stopped() {
+    EvaluationCancellation.shutdown();
     log.info("Stopped EPTS Reports Module");
   }
 }
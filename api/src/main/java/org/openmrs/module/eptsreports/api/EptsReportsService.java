@@ -14,10 +14,75 @@
 
 package org.openmrs.module.eptsreports.api;
 
+import java.util.Date;
+import java.util.Map;
 import org.openmrs.api.OpenmrsService;
+import org.openmrs.module.eptsreports.reporting.evaluation.EvaluationTiming;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
 
 /**
  * The main service of this module, which is exposed for other modules. See
  * moduleApplicationContext.xml on how it is wired up.
  */
-public interface EptsReportsService extends OpenmrsService {}
+public interface EptsReportsService extends OpenmrsService {
+
+  /**
+   * Builds the concepts of the latest obs index that were not built yet
+   *
+   * @see org.openmrs.module.eptsreports.reporting.index.LatestObsIndex#build()
+   */
+  @Transactional
+  void buildLatestObsIndex();
+
+  /**
+   * Rebuilds the latest obs index from the obs table
+   *
+   * @see org.openmrs.module.eptsreports.reporting.index.LatestObsIndex#rebuild()
+   */
+  @Transactional
+  void rebuildLatestObsIndex();
+
+  /**
+   * Sets again the latest obs of a concept of a patient in the latest obs index, in a transaction
+   * of its own
+   *
+   * @see org.openmrs.module.eptsreports.reporting.index.LatestObsIndex#update(Integer, Integer)
+   */
+  @Transactional(propagation = Propagation.REQUIRES_NEW)
+  void updateLatestObs(Integer patientId, Integer conceptId);
+
+  /**
+   * Replaces the cells of an indicator for a location and period in the indicator cube
+   *
+   * @see org.openmrs.module.eptsreports.api.dao.IndicatorCubeDao#save(String, Integer, Date, Date,
+   *     Map)
+   */
+  @Transactional
+  void saveIndicatorCubeCells(
+      String indicator,
+      Integer locationId,
+      Date startDate,
+      Date endDate,
+      Map<String, Integer> cells);
+
+  /**
+   * Gets the average timings of the data sets of a report for a location
+   *
+   * @see org.openmrs.module.eptsreports.api.dao.EvaluationTimingDao#getTimings(String, int)
+   */
+  @Transactional(readOnly = true)
+  Map<String, EvaluationTiming> getEvaluationTimings(String reportUuid, int locationId);
+
+  /**
+   * Averages the timings of a completed run of a report into those of its location. The data sets
+   * the run did not evaluate are forgotten.
+   *
+   * @param reportUuid the uuid of the report definition
+   * @param locationId the location, 0 for runs of all locations
+   * @param timings the timings of the run by data set name
+   */
+  @Transactional
+  void saveEvaluationTimings(
+      String reportUuid, int locationId, Map<String, EvaluationTiming> timings);
+}
@@ -14,12 +14,273 @@
 
 package org.openmrs.module.eptsreports.api.dao;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.hibernate.FlushMode;
+import org.hibernate.Query;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
+import org.hibernate.engine.EntityKey;
+import org.openmrs.api.db.hibernate.DbSession;
 import org.openmrs.api.db.hibernate.DbSessionFactory;
+import org.openmrs.module.eptsreports.reporting.evaluation.EvaluationCancellation;
+import org.openmrs.module.eptsreports.reporting.evaluation.EvaluationSession;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Repository;
 
 @Repository("eptsreports.EptsReportsDao")
 public class EptsReportsDao {
 
+  /**
+   * The latest ids, change dates and void dates of the tables the reports read. New obs,
+   * encounters, program enrollments, states, identifiers and attributes get new ids, edits of any
+   * but obs set their change dates, and voids of any of them set their void dates.
+   *
+   * <p>The change and void dates are not indexed by OpenMRS, so each max scans its table unless a
+   * DBA indexes them, for instance {@code create index eptsreports_obs_date_voided on obs
+   * (date_voided)}, and the same for the other columns read here. The module does not create these
+   * indexes, as they slow down every write of the tables, so the description of the cohort cache
+   * global property asks for them before the cache is switched on.
+   */
+  private static final String DATA_WATERMARK_QUERY =
+      "select (select max(obs_id) from obs), (select max(date_voided) from obs), "
+          + "(select max(encounter_id) from encounter), (select max(date_changed) from encounter), "
+          + "(select max(date_voided) from encounter), "
+          + "(select max(patient_program_id) from patient_program), "
+          + "(select max(date_changed) from patient_program), "
+          + "(select max(date_voided) from patient_program), "
+          + "(select max(patient_state_id) from patient_state), "
+          + "(select max(date_changed) from patient_state), "
+          + "(select max(date_voided) from patient_state), "
+          + "(select max(patient_id) from patient), (select max(date_changed) from patient), "
+          + "(select max(date_voided) from patient), "
+          + "(select max(date_changed) from person), (select max(date_voided) from person), "
+          + "(select max(patient_identifier_id) from patient_identifier), "
+          + "(select max(date_changed) from patient_identifier), "
+          + "(select max(date_voided) from patient_identifier), "
+          + "(select max(person_attribute_id) from person_attribute), "
+          + "(select max(date_changed) from person_attribute), "
+          + "(select max(date_voided) from person_attribute)";
+
+  /** When the latest obs was created, to measure how far behind a copy of the database is */
+  static final String LATEST_OBS_QUERY =
+      "select date_created from obs where obs_id = (select max(obs_id) from obs)";
+
+  /** Ids per query when loading entities by id */
+  private static final int LOAD_BATCH_SIZE = 1000;
+
   @Autowired DbSessionFactory sessionFactory;
+
+  /** Receives rows from {@link #scroll(String, Map, int, RowCallback)} one at a time */
+  public interface RowCallback {
+
+    void row(Object[] row);
+  }
+
+  /**
+   * Runs a read only HQL query with a forward only cursor, handing each row to the callback
+   * without keeping the rows. With the MySQL driver a fetch size of {@link Integer#MIN_VALUE}
+   * streams rows one by one; other values only take effect with useCursorFetch=true. The query is
+   * limited to the report query timeout, and stops when the run it is evaluated for is cancelled.
+   *
+   * @param hql the query, selecting scalar values
+   * @param parameters named parameters; collections are bound as parameter lists
+   * @param fetchSize the JDBC fetch size
+   * @param callback receives every row
+   */
+  public void scroll(
+      String hql, Map<String, Object> parameters, int fetchSize, RowCallback callback) {
+    Query query = sessionFactory.getCurrentSession().createQuery(hql);
+    bind(query, parameters);
+    query.setReadOnly(true);
+    query.setFetchSize(fetchSize);
+    int timeout = EvaluationCancellation.getQueryTimeoutSeconds();
+    if (timeout > 0) {
+      query.setTimeout(timeout);
+    }
+    ScrollableResults results = query.scroll(ScrollMode.FORWARD_ONLY);
+    try {
+      while (results.next()) {
+        EvaluationCancellation.check();
+        callback.row(results.get());
+      }
+    } finally {
+      results.close();
+    }
+  }
+
+  /**
+   * Loads entities by id, in batches
+   *
+   * @param entityClass the entity class
+   * @param idProperty the name of the id property
+   * @param ids the ids to load
+   * @return the entities keyed by id, missing ids are left out
+   */
+  public <T> Map<Integer, T> getByIds(
+      Class<T> entityClass, String idProperty, Collection<Integer> ids) {
+    Map<Integer, T> ret = new HashMap<Integer, T>();
+    String hql =
+        String.format(
+            "select e.%s, e from %s e where e.%s in (:ids)",
+            idProperty, entityClass.getName(), idProperty);
+    List<Integer> batch = new ArrayList<Integer>(LOAD_BATCH_SIZE);
+    for (Integer id : ids) {
+      batch.add(id);
+      if (batch.size() == LOAD_BATCH_SIZE) {
+        load(hql, batch, ret);
+        batch.clear();
+      }
+    }
+    if (!batch.isEmpty()) {
+      load(hql, batch, ret);
+    }
+    return ret;
+  }
+
+  /**
+   * Gets a value that changes whenever data read by the reports is added, edited or voided
+   *
+   * @return the data watermark
+   */
+  public String getDataWatermark() {
+    Object[] row =
+        (Object[])
+            sessionFactory.getCurrentSession().createSQLQuery(DATA_WATERMARK_QUERY).uniqueResult();
+    StringBuilder ret = new StringBuilder();
+    for (Object value : row) {
+      if (ret.length() > 0) {
+        ret.append('|');
+      }
+      ret.append(value instanceof Date ? ((Date) value).getTime() : value);
+    }
+    return ret.toString();
+  }
+
+  /**
+   * Gets a canceller of the statements of the session of this thread, for another thread to stop
+   * the statement it is running
+   *
+   * @return the canceller
+   */
+  public EvaluationCancellation.Canceller getQueryCanceller() {
+    final DbSession session = sessionFactory.getCurrentSession();
+    return new EvaluationCancellation.Canceller() {
+
+      @Override
+      public void cancel() {
+        session.cancelQuery();
+      }
+    };
+  }
+
+  /**
+   * Gets a control of the session of this thread for a report run, see {@link EvaluationSession}
+   *
+   * @return the session control
+   */
+  public EvaluationSession.SessionControl getSessionControl() {
+    final DbSession session = sessionFactory.getCurrentSession();
+    return new EvaluationSession.SessionControl() {
+
+      private FlushMode flushMode;
+
+      private boolean defaultReadOnly;
+
+      @Override
+      public void setReadOnly(boolean readOnly) {
+        if (readOnly) {
+          flushMode = session.getFlushMode();
+          defaultReadOnly = session.isDefaultReadOnly();
+          session.setFlushMode(FlushMode.MANUAL);
+          session.setDefaultReadOnly(true);
+        } else if (flushMode != null) {
+          session.setFlushMode(flushMode);
+          session.setDefaultReadOnly(defaultReadOnly);
+          flushMode = null;
+        }
+      }
+
+      @Override
+      public int getEntityCount() {
+        return session.getStatistics().getEntityCount();
+      }
+
+      @Override
+      public Set<Object> getEntityKeys(Collection<String> entityNames) {
+        Set<Object> ret = new HashSet<Object>();
+        for (Object key : session.getStatistics().getEntityKeys()) {
+          if (entityNames == null || entityNames.contains(((EntityKey) key).getEntityName())) {
+            ret.add(key);
+          }
+        }
+        return ret;
+      }
+
+      @Override
+      public int evict(Collection<Object> keys) {
+        int ret = 0;
+        for (Object key : keys) {
+          // skips the entities already evicted with the one they belong to, as getting them would
+          // load them again, the others are in the session so getting them does not query
+          Object entity = getLoaded(key);
+          if (entity != null) {
+            session.evict(entity);
+            ret++;
+          }
+        }
+        return ret;
+      }
+
+      @Override
+      public void setWritable(Collection<Object> keys) {
+        for (Object key : keys) {
+          Object entity = getLoaded(key);
+          if (entity != null && session.isReadOnly(entity)) {
+            session.setReadOnly(entity, false);
+          }
+        }
+      }
+
+      /** @return the entity of a key if it is in the session, or null */
+      private Object getLoaded(Object key) {
+        if (!session.getStatistics().getEntityKeys().contains(key)) {
+          return null;
+        }
+        EntityKey entityKey = (EntityKey) key;
+        return session.get(entityKey.getEntityName(), entityKey.getIdentifier());
+      }
+    };
+  }
+
+  /** @return when the latest obs was created, or null if there are no obs */
+  public Date getLatestObsDateCreated() {
+    return (Date)
+        sessionFactory.getCurrentSession().createSQLQuery(LATEST_OBS_QUERY).uniqueResult();
+  }
+
+  @SuppressWarnings("unchecked")
+  private <T> void load(String hql, List<Integer> batch, Map<Integer, T> into) {
+    Query query = sessionFactory.getCurrentSession().createQuery(hql);
+    query.setParameterList("ids", batch);
+    for (Object[] row : (List<Object[]>) query.list()) {
+      into.put((Integer) row[0], (T) row[1]);
+    }
+  }
+
+  private void bind(Query query, Map<String, Object> parameters) {
+    for (Map.Entry<String, Object> e : parameters.entrySet()) {
+      if (e.getValue() instanceof Collection) {
+        query.setParameterList(e.getKey(), (Collection<?>) e.getValue());
+      } else {
+        query.setParameter(e.getKey(), e.getValue());
+      }
+    }
+  }
 }
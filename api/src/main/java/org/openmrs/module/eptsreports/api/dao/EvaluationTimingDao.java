@@ -0,0 +1,99 @@
+/*
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.module.eptsreports.api.dao;
+
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.openmrs.api.db.hibernate.DbSessionFactory;
+import org.openmrs.module.eptsreports.reporting.evaluation.EvaluationTiming;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Repository;
+
+/**
+ * Reads and writes the eptsreports_evaluation_timing table, which holds the average timings of the
+ * data sets of each report by location, the location being 0 for runs of all locations
+ */
+@Repository("eptsreports.EvaluationTimingDao")
+public class EvaluationTimingDao {
+
+  private static final String TIMINGS_QUERY =
+      "SELECT data_set, duration, definitions FROM eptsreports_evaluation_timing "
+          + "WHERE report_uuid = :reportUuid AND location_id = :locationId";
+
+  private static final String DELETE_QUERY =
+      "DELETE FROM eptsreports_evaluation_timing "
+          + "WHERE report_uuid = :reportUuid AND location_id = :locationId";
+
+  private static final String INSERT_QUERY =
+      "INSERT INTO eptsreports_evaluation_timing "
+          + "(report_uuid, location_id, data_set, duration, definitions, date_recorded) "
+          + "VALUES (:reportUuid, :locationId, :dataSet, :duration, :definitions, :dateRecorded)";
+
+  @Autowired DbSessionFactory sessionFactory;
+
+  /**
+   * @param reportUuid the uuid of the report definition
+   * @param locationId the location, 0 for runs of all locations
+   * @return the timings by data set name, empty if the report never completed for the location
+   */
+  @SuppressWarnings("unchecked")
+  public Map<String, EvaluationTiming> getTimings(String reportUuid, int locationId) {
+    Map<String, EvaluationTiming> ret = new LinkedHashMap<String, EvaluationTiming>();
+    List<Object[]> rows =
+        sessionFactory
+            .getCurrentSession()
+            .createSQLQuery(TIMINGS_QUERY)
+            .setParameter("reportUuid", reportUuid)
+            .setParameter("locationId", locationId)
+            .list();
+    for (Object[] row : rows) {
+      ret.put(
+          (String) row[0],
+          new EvaluationTiming(((Number) row[1]).longValue(), ((Number) row[2]).intValue()));
+    }
+    return ret;
+  }
+
+  /**
+   * Replaces the timings of a report for a location. Must be called in a transaction.
+   *
+   * @param reportUuid the uuid of the report definition
+   * @param locationId the location, 0 for runs of all locations
+   * @param timings the timings by data set name
+   */
+  public void save(String reportUuid, int locationId, Map<String, EvaluationTiming> timings) {
+    sessionFactory
+        .getCurrentSession()
+        .createSQLQuery(DELETE_QUERY)
+        .setParameter("reportUuid", reportUuid)
+        .setParameter("locationId", locationId)
+        .executeUpdate();
+    Date dateRecorded = new Date();
+    for (Map.Entry<String, EvaluationTiming> timing : timings.entrySet()) {
+      sessionFactory
+          .getCurrentSession()
+          .createSQLQuery(INSERT_QUERY)
+          .setParameter("reportUuid", reportUuid)
+          .setParameter("locationId", locationId)
+          .setParameter("dataSet", timing.getKey())
+          .setParameter("duration", timing.getValue().getDurationMillis())
+          .setParameter("definitions", timing.getValue().getDefinitions())
+          .setParameter("dateRecorded", dateRecorded)
+          .executeUpdate();
+    }
+  }
+}
@@ -0,0 +1,132 @@
+/*
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.module.eptsreports.api.dao;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.hibernate.SQLQuery;
+import org.openmrs.api.db.hibernate.DbSessionFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Repository;
+
+/**
+ * Reads and writes the cells of the eptsreports_indicator_cube table, which holds the values of
+ * the columns of an indicator data set by location and period
+ */
+@Repository("eptsreports.IndicatorCubeDao")
+public class IndicatorCubeDao {
+
+  private static final String KEY =
+      "indicator = :indicator AND location_id = :locationId AND start_date = :startDate AND end_date = :endDate";
+
+  /** The locations with encounters, which the reports can be run for */
+  private static final String LOCATIONS_QUERY =
+      "SELECT l.location_id FROM location l WHERE l.retired = 0 "
+          + "AND EXISTS (SELECT 1 FROM encounter e WHERE e.location_id = l.location_id AND e.voided = 0)";
+
+  private static final String CELLS_QUERY =
+      "SELECT column_name, value FROM eptsreports_indicator_cube WHERE " + KEY;
+
+  private static final String DATE_COMPUTED_QUERY =
+      "SELECT MIN(date_computed) FROM eptsreports_indicator_cube WHERE " + KEY;
+
+  private static final String DELETE_QUERY = "DELETE FROM eptsreports_indicator_cube WHERE " + KEY;
+
+  private static final String INSERT_QUERY =
+      "INSERT INTO eptsreports_indicator_cube "
+          + "(indicator, location_id, start_date, end_date, column_name, value, date_computed) "
+          + "VALUES (:indicator, :locationId, :startDate, :endDate, :columnName, :value, :dateComputed)";
+
+  @Autowired DbSessionFactory sessionFactory;
+
+  /** @return the ids of the locations with encounters */
+  @SuppressWarnings("unchecked")
+  public List<Integer> getLocationIds() {
+    List<Integer> ret = new ArrayList<Integer>();
+    for (Object id : sessionFactory.getCurrentSession().createSQLQuery(LOCATIONS_QUERY).list()) {
+      ret.add(((Number) id).intValue());
+    }
+    return ret;
+  }
+
+  /**
+   * @param indicator the indicator
+   * @param locationId the location
+   * @param startDate the first day of the period
+   * @param endDate the last day of the period
+   * @return the values by column name, empty if the cells were not computed
+   */
+  @SuppressWarnings("unchecked")
+  public Map<String, Integer> getCells(
+      String indicator, Integer locationId, Date startDate, Date endDate) {
+    Map<String, Integer> ret = new LinkedHashMap<String, Integer>();
+    for (Object[] row :
+        (List<Object[]>) key(CELLS_QUERY, indicator, locationId, startDate, endDate).list()) {
+      ret.put((String) row[0], ((Number) row[1]).intValue());
+    }
+    return ret;
+  }
+
+  /**
+   * @param indicator the indicator
+   * @param locationId the location
+   * @param startDate the first day of the period
+   * @param endDate the last day of the period
+   * @return when the cells were computed, or null if they were not
+   */
+  public Date getDateComputed(String indicator, Integer locationId, Date startDate, Date endDate) {
+    return (Date)
+        key(DATE_COMPUTED_QUERY, indicator, locationId, startDate, endDate).uniqueResult();
+  }
+
+  /**
+   * Replaces the cells of an indicator, location and period. Must be called in a transaction.
+   *
+   * @param indicator the indicator
+   * @param locationId the location
+   * @param startDate the first day of the period
+   * @param endDate the last day of the period
+   * @param cells the values by column name
+   */
+  public void save(
+      String indicator,
+      Integer locationId,
+      Date startDate,
+      Date endDate,
+      Map<String, Integer> cells) {
+    key(DELETE_QUERY, indicator, locationId, startDate, endDate).executeUpdate();
+    Date dateComputed = new Date();
+    for (Map.Entry<String, Integer> cell : cells.entrySet()) {
+      key(INSERT_QUERY, indicator, locationId, startDate, endDate)
+          .setParameter("columnName", cell.getKey())
+          .setParameter("value", cell.getValue())
+          .setParameter("dateComputed", dateComputed)
+          .executeUpdate();
+    }
+  }
+
+  private SQLQuery key(
+      String query, String indicator, Integer locationId, Date startDate, Date endDate) {
+    SQLQuery ret = sessionFactory.getCurrentSession().createSQLQuery(query);
+    ret.setParameter("indicator", indicator);
+    ret.setParameter("locationId", locationId);
+    ret.setDate("startDate", startDate);
+    ret.setDate("endDate", endDate);
+    return ret;
+  }
+}
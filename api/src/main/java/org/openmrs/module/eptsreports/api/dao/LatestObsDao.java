@@ -0,0 +1,185 @@
+/*
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.module.eptsreports.api.dao;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import org.openmrs.api.db.hibernate.DbSessionFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Repository;
+
+/**
+ * Maintains the eptsreports_latest_obs table, which holds for a set of concepts the latest obs ever
+ * of each person, voided or at any location, as the TX_ML queries found it with a grouped pass
+ * over the obs. The latest obs is the one with the latest obs_datetime, and the lowest obs_id among
+ * those. Its date, location, voided flag and values are copied into the table, so the reports look
+ * them up without reading the obs. The concepts built are listed in eptsreports_latest_obs_concept.
+ * Must be called in a transaction.
+ */
+@Repository("eptsreports.LatestObsDao")
+public class LatestObsDao {
+
+  /** Selects the latest obs of a concept, for the persons matched by KEYS */
+  private static final String INSERT_QUERY =
+      "INSERT INTO eptsreports_latest_obs (patient_id, concept_id, obs_id, obs_datetime, location_id, voided, value_numeric, value_coded, value_datetime) "
+          + "SELECT o.person_id, o.concept_id, o.obs_id, o.obs_datetime, o.location_id, o.voided, o.value_numeric, o.value_coded, o.value_datetime "
+          + "FROM obs o INNER JOIN (SELECT MIN(tie.obs_id) obs_id FROM obs tie INNER JOIN "
+          + "(SELECT person_id, MAX(obs_datetime) obs_datetime FROM obs "
+          + "WHERE concept_id = :conceptId KEYS GROUP BY person_id) latest "
+          + "ON tie.person_id = latest.person_id AND tie.obs_datetime = latest.obs_datetime "
+          + "WHERE tie.concept_id = :conceptId GROUP BY tie.person_id) chosen "
+          + "ON chosen.obs_id = o.obs_id";
+
+  private static final String KEY = "AND person_id = :patientId";
+
+  private static final String DELETE_CONCEPT_QUERY =
+      "DELETE FROM eptsreports_latest_obs WHERE concept_id = :conceptId";
+
+  private static final String DELETE_KEY_QUERY =
+      "DELETE FROM eptsreports_latest_obs WHERE concept_id = :conceptId AND patient_id = :patientId";
+
+  private static final String DELETE_OTHER_CONCEPTS_QUERY =
+      "DELETE FROM TABLE WHERE concept_id NOT IN (:conceptIds)";
+
+  private static final String DELETE_ALL_QUERY = "DELETE FROM TABLE";
+
+  private static final String BUILT_CONCEPTS_QUERY =
+      "SELECT concept_id FROM eptsreports_latest_obs_concept";
+
+  private static final String DELETE_BUILT_QUERY =
+      "DELETE FROM eptsreports_latest_obs_concept WHERE concept_id = :conceptId";
+
+  private static final String INSERT_BUILT_QUERY =
+      "INSERT INTO eptsreports_latest_obs_concept (concept_id, date_built) VALUES (:conceptId, NOW())";
+
+  private static final String OBS_KEY_QUERY =
+      "SELECT person_id, concept_id FROM obs WHERE obs_id = :obsId";
+
+  @Autowired DbSessionFactory sessionFactory;
+
+  /** @return the concepts whose latest obs were built */
+  @SuppressWarnings("unchecked")
+  public Set<Integer> getBuiltConceptIds() {
+    Set<Integer> ret = new HashSet<Integer>();
+    for (Number conceptId :
+        (List<Number>)
+            sessionFactory.getCurrentSession().createSQLQuery(BUILT_CONCEPTS_QUERY).list()) {
+      ret.add(conceptId.intValue());
+    }
+    return ret;
+  }
+
+  /**
+   * Fills the table again for a concept, from the obs table, and notes that it was built
+   *
+   * @param conceptId the concept
+   * @return the number of latest obs
+   */
+  public int build(Integer conceptId) {
+    sessionFactory
+        .getCurrentSession()
+        .createSQLQuery(DELETE_CONCEPT_QUERY)
+        .setParameter("conceptId", conceptId)
+        .executeUpdate();
+    int ret =
+        sessionFactory
+            .getCurrentSession()
+            .createSQLQuery(INSERT_QUERY.replace("KEYS", ""))
+            .setParameter("conceptId", conceptId)
+            .executeUpdate();
+    sessionFactory
+        .getCurrentSession()
+        .createSQLQuery(DELETE_BUILT_QUERY)
+        .setParameter("conceptId", conceptId)
+        .executeUpdate();
+    sessionFactory
+        .getCurrentSession()
+        .createSQLQuery(INSERT_BUILT_QUERY)
+        .setParameter("conceptId", conceptId)
+        .executeUpdate();
+    return ret;
+  }
+
+  /**
+   * Sets again the latest obs of a concept of a patient, from the obs table. Called once the change
+   * of the obs is committed, so it is seen without flushing the session.
+   *
+   * @param patientId the patient
+   * @param conceptId the concept
+   */
+  public void update(Integer patientId, Integer conceptId) {
+    sessionFactory
+        .getCurrentSession()
+        .createSQLQuery(DELETE_KEY_QUERY)
+        .setParameter("conceptId", conceptId)
+        .setParameter("patientId", patientId)
+        .executeUpdate();
+    sessionFactory
+        .getCurrentSession()
+        .createSQLQuery(INSERT_QUERY.replace("KEYS", KEY))
+        .setParameter("conceptId", conceptId)
+        .setParameter("patientId", patientId)
+        .executeUpdate();
+  }
+
+  /**
+   * Reads the person and concept of an obs as they are stored, before they are changed
+   *
+   * @param obsId the obs
+   * @return the person and concept ids, or null if the obs is not stored
+   */
+  public Integer[] getKey(Integer obsId) {
+    Object[] row =
+        (Object[])
+            sessionFactory
+                .getCurrentSession()
+                .createSQLQuery(OBS_KEY_QUERY)
+                .setParameter("obsId", obsId)
+                .uniqueResult();
+    if (row == null) {
+      return null;
+    }
+    return new Integer[] {toInteger(row[0]), toInteger(row[1])};
+  }
+
+  /**
+   * Removes the latest obs of the concepts that are no longer indexed
+   *
+   * @param conceptIds the indexed concepts
+   */
+  public void retain(Collection<Integer> conceptIds) {
+    for (String table :
+        new String[] {"eptsreports_latest_obs", "eptsreports_latest_obs_concept"}) {
+      if (conceptIds.isEmpty()) {
+        sessionFactory
+            .getCurrentSession()
+            .createSQLQuery(DELETE_ALL_QUERY.replace("TABLE", table))
+            .executeUpdate();
+      } else {
+        sessionFactory
+            .getCurrentSession()
+            .createSQLQuery(DELETE_OTHER_CONCEPTS_QUERY.replace("TABLE", table))
+            .setParameterList("conceptIds", conceptIds)
+            .executeUpdate();
+      }
+    }
+  }
+
+  private static Integer toInteger(Object value) {
+    return value == null ? null : ((Number) value).intValue();
+  }
+}
@@ -0,0 +1,149 @@
+/*
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.module.eptsreports.api.dao;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import org.openmrs.Cohort;
+import org.openmrs.OpenmrsObject;
+
+/**
+ * A query with named parameters ({@code :name}) turned into a JDBC query with {@code ?}
+ * placeholders, as the reporting module binds the parameters of SQL definitions: collections are
+ * expanded to one placeholder per element, cohorts to their patient ids, OpenMRS objects to their
+ * ids and dates to timestamps. Names inside quotes are left alone.
+ */
+public class NamedParameterQuery {
+
+  private final String sql;
+
+  private final List<Object> values = new ArrayList<Object>();
+
+  /**
+   * @param query the query with named parameters
+   * @param parameters the parameter values by name
+   * @throws IllegalArgumentException if the query has a parameter that is not given
+   */
+  public NamedParameterQuery(String query, Map<String, Object> parameters) {
+    StringBuilder sb = new StringBuilder(query.length());
+    char quote = 0;
+    int i = 0;
+    while (i < query.length()) {
+      char c = query.charAt(i);
+      if (quote != 0) {
+        if (c == quote) {
+          quote = 0;
+        }
+        sb.append(c);
+        i++;
+      } else if (c == '\'' || c == '"' || c == '`') {
+        quote = c;
+        sb.append(c);
+        i++;
+      } else if (c == ':' && i + 1 < query.length() && query.charAt(i + 1) == ':') {
+        sb.append("::");
+        i += 2;
+      } else if (c == ':'
+          && i + 1 < query.length()
+          && Character.isJavaIdentifierStart(query.charAt(i + 1))) {
+        int end = i + 1;
+        while (end < query.length() && Character.isJavaIdentifierPart(query.charAt(end))) {
+          end++;
+        }
+        String name = query.substring(i + 1, end);
+        if (!parameters.containsKey(name)) {
+          throw new IllegalArgumentException("No value for parameter " + name);
+        }
+        appendValue(sb, parameters.get(name));
+        i = end;
+      } else {
+        sb.append(c);
+        i++;
+      }
+    }
+    this.sql = sb.toString();
+  }
+
+  /** @return the query with {@code ?} placeholders */
+  public String getSql() {
+    return sql;
+  }
+
+  /** @return the values of the placeholders, in order */
+  public List<Object> getValues() {
+    return values;
+  }
+
+  /**
+   * @param connection the connection
+   * @return the prepared statement with the values bound
+   * @throws SQLException if the statement can not be prepared
+   */
+  public PreparedStatement prepare(Connection connection) throws SQLException {
+    PreparedStatement statement = connection.prepareStatement(sql);
+    try {
+      for (int i = 0; i < values.size(); i++) {
+        statement.setObject(i + 1, values.get(i));
+      }
+    } catch (SQLException e) {
+      statement.close();
+      throw e;
+    }
+    return statement;
+  }
+
+  private void appendValue(StringBuilder sb, Object value) {
+    if (value instanceof Cohort) {
+      value = ((Cohort) value).getMemberIds();
+    }
+    if (value instanceof Collection) {
+      Collection<?> collection = (Collection<?>) value;
+      if (collection.isEmpty()) {
+        sb.append('?');
+        values.add(null);
+        return;
+      }
+      boolean first = true;
+      for (Object element : collection) {
+        sb.append(first ? "?" : ",?");
+        values.add(toJdbc(element));
+        first = false;
+      }
+    } else {
+      sb.append('?');
+      values.add(toJdbc(value));
+    }
+  }
+
+  private static Object toJdbc(Object value) {
+    if (value instanceof OpenmrsObject) {
+      return ((OpenmrsObject) value).getId();
+    }
+    if (value instanceof Date) {
+      return new Timestamp(((Date) value).getTime());
+    }
+    if (value instanceof Enum) {
+      return ((Enum<?>) value).name();
+    }
+    return value;
+  }
+}
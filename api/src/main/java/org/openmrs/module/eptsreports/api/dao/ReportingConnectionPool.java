@@ -0,0 +1,155 @@
+/*
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.module.eptsreports.api.dao;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A small pool of JDBC connections, for report queries run away from the main datasource. At most
+ * {@code maxSize} connections are handed out at once, callers waiting for one up to a timeout, and
+ * idle connections are checked before being handed out again.
+ */
+public class ReportingConnectionPool {
+
+  /** Opens new connections for the pool */
+  public interface ConnectionFactory {
+
+    Connection open() throws SQLException;
+  }
+
+  /** Seconds to wait for an idle connection to answer before dropping it */
+  private static final int VALIDATION_TIMEOUT_SECONDS = 2;
+
+  private final ConnectionFactory factory;
+
+  private final int maxSize;
+
+  private final Semaphore permits;
+
+  private final Deque<Connection> idle = new ArrayDeque<Connection>();
+
+  private boolean closed;
+
+  /**
+   * @param factory opens the connections
+   * @param maxSize the most connections in use at once
+   */
+  public ReportingConnectionPool(ConnectionFactory factory, int maxSize) {
+    this.factory = factory;
+    this.maxSize = maxSize;
+    this.permits = new Semaphore(maxSize, true);
+  }
+
+  public int getMaxSize() {
+    return maxSize;
+  }
+
+  /**
+   * Gets a connection, to be given back with {@link #release(Connection)}
+   *
+   * @param timeoutMillis how long to wait for a connection when all are in use
+   * @return the connection
+   * @throws SQLException if no connection could be had in time or opened
+   */
+  public Connection acquire(long timeoutMillis) throws SQLException {
+    try {
+      if (!permits.tryAcquire(timeoutMillis, TimeUnit.MILLISECONDS)) {
+        throw new SQLException("No reporting connection available");
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new SQLException("Interrupted waiting for a reporting connection", e);
+    }
+    try {
+      Connection connection;
+      while ((connection = pollIdle()) != null) {
+        if (isValid(connection)) {
+          return connection;
+        }
+        closeQuietly(connection);
+      }
+      return factory.open();
+    } catch (SQLException e) {
+      permits.release();
+      throw e;
+    } catch (RuntimeException e) {
+      permits.release();
+      throw e;
+    }
+  }
+
+  /**
+   * Gives back a connection, which is kept for reuse unless broken or the pool is closed
+   *
+   * @param connection a connection from {@link #acquire(long)}
+   */
+  public void release(Connection connection) {
+    boolean keep;
+    synchronized (idle) {
+      keep = !closed;
+      if (keep) {
+        idle.push(connection);
+      }
+    }
+    if (!keep) {
+      closeQuietly(connection);
+    }
+    permits.release();
+  }
+
+  /** Gives back a connection that failed, closing it */
+  public void discard(Connection connection) {
+    closeQuietly(connection);
+    permits.release();
+  }
+
+  /** Closes the idle connections, the ones in use being closed when given back */
+  public void close() {
+    synchronized (idle) {
+      closed = true;
+      for (Connection connection : idle) {
+        closeQuietly(connection);
+      }
+      idle.clear();
+    }
+  }
+
+  private Connection pollIdle() {
+    synchronized (idle) {
+      return idle.poll();
+    }
+  }
+
+  private static boolean isValid(Connection connection) {
+    try {
+      return connection.isValid(VALIDATION_TIMEOUT_SECONDS);
+    } catch (SQLException e) {
+      return false;
+    }
+  }
+
+  private static void closeQuietly(Connection connection) {
+    try {
+      connection.close();
+    } catch (SQLException e) {
+      // the connection is dropped anyway
+    }
+  }
+}
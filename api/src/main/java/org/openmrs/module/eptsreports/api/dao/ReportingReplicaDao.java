@@ -0,0 +1,236 @@
+/*
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.module.eptsreports.api.dao;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Properties;
+import java.util.Set;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.openmrs.api.context.Context;
+import org.openmrs.module.eptsreports.reporting.evaluation.EvaluationCancellation;
+import org.openmrs.module.eptsreports.reporting.utils.EptsReportConstants;
+import org.openmrs.module.eptsreports.reporting.utils.EptsReportUtils;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Repository;
+
+/**
+ * Runs report queries on a copy of the database, like a read replica, through a pool of its own so
+ * reports do not take connections from clinical data entry. The copy is set with the {@value
+ * #URL_PROPERTY}, {@value #USERNAME_PROPERTY} and {@value #PASSWORD_PROPERTY} runtime properties;
+ * without them every query runs on the main database. A copy that can not be reached is left
+ * alone for a while, and callers fall back to the main database. The pool is closed with the
+ * module context.
+ */
+@Repository("eptsreports.ReportingReplicaDao")
+public class ReportingReplicaDao implements DisposableBean {
+
+  public static final String URL_PROPERTY = "eptsreports.replica.url";
+
+  public static final String USERNAME_PROPERTY = "eptsreports.replica.username";
+
+  public static final String PASSWORD_PROPERTY = "eptsreports.replica.password";
+
+  private static final Log log = LogFactory.getLog(ReportingReplicaDao.class);
+
+  /** How long to wait for a pooled connection before falling back */
+  private static final long ACQUIRE_TIMEOUT_MILLIS = 30000L;
+
+  /** How many prepared statements each connection to the copy keeps */
+  private static final int PREPARED_STATEMENT_CACHE_SIZE = 250;
+
+  /** How long an unreachable copy is left alone */
+  private static final long DOWN_MILLIS = 60000L;
+
+  @Autowired private EptsReportsDao eptsReportsDao;
+
+  private ReportingConnectionPool pool;
+
+  private long downUntil;
+
+  /**
+   * @return whether a copy is set up and was not found unreachable recently
+   */
+  public synchronized boolean isAvailable() {
+    return getPool() != null && System.currentTimeMillis() >= downUntil;
+  }
+
+  /**
+   * Checks how far the copy is behind the main database, from when their latest obs were created
+   *
+   * @return whether the copy is at most the configured number of seconds behind
+   */
+  public boolean isFresh() {
+    Date primary = eptsReportsDao.getLatestObsDateCreated();
+    if (primary == null) {
+      return true;
+    }
+    Date replica;
+    try {
+      replica = queryLatestObsDateCreated();
+    } catch (SQLException e) {
+      markDown(e);
+      return false;
+    }
+    long maxLagMillis =
+        EptsReportUtils.getIntegerGlobalProperty(
+                EptsReportConstants.GLOBAL_PROPERTY_REPLICA_MAX_LAG_SECONDS, 300)
+            * 1000L;
+    return replica != null && primary.getTime() - replica.getTime() <= maxLagMillis;
+  }
+
+  /**
+   * Runs a query that selects patient ids on the copy. The query is limited to the report query
+   * timeout, and cancelled with the run it is evaluated for.
+   *
+   * @param query the query
+   * @return the patient ids
+   * @throws SQLException if the query fails, the copy being left alone for a while unless the
+   *     query timed out or was cancelled
+   */
+  public Set<Integer> getPatientIds(NamedParameterQuery query) throws SQLException {
+    EvaluationCancellation.check();
+    Set<Integer> ret = new HashSet<Integer>();
+    Connection connection = acquire();
+    try {
+      final PreparedStatement statement = query.prepare(connection);
+      EvaluationCancellation.Canceller canceller =
+          new EvaluationCancellation.Canceller() {
+
+            @Override
+            public void cancel() throws SQLException {
+              statement.cancel();
+            }
+          };
+      EvaluationCancellation.register(canceller);
+      try {
+        statement.setQueryTimeout(EvaluationCancellation.getQueryTimeoutSeconds());
+        ResultSet rs = statement.executeQuery();
+        while (rs.next()) {
+          ret.add(rs.getInt(1));
+        }
+      } finally {
+        EvaluationCancellation.unregister(canceller);
+        statement.close();
+      }
+    } catch (SQLException e) {
+      pool.discard(connection);
+      if (!(e instanceof SQLTimeoutException) && !EvaluationCancellation.isCurrentCancelled()) {
+        markDown(e);
+      }
+      throw e;
+    }
+    pool.release(connection);
+    return ret;
+  }
+
+  private Date queryLatestObsDateCreated() throws SQLException {
+    Date ret;
+    Connection connection = acquire();
+    try {
+      PreparedStatement statement = connection.prepareStatement(EptsReportsDao.LATEST_OBS_QUERY);
+      try {
+        ResultSet rs = statement.executeQuery();
+        ret = rs.next() ? rs.getTimestamp(1) : null;
+      } finally {
+        statement.close();
+      }
+    } catch (SQLException e) {
+      pool.discard(connection);
+      throw e;
+    }
+    pool.release(connection);
+    return ret;
+  }
+
+  /** Closes the idle connections to the copy, the ones in use being closed when given back */
+  @Override
+  public synchronized void destroy() {
+    if (pool != null) {
+      pool.close();
+    }
+  }
+
+  private Connection acquire() throws SQLException {
+    ReportingConnectionPool pool = getPool();
+    if (pool == null) {
+      throw new SQLException("No reporting replica configured");
+    }
+    return pool.acquire(ACQUIRE_TIMEOUT_MILLIS);
+  }
+
+  private synchronized void markDown(SQLException e) {
+    log.warn("Reporting replica failed, using the main database for a while", e);
+    downUntil = System.currentTimeMillis() + DOWN_MILLIS;
+  }
+
+  private synchronized ReportingConnectionPool getPool() {
+    if (pool == null) {
+      Properties properties = Context.getRuntimeProperties();
+      final String url = properties.getProperty(URL_PROPERTY);
+      if (StringUtils.isBlank(url)) {
+        return null;
+      }
+      final Properties info = getConnectionProperties(properties);
+      int size =
+          EptsReportUtils.getIntegerGlobalProperty(
+              EptsReportConstants.GLOBAL_PROPERTY_REPLICA_POOL_SIZE, 4);
+      pool =
+          new ReportingConnectionPool(
+              new ReportingConnectionPool.ConnectionFactory() {
+
+                @Override
+                public Connection open() throws SQLException {
+                  Connection connection = DriverManager.getConnection(url, info);
+                  connection.setReadOnly(true);
+                  return connection;
+                }
+              },
+              Math.max(1, size));
+    }
+    return pool;
+  }
+
+  /**
+   * Connection properties for the copy, with the MySQL driver caching the prepared statements of
+   * each connection on the server, so the queries of the library, whose ids are bind parameters,
+   * are parsed and planned once per connection. Settings in the url take precedence.
+   */
+  private static Properties getConnectionProperties(Properties runtimeProperties) {
+    Properties info = new Properties();
+    info.setProperty("cachePrepStmts", "true");
+    info.setProperty("useServerPrepStmts", "true");
+    info.setProperty("prepStmtCacheSize", String.valueOf(PREPARED_STATEMENT_CACHE_SIZE));
+    info.setProperty("prepStmtCacheSqlLimit", "32768");
+    String username = runtimeProperties.getProperty(USERNAME_PROPERTY);
+    if (username != null) {
+      info.setProperty("user", username);
+    }
+    String password = runtimeProperties.getProperty(PASSWORD_PROPERTY);
+    if (password != null) {
+      info.setProperty("password", password);
+    }
+    return info;
+  }
+}
@@ -14,12 +14,70 @@
 
 package org.openmrs.module.eptsreports.api.impl;
 
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import org.openmrs.api.impl.BaseOpenmrsService;
 import org.openmrs.module.eptsreports.api.EptsReportsService;
 import org.openmrs.module.eptsreports.api.dao.EptsReportsDao;
+import org.openmrs.module.eptsreports.api.dao.EvaluationTimingDao;
+import org.openmrs.module.eptsreports.api.dao.IndicatorCubeDao;
+import org.openmrs.module.eptsreports.reporting.evaluation.EvaluationTiming;
+import org.openmrs.module.eptsreports.reporting.index.LatestObsIndex;
+import org.springframework.beans.factory.annotation.Autowired;
 
 public class EptsReportsServiceImpl extends BaseOpenmrsService implements EptsReportsService {
 
+  @Autowired private LatestObsIndex latestObsIndex;
+
+  @Autowired private IndicatorCubeDao indicatorCubeDao;
+
+  @Autowired private EvaluationTimingDao evaluationTimingDao;
+
   /** Injected in moduleApplicationContext.xml */
   public void setDao(EptsReportsDao dao) {}
+
+  @Override
+  public void buildLatestObsIndex() {
+    latestObsIndex.build();
+  }
+
+  @Override
+  public void rebuildLatestObsIndex() {
+    latestObsIndex.rebuild();
+  }
+
+  @Override
+  public void updateLatestObs(Integer patientId, Integer conceptId) {
+    latestObsIndex.update(patientId, conceptId);
+  }
+
+  @Override
+  public void saveIndicatorCubeCells(
+      String indicator,
+      Integer locationId,
+      Date startDate,
+      Date endDate,
+      Map<String, Integer> cells) {
+    indicatorCubeDao.save(indicator, locationId, startDate, endDate, cells);
+  }
+
+  @Override
+  public Map<String, EvaluationTiming> getEvaluationTimings(String reportUuid, int locationId) {
+    return evaluationTimingDao.getTimings(reportUuid, locationId);
+  }
+
+  @Override
+  public void saveEvaluationTimings(
+      String reportUuid, int locationId, Map<String, EvaluationTiming> timings) {
+    Map<String, EvaluationTiming> stored = evaluationTimingDao.getTimings(reportUuid, locationId);
+    Map<String, EvaluationTiming> averaged = new LinkedHashMap<String, EvaluationTiming>();
+    for (Map.Entry<String, EvaluationTiming> timing : timings.entrySet()) {
+      EvaluationTiming previous = stored.get(timing.getKey());
+      averaged.put(
+          timing.getKey(),
+          previous == null ? timing.getValue() : previous.average(timing.getValue()));
+    }
+    evaluationTimingDao.save(reportUuid, locationId, averaged);
+  }
 }
@@ -14,10 +14,20 @@
 
 package org.openmrs.module.eptsreports.reporting;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.openmrs.api.APIException;
 import org.openmrs.api.context.Context;
+import org.openmrs.api.context.Daemon;
+import org.openmrs.module.DaemonToken;
 import org.openmrs.module.eptsreports.reporting.reports.manager.EptsReportManager;
+import org.openmrs.module.eptsreports.reporting.reports.manager.LazyReportSetup;
+import org.openmrs.module.eptsreports.reporting.utils.EptsReportConstants;
 import org.openmrs.module.eptsreports.reporting.utils.EptsReportUtils;
 import org.openmrs.module.reporting.ReportingConstants;
 import org.openmrs.module.reporting.report.manager.ReportManager;
@@ -25,10 +35,25 @@ import org.openmrs.module.reporting.report.util.ReportUtil;
 
 public class EptsReportInitializer {
 
+  /** How long after startup lazily set up reports are warmed up */
+  private static final long WARM_UP_DELAY_MILLIS = 5 * 60 * 1000L;
+
   private Log log = LogFactory.getLog(this.getClass());
 
-  /** Initializes all EPTS reports and remove deprocated reports from database. */
+  private DaemonToken daemonToken;
+
+  /** @param daemonToken the token of the module, to set up reports in daemon threads */
+  public void setDaemonToken(DaemonToken daemonToken) {
+    this.daemonToken = daemonToken;
+  }
+
+  /**
+   * Initializes all EPTS reports and remove deprocated reports from database. Active reports are
+   * set up by several daemon threads, and only saved when they changed, or registered to be set up
+   * on first use in lazy mode.
+   */
   public void initializeReports() {
+    List<ReportManager> active = new ArrayList<ReportManager>();
     for (ReportManager reportManager : Context.getRegisteredComponents(EptsReportManager.class)) {
       if (reportManager.getClass().getAnnotation(Deprecated.class) != null) {
         // remove depricated reports
@@ -36,10 +61,22 @@ public class EptsReportInitializer {
         log.info(
             "Report " + reportManager.getName() + " is deprecated.  Removing it from database.");
       } else {
-        // setup EPTS active reports
-        EptsReportUtils.setupReportDefinition(reportManager);
-        log.info("Setting up report " + reportManager.getName() + "...");
+        active.add(reportManager);
+      }
+    }
+    if (EptsReportUtils.getBooleanGlobalProperty(
+        EptsReportConstants.GLOBAL_PROPERTY_LAZY_REPORT_SETUP, false)) {
+      active = registerLazyReports(active);
+    }
+    int threads =
+        EptsReportUtils.getIntegerGlobalProperty(
+            EptsReportConstants.GLOBAL_PROPERTY_REPORT_SETUP_THREADS, 4);
+    if (daemonToken == null || threads <= 1) {
+      for (ReportManager reportManager : active) {
+        setupReport(reportManager);
       }
+    } else if (!active.isEmpty()) {
+      setupReports(active, Math.min(threads, active.size()));
     }
     ReportUtil.updateGlobalProperty(
         ReportingConstants.GLOBAL_PROPERTY_DATA_EVALUATION_BATCH_SIZE, "-1");
@@ -52,4 +89,86 @@ public class EptsReportInitializer {
       log.info("Report " + reportManager.getName() + " removed from database.");
     }
   }
+
+  /**
+   * Registers reports to be set up on first use, and warms them up in a low priority daemon thread
+   * after a delay
+   *
+   * @return the reports that must be set up now
+   */
+  private List<ReportManager> registerLazyReports(List<ReportManager> reportManagers) {
+    final LazyReportSetup lazyReportSetup =
+        Context.getRegisteredComponents(LazyReportSetup.class).get(0);
+    final List<ReportManager> lazy = new ArrayList<ReportManager>();
+    List<ReportManager> ret = new ArrayList<ReportManager>();
+    for (ReportManager reportManager : reportManagers) {
+      if (lazyReportSetup.register(reportManager)) {
+        lazy.add(reportManager);
+      } else {
+        ret.add(reportManager);
+      }
+    }
+    if (daemonToken != null && !lazy.isEmpty()) {
+      Daemon.runInDaemonThread(
+          new Runnable() {
+
+            @Override
+            public void run() {
+              Thread.currentThread().setPriority(Thread.MIN_PRIORITY);
+              try {
+                Thread.sleep(WARM_UP_DELAY_MILLIS);
+              } catch (InterruptedException e) {
+                return;
+              }
+              lazyReportSetup.warmUp(lazy);
+            }
+          },
+          daemonToken);
+    }
+    return ret;
+  }
+
+  private void setupReports(List<ReportManager> reportManagers, int threads) {
+    final Queue<ReportManager> queue = new ConcurrentLinkedQueue<ReportManager>(reportManagers);
+    final List<RuntimeException> failures =
+        Collections.synchronizedList(new ArrayList<RuntimeException>());
+    Runnable worker =
+        new Runnable() {
+
+          @Override
+          public void run() {
+            ReportManager reportManager;
+            while (failures.isEmpty() && (reportManager = queue.poll()) != null) {
+              try {
+                setupReport(reportManager);
+              } catch (RuntimeException e) {
+                failures.add(e);
+              }
+            }
+          }
+        };
+    List<Thread> workers = new ArrayList<Thread>();
+    for (int i = 0; i < threads; i++) {
+      workers.add(Daemon.runInDaemonThread(worker, daemonToken));
+    }
+    try {
+      for (Thread thread : workers) {
+        thread.join();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new APIException("Interrupted setting up EPTS reports", e);
+    }
+    if (!failures.isEmpty()) {
+      throw failures.get(0);
+    }
+  }
+
+  private void setupReport(ReportManager reportManager) {
+    if (EptsReportUtils.setupReportDefinition(reportManager)) {
+      log.info("Set up report " + reportManager.getName());
+    } else {
+      log.info("Report " + reportManager.getName() + " is unchanged");
+    }
+  }
 }
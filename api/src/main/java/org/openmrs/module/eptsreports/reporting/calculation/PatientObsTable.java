@@ -0,0 +1,404 @@
+/*
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.module.eptsreports.reporting.calculation;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.openmrs.Concept;
+import org.openmrs.Encounter;
+import org.openmrs.Location;
+import org.openmrs.Obs;
+import org.openmrs.Person;
+import org.openmrs.api.APIException;
+import org.openmrs.module.eptsreports.reporting.utils.EptsReportConstants;
+import org.openmrs.module.eptsreports.reporting.utils.EptsReportUtils;
+import org.openmrs.util.OpenmrsUtil;
+
+/**
+ * All the obs of a question for the patients of a cohort, kept as fixed size binary records
+ * instead of {@link Obs} entities, for calculations that look at every obs of every patient. The
+ * records are kept in heap up to a budget; past it they are written to a temporary file, which is
+ * memory mapped once the table is filled, so a run with little free heap reads from the page cache
+ * instead of running out of memory. The file is deleted as soon as it is mapped.
+ *
+ * <p>Patients are added in ascending id order, with their obs in the order they are to be read
+ * back. {@link #getObs(int)} then builds detached obs for one patient at a time, holding ids and
+ * values but no other data of the concepts, encounters and locations they point to. Not thread
+ * safe; close the table when done so the mapping can be released.
+ */
+public class PatientObsTable implements Closeable {
+
+  /** Obs id, concept, encounter, location and coded value ids, three dates and a number */
+  static final int RECORD_BYTES = 5 * 4 + 3 * 8 + 8;
+
+  /** Records per mapped segment, a mapping being at most {@link Integer#MAX_VALUE} bytes */
+  static final int SEGMENT_RECORDS = Integer.MAX_VALUE / RECORD_BYTES;
+
+  private static final int WRITE_BUFFER_RECORDS = 1024;
+
+  private static final int MIN_HEAP_RECORDS = 64;
+
+  private static final long NO_DATE = Long.MIN_VALUE;
+
+  private static final long BYTES_PER_MB = 1024L * 1024L;
+
+  private static final String DIRECTORY = "eptsreports/spill";
+
+  private static final Log log = LogFactory.getLog(PatientObsTable.class);
+
+  private final int heapBudgetRecords;
+
+  private final File directory;
+
+  private int[] patientIds = new int[16];
+
+  private int[] firstRecords = new int[17];
+
+  private int patientCount;
+
+  private int recordCount;
+
+  private ByteBuffer heap;
+
+  private File spillFile;
+
+  private RandomAccessFile spill;
+
+  private ByteBuffer writeBuffer;
+
+  private ByteBuffer[] segments;
+
+  /**
+   * @param heapBudgetBytes the most bytes of records to keep in heap
+   * @param directory where to write the records past the budget
+   */
+  public PatientObsTable(long heapBudgetBytes, File directory) {
+    this.heapBudgetRecords =
+        (int) Math.min(SEGMENT_RECORDS, Math.max(0, heapBudgetBytes / RECORD_BYTES));
+    this.directory = directory;
+  }
+
+  /**
+   * Creates a table with the heap budget of {@link
+   * EptsReportConstants#GLOBAL_PROPERTY_CALCULATION_HEAP_BUDGET_MB}, lowered to a quarter of the
+   * free heap when that is less, spilling to the eptsreports/spill folder of the application data
+   * directory
+   *
+   * @return the table
+   */
+  public static PatientObsTable withConfiguredBudget() {
+    long budget =
+        EptsReportUtils.getIntegerGlobalProperty(
+                EptsReportConstants.GLOBAL_PROPERTY_CALCULATION_HEAP_BUDGET_MB, 64)
+            * BYTES_PER_MB;
+    Runtime runtime = Runtime.getRuntime();
+    long freeHeap = runtime.maxMemory() - (runtime.totalMemory() - runtime.freeMemory());
+    return new PatientObsTable(
+        Math.min(budget, freeHeap / 4),
+        OpenmrsUtil.getDirectoryInApplicationDataDirectory(DIRECTORY));
+  }
+
+  /**
+   * Adds an obs of a patient
+   *
+   * @param patientId the patient, not less than the patient of the previous obs
+   * @param obs the obs
+   */
+  public void add(int patientId, Obs obs) {
+    add(
+        patientId,
+        obs.getObsId(),
+        obs.getConcept() == null ? null : obs.getConcept().getConceptId(),
+        obs.getObsDatetime(),
+        obs.getEncounter() == null ? null : obs.getEncounter().getEncounterId(),
+        obs.getEncounter() == null ? null : obs.getEncounter().getEncounterDatetime(),
+        obs.getLocation() == null ? null : obs.getLocation().getLocationId(),
+        obs.getValueCoded() == null ? null : obs.getValueCoded().getConceptId(),
+        obs.getValueNumeric(),
+        obs.getValueDatetime());
+  }
+
+  /**
+   * Adds an obs of a patient, from the columns of a query
+   *
+   * @param patientId the patient, not less than the patient of the previous obs
+   * @throws IllegalArgumentException if the patient comes before the previous one
+   * @throws IllegalStateException if the table is already filled
+   * @throws APIException if the obs can not be written to disk
+   */
+  public void add(
+      int patientId,
+      Integer obsId,
+      Integer conceptId,
+      Date obsDatetime,
+      Integer encounterId,
+      Date encounterDatetime,
+      Integer locationId,
+      Integer valueCoded,
+      Double valueNumeric,
+      Date valueDatetime) {
+    if (segments != null) {
+      throw new IllegalStateException("Table already filled");
+    }
+    addPatient(patientId);
+    ByteBuffer buffer = bufferForNextRecord();
+    buffer.putInt(id(obsId));
+    buffer.putInt(id(conceptId));
+    buffer.putInt(id(encounterId));
+    buffer.putInt(id(locationId));
+    buffer.putInt(id(valueCoded));
+    buffer.putLong(millis(obsDatetime));
+    buffer.putLong(millis(encounterDatetime));
+    buffer.putLong(millis(valueDatetime));
+    buffer.putDouble(valueNumeric == null ? Double.NaN : valueNumeric);
+    recordCount++;
+  }
+
+  /**
+   * Ends the filling of the table, mapping the spilled records if there are any
+   *
+   * @return this table
+   * @throws APIException if the spilled records can not be mapped
+   */
+  public PatientObsTable finish() {
+    if (segments != null) {
+      return this;
+    }
+    firstRecords[patientCount] = recordCount;
+    if (spill == null) {
+      segments = new ByteBuffer[] {heap == null ? ByteBuffer.allocate(0) : heap};
+      return this;
+    }
+    try {
+      flushWriteBuffer();
+      FileChannel channel = spill.getChannel();
+      int segmentCount = (recordCount + SEGMENT_RECORDS - 1) / SEGMENT_RECORDS;
+      ByteBuffer[] mapped = new ByteBuffer[segmentCount];
+      for (int i = 0; i < segmentCount; i++) {
+        long start = (long) i * SEGMENT_RECORDS;
+        long records = Math.min(SEGMENT_RECORDS, recordCount - start);
+        mapped[i] =
+            channel.map(
+                FileChannel.MapMode.READ_ONLY, start * RECORD_BYTES, records * RECORD_BYTES);
+      }
+      segments = mapped;
+      writeBuffer = null;
+    } catch (IOException e) {
+      throw new APIException("Could not map " + spillFile, e);
+    } finally {
+      closeSpill();
+    }
+    return this;
+  }
+
+  /** @return whether records went over the heap budget and were written to disk */
+  public boolean isSpilled() {
+    return spillFile != null;
+  }
+
+  public int getPatientCount() {
+    return patientCount;
+  }
+
+  public int getObsCount() {
+    return recordCount;
+  }
+
+  public boolean contains(int patientId) {
+    return Arrays.binarySearch(patientIds, 0, patientCount, patientId) >= 0;
+  }
+
+  /**
+   * Reads back the obs of a patient, as detached obs with only the ids of the concept, encounter,
+   * location and coded value, and the encounter date
+   *
+   * @param patientId the patient
+   * @return the obs in the order they were added, empty if the patient has none
+   * @throws IllegalStateException if the table has not been filled or is closed
+   */
+  public List<Obs> getObs(int patientId) {
+    if (segments == null) {
+      throw new IllegalStateException("Table not filled or already closed");
+    }
+    int index = Arrays.binarySearch(patientIds, 0, patientCount, patientId);
+    if (index < 0) {
+      return Collections.emptyList();
+    }
+    Person person = new Person(patientId);
+    List<Obs> obs = new ArrayList<Obs>(firstRecords[index + 1] - firstRecords[index]);
+    for (int record = firstRecords[index]; record < firstRecords[index + 1]; record++) {
+      obs.add(readObs(record, person));
+    }
+    return obs;
+  }
+
+  /** Releases the records. Mapped records are unmapped once garbage collected. */
+  @Override
+  public void close() {
+    segments = null;
+    heap = null;
+    writeBuffer = null;
+    closeSpill();
+  }
+
+  private void addPatient(int patientId) {
+    if (patientCount > 0 && patientIds[patientCount - 1] == patientId) {
+      return;
+    }
+    if (patientCount > 0 && patientIds[patientCount - 1] > patientId) {
+      throw new IllegalArgumentException(
+          "Patient " + patientId + " added after patient " + patientIds[patientCount - 1]);
+    }
+    if (patientCount == patientIds.length) {
+      patientIds = Arrays.copyOf(patientIds, patientCount * 2);
+      firstRecords = Arrays.copyOf(firstRecords, patientCount * 2 + 1);
+    }
+    patientIds[patientCount] = patientId;
+    firstRecords[patientCount] = recordCount;
+    patientCount++;
+  }
+
+  private ByteBuffer bufferForNextRecord() {
+    if (spill != null) {
+      if (writeBuffer.remaining() < RECORD_BYTES) {
+        flushWriteBuffer();
+      }
+      return writeBuffer;
+    }
+    if (recordCount < heapBudgetRecords) {
+      if (heap == null || heap.remaining() < RECORD_BYTES) {
+        int capacity = heap == null ? MIN_HEAP_RECORDS : heap.capacity() / RECORD_BYTES * 2;
+        ByteBuffer grown =
+            ByteBuffer.allocate(Math.min(capacity, heapBudgetRecords) * RECORD_BYTES);
+        if (heap != null) {
+          heap.flip();
+          grown.put(heap);
+        }
+        heap = grown;
+      }
+      return heap;
+    }
+    startSpill();
+    return writeBuffer;
+  }
+
+  private void startSpill() {
+    try {
+      directory.mkdirs();
+      spillFile = File.createTempFile("obs", ".spill", directory);
+      spill = new RandomAccessFile(spillFile, "rw");
+      if (heap != null) {
+        heap.flip();
+        FileChannel channel = spill.getChannel();
+        while (heap.hasRemaining()) {
+          channel.write(heap);
+        }
+        heap = null;
+      }
+      writeBuffer = ByteBuffer.allocate(WRITE_BUFFER_RECORDS * RECORD_BYTES);
+    } catch (IOException e) {
+      closeSpill();
+      throw new APIException("Could not write obs to " + directory, e);
+    }
+    log.info(
+        "Obs of "
+            + patientCount
+            + " patients went over the calculation heap budget, continuing in "
+            + spillFile);
+  }
+
+  private void flushWriteBuffer() {
+    writeBuffer.flip();
+    try {
+      FileChannel channel = spill.getChannel();
+      while (writeBuffer.hasRemaining()) {
+        channel.write(writeBuffer);
+      }
+    } catch (IOException e) {
+      throw new APIException("Could not write obs to " + spillFile, e);
+    }
+    writeBuffer.clear();
+  }
+
+  /** Closes and deletes the spill file; a mapping of it stays readable until unmapped */
+  private void closeSpill() {
+    if (spill == null) {
+      return;
+    }
+    try {
+      spill.close();
+    } catch (IOException e) {
+      log.warn("Could not close " + spillFile, e);
+    }
+    spill = null;
+    if (!spillFile.delete()) {
+      spillFile.deleteOnExit();
+    }
+  }
+
+  private Obs readObs(int record, Person person) {
+    ByteBuffer segment = segments[record / SEGMENT_RECORDS];
+    int offset = (record % SEGMENT_RECORDS) * RECORD_BYTES;
+    Obs obs = new Obs(segment.getInt(offset));
+    obs.setPerson(person);
+    int conceptId = segment.getInt(offset + 4);
+    if (conceptId != 0) {
+      obs.setConcept(new Concept(conceptId));
+    }
+    int encounterId = segment.getInt(offset + 8);
+    long encounterDatetime = segment.getLong(offset + 28);
+    if (encounterId != 0) {
+      Encounter encounter = new Encounter(encounterId);
+      encounter.setEncounterDatetime(date(encounterDatetime));
+      obs.setEncounter(encounter);
+    }
+    int locationId = segment.getInt(offset + 12);
+    if (locationId != 0) {
+      obs.setLocation(new Location(locationId));
+    }
+    int valueCoded = segment.getInt(offset + 16);
+    if (valueCoded != 0) {
+      obs.setValueCoded(new Concept(valueCoded));
+    }
+    obs.setObsDatetime(date(segment.getLong(offset + 20)));
+    obs.setValueDatetime(date(segment.getLong(offset + 36)));
+    double valueNumeric = segment.getDouble(offset + 44);
+    obs.setValueNumeric(Double.isNaN(valueNumeric) ? null : valueNumeric);
+    return obs;
+  }
+
+  private static int id(Integer id) {
+    return id == null ? 0 : id;
+  }
+
+  private static long millis(Date date) {
+    return date == null ? NO_DATE : date.getTime();
+  }
+
+  private static Date date(long millis) {
+    return millis == NO_DATE ? null : new Date(millis);
+  }
+}
@@ -0,0 +1,249 @@
+/*
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.eptsreports.reporting.calculation;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import org.openmrs.calculation.Calculation;
+import org.openmrs.calculation.result.CalculationResultMap;
+import org.openmrs.calculation.result.SimpleResult;
+
+/**
+ * Per patient results kept in primitive columns, for passing results between our own calculations
+ * without creating a {@link org.openmrs.calculation.result.CalculationResult} for every patient.
+ * Patient ids are kept in an open addressing table; each id has a slot in a boolean column (a
+ * bitset), a date column (epoch millis) and an object column. Columns are only allocated once
+ * written to.
+ *
+ * <p>Convert to a {@link CalculationResultMap} with one of the {@code as...Results} methods when
+ * handing results back to the calculation module. Not thread safe.
+ */
+public class PatientResultStore {
+
+  private static final int FREE = 0;
+
+  private static final long NO_DATE = Long.MIN_VALUE;
+
+  private int[] keys;
+
+  private long[] trueBits;
+
+  private long[] dates;
+
+  private Object[] objects;
+
+  private int size;
+
+  private int mask;
+
+  public PatientResultStore() {
+    this(16);
+  }
+
+  /** @param expectedSize the number of patients expected, usually the cohort size */
+  public PatientResultStore(int expectedSize) {
+    int capacity = 16;
+    while (capacity < expectedSize * 2) {
+      capacity <<= 1;
+    }
+    keys = new int[capacity];
+    mask = capacity - 1;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public boolean contains(int patientId) {
+    return keys[slot(patientId)] == patientId;
+  }
+
+  /** Adds a patient without setting any value, as a null result does in a result map */
+  public void add(int patientId) {
+    insert(patientId);
+  }
+
+  public void putBoolean(int patientId, boolean value) {
+    int slot = insert(patientId);
+    if (trueBits == null) {
+      if (!value) {
+        return;
+      }
+      trueBits = new long[(keys.length + 63) >>> 6];
+    }
+    if (value) {
+      trueBits[slot >>> 6] |= 1L << slot;
+    } else {
+      trueBits[slot >>> 6] &= ~(1L << slot);
+    }
+  }
+
+  /** @return true only if true was stored for the patient */
+  public boolean getBoolean(int patientId) {
+    int slot = slot(patientId);
+    return trueBits != null
+        && keys[slot] == patientId
+        && (trueBits[slot >>> 6] & (1L << slot)) != 0;
+  }
+
+  public void putDate(int patientId, Date date) {
+    putDate(patientId, date == null ? NO_DATE : date.getTime());
+  }
+
+  /**
+   * @param patientId the patient id
+   * @param millis the date as epoch millis, {@link Long#MIN_VALUE} for no date
+   */
+  public void putDate(int patientId, long millis) {
+    int slot = insert(patientId);
+    if (dates == null) {
+      if (millis == NO_DATE) {
+        return;
+      }
+      dates = newDateColumn(keys.length);
+    }
+    dates[slot] = millis;
+  }
+
+  /** @return the date stored for the patient as epoch millis, or {@link Long#MIN_VALUE} */
+  public long getDateMillis(int patientId) {
+    int slot = slot(patientId);
+    return dates != null && keys[slot] == patientId ? dates[slot] : NO_DATE;
+  }
+
+  /** @return the date stored for the patient, or null */
+  public Date getDate(int patientId) {
+    long millis = getDateMillis(patientId);
+    return millis == NO_DATE ? null : new Date(millis);
+  }
+
+  public void putObject(int patientId, Object value) {
+    int slot = insert(patientId);
+    if (objects == null) {
+      if (value == null) {
+        return;
+      }
+      objects = new Object[keys.length];
+    }
+    objects[slot] = value;
+  }
+
+  @SuppressWarnings("unchecked")
+  public <T> T getObject(int patientId) {
+    int slot = slot(patientId);
+    return objects != null && keys[slot] == patientId ? (T) objects[slot] : null;
+  }
+
+  /**
+   * Copies the boolean column into a result map, with a {@link BooleanResult} for each patient in
+   * the store
+   *
+   * @param calculation the calculation the results belong to
+   * @return the calculation result map
+   */
+  public CalculationResultMap asBooleanResults(Calculation calculation) {
+    CalculationResultMap map = new CalculationResultMap();
+    for (int slot = 0; slot < keys.length; slot++) {
+      int patientId = keys[slot];
+      if (patientId != FREE) {
+        boolean value = trueBits != null && (trueBits[slot >>> 6] & (1L << slot)) != 0;
+        map.put(patientId, new BooleanResult(value, calculation));
+      }
+    }
+    return map;
+  }
+
+  /**
+   * Copies the date column into a result map, with a {@link SimpleResult} for each patient in the
+   * cohort, holding null for patients without a date
+   *
+   * @param cohort the patient ids
+   * @param calculation the calculation the results belong to
+   * @return the calculation result map
+   */
+  public CalculationResultMap asDateResults(Collection<Integer> cohort, Calculation calculation) {
+    CalculationResultMap map = new CalculationResultMap();
+    for (Integer patientId : cohort) {
+      map.put(patientId, new SimpleResult(getDate(patientId), calculation));
+    }
+    return map;
+  }
+
+  private int slot(int patientId) {
+    if (patientId == FREE) {
+      throw new IllegalArgumentException("Patient id cannot be " + FREE);
+    }
+    int slot = mix(patientId) & mask;
+    while (keys[slot] != FREE && keys[slot] != patientId) {
+      slot = (slot + 1) & mask;
+    }
+    return slot;
+  }
+
+  private int insert(int patientId) {
+    int slot = slot(patientId);
+    if (keys[slot] == patientId) {
+      return slot;
+    }
+    if ((size + 1) * 2 > keys.length) {
+      grow();
+      slot = slot(patientId);
+    }
+    keys[slot] = patientId;
+    size++;
+    return slot;
+  }
+
+  private void grow() {
+    int[] oldKeys = keys;
+    long[] oldTrueBits = trueBits;
+    long[] oldDates = dates;
+    Object[] oldObjects = objects;
+    int capacity = oldKeys.length << 1;
+    keys = new int[capacity];
+    mask = capacity - 1;
+    trueBits = oldTrueBits == null ? null : new long[(capacity + 63) >>> 6];
+    dates = oldDates == null ? null : newDateColumn(capacity);
+    objects = oldObjects == null ? null : new Object[capacity];
+    for (int oldSlot = 0; oldSlot < oldKeys.length; oldSlot++) {
+      int patientId = oldKeys[oldSlot];
+      if (patientId != FREE) {
+        int slot = slot(patientId);
+        keys[slot] = patientId;
+        if (oldTrueBits != null && (oldTrueBits[oldSlot >>> 6] & (1L << oldSlot)) != 0) {
+          trueBits[slot >>> 6] |= 1L << slot;
+        }
+        if (oldDates != null) {
+          dates[slot] = oldDates[oldSlot];
+        }
+        if (oldObjects != null) {
+          objects[slot] = oldObjects[oldSlot];
+        }
+      }
+    }
+  }
+
+  private static long[] newDateColumn(int capacity) {
+    long[] column = new long[capacity];
+    Arrays.fill(column, NO_DATE);
+    return column;
+  }
+
+  /** Spreads sequential patient ids over the table */
+  private static int mix(int patientId) {
+    int h = patientId * 0x9E3779B9;
+    return h ^ (h >>> 16);
+  }
+}
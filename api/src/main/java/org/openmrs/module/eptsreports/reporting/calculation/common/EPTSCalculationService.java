@@ -11,31 +11,46 @@
  */
 package org.openmrs.module.eptsreports.reporting.calculation.common;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
 import org.openmrs.Concept;
 import org.openmrs.EncounterType;
 import org.openmrs.Location;
+import org.openmrs.Obs;
 import org.openmrs.Program;
 import org.openmrs.ProgramWorkflowState;
 import org.openmrs.calculation.patient.PatientCalculationContext;
 import org.openmrs.calculation.result.CalculationResultMap;
+import org.openmrs.module.eptsreports.api.dao.EptsReportsDao;
+import org.openmrs.module.eptsreports.reporting.calculation.PatientObsTable;
 import org.openmrs.module.eptsreports.reporting.cohort.definition.JembiObsDefinition;
 import org.openmrs.module.eptsreports.reporting.cohort.definition.JembiPatientStateDefinition;
 import org.openmrs.module.eptsreports.reporting.cohort.definition.JembiProgramEnrollmentForPatientDefinition;
+import org.openmrs.module.eptsreports.reporting.cohort.evaluator.StreamingPatientQuery;
 import org.openmrs.module.eptsreports.reporting.utils.EptsCalculationUtils;
+import org.openmrs.module.reporting.common.DateUtil;
 import org.openmrs.module.reporting.common.TimeQualifier;
 import org.openmrs.module.reporting.data.patient.definition.EncountersForPatientDataDefinition;
 import org.openmrs.module.reporting.data.patient.definition.ProgramEnrollmentsForPatientDataDefinition;
 import org.openmrs.module.reporting.data.person.definition.ObsForPersonDataDefinition;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 /** Utility class of common base calculations */
 @Service
 public class EPTSCalculationService {
 
+  /** Patients bound into each obs table query, larger cohorts are queried in chunks */
+  private static final int OBS_TABLE_COHORT_CHUNK_SIZE = 1000;
+
+  @Autowired private EptsReportsDao eptsReportsDao;
+
   /**
    * Evaluate for obs based on the time modifier
    *
@@ -78,6 +93,97 @@ public class EPTSCalculationService {
     return EptsCalculationUtils.evaluateWithReporting(def, cohort, null, null, context);
   }
 
+  /**
+   * Reads all the obs of a question, like {@link #getObs} with {@link TimeQualifier#ANY}, into a
+   * table kept within the calculation heap budget instead of a result map of obs entities. The
+   * rows are scrolled through with the configured streaming fetch size, ordered by patient and obs
+   * date, for at most {@value #OBS_TABLE_COHORT_CHUNK_SIZE} patients a query. Close the table when
+   * done.
+   *
+   * @param concept the question
+   * @param encounterTypes the encounter types of the obs, or null for obs of any encounter
+   * @param cohort the patients
+   * @param locationList the locations of the obs, all if empty
+   * @param valueCodedList the coded answers of the obs, any if null or empty
+   * @param startDate the earliest obs date, or null
+   * @param context the calculation context, whose now is the latest obs date
+   * @return the obs of each patient, ordered by obs date
+   */
+  public PatientObsTable getObsTable(
+      Concept concept,
+      List<EncounterType> encounterTypes,
+      Collection<Integer> cohort,
+      List<Location> locationList,
+      List<Concept> valueCodedList,
+      Date startDate,
+      PatientCalculationContext context) {
+    final PatientObsTable table = PatientObsTable.withConfiguredBudget();
+    final Integer conceptId = concept.getConceptId();
+    if (cohort.isEmpty()) {
+      return table.finish();
+    }
+    StringBuilder hql = new StringBuilder();
+    hql.append("select obs.person.personId, obs.obsId, obs.obsDatetime, e.encounterId, ");
+    hql.append("e.encounterDatetime, l.locationId, vc.conceptId, obs.valueNumeric, ");
+    hql.append("obs.valueDatetime from ").append(Obs.class.getName()).append(" obs ");
+    hql.append("left join obs.encounter e left join obs.location l left join obs.valueCoded vc ");
+    hql.append("where obs.voided = false and obs.concept = :concept ");
+    hql.append("and obs.obsDatetime <= :onOrBefore");
+    Map<String, Object> parameters = new HashMap<String, Object>();
+    parameters.put("concept", concept);
+    parameters.put("onOrBefore", DateUtil.getEndOfDayIfTimeExcluded(context.getNow()));
+    if (encounterTypes != null) {
+      hql.append(" and e.encounterType in (:encounterTypes)");
+      parameters.put("encounterTypes", encounterTypes);
+    }
+    if (startDate != null) {
+      hql.append(" and obs.obsDatetime >= :onOrAfter");
+      parameters.put("onOrAfter", startDate);
+    }
+    if (valueCodedList != null && !valueCodedList.isEmpty()) {
+      hql.append(" and obs.valueCoded in (:valueCoded)");
+      parameters.put("valueCoded", valueCodedList);
+    }
+    if (!locationList.isEmpty()) {
+      hql.append(" and obs.location in (:locations)");
+      parameters.put("locations", locationList);
+    }
+    hql.append(" and obs.person.personId in (:cohort)");
+    hql.append(" order by obs.person.personId, obs.obsDatetime, obs.obsId");
+
+    // the chunks are in patient order, so the rows of all of them come in the order of the table
+    List<Integer> patientIds = new ArrayList<Integer>(new TreeSet<Integer>(cohort));
+    int fetchSize = StreamingPatientQuery.getConfiguredFetchSize();
+    EptsReportsDao.RowCallback callback =
+        new EptsReportsDao.RowCallback() {
+          @Override
+          public void row(Object[] row) {
+            table.add(
+                (Integer) row[0],
+                (Integer) row[1],
+                conceptId,
+                (Date) row[2],
+                (Integer) row[3],
+                (Date) row[4],
+                (Integer) row[5],
+                (Integer) row[6],
+                (Double) row[7],
+                (Date) row[8]);
+          }
+        };
+    try {
+      for (int from = 0; from < patientIds.size(); from += OBS_TABLE_COHORT_CHUNK_SIZE) {
+        int to = Math.min(from + OBS_TABLE_COHORT_CHUNK_SIZE, patientIds.size());
+        parameters.put("cohort", patientIds.subList(from, to));
+        eptsReportsDao.scroll(hql.toString(), parameters, fetchSize, callback);
+      }
+    } catch (RuntimeException e) {
+      table.close();
+      throw e;
+    }
+    return table.finish();
+  }
+
   /**
    * Evaluates the last patient state for the specified programWorkflowState
    *
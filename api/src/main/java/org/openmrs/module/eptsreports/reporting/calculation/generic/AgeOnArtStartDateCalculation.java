@@ -2,18 +2,19 @@ package org.openmrs.module.eptsreports.reporting.calculation.generic;
 
 import java.util.Collection;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.Map;
-import org.joda.time.Interval;
-import org.joda.time.Years;
-import org.openmrs.api.context.Context;
+import java.util.TimeZone;
 import org.openmrs.calculation.patient.PatientCalculationContext;
-import org.openmrs.calculation.result.CalculationResult;
 import org.openmrs.calculation.result.CalculationResultMap;
 import org.openmrs.module.eptsreports.reporting.calculation.AbstractPatientCalculation;
-import org.openmrs.module.eptsreports.reporting.calculation.BooleanResult;
+import org.openmrs.module.eptsreports.reporting.calculation.PatientResultStore;
+import org.openmrs.module.eptsreports.reporting.evaluation.EvaluationCancellation;
+import org.openmrs.module.eptsreports.reporting.evaluation.EvaluationProgress;
 import org.openmrs.module.eptsreports.reporting.utils.EptsCalculationUtils;
 import org.openmrs.module.reporting.common.Birthdate;
 import org.openmrs.module.reporting.data.person.definition.BirthdateDataDefinition;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
 @Component
@@ -23,20 +24,19 @@ public class AgeOnArtStartDateCalculation extends AbstractPatientCalculation {
 
   private static final String MIN_AGE = "minAge";
 
+  @Autowired private InitialArtStartDateCalculation initialArtStartDateCalculation;
+
   @Override
   public CalculationResultMap evaluate(
       Collection<Integer> cohort,
       Map<String, Object> parameterValues,
       PatientCalculationContext context) {
-    CalculationResultMap map = new CalculationResultMap();
-    CalculationResultMap artStartDates =
-        calculate(
-            Context.getRegisteredComponents(InitialArtStartDateCalculation.class).get(0),
-            cohort,
-            context);
-    CalculationResultMap birthDates =
-        EptsCalculationUtils.evaluateWithReporting(
-            new BirthdateDataDefinition(), cohort, null, null, context);
+    PatientResultStore results = new PatientResultStore(cohort.size());
+    PatientResultStore artStartDates =
+        initialArtStartDateCalculation.evaluateStartDates(
+            cohort, new HashMap<String, Object>(), context);
+    PatientResultStore birthDates =
+        EptsCalculationUtils.evaluateToStore(new BirthdateDataDefinition(), cohort, null, context);
     Integer minAge = (Integer) parameterValues.get(MIN_AGE);
     Integer maxAge = (Integer) parameterValues.get(MAX_AGE);
     Boolean considerPatientThatStartedBeforeWasBorn =
@@ -45,25 +45,24 @@ public class AgeOnArtStartDateCalculation extends AbstractPatientCalculation {
       considerPatientThatStartedBeforeWasBorn = false;
     }
     if (minAge != null && maxAge != null) {
+      TimeZone zone = TimeZone.getDefault();
       for (Integer patientId : cohort) {
-        Date artStartDate =
-            InitialArtStartDateCalculation.getArtStartDate(patientId, artStartDates);
-        Date birthDate = getBirthDate(patientId, birthDates);
-        if (artStartDate != null && birthDate != null) {
-          final boolean datesConsistent = birthDate.compareTo(artStartDate) <= 0;
+        EvaluationCancellation.check();
+        EvaluationProgress.patientProcessed();
+        Date artStartDate = artStartDates.getDate(patientId);
+        Birthdate birthDate = birthDates.getObject(patientId);
+        if (artStartDate != null && birthDate != null && birthDate.getBirthdate() != null) {
+          final boolean datesConsistent = birthDate.getBirthdate().compareTo(artStartDate) <= 0;
           if (datesConsistent) {
             int years =
-                Years.yearsIn(new Interval(birthDate.getTime(), artStartDate.getTime())).getYears();
-            map.put(
-                patientId,
-                new BooleanResult(isMinAgeOk(minAge, years) && isMaxAgeOk(maxAge, years), this));
+                EptsCalculationUtils.ageInYears(birthDate.getBirthdate(), artStartDate, zone);
+            results.putBoolean(patientId, isMinAgeOk(minAge, years) && isMaxAgeOk(maxAge, years));
           } else if (considerPatientThatStartedBeforeWasBorn) {
-            map.put(
-                patientId, new BooleanResult(isMinAgeOk(minAge, 0) && isMaxAgeOk(maxAge, 0), this));
+            results.putBoolean(patientId, isMinAgeOk(minAge, 0) && isMaxAgeOk(maxAge, 0));
           }
         }
       }
-      return map;
+      return results.asBooleanResults(this);
     } else {
       throw new IllegalArgumentException(
           String.format("Parameters %s and %s must be set", MIN_AGE, MAX_AGE));
@@ -77,13 +76,4 @@ public class AgeOnArtStartDateCalculation extends AbstractPatientCalculation {
   private boolean isMinAgeOk(Integer minAge, int years) {
     return years >= minAge.intValue();
   }
-
-  private Date getBirthDate(Integer patientId, CalculationResultMap birthDates) {
-    CalculationResult result = birthDates.get(patientId);
-    if (result != null) {
-      Birthdate birthDate = (Birthdate) result.getValue();
-      return birthDate.getBirthdate();
-    }
-    return null;
-  }
 }
@@ -32,7 +32,10 @@ import org.openmrs.calculation.result.SimpleResult;
 import org.openmrs.module.eptsreports.metadata.CommonMetadata;
 import org.openmrs.module.eptsreports.metadata.HivMetadata;
 import org.openmrs.module.eptsreports.reporting.calculation.AbstractPatientCalculation;
+import org.openmrs.module.eptsreports.reporting.calculation.PatientResultStore;
 import org.openmrs.module.eptsreports.reporting.calculation.common.EPTSCalculationService;
+import org.openmrs.module.eptsreports.reporting.evaluation.EvaluationCancellation;
+import org.openmrs.module.eptsreports.reporting.evaluation.EvaluationProgress;
 import org.openmrs.module.eptsreports.reporting.utils.EptsCalculationUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
@@ -45,6 +48,9 @@ import org.springframework.stereotype.Component;
 @Component
 public class InitialArtStartDateCalculation extends AbstractPatientCalculation {
 
+  /** Prefix of the keys of the start dates in the context cache, followed by the parameters */
+  private static final String START_DATES_CACHE_KEY = "eptsreports.artStartDates:";
+
   @Autowired private HivMetadata hivMetadata;
 
   @Autowired private CommonMetadata commonMetadata;
@@ -62,14 +68,59 @@ public class InitialArtStartDateCalculation extends AbstractPatientCalculation {
       Collection<Integer> cohort,
       Map<String, Object> parameterValues,
       PatientCalculationContext context) {
+    PatientResultStore startDates = evaluateStartDates(cohort, parameterValues, context);
+    EvaluationProgress.patientsProcessed(cohort.size());
+    return startDates.asDateResults(cohort, this);
+  }
 
-    CalculationResultMap map = new CalculationResultMap();
+  /**
+   * Calculates the ART start dates into the date column of a {@link PatientResultStore}, for the
+   * calculations that read them directly. The store is kept in the cache of the calculation
+   * context per parameters, so the calculations evaluated in one context look the dates up once.
+   *
+   * @param cohort the patient ids
+   * @param parameterValues the calculation parameters
+   * @param context the calculation context
+   * @return the store holding the ART start date of each patient who started ART
+   */
+  public PatientResultStore evaluateStartDates(
+      Collection<Integer> cohort,
+      Map<String, Object> parameterValues,
+      PatientCalculationContext context) {
     Location location = (Location) context.getFromCache("location");
-
     boolean considerTransferredIn = getBooleanParameter(parameterValues, "considerTransferredIn");
     boolean considerPharmacyEncounter =
         getBooleanParameter(parameterValues, "considerPharmacyEncounter");
 
+    String cacheKey =
+        START_DATES_CACHE_KEY
+            + (location == null ? null : location.getLocationId())
+            + ":"
+            + (context.getNow() == null ? null : context.getNow().getTime())
+            + ":"
+            + considerTransferredIn
+            + ":"
+            + considerPharmacyEncounter;
+    PatientResultStore store = (PatientResultStore) context.getFromCache(cacheKey);
+    if (store != null && containsAll(store, cohort)) {
+      return store;
+    }
+    store =
+        calculateStartDates(
+            cohort, location, considerTransferredIn, considerPharmacyEncounter, context);
+    context.addToCache(cacheKey, store);
+    return store;
+  }
+
+  private PatientResultStore calculateStartDates(
+      Collection<Integer> cohort,
+      Location location,
+      boolean considerTransferredIn,
+      boolean considerPharmacyEncounter,
+      PatientCalculationContext context) {
+
+    PatientResultStore store = new PatientResultStore(cohort.size());
+
     Program treatmentProgram = hivMetadata.getARTProgram();
     Concept arvPlan = hivMetadata.getARVPlanConcept();
     Concept startDrugsConcept = hivMetadata.getStartDrugsConcept();
@@ -115,6 +166,7 @@ public class InitialArtStartDateCalculation extends AbstractPatientCalculation {
             arvPlan, transferInConcept, location, true, null, null, null, cohort, context);
 
     for (Integer pId : cohort) {
+      EvaluationCancellation.check();
       Date requiredDate = null;
       List<Date> enrollmentDates = new ArrayList<Date>();
       SimpleResult result = (SimpleResult) inProgramMap.get(pId);
@@ -148,9 +200,18 @@ public class InitialArtStartDateCalculation extends AbstractPatientCalculation {
         Collections.sort(enrollmentDates);
         requiredDate = enrollmentDates.get(0);
       }
-      map.put(pId, new SimpleResult(requiredDate, this));
+      store.putDate(pId, requiredDate);
+    }
+    return store;
+  }
+
+  private static boolean containsAll(PatientResultStore store, Collection<Integer> cohort) {
+    for (Integer patientId : cohort) {
+      if (!store.contains(patientId)) {
+        return false;
+      }
     }
-    return map;
+    return true;
   }
 
   private boolean getBooleanParameter(Map<String, Object> parameterValues, String parameterName) {
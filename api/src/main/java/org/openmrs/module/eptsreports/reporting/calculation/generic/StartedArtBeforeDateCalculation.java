@@ -14,11 +14,14 @@ package org.openmrs.module.eptsreports.reporting.calculation.generic;
 import java.util.Collection;
 import java.util.Date;
 import java.util.Map;
-import org.openmrs.api.context.Context;
 import org.openmrs.calculation.patient.PatientCalculationContext;
 import org.openmrs.calculation.result.CalculationResultMap;
 import org.openmrs.module.eptsreports.reporting.calculation.AbstractPatientCalculation;
 import org.openmrs.module.eptsreports.reporting.calculation.BooleanResult;
+import org.openmrs.module.eptsreports.reporting.calculation.PatientResultStore;
+import org.openmrs.module.eptsreports.reporting.evaluation.EvaluationCancellation;
+import org.openmrs.module.eptsreports.reporting.evaluation.EvaluationProgress;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
 /**
@@ -31,26 +34,25 @@ public class StartedArtBeforeDateCalculation extends AbstractPatientCalculation
 
   private static final String ON_OR_BEFORE = "onOrBefore";
 
+  @Autowired private InitialArtStartDateCalculation initialArtStartDateCalculation;
+
   @Override
   public CalculationResultMap evaluate(
       Collection<Integer> cohort,
       Map<String, Object> parameterValues,
       PatientCalculationContext context) {
     CalculationResultMap map = new CalculationResultMap();
-    CalculationResultMap artStartDates =
-        calculate(
-            Context.getRegisteredComponents(InitialArtStartDateCalculation.class).get(0),
-            cohort,
-            parameterValues,
-            context);
+    PatientResultStore artStartDates =
+        initialArtStartDateCalculation.evaluateStartDates(cohort, parameterValues, context);
     Date endDate = (Date) parameterValues.get(ON_OR_BEFORE);
     if (endDate == null) {
       endDate = (Date) context.getFromCache(ON_OR_BEFORE);
     }
     if (endDate != null) {
       for (Integer patientId : cohort) {
-        Date artStartDate =
-            InitialArtStartDateCalculation.getArtStartDate(patientId, artStartDates);
+        EvaluationCancellation.check();
+        EvaluationProgress.patientProcessed();
+        Date artStartDate = artStartDates.getDate(patientId);
         if (artStartDate != null && artStartDate.compareTo(endDate) <= 0) {
           map.put(patientId, new BooleanResult(true, this));
         }
@@ -29,6 +29,8 @@ import org.openmrs.module.eptsreports.metadata.HivMetadata;
 import org.openmrs.module.eptsreports.reporting.calculation.AbstractPatientCalculation;
 import org.openmrs.module.eptsreports.reporting.calculation.BooleanResult;
 import org.openmrs.module.eptsreports.reporting.calculation.common.EPTSCalculationService;
+import org.openmrs.module.eptsreports.reporting.evaluation.EvaluationCancellation;
+import org.openmrs.module.eptsreports.reporting.evaluation.EvaluationProgress;
 import org.openmrs.module.eptsreports.reporting.utils.EptsCalculationUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
@@ -115,6 +117,8 @@ public class CompletedIsoniazidProphylaticTreatmentCalculation extends AbstractP
               context);
 
       for (Integer patientId : cohort) {
+        EvaluationCancellation.check();
+        EvaluationProgress.patientProcessed();
         Obs startProfilaxiaObs =
             EptsCalculationUtils.resultForPatient(startProfilaxiaObservations, patientId);
         Obs endProfilaxiaObs =
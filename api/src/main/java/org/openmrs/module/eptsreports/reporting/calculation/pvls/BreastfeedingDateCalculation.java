@@ -20,7 +20,10 @@ import org.openmrs.calculation.result.ListResult;
 import org.openmrs.calculation.result.SimpleResult;
 import org.openmrs.module.eptsreports.metadata.HivMetadata;
 import org.openmrs.module.eptsreports.reporting.calculation.AbstractPatientCalculation;
+import org.openmrs.module.eptsreports.reporting.calculation.PatientObsTable;
 import org.openmrs.module.eptsreports.reporting.calculation.common.EPTSCalculationService;
+import org.openmrs.module.eptsreports.reporting.evaluation.EvaluationCancellation;
+import org.openmrs.module.eptsreports.reporting.evaluation.EvaluationProgress;
 import org.openmrs.module.eptsreports.reporting.utils.EptsCalculationUtils;
 import org.openmrs.module.reporting.common.TimeQualifier;
 import org.springframework.stereotype.Component;
@@ -84,14 +87,13 @@ public class BreastfeedingDateCalculation extends AbstractPatientCalculation {
             null,
             context);
 
-    CalculationResultMap deliveryDateMap =
-        ePTSCalculationService.getObs(
+    PatientObsTable deliveryDateObs =
+        ePTSCalculationService.getObsTable(
             priorDeliveryDate,
             null,
             femaleCohort,
             Arrays.asList(location),
             null,
-            TimeQualifier.ANY,
             null,
             context);
 
@@ -109,49 +111,53 @@ public class BreastfeedingDateCalculation extends AbstractPatientCalculation {
             femaleCohort,
             context);
 
-    for (Integer pId : femaleCohort) {
-
-      Date resultantDate = null;
-
-      Obs lastVlObs = EptsCalculationUtils.resultForPatient(lastVl, pId);
-
-      if (lastVlObs != null && lastVlObs.getObsDatetime() != null) {
-        Date lastVlDate = lastVlObs.getObsDatetime();
-
-        ListResult patientResult = (ListResult) patientStateMap.get(pId);
-
-        Obs lactattingObs = EptsCalculationUtils.resultForPatient(lactatingMap, pId);
-        Obs criteriaHivObs = EptsCalculationUtils.resultForPatient(criteriaHivStartMap, pId);
-        ListResult deliveryDateResult = (ListResult) deliveryDateMap.get(pId);
-        List<Obs> deliveryDateObsList =
-            EptsCalculationUtils.extractResultValues(deliveryDateResult);
-        List<PatientState> patientStateList =
-            EptsCalculationUtils.extractResultValues(patientResult);
-
-        // get a list of all eligible dates
-        List<Date> allEligibleDates =
-            Arrays.asList(
-                this.isLactating(lastVlDate, lactattingObs),
-                this.hasHIVStartDate(lastVlDate, criteriaHivObs),
-                this.hasDeliveryDate(lastVlDate, deliveryDateObsList),
-                this.isInBreastFeedingInProgram(lastVlDate, patientStateList));
-
-        // have a resultant list of dates
-        List<Date> resultantList = new ArrayList<>();
-        if (allEligibleDates.size() > 0) {
-          for (Date breastfeedingDate : allEligibleDates) {
-            if (breastfeedingDate != null) {
-              resultantList.add(breastfeedingDate);
+    try {
+      for (Integer pId : femaleCohort) {
+        EvaluationCancellation.check();
+        EvaluationProgress.patientProcessed();
+
+        Date resultantDate = null;
+
+        Obs lastVlObs = EptsCalculationUtils.resultForPatient(lastVl, pId);
+
+        if (lastVlObs != null && lastVlObs.getObsDatetime() != null) {
+          Date lastVlDate = lastVlObs.getObsDatetime();
+
+          ListResult patientResult = (ListResult) patientStateMap.get(pId);
+
+          Obs lactattingObs = EptsCalculationUtils.resultForPatient(lactatingMap, pId);
+          Obs criteriaHivObs = EptsCalculationUtils.resultForPatient(criteriaHivStartMap, pId);
+          List<Obs> deliveryDateObsList = deliveryDateObs.getObs(pId);
+          List<PatientState> patientStateList =
+              EptsCalculationUtils.extractResultValues(patientResult);
+
+          // get a list of all eligible dates
+          List<Date> allEligibleDates =
+              Arrays.asList(
+                  this.isLactating(lastVlDate, lactattingObs),
+                  this.hasHIVStartDate(lastVlDate, criteriaHivObs),
+                  this.hasDeliveryDate(lastVlDate, deliveryDateObsList),
+                  this.isInBreastFeedingInProgram(lastVlDate, patientStateList));
+
+          // have a resultant list of dates
+          List<Date> resultantList = new ArrayList<>();
+          if (allEligibleDates.size() > 0) {
+            for (Date breastfeedingDate : allEligibleDates) {
+              if (breastfeedingDate != null) {
+                resultantList.add(breastfeedingDate);
+              }
             }
           }
+          if (resultantList.size() > 0) {
+            Collections.sort(resultantList);
+            // then pick the most recent entry, which is the last one
+            resultantDate = resultantList.get(resultantList.size() - 1);
+          }
         }
-        if (resultantList.size() > 0) {
-          Collections.sort(resultantList);
-          // then pick the most recent entry, which is the last one
-          resultantDate = resultantList.get(resultantList.size() - 1);
-        }
+        resultMap.put(pId, new SimpleResult(resultantDate, this));
       }
-      resultMap.put(pId, new SimpleResult(resultantDate, this));
+    } finally {
+      deliveryDateObs.close();
     }
     return resultMap;
   }
@@ -9,6 +9,8 @@ import org.openmrs.calculation.patient.PatientCalculationContext;
 import org.openmrs.calculation.result.CalculationResultMap;
 import org.openmrs.module.eptsreports.reporting.calculation.AbstractPatientCalculation;
 import org.openmrs.module.eptsreports.reporting.calculation.BooleanResult;
+import org.openmrs.module.eptsreports.reporting.evaluation.EvaluationCancellation;
+import org.openmrs.module.eptsreports.reporting.evaluation.EvaluationProgress;
 import org.openmrs.module.eptsreports.reporting.utils.EptsCalculationUtils;
 import org.openmrs.module.eptsreports.reporting.utils.EptsReportConstants.PregnantOrBreastfeedingWomen;
 import org.springframework.stereotype.Component;
@@ -41,6 +43,8 @@ public class BreastfeedingPregnantCalculation extends AbstractPatientCalculation
     CalculationResultMap breastfeedingDateMap =
         calculate(breastfeedingDateCalculation, femaleCohort, context);
     for (Integer ptId : femaleCohort) {
+      EvaluationCancellation.check();
+      EvaluationProgress.patientProcessed();
       boolean isCandidate = false;
       Date pregnancyDate = (Date) pregnantDateMap.get(ptId).getValue();
       Date breastfeedingDate = (Date) breastfeedingDateMap.get(ptId).getValue();
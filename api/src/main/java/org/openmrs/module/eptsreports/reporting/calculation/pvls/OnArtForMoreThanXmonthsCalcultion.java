@@ -28,6 +28,8 @@ import org.openmrs.module.eptsreports.reporting.calculation.AbstractPatientCalcu
 import org.openmrs.module.eptsreports.reporting.calculation.BooleanResult;
 import org.openmrs.module.eptsreports.reporting.calculation.common.EPTSCalculationService;
 import org.openmrs.module.eptsreports.reporting.calculation.generic.InitialArtStartDateCalculation;
+import org.openmrs.module.eptsreports.reporting.evaluation.EvaluationCancellation;
+import org.openmrs.module.eptsreports.reporting.evaluation.EvaluationProgress;
 import org.openmrs.module.eptsreports.reporting.utils.EptsCalculationUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
@@ -70,6 +72,8 @@ public class OnArtForMoreThanXmonthsCalcultion extends AbstractPatientCalculatio
             context);
 
     for (Integer ptId : cohort) {
+      EvaluationCancellation.check();
+      EvaluationProgress.patientProcessed();
       boolean isOnArtForMoreThan3Months = false;
       SimpleResult artStartDateResult = (SimpleResult) arvsInitiationDateMap.get(ptId);
       Obs lastVlObs = EptsCalculationUtils.resultForPatient(lastVl, ptId);
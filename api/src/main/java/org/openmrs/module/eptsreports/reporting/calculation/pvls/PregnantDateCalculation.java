@@ -21,9 +21,11 @@ import org.openmrs.calculation.result.ListResult;
 import org.openmrs.calculation.result.SimpleResult;
 import org.openmrs.module.eptsreports.metadata.HivMetadata;
 import org.openmrs.module.eptsreports.reporting.calculation.AbstractPatientCalculation;
+import org.openmrs.module.eptsreports.reporting.calculation.PatientObsTable;
 import org.openmrs.module.eptsreports.reporting.calculation.common.EPTSCalculationService;
+import org.openmrs.module.eptsreports.reporting.evaluation.EvaluationCancellation;
+import org.openmrs.module.eptsreports.reporting.evaluation.EvaluationProgress;
 import org.openmrs.module.eptsreports.reporting.utils.EptsCalculationUtils;
-import org.openmrs.module.reporting.common.TimeQualifier;
 import org.springframework.stereotype.Component;
 
 /**
@@ -64,36 +66,33 @@ public class PregnantDateCalculation extends AbstractPatientCalculation {
     // get female patients only
     Set<Integer> femaleCohort = EptsCalculationUtils.female(cohort, context);
 
-    CalculationResultMap pregnantMap =
-        ePTSCalculationService.getObs(
+    PatientObsTable pregnantObs =
+        ePTSCalculationService.getObsTable(
             pregnant,
             null,
             femaleCohort,
             Arrays.asList(location),
             Arrays.asList(gestation),
-            TimeQualifier.ANY,
             null,
             context);
 
-    CalculationResultMap markedPregnantByWeeks =
-        ePTSCalculationService.getObs(
+    PatientObsTable pregnantByWeeksObs =
+        ePTSCalculationService.getObsTable(
             pregnantBasedOnWeeks,
             null,
             femaleCohort,
             Arrays.asList(location),
             null,
-            TimeQualifier.ANY,
             null,
             context);
 
-    CalculationResultMap markedPregnantDueDate =
-        ePTSCalculationService.getObs(
+    PatientObsTable pregnantDueDateObs =
+        ePTSCalculationService.getObsTable(
             pregnancyDueDate,
             null,
             femaleCohort,
             Arrays.asList(location),
             null,
-            TimeQualifier.ANY,
             null,
             context);
 
@@ -110,49 +109,52 @@ public class PregnantDateCalculation extends AbstractPatientCalculation {
             femaleCohort,
             context);
 
-    for (Integer pId : femaleCohort) {
-      Obs lastVlObs = EptsCalculationUtils.resultForPatient(lastVl, pId);
-      Date requiredDate = null;
-
-      if (lastVlObs != null && lastVlObs.getObsDatetime() != null) {
-        Date lastVlDate = lastVlObs.getObsDatetime();
-
-        ListResult pregnantResult = (ListResult) pregnantMap.get(pId);
-        ListResult pregnantByWeeksResullt = (ListResult) markedPregnantByWeeks.get(pId);
-        ListResult pregnantDueDateResult = (ListResult) markedPregnantDueDate.get(pId);
-        ListResult pregnantsInProgramResults = (ListResult) markedPregnantInProgram.get(pId);
-
-        List<Obs> pregnantObsList = EptsCalculationUtils.extractResultValues(pregnantResult);
-        List<Obs> pregnantByWeeksObsList =
-            EptsCalculationUtils.extractResultValues(pregnantByWeeksResullt);
-        List<Obs> pregnantDueDateObsList =
-            EptsCalculationUtils.extractResultValues(pregnantDueDateResult);
-        List<PatientProgram> patientProgams =
-            EptsCalculationUtils.extractResultValues(pregnantsInProgramResults);
-
-        // add a list to contains all the dates that can be sorted and pick the most recent one
-        List<Date> allPregnancyDates =
-            Arrays.asList(
-                isPregnantDate(lastVlDate, pregnantObsList),
-                isPregnantByWeeks(lastVlDate, pregnantByWeeksObsList),
-                isPregnantDueDate(lastVlDate, pregnantDueDateObsList),
-                isPregnantInProgram(lastVlDate, patientProgams, location));
-        // have a resultant list of dates
-        List<Date> resultantList = new ArrayList<>();
-        if (allPregnancyDates.size() > 0) {
-          for (Date eventDate : allPregnancyDates) {
-            if (eventDate != null) {
-              resultantList.add(eventDate);
+    try {
+      for (Integer pId : femaleCohort) {
+        EvaluationCancellation.check();
+        EvaluationProgress.patientProcessed();
+        Obs lastVlObs = EptsCalculationUtils.resultForPatient(lastVl, pId);
+        Date requiredDate = null;
+
+        if (lastVlObs != null && lastVlObs.getObsDatetime() != null) {
+          Date lastVlDate = lastVlObs.getObsDatetime();
+
+          ListResult pregnantsInProgramResults = (ListResult) markedPregnantInProgram.get(pId);
+
+          List<Obs> pregnantObsList = pregnantObs.getObs(pId);
+          List<Obs> pregnantByWeeksObsList = pregnantByWeeksObs.getObs(pId);
+          List<Obs> pregnantDueDateObsList = pregnantDueDateObs.getObs(pId);
+          List<PatientProgram> patientProgams =
+              EptsCalculationUtils.extractResultValues(pregnantsInProgramResults);
+
+          // add a list to contains all the dates that can be sorted and pick the most recent one
+          List<Date> allPregnancyDates =
+              Arrays.asList(
+                  isPregnantDate(lastVlDate, pregnantObsList),
+                  isPregnantByWeeks(lastVlDate, pregnantByWeeksObsList),
+                  isPregnantDueDate(lastVlDate, pregnantDueDateObsList),
+                  isPregnantInProgram(lastVlDate, patientProgams, location));
+          // have a resultant list of dates
+          List<Date> resultantList = new ArrayList<>();
+          if (allPregnancyDates.size() > 0) {
+            for (Date eventDate : allPregnancyDates) {
+              if (eventDate != null) {
+                resultantList.add(eventDate);
+              }
             }
           }
+          if (resultantList.size() > 0) {
+            Collections.sort(resultantList);
+            // then pick the most recent entry, which is the last one
+            requiredDate = resultantList.get(resultantList.size() - 1);
+          }
         }
-        if (resultantList.size() > 0) {
-          Collections.sort(resultantList);
-          // then pick the most recent entry, which is the last one
-          requiredDate = resultantList.get(resultantList.size() - 1);
-        }
+        resultMap.put(pId, new SimpleResult(requiredDate, this));
       }
-      resultMap.put(pId, new SimpleResult(requiredDate, this));
+    } finally {
+      pregnantObs.close();
+      pregnantByWeeksObs.close();
+      pregnantDueDateObs.close();
     }
     return resultMap;
   }
@@ -25,13 +25,15 @@ import org.openmrs.Obs;
 import org.openmrs.api.context.Context;
 import org.openmrs.calculation.patient.PatientCalculationContext;
 import org.openmrs.calculation.result.CalculationResultMap;
-import org.openmrs.calculation.result.ListResult;
 import org.openmrs.calculation.result.SimpleResult;
 import org.openmrs.module.eptsreports.metadata.HivMetadata;
 import org.openmrs.module.eptsreports.reporting.calculation.AbstractPatientCalculation;
 import org.openmrs.module.eptsreports.reporting.calculation.BooleanResult;
+import org.openmrs.module.eptsreports.reporting.calculation.PatientObsTable;
 import org.openmrs.module.eptsreports.reporting.calculation.common.EPTSCalculationService;
 import org.openmrs.module.eptsreports.reporting.calculation.generic.InitialArtStartDateCalculation;
+import org.openmrs.module.eptsreports.reporting.evaluation.EvaluationCancellation;
+import org.openmrs.module.eptsreports.reporting.evaluation.EvaluationProgress;
 import org.openmrs.module.eptsreports.reporting.utils.EptsCalculationUtils;
 import org.openmrs.module.eptsreports.reporting.utils.EptsReportConstants.PatientsOnRoutineEnum;
 import org.openmrs.module.reporting.common.TimeQualifier;
@@ -82,17 +84,6 @@ public class RoutineCalculation extends AbstractPatientCalculation {
     EncounterType farmacia = hivMetadata.getFarmaciaEncounterType();
 
     // lookups
-    CalculationResultMap patientHavingVL =
-        ePTSCalculationService.getObs(
-            viralLoadConcept,
-            null,
-            cohort,
-            Arrays.asList(location),
-            null,
-            TimeQualifier.ANY,
-            allVlLowerDateLimit,
-            context);
-
     CalculationResultMap changingRegimenLines =
         ePTSCalculationService.getObs(
             regimeConcept,
@@ -122,65 +113,79 @@ public class RoutineCalculation extends AbstractPatientCalculation {
         EptsCalculationUtils.patientsThatPass(
             calculate(onArtForMoreThanXmonthsCalcultion, cohort, context));
 
-    for (Integer pId : cohort) {
-      boolean isOnRoutine = false;
-      Date artInitiationDate = null;
-      SimpleResult artStartDateResult = (SimpleResult) arvsInitiationDateMap.get(pId);
-      Obs lastVlObs = EptsCalculationUtils.resultForPatient(lastVl, pId);
-
-      if (artStartDateResult != null) {
-        artInitiationDate = (Date) artStartDateResult.getValue();
-      }
-      // check that this patient should be on ART for more than six months
-      if (artInitiationDate != null
-          && lastVlObs != null
-          && lastVlObs.getObsDatetime() != null
-          && criteria != null
-          && onArtForMoreThan3Months.contains(pId)) {
-
-        // we do not consider if the patient's last VL obs is not within
-        // window
-        if (lastVlObs.getObsDatetime().after(latestVlLowerDateLimit)
-            && lastVlObs.getObsDatetime().before(context.getNow())) {
-
-          // get all the VL results for each patient in the last 12 months
-          ListResult vlObsResult = (ListResult) patientHavingVL.get(pId);
-          List<Obs> vLoadList = EptsCalculationUtils.extractResultValues(vlObsResult);
-          List<Obs> viralLoadForPatientTakenWithin12Months =
-              getViralLoadForPatientTakenWithin12Months(
-                  context.getNow(), latestVlLowerDateLimit, vLoadList);
-
-          // find out for criteria 1 a
-          // the patients should be 6 to 9 months after ART initiation
-          // get the obs date for this VL and compare that with the
-          // provided dates
-          if (isOnRoutineCriteria1(
-              criteria, artInitiationDate, lastVlObs.getObsDatetime(), vLoadList)) {
-            isOnRoutine = true;
-          }
-
-          // find out criteria 2
-          if (isOnRoutineCriteria2(vLoadList, lastVlObs.getObsDatetime())) {
-            isOnRoutine = true;
-          }
-
-          // find out criteria 3
-          if (!isOnRoutine && !viralLoadForPatientTakenWithin12Months.isEmpty()) {
-            // get when a patient switch between lines from first to
-            // second
-            // Date when started on second line will be considered
-            // the changing date
-            isOnRoutine =
-                isOnRoutineCriteria3(
-                    changingRegimenLines,
-                    pId,
-                    vLoadList,
-                    latestVlLowerDateLimit,
-                    lastVlObs.getObsDatetime());
+    PatientObsTable patientHavingVL =
+        ePTSCalculationService.getObsTable(
+            viralLoadConcept,
+            null,
+            cohort,
+            Arrays.asList(location),
+            null,
+            allVlLowerDateLimit,
+            context);
+    try {
+      for (Integer pId : cohort) {
+        EvaluationCancellation.check();
+        EvaluationProgress.patientProcessed();
+        boolean isOnRoutine = false;
+        Date artInitiationDate = null;
+        SimpleResult artStartDateResult = (SimpleResult) arvsInitiationDateMap.get(pId);
+        Obs lastVlObs = EptsCalculationUtils.resultForPatient(lastVl, pId);
+
+        if (artStartDateResult != null) {
+          artInitiationDate = (Date) artStartDateResult.getValue();
+        }
+        // check that this patient should be on ART for more than six months
+        if (artInitiationDate != null
+            && lastVlObs != null
+            && lastVlObs.getObsDatetime() != null
+            && criteria != null
+            && onArtForMoreThan3Months.contains(pId)) {
+
+          // we do not consider if the patient's last VL obs is not within
+          // window
+          if (lastVlObs.getObsDatetime().after(latestVlLowerDateLimit)
+              && lastVlObs.getObsDatetime().before(context.getNow())) {
+
+            // get all the VL results for each patient in the last 12 months
+            List<Obs> vLoadList = patientHavingVL.getObs(pId);
+            List<Obs> viralLoadForPatientTakenWithin12Months =
+                getViralLoadForPatientTakenWithin12Months(
+                    context.getNow(), latestVlLowerDateLimit, vLoadList);
+
+            // find out for criteria 1 a
+            // the patients should be 6 to 9 months after ART initiation
+            // get the obs date for this VL and compare that with the
+            // provided dates
+            if (isOnRoutineCriteria1(
+                criteria, artInitiationDate, lastVlObs.getObsDatetime(), vLoadList)) {
+              isOnRoutine = true;
+            }
+
+            // find out criteria 2
+            if (isOnRoutineCriteria2(vLoadList, lastVlObs.getObsDatetime())) {
+              isOnRoutine = true;
+            }
+
+            // find out criteria 3
+            if (!isOnRoutine && !viralLoadForPatientTakenWithin12Months.isEmpty()) {
+              // get when a patient switch between lines from first to
+              // second
+              // Date when started on second line will be considered
+              // the changing date
+              isOnRoutine =
+                  isOnRoutineCriteria3(
+                      changingRegimenLines,
+                      pId,
+                      vLoadList,
+                      latestVlLowerDateLimit,
+                      lastVlObs.getObsDatetime());
+            }
           }
         }
+        map.put(pId, new BooleanResult(isOnRoutine, this));
       }
-      map.put(pId, new BooleanResult(isOnRoutine, this));
+    } finally {
+      patientHavingVL.close();
     }
 
     return map;
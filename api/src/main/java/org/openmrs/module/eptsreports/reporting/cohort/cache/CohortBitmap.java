@@ -0,0 +1,120 @@
+/*
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.module.eptsreports.reporting.cohort.cache;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Compact serialized form of a set of patient ids. Dense cohorts are written as a bitmap of the
+ * ids, sparse ones as the sorted ids, each encoded as a variable length gap from the previous
+ * one, whichever is smaller.
+ */
+public class CohortBitmap {
+
+  private static final byte BITMAP = 'B';
+
+  private static final byte GAPS = 'G';
+
+  private CohortBitmap() {}
+
+  /**
+   * @param patientIds the patient ids, which must not be negative
+   * @return the serialized ids
+   */
+  public static byte[] encode(Set<Integer> patientIds) {
+    List<Integer> sorted = new ArrayList<Integer>(patientIds);
+    Collections.sort(sorted);
+
+    ByteArrayOutputStream gaps = new ByteArrayOutputStream();
+    gaps.write(GAPS);
+    int previous = 0;
+    for (Integer patientId : sorted) {
+      if (patientId < 0) {
+        throw new IllegalArgumentException("Negative patient id " + patientId);
+      }
+      writeVarInt(gaps, patientId - previous);
+      previous = patientId;
+    }
+
+    int bitmapSize = sorted.isEmpty() ? 1 : 1 + sorted.get(sorted.size() - 1) / 8 + 1;
+    if (gaps.size() <= bitmapSize) {
+      return gaps.toByteArray();
+    }
+    BitSet bits = new BitSet();
+    for (Integer patientId : sorted) {
+      bits.set(patientId);
+    }
+    byte[] bitmap = bits.toByteArray();
+    byte[] ret = new byte[bitmap.length + 1];
+    ret[0] = BITMAP;
+    System.arraycopy(bitmap, 0, ret, 1, bitmap.length);
+    return ret;
+  }
+
+  /**
+   * @param bytes ids serialized by {@link #encode(Set)}
+   * @return the patient ids
+   * @throws IllegalArgumentException if the bytes are not serialized ids
+   */
+  public static Set<Integer> decode(byte[] bytes) {
+    if (bytes.length == 0) {
+      throw new IllegalArgumentException("No serialized cohort");
+    }
+    Set<Integer> ret = new HashSet<Integer>();
+    if (bytes[0] == BITMAP) {
+      byte[] bitmap = new byte[bytes.length - 1];
+      System.arraycopy(bytes, 1, bitmap, 0, bitmap.length);
+      BitSet bits = BitSet.valueOf(bitmap);
+      for (int i = bits.nextSetBit(0); i >= 0; i = bits.nextSetBit(i + 1)) {
+        ret.add(i);
+      }
+    } else if (bytes[0] == GAPS) {
+      int patientId = 0;
+      int i = 1;
+      while (i < bytes.length) {
+        int gap = 0;
+        int shift = 0;
+        byte b;
+        do {
+          if (i == bytes.length || shift > 28) {
+            throw new IllegalArgumentException("Truncated serialized cohort");
+          }
+          b = bytes[i++];
+          gap |= (b & 0x7F) << shift;
+          shift += 7;
+        } while ((b & 0x80) != 0);
+        patientId += gap;
+        ret.add(patientId);
+      }
+    } else {
+      throw new IllegalArgumentException("Unknown serialized cohort format " + bytes[0]);
+    }
+    return ret;
+  }
+
+  private static void writeVarInt(ByteArrayOutputStream out, int value) {
+    while ((value & ~0x7F) != 0) {
+      out.write((value & 0x7F) | 0x80);
+      value >>>= 7;
+    }
+    out.write(value);
+  }
+}
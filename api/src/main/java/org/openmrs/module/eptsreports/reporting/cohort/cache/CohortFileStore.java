@@ -0,0 +1,139 @@
+/*
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.module.eptsreports.reporting.cohort.cache;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Files of a directory keyed by name, with a cap on their total size. A file is touched when read,
+ * and the least recently used files are deleted when a write goes over the cap.
+ */
+public class CohortFileStore {
+
+  private static final String SUFFIX = ".cohort";
+
+  private final File directory;
+
+  private final long maxBytes;
+
+  /**
+   * @param directory the directory of the files
+   * @param maxBytes the most bytes the files may take
+   */
+  public CohortFileStore(File directory, long maxBytes) {
+    this.directory = directory;
+    this.maxBytes = maxBytes;
+  }
+
+  public long getMaxBytes() {
+    return maxBytes;
+  }
+
+  /**
+   * @param key the file name, without suffix
+   * @return the contents of the file, or null if there is none
+   * @throws IOException if the file can not be read
+   */
+  public synchronized byte[] get(String key) throws IOException {
+    File file = getFile(key);
+    if (!file.isFile()) {
+      return null;
+    }
+    DataInputStream in = new DataInputStream(new FileInputStream(file));
+    try {
+      byte[] ret = new byte[(int) file.length()];
+      in.readFully(ret);
+      file.setLastModified(System.currentTimeMillis());
+      return ret;
+    } finally {
+      in.close();
+    }
+  }
+
+  /**
+   * Writes a file, through a temporary file so readers never see a partial one, then deletes the
+   * least recently used files while the total size is over the cap
+   *
+   * @param key the file name, without suffix
+   * @param bytes the contents
+   * @throws IOException if the file can not be written
+   */
+  public synchronized void put(String key, byte[] bytes) throws IOException {
+    if (bytes.length > maxBytes) {
+      return;
+    }
+    if (!directory.isDirectory() && !directory.mkdirs()) {
+      throw new IOException("Can not create " + directory);
+    }
+    File tmp = new File(directory, key + ".tmp");
+    OutputStream out = new FileOutputStream(tmp);
+    try {
+      out.write(bytes);
+    } finally {
+      out.close();
+    }
+    File file = getFile(key);
+    if (file.exists() && !file.delete() || !tmp.renameTo(file)) {
+      tmp.delete();
+      throw new IOException("Can not write " + file);
+    }
+    evict();
+  }
+
+  private void evict() {
+    File[] files = directory.listFiles();
+    if (files == null) {
+      return;
+    }
+    long total = 0;
+    for (File file : files) {
+      total += file.length();
+    }
+    if (total <= maxBytes) {
+      return;
+    }
+    Arrays.sort(
+        files,
+        new Comparator<File>() {
+
+          @Override
+          public int compare(File a, File b) {
+            return Long.compare(a.lastModified(), b.lastModified());
+          }
+        });
+    for (File file : files) {
+      if (total <= maxBytes) {
+        break;
+      }
+      if (file.getName().endsWith(SUFFIX)) {
+        long length = file.length();
+        if (file.delete()) {
+          total -= length;
+        }
+      }
+    }
+  }
+
+  private File getFile(String key) {
+    return new File(directory, key + SUFFIX);
+  }
+}
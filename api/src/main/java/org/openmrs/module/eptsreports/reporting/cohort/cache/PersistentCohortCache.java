@@ -0,0 +1,161 @@
+/*
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.module.eptsreports.reporting.cohort.cache;
+
+import java.io.File;
+import java.io.IOException;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.openmrs.Cohort;
+import org.openmrs.module.eptsreports.api.dao.EptsReportsDao;
+import org.openmrs.module.eptsreports.reporting.cohort.definition.CalculationCohortDefinition;
+import org.openmrs.module.eptsreports.reporting.utils.DefinitionFingerprint;
+import org.openmrs.module.eptsreports.reporting.utils.EptsReportConstants;
+import org.openmrs.module.eptsreports.reporting.utils.EptsReportUtils;
+import org.openmrs.module.reporting.cohort.EvaluatedCohort;
+import org.openmrs.module.reporting.cohort.definition.CohortDefinition;
+import org.openmrs.module.reporting.evaluation.EvaluationContext;
+import org.openmrs.util.OpenmrsUtil;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * Evaluated cohorts kept on disk across report runs, in the application data directory. A cohort
+ * is keyed by the {@link DefinitionFingerprint} of its definition, which leaves out the uuids that
+ * change every time the reports are set up, the parameter values and base cohort of the
+ * evaluation, and the data watermark, so a cohort is not reused once the data it was evaluated
+ * from has changed. Switched off unless {@link
+ * EptsReportConstants#GLOBAL_PROPERTY_COHORT_CACHE_MAX_SIZE_MB} is set. Consulted for every cohort
+ * definition evaluated by the EPTS reports, by the {@link
+ * org.openmrs.module.eptsreports.reporting.evaluation.CohortCacheAdvice}.
+ */
+@Component
+public class PersistentCohortCache {
+
+  private static final Log log = LogFactory.getLog(PersistentCohortCache.class);
+
+  private static final String DIRECTORY = "eptsreports/cohorts";
+
+  private static final String WATERMARK_CACHE_KEY = "eptsreports.dataWatermark";
+
+  private static final long BYTES_PER_MB = 1024L * 1024L;
+
+  @Autowired private EptsReportsDao eptsReportsDao;
+
+  private CohortFileStore store;
+
+  /**
+   * Tells whether a cohort may be reused by later runs. Calculations done on the current date can
+   * not be.
+   *
+   * @param definition the cohort definition
+   * @param context the evaluation context
+   * @return true if the cohort may be cached
+   */
+  public boolean isCacheable(CohortDefinition definition, EvaluationContext context) {
+    if (definition instanceof CalculationCohortDefinition) {
+      return ((CalculationCohortDefinition) definition).getOnDate() != null
+          || context.getParameterValue("date") != null
+          || context.getParameterValue("endDate") != null;
+    }
+    return true;
+  }
+
+  /**
+   * Gets the cohort evaluated earlier for the same definition, parameters and data
+   *
+   * @param definition the cohort definition, with its parameter values
+   * @param context the evaluation context
+   * @return the cohort, or null when there is none or the cache is switched off
+   */
+  public EvaluatedCohort get(CohortDefinition definition, EvaluationContext context) {
+    CohortFileStore store = getStore();
+    if (store == null) {
+      return null;
+    }
+    String key = getKey(definition, context);
+    try {
+      byte[] bytes = store.get(key);
+      if (bytes == null) {
+        return null;
+      }
+      Cohort cohort = new Cohort(CohortBitmap.decode(bytes));
+      log.info(
+          "Cohort cache hit for " + definition.getName() + ": " + cohort.size() + " patients");
+      return new EvaluatedCohort(cohort, definition, context);
+    } catch (IOException e) {
+      log.warn("Could not read cached cohort " + key, e);
+    } catch (IllegalArgumentException e) {
+      log.warn("Could not read cached cohort " + key, e);
+    }
+    return null;
+  }
+
+  /**
+   * Keeps an evaluated cohort for later runs
+   *
+   * @param definition the cohort definition, with its parameter values
+   * @param cohort the evaluated cohort
+   * @param context the evaluation context it was evaluated in
+   * @return the cohort
+   */
+  public EvaluatedCohort put(
+      CohortDefinition definition, EvaluatedCohort cohort, EvaluationContext context) {
+    CohortFileStore store = getStore();
+    if (store != null) {
+      String key = getKey(definition, context);
+      try {
+        store.put(key, CohortBitmap.encode(cohort.getMemberIds()));
+      } catch (IOException e) {
+        log.warn("Could not cache cohort " + key, e);
+      }
+    }
+    return cohort;
+  }
+
+  private synchronized CohortFileStore getStore() {
+    long maxBytes =
+        EptsReportUtils.getIntegerGlobalProperty(
+                EptsReportConstants.GLOBAL_PROPERTY_COHORT_CACHE_MAX_SIZE_MB, 0)
+            * BYTES_PER_MB;
+    if (maxBytes <= 0) {
+      return null;
+    }
+    if (store == null || store.getMaxBytes() != maxBytes) {
+      File directory = OpenmrsUtil.getDirectoryInApplicationDataDirectory(DIRECTORY);
+      store = new CohortFileStore(directory, maxBytes);
+    }
+    return store;
+  }
+
+  private String getKey(CohortDefinition definition, EvaluationContext context) {
+    Cohort baseCohort = context.getBaseCohort();
+    return DefinitionFingerprint.of(
+        definition,
+        context.getParameterValues(),
+        baseCohort == null ? null : DefinitionFingerprint.ofIds(baseCohort.getMemberIds()),
+        getDataWatermark(context));
+  }
+
+  /** The watermark is read once per report evaluation, as the cache is shared by the report */
+  private String getDataWatermark(EvaluationContext context) {
+    String watermark = (String) context.getFromCache(WATERMARK_CACHE_KEY);
+    if (watermark == null) {
+      watermark = eptsReportsDao.getDataWatermark();
+      context.addToCache(WATERMARK_CACHE_KEY, watermark);
+    }
+    return watermark;
+  }
+}
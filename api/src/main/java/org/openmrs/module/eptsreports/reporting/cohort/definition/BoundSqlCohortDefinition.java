@@ -0,0 +1,52 @@
+/*
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.module.eptsreports.reporting.cohort.definition;
+
+import java.util.HashMap;
+import java.util.Map;
+import org.openmrs.module.eptsreports.reporting.library.queries.BoundQuery;
+import org.openmrs.module.reporting.cohort.definition.SqlCohortDefinition;
+import org.openmrs.module.reporting.definition.configuration.ConfigurationProperty;
+
+/**
+ * SQL cohort whose metadata ids are bind parameters of the query, evaluated with the parameter
+ * values of the context together with the bound values
+ */
+public class BoundSqlCohortDefinition extends SqlCohortDefinition {
+
+  @ConfigurationProperty(group = "query")
+  private Map<String, Object> boundValues = new HashMap<String, Object>();
+
+  public BoundSqlCohortDefinition() {}
+
+  /** @param query the query and its bound values */
+  public BoundSqlCohortDefinition(BoundQuery query) {
+    setBoundQuery(query);
+  }
+
+  /** @param query the query and its bound values */
+  public void setBoundQuery(BoundQuery query) {
+    setQuery(query.getSql());
+    boundValues = new HashMap<String, Object>(query.getValues());
+  }
+
+  public Map<String, Object> getBoundValues() {
+    return boundValues;
+  }
+
+  public void setBoundValues(Map<String, Object> boundValues) {
+    this.boundValues = boundValues;
+  }
+}
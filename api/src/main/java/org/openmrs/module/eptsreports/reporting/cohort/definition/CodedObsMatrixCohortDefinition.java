@@ -0,0 +1,117 @@
+/*
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.module.eptsreports.reporting.cohort.definition;
+
+import java.util.Date;
+import java.util.List;
+import org.openmrs.Concept;
+import org.openmrs.EncounterType;
+import org.openmrs.Location;
+import org.openmrs.module.reporting.cohort.definition.BaseCohortDefinition;
+import org.openmrs.module.reporting.definition.configuration.ConfigurationProperty;
+import org.openmrs.module.reporting.definition.configuration.ConfigurationPropertyCachingStrategy;
+import org.openmrs.module.reporting.evaluation.caching.Caching;
+
+/**
+ * Patients with any coded obs for a question, answered with one of the values, like {@link
+ * org.openmrs.module.reporting.cohort.definition.CodedObsCohortDefinition} with {@code
+ * TimeModifier.ANY} and {@code SetComparator.IN}.
+ *
+ * <p>The obs of all the questions of the matrix are scanned together, once per period, locations
+ * and encounter types during a report evaluation. Definitions that share the matrix questions are
+ * then answered from that scan.
+ */
+@Caching(strategy = ConfigurationPropertyCachingStrategy.class)
+public class CodedObsMatrixCohortDefinition extends BaseCohortDefinition {
+
+  @ConfigurationProperty(required = true, group = "matrix")
+  private List<Concept> matrixQuestions;
+
+  @ConfigurationProperty(group = "matrix")
+  private List<EncounterType> encounterTypeList;
+
+  @ConfigurationProperty(required = true)
+  private Concept question;
+
+  @ConfigurationProperty private List<Concept> valueList;
+
+  @ConfigurationProperty(group = "when")
+  private Date onOrAfter;
+
+  @ConfigurationProperty(group = "when")
+  private Date onOrBefore;
+
+  @ConfigurationProperty(group = "where")
+  private List<Location> locationList;
+
+  /** @return the questions scanned together, which include the question */
+  public List<Concept> getMatrixQuestions() {
+    return matrixQuestions;
+  }
+
+  /** @param matrixQuestions the questions scanned together */
+  public void setMatrixQuestions(List<Concept> matrixQuestions) {
+    this.matrixQuestions = matrixQuestions;
+  }
+
+  public List<EncounterType> getEncounterTypeList() {
+    return encounterTypeList;
+  }
+
+  public void setEncounterTypeList(List<EncounterType> encounterTypeList) {
+    this.encounterTypeList = encounterTypeList;
+  }
+
+  public Concept getQuestion() {
+    return question;
+  }
+
+  public void setQuestion(Concept question) {
+    this.question = question;
+  }
+
+  /** @return the answers to include, or null for any answer */
+  public List<Concept> getValueList() {
+    return valueList;
+  }
+
+  public void setValueList(List<Concept> valueList) {
+    this.valueList = valueList;
+  }
+
+  public Date getOnOrAfter() {
+    return onOrAfter;
+  }
+
+  public void setOnOrAfter(Date onOrAfter) {
+    this.onOrAfter = onOrAfter;
+  }
+
+  public Date getOnOrBefore() {
+    return onOrBefore;
+  }
+
+  public void setOnOrBefore(Date onOrBefore) {
+    this.onOrBefore = onOrBefore;
+  }
+
+  public List<Location> getLocationList() {
+    return locationList;
+  }
+
+  public void setLocationList(List<Location> locationList) {
+    this.locationList = locationList;
+  }
+}
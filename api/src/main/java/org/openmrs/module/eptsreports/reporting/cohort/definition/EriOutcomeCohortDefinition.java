@@ -0,0 +1,166 @@
+/*
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.module.eptsreports.reporting.cohort.definition;
+
+import java.util.Date;
+import org.openmrs.Location;
+import org.openmrs.module.reporting.cohort.definition.BaseCohortDefinition;
+import org.openmrs.module.reporting.cohort.definition.CohortDefinition;
+import org.openmrs.module.reporting.definition.configuration.ConfigurationProperty;
+import org.openmrs.module.reporting.evaluation.parameter.Mapped;
+
+/**
+ * Patients of the ERI cohort (patients who initiated ART in the cohort period) with one of the ERI
+ * outcomes. The outcomes of all the patients are classified together, from a single evaluation of
+ * each of the searches restricted to the initiated patients, and shared by all the definitions
+ * with the same name, period and location during a report evaluation.
+ */
+public class EriOutcomeCohortDefinition extends BaseCohortDefinition {
+
+  /** The outcomes of a patient of the ERI cohort, which are not exclusive */
+  public enum Outcome {
+    /** Initiated ART in the cohort period */
+    INITIATED,
+    /** Retained, not dead and not transferred out */
+    RETAINED,
+    /** Not retained, not dead and not transferred out */
+    NOT_RETAINED,
+    /** Lost to follow up, not dead and not transferred out */
+    LOST_TO_FOLLOW_UP,
+    DEAD,
+    TRANSFERRED_OUT,
+    SUSPENDED
+  }
+
+  @ConfigurationProperty(required = true)
+  private Outcome outcome;
+
+  @ConfigurationProperty(required = true, group = "searches")
+  private Mapped<CohortDefinition> initiated;
+
+  @ConfigurationProperty(required = true, group = "searches")
+  private Mapped<CohortDefinition> retained;
+
+  @ConfigurationProperty(group = "searches")
+  private Mapped<CohortDefinition> lostToFollowUp;
+
+  @ConfigurationProperty(required = true, group = "searches")
+  private Mapped<CohortDefinition> dead;
+
+  @ConfigurationProperty(required = true, group = "searches")
+  private Mapped<CohortDefinition> transferredOut;
+
+  @ConfigurationProperty(required = true, group = "searches")
+  private Mapped<CohortDefinition> suspended;
+
+  @ConfigurationProperty private Date cohortStartDate;
+
+  @ConfigurationProperty private Date cohortEndDate;
+
+  @ConfigurationProperty private Date reportingEndDate;
+
+  @ConfigurationProperty private Location location;
+
+  public Outcome getOutcome() {
+    return outcome;
+  }
+
+  public void setOutcome(Outcome outcome) {
+    this.outcome = outcome;
+  }
+
+  /** @return the patients who initiated ART in the cohort period */
+  public Mapped<CohortDefinition> getInitiated() {
+    return initiated;
+  }
+
+  public void setInitiated(Mapped<CohortDefinition> initiated) {
+    this.initiated = initiated;
+  }
+
+  /** @return the patients who came back, to be classified as retained */
+  public Mapped<CohortDefinition> getRetained() {
+    return retained;
+  }
+
+  public void setRetained(Mapped<CohortDefinition> retained) {
+    this.retained = retained;
+  }
+
+  /** @return the patients who missed their visits, or null when not classified */
+  public Mapped<CohortDefinition> getLostToFollowUp() {
+    return lostToFollowUp;
+  }
+
+  public void setLostToFollowUp(Mapped<CohortDefinition> lostToFollowUp) {
+    this.lostToFollowUp = lostToFollowUp;
+  }
+
+  public Mapped<CohortDefinition> getDead() {
+    return dead;
+  }
+
+  public void setDead(Mapped<CohortDefinition> dead) {
+    this.dead = dead;
+  }
+
+  public Mapped<CohortDefinition> getTransferredOut() {
+    return transferredOut;
+  }
+
+  public void setTransferredOut(Mapped<CohortDefinition> transferredOut) {
+    this.transferredOut = transferredOut;
+  }
+
+  public Mapped<CohortDefinition> getSuspended() {
+    return suspended;
+  }
+
+  public void setSuspended(Mapped<CohortDefinition> suspended) {
+    this.suspended = suspended;
+  }
+
+  public Date getCohortStartDate() {
+    return cohortStartDate;
+  }
+
+  public void setCohortStartDate(Date cohortStartDate) {
+    this.cohortStartDate = cohortStartDate;
+  }
+
+  public Date getCohortEndDate() {
+    return cohortEndDate;
+  }
+
+  public void setCohortEndDate(Date cohortEndDate) {
+    this.cohortEndDate = cohortEndDate;
+  }
+
+  public Date getReportingEndDate() {
+    return reportingEndDate;
+  }
+
+  public void setReportingEndDate(Date reportingEndDate) {
+    this.reportingEndDate = reportingEndDate;
+  }
+
+  public Location getLocation() {
+    return location;
+  }
+
+  public void setLocation(Location location) {
+    this.location = location;
+  }
+}
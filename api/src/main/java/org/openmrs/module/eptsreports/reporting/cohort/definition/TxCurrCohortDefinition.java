@@ -0,0 +1,238 @@
+/*
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.module.eptsreports.reporting.cohort.definition;
+
+import java.util.Date;
+import org.openmrs.Location;
+import org.openmrs.module.reporting.cohort.definition.BaseCohortDefinition;
+import org.openmrs.module.reporting.cohort.definition.CohortDefinition;
+import org.openmrs.module.reporting.definition.configuration.ConfigurationProperty;
+import org.openmrs.module.reporting.evaluation.parameter.Mapped;
+
+/**
+ * Patients currently on ART under a TX_CURR specification, or the patients under a specification
+ * who are not under another one, to reconcile two specifications. The searches that do not depend
+ * on the abandonment days are evaluated once for all the specifications, and the others once for
+ * each number of abandonment days, during a report evaluation.
+ */
+public class TxCurrCohortDefinition extends BaseCohortDefinition {
+
+  /** A TX_CURR specification */
+  public static class Spec {
+
+    /** The current specification */
+    public static final Spec CURRENT = new Spec(31, true);
+
+    /** The specification before the next appointment was required */
+    public static final Spec OLD = new Spec(60, false);
+
+    private final int abandonmentDays;
+
+    private final boolean nextAppointmentRequired;
+
+    /**
+     * @param abandonmentDays the days after the next pickup for a patient to be abandoned
+     * @param nextAppointmentRequired whether patients need a next pickup or consultation date, and
+     *     are abandoned without a next pickup date
+     */
+    public Spec(int abandonmentDays, boolean nextAppointmentRequired) {
+      this.abandonmentDays = abandonmentDays;
+      this.nextAppointmentRequired = nextAppointmentRequired;
+    }
+
+    public int getAbandonmentDays() {
+      return abandonmentDays;
+    }
+
+    public boolean isNextAppointmentRequired() {
+      return nextAppointmentRequired;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (!(o instanceof Spec)) {
+        return false;
+      }
+      Spec other = (Spec) o;
+      return abandonmentDays == other.abandonmentDays
+          && nextAppointmentRequired == other.nextAppointmentRequired;
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * abandonmentDays + (nextAppointmentRequired ? 1 : 0);
+    }
+
+    @Override
+    public String toString() {
+      return abandonmentDays + (nextAppointmentRequired ? " days, next appointment" : " days");
+    }
+  }
+
+  @ConfigurationProperty(required = true)
+  private Spec spec;
+
+  @ConfigurationProperty private Spec excludedSpec;
+
+  @ConfigurationProperty(required = true, group = "searches")
+  private Mapped<CohortDefinition> inArtProgram;
+
+  @ConfigurationProperty(required = true, group = "searches")
+  private Mapped<CohortDefinition> startDrugs;
+
+  @ConfigurationProperty(required = true, group = "searches")
+  private Mapped<CohortDefinition> historicalStartDate;
+
+  @ConfigurationProperty(required = true, group = "searches")
+  private Mapped<CohortDefinition> firstPickup;
+
+  @ConfigurationProperty(required = true, group = "searches")
+  private Mapped<CohortDefinition> leftArtProgram;
+
+  @ConfigurationProperty(required = true, group = "searches")
+  private Mapped<CohortDefinition> missedNextPickup;
+
+  @ConfigurationProperty(required = true, group = "searches")
+  private Mapped<CohortDefinition> didNotMissNextConsultation;
+
+  @ConfigurationProperty(required = true, group = "searches")
+  private Mapped<CohortDefinition> abandonedButStillInPeriod;
+
+  @ConfigurationProperty(required = true, group = "searches")
+  private Mapped<CohortDefinition> withNextPickupDate;
+
+  @ConfigurationProperty(required = true, group = "searches")
+  private Mapped<CohortDefinition> withNextConsultationDate;
+
+  @ConfigurationProperty private Date onOrBefore;
+
+  @ConfigurationProperty private Location location;
+
+  public Spec getSpec() {
+    return spec;
+  }
+
+  public void setSpec(Spec spec) {
+    this.spec = spec;
+  }
+
+  /** @return the specification whose patients are excluded, or null */
+  public Spec getExcludedSpec() {
+    return excludedSpec;
+  }
+
+  public void setExcludedSpec(Spec excludedSpec) {
+    this.excludedSpec = excludedSpec;
+  }
+
+  public Mapped<CohortDefinition> getInArtProgram() {
+    return inArtProgram;
+  }
+
+  public void setInArtProgram(Mapped<CohortDefinition> inArtProgram) {
+    this.inArtProgram = inArtProgram;
+  }
+
+  public Mapped<CohortDefinition> getStartDrugs() {
+    return startDrugs;
+  }
+
+  public void setStartDrugs(Mapped<CohortDefinition> startDrugs) {
+    this.startDrugs = startDrugs;
+  }
+
+  public Mapped<CohortDefinition> getHistoricalStartDate() {
+    return historicalStartDate;
+  }
+
+  public void setHistoricalStartDate(Mapped<CohortDefinition> historicalStartDate) {
+    this.historicalStartDate = historicalStartDate;
+  }
+
+  public Mapped<CohortDefinition> getFirstPickup() {
+    return firstPickup;
+  }
+
+  public void setFirstPickup(Mapped<CohortDefinition> firstPickup) {
+    this.firstPickup = firstPickup;
+  }
+
+  public Mapped<CohortDefinition> getLeftArtProgram() {
+    return leftArtProgram;
+  }
+
+  public void setLeftArtProgram(Mapped<CohortDefinition> leftArtProgram) {
+    this.leftArtProgram = leftArtProgram;
+  }
+
+  /** @return the patients who missed their next pickup, with an abandonmentDays parameter */
+  public Mapped<CohortDefinition> getMissedNextPickup() {
+    return missedNextPickup;
+  }
+
+  public void setMissedNextPickup(Mapped<CohortDefinition> missedNextPickup) {
+    this.missedNextPickup = missedNextPickup;
+  }
+
+  /** @return the patients who did not miss their next consultation, with abandonmentDays */
+  public Mapped<CohortDefinition> getDidNotMissNextConsultation() {
+    return didNotMissNextConsultation;
+  }
+
+  public void setDidNotMissNextConsultation(Mapped<CohortDefinition> didNotMissNextConsultation) {
+    this.didNotMissNextConsultation = didNotMissNextConsultation;
+  }
+
+  /** @return the abandoned patients still in the abandonment period, with abandonmentDays */
+  public Mapped<CohortDefinition> getAbandonedButStillInPeriod() {
+    return abandonedButStillInPeriod;
+  }
+
+  public void setAbandonedButStillInPeriod(Mapped<CohortDefinition> abandonedButStillInPeriod) {
+    this.abandonedButStillInPeriod = abandonedButStillInPeriod;
+  }
+
+  public Mapped<CohortDefinition> getWithNextPickupDate() {
+    return withNextPickupDate;
+  }
+
+  public void setWithNextPickupDate(Mapped<CohortDefinition> withNextPickupDate) {
+    this.withNextPickupDate = withNextPickupDate;
+  }
+
+  public Mapped<CohortDefinition> getWithNextConsultationDate() {
+    return withNextConsultationDate;
+  }
+
+  public void setWithNextConsultationDate(Mapped<CohortDefinition> withNextConsultationDate) {
+    this.withNextConsultationDate = withNextConsultationDate;
+  }
+
+  public Date getOnOrBefore() {
+    return onOrBefore;
+  }
+
+  public void setOnOrBefore(Date onOrBefore) {
+    this.onOrBefore = onOrBefore;
+  }
+
+  public Location getLocation() {
+    return location;
+  }
+
+  public void setLocation(Location location) {
+    this.location = location;
+  }
+}
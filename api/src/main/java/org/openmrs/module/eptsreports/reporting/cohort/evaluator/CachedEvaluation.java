@@ -0,0 +1,94 @@
+/*
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.module.eptsreports.reporting.cohort.evaluator;
+
+import java.util.Set;
+import org.openmrs.Cohort;
+import org.openmrs.module.reporting.evaluation.EvaluationContext;
+
+/**
+ * A result shared by several definitions, kept in the cache of the evaluation context together
+ * with the base cohort it was computed for. The cache is shared by all the definitions evaluated
+ * for a report, so the result is computed once and reused by every definition that needs it.
+ */
+class CachedEvaluation<T> {
+
+  private final Cohort baseCohort;
+
+  private final T result;
+
+  private CachedEvaluation(Cohort baseCohort, T result) {
+    this.baseCohort = baseCohort;
+    this.result = result;
+  }
+
+  /**
+   * Gets the cached result for the key, if it was computed for a base cohort that includes the base
+   * cohort of the context
+   *
+   * @param context the evaluation context
+   * @param key the cache key
+   * @return the cached evaluation, or null when there is none to reuse
+   */
+  @SuppressWarnings("unchecked")
+  static <T> CachedEvaluation<T> get(EvaluationContext context, String key) {
+    CachedEvaluation<T> cached = (CachedEvaluation<T>) context.getFromCache(key);
+    if (cached == null || !cached.covers(context.getBaseCohort())) {
+      return null;
+    }
+    return cached;
+  }
+
+  /**
+   * Caches a result computed for the base cohort of the context
+   *
+   * @param context the evaluation context
+   * @param key the cache key
+   * @param result the result
+   * @return the cached evaluation
+   */
+  static <T> CachedEvaluation<T> put(EvaluationContext context, String key, T result) {
+    CachedEvaluation<T> cached = new CachedEvaluation<T>(context.getBaseCohort(), result);
+    context.addToCache(key, cached);
+    return cached;
+  }
+
+  T getResult() {
+    return result;
+  }
+
+  /**
+   * Restricts patients taken from the result to the base cohort of the context, when the result
+   * was computed for a larger one
+   *
+   * @param patients the patient ids, modified in place
+   * @param context the evaluation context
+   * @return the patient ids
+   */
+  Set<Integer> restrict(Set<Integer> patients, EvaluationContext context) {
+    Cohort other = context.getBaseCohort();
+    if (other != null && other != baseCohort) {
+      patients.retainAll(other.getMemberIds());
+    }
+    return patients;
+  }
+
+  private boolean covers(Cohort other) {
+    if (baseCohort == null || baseCohort == other) {
+      return true;
+    }
+    return other != null && baseCohort.getMemberIds().containsAll(other.getMemberIds());
+  }
+}
@@ -23,6 +23,7 @@ import org.openmrs.calculation.patient.PatientCalculationContext;
 import org.openmrs.calculation.patient.PatientCalculationService;
 import org.openmrs.calculation.result.CalculationResultMap;
 import org.openmrs.module.eptsreports.reporting.cohort.definition.CalculationCohortDefinition;
+import org.openmrs.module.eptsreports.reporting.evaluation.EvaluationProgress;
 import org.openmrs.module.eptsreports.reporting.utils.EptsCalculationUtils;
 import org.openmrs.module.reporting.cohort.EvaluatedCohort;
 import org.openmrs.module.reporting.cohort.definition.CohortDefinition;
@@ -87,6 +88,7 @@ public class CalculationCohortDefinitionEvaluator implements CohortDefinitionEva
     if (cohort == null) {
       cohort = Context.getPatientSetService().getAllPatients();
     }
+    EvaluationProgress.calculationStarted(cd.getName(), cohort.size());
 
     return pcs.evaluate(
         cohort.getMemberIds(), cd.getCalculation(), cd.getCalculationParameters(), calcContext);
@@ -0,0 +1,97 @@
+/*
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.module.eptsreports.reporting.cohort.evaluator;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.openmrs.Cohort;
+import org.openmrs.module.eptsreports.reporting.evaluation.EvaluationCancellation;
+import org.openmrs.module.eptsreports.reporting.utils.EptsReportConstants;
+import org.openmrs.module.eptsreports.reporting.utils.EptsReportUtils;
+import org.openmrs.module.reporting.data.patient.EvaluatedPatientData;
+import org.openmrs.module.reporting.data.patient.definition.PatientDataDefinition;
+import org.openmrs.module.reporting.data.patient.evaluator.PatientDataEvaluator;
+import org.openmrs.module.reporting.evaluation.EvaluationContext;
+import org.openmrs.module.reporting.evaluation.EvaluationException;
+
+/**
+ * Patient data evaluator that splits a large base cohort into chunks, so each query restricts
+ * patients with an IN list of bounded length. The reporting module's own batching is switched off
+ * by {@link org.openmrs.module.eptsreports.reporting.EptsReportInitializer}, and a single IN list
+ * with the whole cohort of a large site is slow to parse and can exceed the MySQL packet size.
+ *
+ * <p>Only cohorts larger than {@link EptsReportConstants#GLOBAL_PROPERTY_PATIENT_ID_CHUNK_SIZE}
+ * are split. Each chunk is evaluated with {@link #evaluateChunk(PatientDataDefinition,
+ * EvaluationContext)} and the results merged, which is safe because the data of a patient never
+ * depends on other patients.
+ */
+public abstract class ChunkedPatientDataEvaluator implements PatientDataEvaluator {
+
+  public static final int DEFAULT_CHUNK_SIZE = 10000;
+
+  @Override
+  public EvaluatedPatientData evaluate(PatientDataDefinition definition, EvaluationContext context)
+      throws EvaluationException {
+    Cohort baseCohort = context.getBaseCohort();
+    int chunkSize =
+        EptsReportUtils.getIntegerGlobalProperty(
+            EptsReportConstants.GLOBAL_PROPERTY_PATIENT_ID_CHUNK_SIZE, DEFAULT_CHUNK_SIZE);
+    if (baseCohort == null || chunkSize <= 0 || baseCohort.size() <= chunkSize) {
+      return evaluateChunk(definition, context);
+    }
+
+    EvaluatedPatientData ret = new EvaluatedPatientData(definition, context);
+    for (Cohort chunk : split(baseCohort, chunkSize)) {
+      EvaluationCancellation.check();
+      EvaluationContext chunkContext = context.shallowCopy();
+      chunkContext.setBaseCohort(chunk);
+      ret.getData().putAll(evaluateChunk(definition, chunkContext).getData());
+    }
+    return ret;
+  }
+
+  /**
+   * Evaluates the definition for the patients in the base cohort of the context
+   *
+   * @param definition the definition
+   * @param context the context, with a base cohort no larger than the chunk size
+   * @return the evaluated data
+   */
+  protected abstract EvaluatedPatientData evaluateChunk(
+      PatientDataDefinition definition, EvaluationContext context) throws EvaluationException;
+
+  /**
+   * Splits a cohort into cohorts of at most the given size
+   *
+   * @param cohort the cohort
+   * @param chunkSize the maximum size of each chunk
+   * @return the chunks
+   */
+  public static List<Cohort> split(Cohort cohort, int chunkSize) {
+    List<Cohort> chunks = new ArrayList<Cohort>();
+    List<Integer> ids = new ArrayList<Integer>(chunkSize);
+    for (Integer id : cohort.getMemberIds()) {
+      ids.add(id);
+      if (ids.size() == chunkSize) {
+        chunks.add(new Cohort(ids));
+        ids = new ArrayList<Integer>(chunkSize);
+      }
+    }
+    if (!ids.isEmpty()) {
+      chunks.add(new Cohort(ids));
+    }
+    return chunks;
+  }
+}
@@ -0,0 +1,82 @@
+/*
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.module.eptsreports.reporting.cohort.evaluator;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The patients with coded obs for each (question, answer) pair found by one scan of the obs table.
+ * Obs without a coded value are kept under a null answer, so they count when any answer is asked
+ * for.
+ */
+public class CodedObsMatrix {
+
+  private final Map<Integer, Map<Integer, Set<Integer>>> patients =
+      new HashMap<Integer, Map<Integer, Set<Integer>>>();
+
+  /**
+   * Records a patient with an obs
+   *
+   * @param questionId the concept id of the question
+   * @param answerId the concept id of the coded value, or null
+   * @param patientId the patient id
+   */
+  public void add(Integer questionId, Integer answerId, Integer patientId) {
+    Map<Integer, Set<Integer>> answers = patients.get(questionId);
+    if (answers == null) {
+      answers = new HashMap<Integer, Set<Integer>>();
+      patients.put(questionId, answers);
+    }
+    Set<Integer> ids = answers.get(answerId);
+    if (ids == null) {
+      ids = new HashSet<Integer>();
+      answers.put(answerId, ids);
+    }
+    ids.add(patientId);
+  }
+
+  /**
+   * Gets the patients with an obs for the question answered with one of the answers
+   *
+   * @param questionId the concept id of the question
+   * @param answerIds the concept ids of the answers, or null for any answer
+   * @return the patient ids
+   */
+  public Set<Integer> getPatients(Integer questionId, Collection<Integer> answerIds) {
+    Map<Integer, Set<Integer>> answers = patients.get(questionId);
+    if (answers == null) {
+      return Collections.emptySet();
+    }
+    Set<Integer> ret = new HashSet<Integer>();
+    if (answerIds == null) {
+      for (Set<Integer> ids : answers.values()) {
+        ret.addAll(ids);
+      }
+    } else {
+      for (Integer answerId : answerIds) {
+        Set<Integer> ids = answers.get(answerId);
+        if (ids != null) {
+          ret.addAll(ids);
+        }
+      }
+    }
+    return ret;
+  }
+}
@@ -0,0 +1,132 @@
+/*
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.module.eptsreports.reporting.cohort.evaluator;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Set;
+import org.openmrs.Cohort;
+import org.openmrs.Concept;
+import org.openmrs.EncounterType;
+import org.openmrs.Location;
+import org.openmrs.Obs;
+import org.openmrs.annotation.Handler;
+import org.openmrs.module.eptsreports.reporting.cohort.definition.CodedObsMatrixCohortDefinition;
+import org.openmrs.module.reporting.cohort.EvaluatedCohort;
+import org.openmrs.module.reporting.cohort.definition.CohortDefinition;
+import org.openmrs.module.reporting.cohort.definition.evaluator.CohortDefinitionEvaluator;
+import org.openmrs.module.reporting.common.DateUtil;
+import org.openmrs.module.reporting.evaluation.EvaluationContext;
+import org.openmrs.module.reporting.evaluation.EvaluationException;
+import org.openmrs.module.reporting.evaluation.querybuilder.HqlQueryBuilder;
+import org.openmrs.module.reporting.evaluation.service.EvaluationService;
+import org.springframework.beans.factory.annotation.Autowired;
+
+/**
+ * Evaluator for coded obs matrix cohorts. The scan of the matrix is kept in the cache of the
+ * evaluation context, which is shared by all the definitions evaluated for a report, and reused
+ * by every definition with the same matrix, period and locations.
+ */
+@Handler(supports = CodedObsMatrixCohortDefinition.class)
+public class CodedObsMatrixCohortDefinitionEvaluator implements CohortDefinitionEvaluator {
+
+  private static final String CACHE_KEY_PREFIX = "eptsreports.codedObsMatrix:";
+
+  @Autowired private EvaluationService evaluationService;
+
+  /**
+   * @see
+   *     org.openmrs.module.reporting.cohort.definition.evaluator.CohortDefinitionEvaluator#evaluate(org.openmrs.module.reporting.cohort.definition.CohortDefinition,
+   *     org.openmrs.module.reporting.evaluation.EvaluationContext)
+   */
+  @Override
+  public EvaluatedCohort evaluate(CohortDefinition cohortDefinition, EvaluationContext context)
+      throws EvaluationException {
+    CodedObsMatrixCohortDefinition cd = (CodedObsMatrixCohortDefinition) cohortDefinition;
+    Cohort baseCohort = context.getBaseCohort();
+    if (baseCohort != null && baseCohort.isEmpty()) {
+      return new EvaluatedCohort(new Cohort(), cd, context);
+    }
+
+    String key = getCacheKey(cd);
+    CachedEvaluation<CodedObsMatrix> scan = CachedEvaluation.get(context, key);
+    if (scan == null) {
+      scan = CachedEvaluation.put(context, key, scan(cd, context));
+    }
+
+    List<Integer> answerIds = null;
+    if (cd.getValueList() != null) {
+      answerIds = new ArrayList<Integer>();
+      for (Concept value : cd.getValueList()) {
+        answerIds.add(value.getConceptId());
+      }
+    }
+    Set<Integer> patients =
+        scan.restrict(
+            scan.getResult().getPatients(cd.getQuestion().getConceptId(), answerIds), context);
+    return new EvaluatedCohort(new Cohort(patients), cd, context);
+  }
+
+  private CodedObsMatrix scan(CodedObsMatrixCohortDefinition cd, EvaluationContext context)
+      throws EvaluationException {
+    HqlQueryBuilder q = new HqlQueryBuilder();
+    q.select("obs.person.personId", "obs.concept.conceptId", "obs.valueCoded.conceptId");
+    q.from(Obs.class, "obs");
+    q.wherePatientIn("obs.person.personId", context);
+    q.whereIn("obs.concept", cd.getMatrixQuestions());
+    q.whereIn("obs.encounter.encounterType", cd.getEncounterTypeList());
+    q.whereIn("obs.location", cd.getLocationList());
+    q.whereGreaterOrEqualTo("obs.obsDatetime", cd.getOnOrAfter());
+    if (cd.getOnOrBefore() != null) {
+      q.whereLessOrEqualTo(
+          "obs.obsDatetime", DateUtil.getEndOfDayIfTimeExcluded(cd.getOnOrBefore()));
+    }
+    q.whereEqual("obs.voided", false);
+    q.whereEqual("obs.person.voided", false);
+
+    CodedObsMatrix matrix = new CodedObsMatrix();
+    for (Object[] row : evaluationService.evaluateToList(q, context)) {
+      matrix.add((Integer) row[1], (Integer) row[2], (Integer) row[0]);
+    }
+    return matrix;
+  }
+
+  private String getCacheKey(CodedObsMatrixCohortDefinition cd) {
+    StringBuilder key = new StringBuilder(CACHE_KEY_PREFIX);
+    for (Concept question : cd.getMatrixQuestions()) {
+      key.append(question.getConceptId()).append(',');
+    }
+    key.append('|');
+    if (cd.getEncounterTypeList() != null) {
+      for (EncounterType encounterType : cd.getEncounterTypeList()) {
+        key.append(encounterType.getEncounterTypeId()).append(',');
+      }
+    }
+    key.append('|');
+    if (cd.getLocationList() != null) {
+      for (Location location : cd.getLocationList()) {
+        key.append(location.getLocationId()).append(',');
+      }
+    }
+    key.append('|').append(getTime(cd.getOnOrAfter()));
+    key.append('|').append(getTime(cd.getOnOrBefore()));
+    return key.toString();
+  }
+
+  private static Long getTime(Date date) {
+    return date == null ? null : date.getTime();
+  }
+}
@@ -0,0 +1,156 @@
+/*
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.module.eptsreports.reporting.cohort.evaluator;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import org.openmrs.Cohort;
+import org.openmrs.annotation.Handler;
+import org.openmrs.api.context.Context;
+import org.openmrs.module.eptsreports.reporting.cohort.definition.EriOutcomeCohortDefinition;
+import org.openmrs.module.eptsreports.reporting.cohort.definition.EriOutcomeCohortDefinition.Outcome;
+import org.openmrs.module.reporting.cohort.EvaluatedCohort;
+import org.openmrs.module.reporting.cohort.definition.CohortDefinition;
+import org.openmrs.module.reporting.cohort.definition.evaluator.CohortDefinitionEvaluator;
+import org.openmrs.module.reporting.cohort.definition.service.CohortDefinitionService;
+import org.openmrs.module.reporting.evaluation.EvaluationContext;
+import org.openmrs.module.reporting.evaluation.EvaluationException;
+import org.openmrs.module.reporting.evaluation.parameter.Mapped;
+
+/** Evaluator for ERI outcome cohorts */
+@Handler(supports = EriOutcomeCohortDefinition.class)
+public class EriOutcomeCohortDefinitionEvaluator implements CohortDefinitionEvaluator {
+
+  private static final String CACHE_KEY_PREFIX = "eptsreports.eriOutcomes:";
+
+  /**
+   * @see
+   *     org.openmrs.module.reporting.cohort.definition.evaluator.CohortDefinitionEvaluator#evaluate(org.openmrs.module.reporting.cohort.definition.CohortDefinition,
+   *     org.openmrs.module.reporting.evaluation.EvaluationContext)
+   */
+  @Override
+  public EvaluatedCohort evaluate(CohortDefinition cohortDefinition, EvaluationContext context)
+      throws EvaluationException {
+    EriOutcomeCohortDefinition cd = (EriOutcomeCohortDefinition) cohortDefinition;
+
+    String key = getCacheKey(cd);
+    CachedEvaluation<Map<Outcome, Set<Integer>>> outcomes = CachedEvaluation.get(context, key);
+    if (outcomes == null) {
+      outcomes = CachedEvaluation.put(context, key, classify(cd, context));
+    }
+
+    Set<Integer> patients = new HashSet<Integer>(outcomes.getResult().get(cd.getOutcome()));
+    return new EvaluatedCohort(new Cohort(outcomes.restrict(patients, context)), cd, context);
+  }
+
+  private Map<Outcome, Set<Integer>> classify(
+      EriOutcomeCohortDefinition cd, EvaluationContext context) throws EvaluationException {
+    Set<Integer> initiated = evaluate(cd.getInitiated(), context);
+
+    EvaluationContext initiatedContext = context.shallowCopy();
+    initiatedContext.setBaseCohort(new Cohort(initiated));
+    Set<Integer> lostToFollowUp = null;
+    if (cd.getLostToFollowUp() != null) {
+      lostToFollowUp = evaluate(cd.getLostToFollowUp(), initiatedContext);
+    }
+    return classify(
+        initiated,
+        evaluate(cd.getRetained(), initiatedContext),
+        lostToFollowUp,
+        evaluate(cd.getDead(), initiatedContext),
+        evaluate(cd.getTransferredOut(), initiatedContext),
+        evaluate(cd.getSuspended(), initiatedContext));
+  }
+
+  /**
+   * Classifies each initiated patient, with the same outcomes as the compositions of the ERI
+   * datasets: being dead or transferred out excludes a patient from the retained, not retained and
+   * lost to follow up outcomes.
+   *
+   * @param initiated the patients who initiated ART
+   * @param retained the patients who came back
+   * @param lostToFollowUp the patients who missed their visits, or null
+   * @param dead the dead patients
+   * @param transferredOut the patients who were transferred out
+   * @param suspended the patients who suspended treatment
+   * @return the initiated patients with each outcome
+   */
+  public static Map<Outcome, Set<Integer>> classify(
+      Set<Integer> initiated,
+      Set<Integer> retained,
+      Set<Integer> lostToFollowUp,
+      Set<Integer> dead,
+      Set<Integer> transferredOut,
+      Set<Integer> suspended) {
+    Map<Outcome, Set<Integer>> ret = new EnumMap<Outcome, Set<Integer>>(Outcome.class);
+    for (Outcome outcome : Outcome.values()) {
+      ret.put(outcome, new HashSet<Integer>());
+    }
+    if (lostToFollowUp == null) {
+      lostToFollowUp = Collections.emptySet();
+    }
+    for (Integer patientId : initiated) {
+      ret.get(Outcome.INITIATED).add(patientId);
+      boolean isDead = dead.contains(patientId);
+      boolean isTransferredOut = transferredOut.contains(patientId);
+      if (isDead) {
+        ret.get(Outcome.DEAD).add(patientId);
+      }
+      if (isTransferredOut) {
+        ret.get(Outcome.TRANSFERRED_OUT).add(patientId);
+      }
+      if (suspended.contains(patientId)) {
+        ret.get(Outcome.SUSPENDED).add(patientId);
+      }
+      if (isDead || isTransferredOut) {
+        continue;
+      }
+      if (retained.contains(patientId)) {
+        ret.get(Outcome.RETAINED).add(patientId);
+      } else {
+        ret.get(Outcome.NOT_RETAINED).add(patientId);
+      }
+      if (lostToFollowUp.contains(patientId)) {
+        ret.get(Outcome.LOST_TO_FOLLOW_UP).add(patientId);
+      }
+    }
+    return ret;
+  }
+
+  private Set<Integer> evaluate(Mapped<CohortDefinition> search, EvaluationContext context)
+      throws EvaluationException {
+    return Context.getService(CohortDefinitionService.class)
+        .evaluate(search, context)
+        .getMemberIds();
+  }
+
+  private String getCacheKey(EriOutcomeCohortDefinition cd) {
+    StringBuilder key = new StringBuilder(CACHE_KEY_PREFIX);
+    key.append(cd.getName());
+    key.append('|').append(getTime(cd.getCohortStartDate()));
+    key.append('|').append(getTime(cd.getCohortEndDate()));
+    key.append('|').append(getTime(cd.getReportingEndDate()));
+    key.append('|').append(cd.getLocation() == null ? null : cd.getLocation().getLocationId());
+    return key.toString();
+  }
+
+  private static Long getTime(Date date) {
+    return date == null ? null : date.getTime();
+  }
+}
@@ -18,11 +18,11 @@ import java.util.Date;
 import java.util.List;
 import org.openmrs.Obs;
 import org.openmrs.annotation.Handler;
+import org.openmrs.module.eptsreports.api.dao.EptsReportsDao;
 import org.openmrs.module.eptsreports.reporting.cohort.definition.JembiObsDefinition;
 import org.openmrs.module.reporting.common.ListMap;
 import org.openmrs.module.reporting.data.patient.EvaluatedPatientData;
 import org.openmrs.module.reporting.data.patient.definition.PatientDataDefinition;
-import org.openmrs.module.reporting.data.patient.evaluator.PatientDataEvaluator;
 import org.openmrs.module.reporting.evaluation.EvaluationContext;
 import org.openmrs.module.reporting.evaluation.EvaluationException;
 import org.openmrs.module.reporting.evaluation.querybuilder.HqlQueryBuilder;
@@ -30,13 +30,15 @@ import org.openmrs.module.reporting.evaluation.service.EvaluationService;
 import org.springframework.beans.factory.annotation.Autowired;
 
 @Handler(supports = JembiObsDefinition.class, order = 50)
-public class JembiObsDefinitionEvaluator implements PatientDataEvaluator {
+public class JembiObsDefinitionEvaluator extends ChunkedPatientDataEvaluator {
 
   @Autowired private EvaluationService evaluationService;
 
+  @Autowired private EptsReportsDao eptsReportsDao;
+
   @Override
-  public EvaluatedPatientData evaluate(PatientDataDefinition definition, EvaluationContext context)
-      throws EvaluationException {
+  protected EvaluatedPatientData evaluateChunk(
+      PatientDataDefinition definition, EvaluationContext context) throws EvaluationException {
     JembiObsDefinition def = (JembiObsDefinition) definition;
     EvaluatedPatientData c = new EvaluatedPatientData(def, context);
 
@@ -44,6 +46,11 @@ public class JembiObsDefinitionEvaluator implements PatientDataEvaluator {
       return c;
     }
 
+    int fetchSize = StreamingPatientQuery.getConfiguredFetchSize();
+    if (fetchSize != 0) {
+      return evaluateStreaming(def, context, c, fetchSize);
+    }
+
     HqlQueryBuilder q = new HqlQueryBuilder();
     q.select("obs.person.personId", "obs");
     q.from(Obs.class, "obs");
@@ -92,4 +99,27 @@ public class JembiObsDefinitionEvaluator implements PatientDataEvaluator {
 
     return c;
   }
+
+  private EvaluatedPatientData evaluateStreaming(
+      JembiObsDefinition def, EvaluationContext context, EvaluatedPatientData c, int fetchSize) {
+    StreamingPatientQuery<Obs> q =
+        new StreamingPatientQuery<Obs>(Obs.class, "obs", "obsId", "obs.person.personId");
+    q.wherePatientIn(context);
+    q.whereEqual("obs.concept", def.getQuestion());
+    q.whereEqual("obs.valueCoded", def.getAnswer());
+    q.whereIn("obs.encounter.encounterType", def.getEncounterTypeList());
+    q.whereEqual("obs.location", def.getLocation());
+    q.whereEqual("obs.voided", false);
+    q.whereGreaterOrEqualTo("obs.valueDatetime", def.getValueDateTimeOnOrAfter());
+    q.whereLessOrEqualTo("obs.valueDatetime", def.getValueDateTimeOnOrBefore());
+    if (def.isSortByDatetime()) {
+      q.orderAsc("obs.obsDatetime");
+    } else {
+      q.orderAsc("obs.valueDatetime");
+    }
+    StreamingPatientQuery.Keep keep =
+        def.isFirst() ? StreamingPatientQuery.Keep.FIRST : StreamingPatientQuery.Keep.LAST;
+    c.setData(q.evaluate(eptsReportsDao, fetchSize, keep));
+    return c;
+  }
 }
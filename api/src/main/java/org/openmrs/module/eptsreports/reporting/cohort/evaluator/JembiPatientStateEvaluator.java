@@ -3,12 +3,12 @@ package org.openmrs.module.eptsreports.reporting.cohort.evaluator;
 import java.util.List;
 import org.openmrs.PatientState;
 import org.openmrs.annotation.Handler;
+import org.openmrs.module.eptsreports.api.dao.EptsReportsDao;
 import org.openmrs.module.eptsreports.reporting.cohort.definition.JembiPatientStateDefinition;
 import org.openmrs.module.reporting.common.ListMap;
 import org.openmrs.module.reporting.common.TimeQualifier;
 import org.openmrs.module.reporting.data.patient.EvaluatedPatientData;
 import org.openmrs.module.reporting.data.patient.definition.PatientDataDefinition;
-import org.openmrs.module.reporting.data.patient.evaluator.PatientDataEvaluator;
 import org.openmrs.module.reporting.evaluation.EvaluationContext;
 import org.openmrs.module.reporting.evaluation.EvaluationException;
 import org.openmrs.module.reporting.evaluation.querybuilder.HqlQueryBuilder;
@@ -16,12 +16,14 @@ import org.openmrs.module.reporting.evaluation.service.EvaluationService;
 import org.springframework.beans.factory.annotation.Autowired;
 
 @Handler(supports = JembiPatientStateDefinition.class, order = 50)
-public class JembiPatientStateEvaluator implements PatientDataEvaluator {
+public class JembiPatientStateEvaluator extends ChunkedPatientDataEvaluator {
 
   @Autowired private EvaluationService evaluationService;
 
+  @Autowired private EptsReportsDao eptsReportsDao;
+
   @Override
-  public EvaluatedPatientData evaluate(
+  protected EvaluatedPatientData evaluateChunk(
       PatientDataDefinition cohortDefinition, EvaluationContext context)
       throws EvaluationException {
 
@@ -33,6 +35,11 @@ public class JembiPatientStateEvaluator implements PatientDataEvaluator {
       return c;
     }
 
+    int fetchSize = StreamingPatientQuery.getConfiguredFetchSize();
+    if (fetchSize != 0) {
+      return evaluateStreaming(def, context, c, fetchSize);
+    }
+
     HqlQueryBuilder qb = new HqlQueryBuilder();
     qb.select("patientState.patientProgram.patient.patientId", "patientState");
     qb.from(PatientState.class, "patientState");
@@ -70,4 +77,37 @@ public class JembiPatientStateEvaluator implements PatientDataEvaluator {
     }
     return c;
   }
+
+  private EvaluatedPatientData evaluateStreaming(
+      JembiPatientStateDefinition def,
+      EvaluationContext context,
+      EvaluatedPatientData c,
+      int fetchSize) {
+    StreamingPatientQuery<PatientState> qb =
+        new StreamingPatientQuery<PatientState>(
+            PatientState.class,
+            "patientState",
+            "patientStateId",
+            "patientState.patientProgram.patient.patientId");
+    qb.whereIn("patientState.state", def.getStates());
+    qb.whereNotNull("patientState.startDate");
+    qb.whereNull("patientState.endDate");
+    qb.whereLessOrEqualTo("patientState.startDate", def.getStartedOnOrBefore());
+    qb.whereEqual("patientState.patientProgram.location", def.getLocation());
+    qb.whereEqual("patientState.voided", false);
+    qb.whereEqual("patientState.patientProgram.voided", false);
+    qb.whereEqual("patientState.patientProgram.patient.voided", false);
+    qb.wherePatientIn(context);
+    if (def.getWhich() == TimeQualifier.LAST) {
+      qb.orderDesc("patientState.startDate");
+    } else {
+      qb.orderAsc("patientState.startDate");
+    }
+    StreamingPatientQuery.Keep keep =
+        def.getWhich() == TimeQualifier.LAST || def.getWhich() == TimeQualifier.FIRST
+            ? StreamingPatientQuery.Keep.FIRST
+            : StreamingPatientQuery.Keep.ALL;
+    c.setData(qb.evaluate(eptsReportsDao, fetchSize, keep));
+    return c;
+  }
 }
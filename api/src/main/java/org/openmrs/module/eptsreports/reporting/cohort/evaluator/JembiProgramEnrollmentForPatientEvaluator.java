@@ -15,12 +15,12 @@ package org.openmrs.module.eptsreports.reporting.cohort.evaluator;
 import java.util.List;
 import org.openmrs.PatientProgram;
 import org.openmrs.annotation.Handler;
+import org.openmrs.module.eptsreports.api.dao.EptsReportsDao;
 import org.openmrs.module.eptsreports.reporting.cohort.definition.JembiProgramEnrollmentForPatientDefinition;
 import org.openmrs.module.reporting.common.ListMap;
 import org.openmrs.module.reporting.common.TimeQualifier;
 import org.openmrs.module.reporting.data.patient.EvaluatedPatientData;
 import org.openmrs.module.reporting.data.patient.definition.PatientDataDefinition;
-import org.openmrs.module.reporting.data.patient.evaluator.PatientDataEvaluator;
 import org.openmrs.module.reporting.evaluation.EvaluationContext;
 import org.openmrs.module.reporting.evaluation.EvaluationException;
 import org.openmrs.module.reporting.evaluation.querybuilder.HqlQueryBuilder;
@@ -28,13 +28,15 @@ import org.openmrs.module.reporting.evaluation.service.EvaluationService;
 import org.springframework.beans.factory.annotation.Autowired;
 
 @Handler(supports = JembiProgramEnrollmentForPatientDefinition.class, order = 50)
-public class JembiProgramEnrollmentForPatientEvaluator implements PatientDataEvaluator {
+public class JembiProgramEnrollmentForPatientEvaluator extends ChunkedPatientDataEvaluator {
 
   @Autowired private EvaluationService evaluationService;
 
+  @Autowired private EptsReportsDao eptsReportsDao;
+
   @Override
-  public EvaluatedPatientData evaluate(PatientDataDefinition definition, EvaluationContext context)
-      throws EvaluationException {
+  protected EvaluatedPatientData evaluateChunk(
+      PatientDataDefinition definition, EvaluationContext context) throws EvaluationException {
     JembiProgramEnrollmentForPatientDefinition def =
         (JembiProgramEnrollmentForPatientDefinition) definition;
     EvaluatedPatientData c = new EvaluatedPatientData(def, context);
@@ -43,6 +45,11 @@ public class JembiProgramEnrollmentForPatientEvaluator implements PatientDataEva
       return c;
     }
 
+    int fetchSize = StreamingPatientQuery.getConfiguredFetchSize();
+    if (fetchSize != 0) {
+      return evaluateStreaming(def, context, c, fetchSize);
+    }
+
     HqlQueryBuilder q = new HqlQueryBuilder();
     q.select("patientProgram.patient.patientId", "patientProgram");
     q.from(PatientProgram.class, "patientProgram");
@@ -72,4 +79,28 @@ public class JembiProgramEnrollmentForPatientEvaluator implements PatientDataEva
 
     return c;
   }
+
+  private EvaluatedPatientData evaluateStreaming(
+      JembiProgramEnrollmentForPatientDefinition def,
+      EvaluationContext context,
+      EvaluatedPatientData c,
+      int fetchSize) {
+    StreamingPatientQuery<PatientProgram> q =
+        new StreamingPatientQuery<PatientProgram>(
+            PatientProgram.class,
+            "patientProgram",
+            "patientProgramId",
+            "patientProgram.patient.patientId");
+    q.wherePatientIn(context);
+    q.whereEqual("patientProgram.program", def.getProgram());
+    q.whereEqual("patientProgram.location", def.getLocation());
+    q.whereEqual("patientProgram.voided", false);
+    if (TimeQualifier.LAST == def.getWhichEnrollment()) {
+      q.orderDesc("patientProgram.dateEnrolled");
+    } else {
+      q.orderAsc("patientProgram.dateEnrolled");
+    }
+    c.setData(q.evaluate(eptsReportsDao, fetchSize, StreamingPatientQuery.Keep.FIRST));
+    return c;
+  }
 }
@@ -0,0 +1,150 @@
+/*
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.module.eptsreports.reporting.cohort.evaluator;
+
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.openmrs.Cohort;
+import org.openmrs.annotation.Handler;
+import org.openmrs.api.context.Context;
+import org.openmrs.module.eptsreports.api.dao.EptsReportsDao;
+import org.openmrs.module.eptsreports.api.dao.NamedParameterQuery;
+import org.openmrs.module.eptsreports.api.dao.ReportingReplicaDao;
+import org.openmrs.module.eptsreports.reporting.cohort.definition.BoundSqlCohortDefinition;
+import org.openmrs.module.eptsreports.reporting.evaluation.EvaluationCancellation;
+import org.openmrs.module.reporting.cohort.EvaluatedCohort;
+import org.openmrs.module.reporting.cohort.definition.CohortDefinition;
+import org.openmrs.module.reporting.cohort.definition.SqlCohortDefinition;
+import org.openmrs.module.reporting.cohort.definition.evaluator.CohortDefinitionEvaluator;
+import org.openmrs.module.reporting.cohort.definition.evaluator.SqlCohortDefinitionEvaluator;
+import org.openmrs.module.reporting.evaluation.EvaluationContext;
+import org.openmrs.module.reporting.evaluation.EvaluationException;
+import org.springframework.beans.factory.annotation.Autowired;
+
+/**
+ * Evaluates the SQL cohorts of this module, built as {@link BoundSqlCohortDefinition}s, on the
+ * reporting replica when one is set up and is not too far behind the main database, checked once
+ * per report evaluation. Otherwise, or when the replica fails, the evaluator of the reporting
+ * module runs the query on the main database. The bound values are passed as parameters either
+ * way. Queries running longer than eptsreports.queryTimeoutSeconds are cancelled on either
+ * database, and fail the evaluation. The SQL cohorts of other modules are left to the evaluator of
+ * the reporting module.
+ */
+@Handler(supports = BoundSqlCohortDefinition.class, order = 50)
+public class ReplicaSqlCohortDefinitionEvaluator implements CohortDefinitionEvaluator {
+
+  private static final Log log = LogFactory.getLog(ReplicaSqlCohortDefinitionEvaluator.class);
+
+  private static final String FRESH_CACHE_KEY = "eptsreports.replicaFresh";
+
+  @Autowired private ReportingReplicaDao reportingReplicaDao;
+
+  @Autowired private EptsReportsDao eptsReportsDao;
+
+  /**
+   * @see
+   *     org.openmrs.module.reporting.cohort.definition.evaluator.CohortDefinitionEvaluator#evaluate(org.openmrs.module.reporting.cohort.definition.CohortDefinition,
+   *     org.openmrs.module.reporting.evaluation.EvaluationContext)
+   */
+  @Override
+  public EvaluatedCohort evaluate(CohortDefinition cohortDefinition, EvaluationContext context)
+      throws EvaluationException {
+    BoundSqlCohortDefinition cd = (BoundSqlCohortDefinition) cohortDefinition;
+    context = bindValues(cd, context);
+    if (isReplicaUsable(context)) {
+      try {
+        NamedParameterQuery query =
+            new NamedParameterQuery(cd.getQuery(), context.getParameterValues());
+        Set<Integer> patients = reportingReplicaDao.getPatientIds(query);
+        if (context.getBaseCohort() != null) {
+          patients.retainAll(context.getBaseCohort().getMemberIds());
+        }
+        return new EvaluatedCohort(new Cohort(patients), cd, context);
+      } catch (SQLTimeoutException e) {
+        throw new EvaluationException(getTimeoutMessage(cd));
+      } catch (SQLException e) {
+        EvaluationCancellation.check();
+        log.warn("Evaluating " + cd.getName() + " on the main database", e);
+      } catch (IllegalArgumentException e) {
+        log.debug("Evaluating " + cd.getName() + " on the main database", e);
+      }
+    }
+    return evaluateOnMainDatabase(cd, context);
+  }
+
+  /**
+   * Runs the query with the evaluator of the reporting module, which can not set a query timeout,
+   * so the query is cancelled from another thread when it runs too long
+   */
+  private EvaluatedCohort evaluateOnMainDatabase(SqlCohortDefinition cd, EvaluationContext context)
+      throws EvaluationException {
+    SqlCohortDefinitionEvaluator evaluator =
+        Context.getRegisteredComponents(SqlCohortDefinitionEvaluator.class).get(0);
+    int timeout = EvaluationCancellation.getQueryTimeoutSeconds();
+    if (timeout <= 0) {
+      return evaluator.evaluate(cd, context);
+    }
+    EvaluationCancellation.Timeout watchdog =
+        EvaluationCancellation.startTimeout(eptsReportsDao.getQueryCanceller(), timeout);
+    try {
+      return evaluator.evaluate(cd, context);
+    } catch (EvaluationException e) {
+      throw watchdog.isExpired() ? new EvaluationException(getTimeoutMessage(cd)) : e;
+    } catch (RuntimeException e) {
+      throw watchdog.isExpired() ? new EvaluationException(getTimeoutMessage(cd)) : e;
+    } finally {
+      watchdog.stop();
+    }
+  }
+
+  private String getTimeoutMessage(SqlCohortDefinition cd) {
+    return cd.getName()
+        + " ran for more than "
+        + EvaluationCancellation.getQueryTimeoutSeconds()
+        + " seconds";
+  }
+
+  /**
+   * Adds the bound values of the definition to the parameter values, in a copy of the context so
+   * that they are not seen by the other definitions of the report
+   */
+  private EvaluationContext bindValues(BoundSqlCohortDefinition cd, EvaluationContext context) {
+    Map<String, Object> values = new HashMap<String, Object>(context.getParameterValues());
+    values.putAll(cd.getBoundValues());
+    EvaluationContext bound = context.shallowCopy();
+    bound.setParameterValues(values);
+    return bound;
+  }
+
+  private boolean isReplicaUsable(EvaluationContext context) {
+    if (!reportingReplicaDao.isAvailable()) {
+      return false;
+    }
+    Boolean fresh = (Boolean) context.getFromCache(FRESH_CACHE_KEY);
+    if (fresh == null) {
+      fresh = reportingReplicaDao.isFresh();
+      context.addToCache(FRESH_CACHE_KEY, fresh);
+      if (!fresh) {
+        log.info("Reporting replica is behind the main database, not using it for this report");
+      }
+    }
+    return fresh;
+  }
+}
@@ -0,0 +1,216 @@
+/*
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.module.eptsreports.reporting.cohort.evaluator;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.commons.lang3.StringUtils;
+import org.openmrs.module.eptsreports.api.dao.EptsReportsDao;
+import org.openmrs.module.eptsreports.reporting.utils.EptsReportConstants;
+import org.openmrs.module.eptsreports.reporting.utils.EptsReportUtils;
+import org.openmrs.module.reporting.common.ListMap;
+import org.openmrs.module.reporting.evaluation.EvaluationContext;
+
+/**
+ * Streaming alternative to evaluating a {@link
+ * org.openmrs.module.reporting.evaluation.querybuilder.HqlQueryBuilder} to a list. Only the
+ * patient id and entity id of each row are scrolled through, and the kept ids per patient are
+ * aggregated as the rows go by; the kept entities are then loaded by id. Memory is bounded by the
+ * size of the result instead of the number of matching rows, and no entity is loaded into the
+ * session for rows that are discarded.
+ *
+ * <p>Conditions with a null value are skipped, as {@code HqlQueryBuilder} does.
+ */
+public class StreamingPatientQuery<T> {
+
+  /** Which rows to keep for each patient, in query order */
+  public enum Keep {
+    FIRST,
+    LAST,
+    ALL
+  }
+
+  private final Class<T> entityClass;
+
+  private final String alias;
+
+  private final String idProperty;
+
+  private final String patientIdProperty;
+
+  private final List<String> where = new ArrayList<String>();
+
+  private final List<String> order = new ArrayList<String>();
+
+  private final Map<String, Object> parameters = new HashMap<String, Object>();
+
+  /**
+   * @param entityClass the entity to query
+   * @param alias the alias of the entity in conditions
+   * @param idProperty the id property of the entity, without the alias
+   * @param patientIdProperty the path to the patient id, including the alias
+   */
+  public StreamingPatientQuery(
+      Class<T> entityClass, String alias, String idProperty, String patientIdProperty) {
+    this.entityClass = entityClass;
+    this.alias = alias;
+    this.idProperty = idProperty;
+    this.patientIdProperty = patientIdProperty;
+  }
+
+  /**
+   * Gets the fetch size to stream with, from {@link
+   * EptsReportConstants#GLOBAL_PROPERTY_STREAMING_FETCH_SIZE}
+   *
+   * @return the fetch size, or 0 when streaming is switched off
+   */
+  public static int getConfiguredFetchSize() {
+    return EptsReportUtils.getIntegerGlobalProperty(
+        EptsReportConstants.GLOBAL_PROPERTY_STREAMING_FETCH_SIZE, 0);
+  }
+
+  public StreamingPatientQuery<T> whereEqual(String property, Object value) {
+    if (value != null) {
+      where.add(property + " = " + parameter(value));
+    }
+    return this;
+  }
+
+  public StreamingPatientQuery<T> whereIn(String property, Collection<?> values) {
+    if (values != null) {
+      where.add(property + " in (" + parameter(values) + ")");
+    }
+    return this;
+  }
+
+  public StreamingPatientQuery<T> whereNull(String property) {
+    where.add(property + " is null");
+    return this;
+  }
+
+  public StreamingPatientQuery<T> whereNotNull(String property) {
+    where.add(property + " is not null");
+    return this;
+  }
+
+  public StreamingPatientQuery<T> whereGreaterOrEqualTo(String property, Object value) {
+    if (value != null) {
+      where.add(property + " >= " + parameter(value));
+    }
+    return this;
+  }
+
+  public StreamingPatientQuery<T> whereLessOrEqualTo(String property, Object value) {
+    if (value != null) {
+      where.add(property + " <= " + parameter(value));
+    }
+    return this;
+  }
+
+  /** Restricts to the base cohort of the context, if there is one */
+  public StreamingPatientQuery<T> wherePatientIn(EvaluationContext context) {
+    if (context != null && context.getBaseCohort() != null) {
+      whereIn(patientIdProperty, context.getBaseCohort().getMemberIds());
+    }
+    return this;
+  }
+
+  public StreamingPatientQuery<T> orderAsc(String property) {
+    order.add(property + " asc");
+    return this;
+  }
+
+  public StreamingPatientQuery<T> orderDesc(String property) {
+    order.add(property + " desc");
+    return this;
+  }
+
+  /** @return the HQL selecting patient id and entity id */
+  public String getHql() {
+    StringBuilder hql = new StringBuilder();
+    hql.append("select ").append(patientIdProperty).append(", ");
+    hql.append(alias).append(".").append(idProperty);
+    hql.append(" from ").append(entityClass.getName()).append(" ").append(alias);
+    if (!where.isEmpty()) {
+      hql.append(" where ").append(StringUtils.join(where, " and "));
+    }
+    if (!order.isEmpty()) {
+      hql.append(" order by ").append(StringUtils.join(order, ", "));
+    }
+    return hql.toString();
+  }
+
+  /**
+   * Scrolls through the matching rows and loads the kept entities
+   *
+   * @param dao the dao to run the query with
+   * @param fetchSize the JDBC fetch size
+   * @param keep which rows to keep for each patient
+   * @return for each patient with a match, the kept entity, or the list of entities for {@link
+   *     Keep#ALL}
+   */
+  public Map<Integer, Object> evaluate(EptsReportsDao dao, int fetchSize, final Keep keep) {
+    final ListMap<Integer, Integer> all = new ListMap<Integer, Integer>();
+    final Map<Integer, Integer> single = new LinkedHashMap<Integer, Integer>();
+    dao.scroll(
+        getHql(),
+        parameters,
+        fetchSize,
+        new EptsReportsDao.RowCallback() {
+          @Override
+          public void row(Object[] row) {
+            Integer patientId = (Integer) row[0];
+            Integer entityId = (Integer) row[1];
+            if (keep == Keep.ALL) {
+              all.putInList(patientId, entityId);
+            } else if (keep == Keep.LAST || !single.containsKey(patientId)) {
+              single.put(patientId, entityId);
+            }
+          }
+        });
+
+    Map<Integer, Object> ret = new LinkedHashMap<Integer, Object>();
+    if (keep == Keep.ALL) {
+      List<Integer> ids = new ArrayList<Integer>();
+      for (List<Integer> patientIds : all.values()) {
+        ids.addAll(patientIds);
+      }
+      Map<Integer, T> entities = dao.getByIds(entityClass, idProperty, ids);
+      for (Map.Entry<Integer, List<Integer>> e : all.entrySet()) {
+        List<T> patientEntities = new ArrayList<T>(e.getValue().size());
+        for (Integer id : e.getValue()) {
+          patientEntities.add(entities.get(id));
+        }
+        ret.put(e.getKey(), patientEntities);
+      }
+    } else {
+      Map<Integer, T> entities = dao.getByIds(entityClass, idProperty, single.values());
+      for (Map.Entry<Integer, Integer> e : single.entrySet()) {
+        ret.put(e.getKey(), entities.get(e.getValue()));
+      }
+    }
+    return ret;
+  }
+
+  private String parameter(Object value) {
+    String name = "p" + parameters.size();
+    parameters.put(name, value);
+    return ":" + name;
+  }
+}
@@ -0,0 +1,196 @@
+/*
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.module.eptsreports.reporting.cohort.evaluator;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import org.openmrs.Cohort;
+import org.openmrs.annotation.Handler;
+import org.openmrs.api.context.Context;
+import org.openmrs.module.eptsreports.reporting.cohort.definition.TxCurrCohortDefinition;
+import org.openmrs.module.eptsreports.reporting.cohort.definition.TxCurrCohortDefinition.Spec;
+import org.openmrs.module.reporting.cohort.EvaluatedCohort;
+import org.openmrs.module.reporting.cohort.definition.CohortDefinition;
+import org.openmrs.module.reporting.cohort.definition.evaluator.CohortDefinitionEvaluator;
+import org.openmrs.module.reporting.cohort.definition.service.CohortDefinitionService;
+import org.openmrs.module.reporting.evaluation.EvaluationContext;
+import org.openmrs.module.reporting.evaluation.EvaluationException;
+import org.openmrs.module.reporting.evaluation.parameter.Mapped;
+
+/** Evaluator for TX_CURR cohorts */
+@Handler(supports = TxCurrCohortDefinition.class)
+public class TxCurrCohortDefinitionEvaluator implements CohortDefinitionEvaluator {
+
+  private static final String CACHE_KEY_PREFIX = "eptsreports.txCurr:";
+
+  /** The searches that do not depend on the abandonment days */
+  private static class CommonSearches {
+
+    private Set<Integer> started = new HashSet<Integer>();
+
+    private Set<Integer> left;
+
+    private Set<Integer> withNextPickupDate;
+
+    private Set<Integer> withNextConsultationDate;
+  }
+
+  /** The searches that depend on the abandonment days */
+  private static class AbandonmentSearches {
+
+    private Set<Integer> missedNextPickup;
+
+    private Set<Integer> returned = new HashSet<Integer>();
+  }
+
+  /**
+   * @see
+   *     org.openmrs.module.reporting.cohort.definition.evaluator.CohortDefinitionEvaluator#evaluate(org.openmrs.module.reporting.cohort.definition.CohortDefinition,
+   *     org.openmrs.module.reporting.evaluation.EvaluationContext)
+   */
+  @Override
+  public EvaluatedCohort evaluate(CohortDefinition cohortDefinition, EvaluationContext context)
+      throws EvaluationException {
+    TxCurrCohortDefinition cd = (TxCurrCohortDefinition) cohortDefinition;
+
+    String key = getCacheKey(cd);
+    CachedEvaluation<CommonSearches> common = CachedEvaluation.get(context, key);
+    if (common == null) {
+      common = CachedEvaluation.put(context, key, evaluateCommonSearches(cd, context));
+    }
+
+    Set<Integer> patients = getPatients(cd, cd.getSpec(), common.getResult(), key, context);
+    if (cd.getExcludedSpec() != null) {
+      patients.removeAll(getPatients(cd, cd.getExcludedSpec(), common.getResult(), key, context));
+    }
+    return new EvaluatedCohort(new Cohort(common.restrict(patients, context)), cd, context);
+  }
+
+  private CommonSearches evaluateCommonSearches(
+      TxCurrCohortDefinition cd, EvaluationContext context) throws EvaluationException {
+    CommonSearches common = new CommonSearches();
+    common.started.addAll(evaluate(cd.getInArtProgram(), context));
+    common.started.addAll(evaluate(cd.getStartDrugs(), context));
+    common.started.addAll(evaluate(cd.getHistoricalStartDate(), context));
+    common.started.addAll(evaluate(cd.getFirstPickup(), context));
+
+    EvaluationContext startedContext = context.shallowCopy();
+    startedContext.setBaseCohort(new Cohort(common.started));
+    common.left = evaluate(cd.getLeftArtProgram(), startedContext);
+    common.withNextPickupDate = evaluate(cd.getWithNextPickupDate(), startedContext);
+    common.withNextConsultationDate = evaluate(cd.getWithNextConsultationDate(), startedContext);
+    return common;
+  }
+
+  private Set<Integer> getPatients(
+      TxCurrCohortDefinition cd,
+      Spec spec,
+      CommonSearches common,
+      String commonKey,
+      EvaluationContext context)
+      throws EvaluationException {
+    String key = commonKey + "|" + spec.getAbandonmentDays();
+    CachedEvaluation<AbandonmentSearches> abandonment = CachedEvaluation.get(context, key);
+    if (abandonment == null) {
+      Set<Integer> notLeft = new HashSet<Integer>(common.started);
+      notLeft.removeAll(common.left);
+      EvaluationContext notLeftContext = context.shallowCopy();
+      notLeftContext.setBaseCohort(new Cohort(notLeft));
+
+      Integer days = spec.getAbandonmentDays();
+      AbandonmentSearches searches = new AbandonmentSearches();
+      searches.missedNextPickup = evaluate(cd.getMissedNextPickup(), days, notLeftContext);
+      searches.returned.addAll(evaluate(cd.getDidNotMissNextConsultation(), days, notLeftContext));
+      searches.returned.addAll(evaluate(cd.getAbandonedButStillInPeriod(), days, notLeftContext));
+      abandonment = CachedEvaluation.put(context, key, searches);
+    }
+    return getPatients(
+        spec,
+        common.started,
+        common.left,
+        common.withNextPickupDate,
+        common.withNextConsultationDate,
+        abandonment.getResult().missedNextPickup,
+        abandonment.getResult().returned);
+  }
+
+  /**
+   * Selects the patients currently on ART under a specification, as the compositions of the
+   * TX_CURR datasets did: {@code (1 OR 2 OR 3 OR 4) AND (NOT (5 OR (6 AND (NOT (7 OR 8)))))} for
+   * the old specification, and {@code (1 OR 2 OR 3 OR 4) AND (NOT (5 OR ((6 OR (NOT 11)) AND (NOT
+   * (7 OR 8))))) AND (11 OR 12)} when the next appointment is required.
+   *
+   * @param spec the specification
+   * @param started the patients who started ART (1, 2, 3 or 4)
+   * @param left the patients who left the ART program (5)
+   * @param withNextPickupDate the patients with a next pickup date (11)
+   * @param withNextConsultationDate the patients with a next consultation date (12)
+   * @param missedNextPickup the patients who missed their next pickup (6)
+   * @param returned the patients who did not miss their next consultation or are still in the
+   *     abandonment period (7 or 8)
+   * @return the patients currently on ART
+   */
+  public static Set<Integer> getPatients(
+      Spec spec,
+      Set<Integer> started,
+      Set<Integer> left,
+      Set<Integer> withNextPickupDate,
+      Set<Integer> withNextConsultationDate,
+      Set<Integer> missedNextPickup,
+      Set<Integer> returned) {
+    Set<Integer> ret = new HashSet<Integer>();
+    for (Integer patientId : started) {
+      if (left.contains(patientId)) {
+        continue;
+      }
+      boolean hasNextPickupDate = withNextPickupDate.contains(patientId);
+      boolean abandoned = missedNextPickup.contains(patientId);
+      if (spec.isNextAppointmentRequired()) {
+        if (!hasNextPickupDate && !withNextConsultationDate.contains(patientId)) {
+          continue;
+        }
+        abandoned = abandoned || !hasNextPickupDate;
+      }
+      if (!abandoned || returned.contains(patientId)) {
+        ret.add(patientId);
+      }
+    }
+    return ret;
+  }
+
+  private Set<Integer> evaluate(
+      Mapped<CohortDefinition> search, Integer abandonmentDays, EvaluationContext context)
+      throws EvaluationException {
+    Map<String, Object> mappings = new HashMap<String, Object>(search.getParameterMappings());
+    mappings.put("abandonmentDays", abandonmentDays);
+    return evaluate(new Mapped<CohortDefinition>(search.getParameterizable(), mappings), context);
+  }
+
+  private Set<Integer> evaluate(Mapped<CohortDefinition> search, EvaluationContext context)
+      throws EvaluationException {
+    return Context.getService(CohortDefinitionService.class)
+        .evaluate(search, context)
+        .getMemberIds();
+  }
+
+  private String getCacheKey(TxCurrCohortDefinition cd) {
+    StringBuilder key = new StringBuilder(CACHE_KEY_PREFIX);
+    key.append(cd.getOnOrBefore() == null ? null : cd.getOnOrBefore().getTime());
+    key.append('|').append(cd.getLocation() == null ? null : cd.getLocation().getLocationId());
+    return key.toString();
+  }
+}
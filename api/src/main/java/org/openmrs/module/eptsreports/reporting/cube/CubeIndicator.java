@@ -0,0 +1,51 @@
+/*
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.module.eptsreports.reporting.cube;
+
+/** The indicators kept in the {@link IndicatorCube}, with how their cells are rolled up */
+public enum CubeIndicator {
+  TX_NEW(Rollup.PERIOD),
+  TX_CURR(Rollup.LAST),
+  TX_PVLS(Rollup.LAST),
+  TX_ML(Rollup.PERIOD),
+  TB_PREV(Rollup.PERIOD);
+
+  /** How the cells of a period are found from the cells that were computed */
+  public enum Rollup {
+    /**
+     * Counts of events, each patient being counted in the month of the event, which are summed
+     * over the months of the period. Only for indicators counting a patient at most once whatever
+     * the period, with no exclusions depending on the period.
+     */
+    SUM,
+    /** Counts at a point in time, taken from the month ending with the period */
+    LAST,
+    /**
+     * Counts over the whole period, which cannot be found from the months, computed for each
+     * quarter and semester
+     */
+    PERIOD
+  }
+
+  private final Rollup rollup;
+
+  CubeIndicator(Rollup rollup) {
+    this.rollup = rollup;
+  }
+
+  public Rollup getRollup() {
+    return rollup;
+  }
+}
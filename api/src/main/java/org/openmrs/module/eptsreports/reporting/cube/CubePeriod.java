@@ -0,0 +1,206 @@
+/*
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.module.eptsreports.reporting.cube;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * A period of whole days of the {@link IndicatorCube}, from the start of its first day to its last
+ * day, which is how the report parameters are usually given
+ */
+public class CubePeriod {
+
+  /** The months quarters start with */
+  private static final int[] QUARTER_START_MONTHS = {
+    Calendar.JANUARY, Calendar.APRIL, Calendar.JULY, Calendar.OCTOBER
+  };
+
+  /** The months semesters start with, as in the PEPFAR fiscal year */
+  private static final int[] SEMESTER_START_MONTHS = {Calendar.APRIL, Calendar.OCTOBER};
+
+  private final Date startDate;
+
+  private final Date endDate;
+
+  private CubePeriod(Date startDate, Date endDate) {
+    this.startDate = startDate;
+    this.endDate = endDate;
+  }
+
+  /**
+   * @param startDate the first day, the time being ignored
+   * @param endDate the last day, the time being ignored
+   * @return the period
+   */
+  public static CubePeriod of(Date startDate, Date endDate) {
+    return new CubePeriod(startOfDay(startDate), startOfDay(endDate));
+  }
+
+  /**
+   * @param year the year
+   * @param month the month, from 1
+   * @return the month
+   */
+  public static CubePeriod month(int year, int month) {
+    Calendar calendar = Calendar.getInstance();
+    calendar.clear();
+    calendar.set(year, month - 1, 1);
+    return monthOf(calendar);
+  }
+
+  /**
+   * @param startDate the first day
+   * @param endDate the last day
+   * @return the months of the period, or null if the period is not made of whole months
+   */
+  public static List<CubePeriod> months(Date startDate, Date endDate) {
+    CubePeriod period = of(startDate, endDate);
+    Calendar calendar = calendar(period.startDate);
+    if (calendar.get(Calendar.DAY_OF_MONTH) != 1 || !isEndOfMonth(period.endDate)) {
+      return null;
+    }
+    List<CubePeriod> ret = new ArrayList<CubePeriod>();
+    while (!calendar.getTime().after(period.endDate)) {
+      ret.add(monthOf(calendar));
+      calendar.add(Calendar.MONTH, 1);
+    }
+    return ret;
+  }
+
+  /**
+   * @param endDate the last day
+   * @return the month ending on the day, or null if it is not the last day of a month
+   */
+  public static CubePeriod monthEndingOn(Date endDate) {
+    Date end = startOfDay(endDate);
+    if (!isEndOfMonth(end)) {
+      return null;
+    }
+    Calendar calendar = calendar(end);
+    calendar.set(Calendar.DAY_OF_MONTH, 1);
+    return monthOf(calendar);
+  }
+
+  /**
+   * @param now the current time
+   * @param count the number of months
+   * @return the complete months before the month of now, the oldest first
+   */
+  public static List<CubePeriod> completeMonths(Date now, int count) {
+    Calendar calendar = calendar(startOfDay(now));
+    calendar.set(Calendar.DAY_OF_MONTH, 1);
+    calendar.add(Calendar.MONTH, -count);
+    List<CubePeriod> ret = new ArrayList<CubePeriod>();
+    for (int i = 0; i < count; i++) {
+      ret.add(monthOf(calendar));
+      calendar.add(Calendar.MONTH, 1);
+    }
+    return ret;
+  }
+
+  /**
+   * @param months consecutive months, the oldest first
+   * @return the quarters and semesters made of the months
+   */
+  public static List<CubePeriod> quartersAndSemesters(List<CubePeriod> months) {
+    List<CubePeriod> ret = new ArrayList<CubePeriod>();
+    for (int i = 0; i < months.size(); i++) {
+      int month = calendar(months.get(i).startDate).get(Calendar.MONTH);
+      if (contains(QUARTER_START_MONTHS, month) && i + 3 <= months.size()) {
+        ret.add(new CubePeriod(months.get(i).startDate, months.get(i + 2).endDate));
+      }
+      if (contains(SEMESTER_START_MONTHS, month) && i + 6 <= months.size()) {
+        ret.add(new CubePeriod(months.get(i).startDate, months.get(i + 5).endDate));
+      }
+    }
+    return ret;
+  }
+
+  /** @return whether the period has days in common with one of the others */
+  public boolean overlaps(Collection<CubePeriod> others) {
+    for (CubePeriod other : others) {
+      if (!startDate.after(other.endDate) && !endDate.before(other.startDate)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  public Date getStartDate() {
+    return startDate;
+  }
+
+  public Date getEndDate() {
+    return endDate;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (!(o instanceof CubePeriod)) {
+      return false;
+    }
+    CubePeriod other = (CubePeriod) o;
+    return startDate.equals(other.startDate) && endDate.equals(other.endDate);
+  }
+
+  @Override
+  public int hashCode() {
+    return 31 * startDate.hashCode() + endDate.hashCode();
+  }
+
+  @Override
+  public String toString() {
+    return String.format("%tF to %tF", startDate, endDate);
+  }
+
+  private static CubePeriod monthOf(Calendar firstDay) {
+    Calendar last = (Calendar) firstDay.clone();
+    last.set(Calendar.DAY_OF_MONTH, last.getActualMaximum(Calendar.DAY_OF_MONTH));
+    return new CubePeriod(firstDay.getTime(), last.getTime());
+  }
+
+  private static boolean isEndOfMonth(Date day) {
+    Calendar calendar = calendar(day);
+    return calendar.get(Calendar.DAY_OF_MONTH) == calendar.getActualMaximum(Calendar.DAY_OF_MONTH);
+  }
+
+  private static boolean contains(int[] values, int value) {
+    for (int v : values) {
+      if (v == value) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static Date startOfDay(Date date) {
+    Calendar calendar = calendar(date);
+    calendar.set(Calendar.HOUR_OF_DAY, 0);
+    calendar.set(Calendar.MINUTE, 0);
+    calendar.set(Calendar.SECOND, 0);
+    calendar.set(Calendar.MILLISECOND, 0);
+    return calendar.getTime();
+  }
+
+  private static Calendar calendar(Date date) {
+    Calendar calendar = Calendar.getInstance();
+    calendar.setTime(date);
+    return calendar;
+  }
+}
@@ -0,0 +1,105 @@
+/*
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.module.eptsreports.reporting.cube;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.openmrs.module.eptsreports.api.dao.IndicatorCubeDao;
+import org.openmrs.module.eptsreports.reporting.utils.EptsReportConstants;
+import org.openmrs.module.eptsreports.reporting.utils.EptsReportUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * Indicator values precomputed by location and period by the {@link IndicatorCubeBuilder}, for
+ * dashboards and for the MER reports. The values of a period are rolled up from the cells of its
+ * months, taken from the cells of its last month, or read from the cells of the period, depending
+ * on the {@link CubeIndicator.Rollup} of the indicator. The cells of the latest months, which
+ * every build computes again, are not used once computed longer ago than
+ * eptsreports.indicatorCubeMaxAgeHours. Older cells are kept by the builder, and used whatever
+ * their age.
+ */
+@Component
+public class IndicatorCube {
+
+  private static final long MILLIS_PER_HOUR = 60L * 60L * 1000L;
+
+  @Autowired private IndicatorCubeDao indicatorCubeDao;
+
+  /**
+   * @param indicator the indicator
+   * @param locationId the location
+   * @param startDate the first day of the period
+   * @param endDate the last day of the period
+   * @return the values by column name, or null if the cube cannot give them for the period
+   */
+  public Map<String, Integer> get(
+      CubeIndicator indicator, Integer locationId, Date startDate, Date endDate) {
+    Date computedAfter =
+        new Date(
+            System.currentTimeMillis()
+                - EptsReportUtils.getIntegerGlobalProperty(
+                        EptsReportConstants.GLOBAL_PROPERTY_INDICATOR_CUBE_MAX_AGE_HOURS, 24)
+                    * MILLIS_PER_HOUR);
+    List<CubePeriod> periods;
+    switch (indicator.getRollup()) {
+      case SUM:
+        periods = CubePeriod.months(startDate, endDate);
+        break;
+      case LAST:
+        CubePeriod month = CubePeriod.monthEndingOn(endDate);
+        periods = month == null ? null : Collections.singletonList(month);
+        break;
+      default:
+        periods = Collections.singletonList(CubePeriod.of(startDate, endDate));
+    }
+    if (periods == null) {
+      return null;
+    }
+    List<Map<String, Integer>> cells = new ArrayList<Map<String, Integer>>();
+    for (CubePeriod period : periods) {
+      Date computed =
+          indicatorCubeDao.getDateComputed(
+              indicator.name(), locationId, period.getStartDate(), period.getEndDate());
+      if (computed == null
+          || (computed.before(computedAfter) && IndicatorCubeBuilder.isRecomputed(period))) {
+        return null;
+      }
+      cells.add(
+          indicatorCubeDao.getCells(
+              indicator.name(), locationId, period.getStartDate(), period.getEndDate()));
+    }
+    return sum(cells);
+  }
+
+  /**
+   * @param cells the values of several periods by column name
+   * @return the sums by column name
+   */
+  public static Map<String, Integer> sum(List<Map<String, Integer>> cells) {
+    Map<String, Integer> ret = new LinkedHashMap<String, Integer>();
+    for (Map<String, Integer> period : cells) {
+      for (Map.Entry<String, Integer> cell : period.entrySet()) {
+        Integer sum = ret.get(cell.getKey());
+        ret.put(cell.getKey(), sum == null ? cell.getValue() : sum + cell.getValue());
+      }
+    }
+    return ret;
+  }
+}
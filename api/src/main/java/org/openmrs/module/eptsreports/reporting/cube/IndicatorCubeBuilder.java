@@ -0,0 +1,198 @@
+/*
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.module.eptsreports.reporting.cube;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.openmrs.Location;
+import org.openmrs.api.context.Context;
+import org.openmrs.module.eptsreports.api.EptsReportsService;
+import org.openmrs.module.eptsreports.api.dao.IndicatorCubeDao;
+import org.openmrs.module.eptsreports.reporting.library.cohorts.GenericCohortQueries;
+import org.openmrs.module.eptsreports.reporting.library.datasets.TbPrevDataset;
+import org.openmrs.module.eptsreports.reporting.library.datasets.TxCurrDataset;
+import org.openmrs.module.eptsreports.reporting.library.datasets.TxMlDataset;
+import org.openmrs.module.eptsreports.reporting.library.datasets.TxNewDataset;
+import org.openmrs.module.eptsreports.reporting.library.datasets.TxPvlsDataset;
+import org.openmrs.module.eptsreports.reporting.utils.EptsReportConstants;
+import org.openmrs.module.eptsreports.reporting.utils.EptsReportUtils;
+import org.openmrs.module.reporting.cohort.definition.CohortDefinition;
+import org.openmrs.module.reporting.cohort.definition.service.CohortDefinitionService;
+import org.openmrs.module.reporting.dataset.DataSet;
+import org.openmrs.module.reporting.dataset.DataSetColumn;
+import org.openmrs.module.reporting.dataset.DataSetRow;
+import org.openmrs.module.reporting.dataset.definition.DataSetDefinition;
+import org.openmrs.module.reporting.dataset.definition.service.DataSetDefinitionService;
+import org.openmrs.module.reporting.evaluation.EvaluationContext;
+import org.openmrs.module.reporting.evaluation.EvaluationException;
+import org.openmrs.module.reporting.evaluation.parameter.Mapped;
+import org.openmrs.module.reporting.indicator.IndicatorResult;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * Computes the cells of the {@link IndicatorCube} by evaluating the data sets of the MER reports,
+ * with the base cohort of the reports, for each location with encounters. Cells are computed for
+ * the complete months of the last eptsreports.indicatorCubeMonths months, and for the quarters and
+ * semesters among them for the indicators that cannot be rolled up from months. Cells computed by
+ * an earlier build are kept, except for the latest months, where late data entry is expected.
+ */
+@Component
+public class IndicatorCubeBuilder {
+
+  private static final Log log = LogFactory.getLog(IndicatorCubeBuilder.class);
+
+  /** How many of the latest months are computed again by every build */
+  private static final int RECENT_MONTHS = 3;
+
+  @Autowired private IndicatorCubeDao indicatorCubeDao;
+
+  @Autowired private GenericCohortQueries genericCohortQueries;
+
+  @Autowired private TxNewDataset txNewDataset;
+
+  @Autowired private TxCurrDataset txCurrDataset;
+
+  @Autowired private TxPvlsDataset txPvlsDataset;
+
+  @Autowired private TxMlDataset txMlDataset;
+
+  @Autowired private TbPrevDataset tbPrevDataset;
+
+  /** Computes the cells that are missing or recent */
+  public void build() {
+    int count =
+        EptsReportUtils.getIntegerGlobalProperty(
+            EptsReportConstants.GLOBAL_PROPERTY_INDICATOR_CUBE_MONTHS, 0);
+    if (count <= 0) {
+      return;
+    }
+    List<CubePeriod> months = CubePeriod.completeMonths(new Date(), count);
+    List<CubePeriod> periods = CubePeriod.quartersAndSemesters(months);
+    Map<CubeIndicator, DataSetDefinition> definitions = getDefinitions();
+    Mapped<CohortDefinition> baseCohort =
+        EptsReportUtils.map(
+            genericCohortQueries.getBaseCohort(), "endDate=${endDate},location=${location}");
+
+    for (Integer locationId : indicatorCubeDao.getLocationIds()) {
+      Location location = Context.getLocationService().getLocation(locationId);
+      // the indicators to compute by period, to evaluate the base cohort once per period
+      Map<CubePeriod, List<CubeIndicator>> pending =
+          new LinkedHashMap<CubePeriod, List<CubeIndicator>>();
+      for (CubeIndicator indicator : CubeIndicator.values()) {
+        boolean byPeriod = indicator.getRollup() == CubeIndicator.Rollup.PERIOD;
+        for (CubePeriod period : byPeriod ? periods : months) {
+          if (isRecomputed(period)
+              || indicatorCubeDao.getDateComputed(
+                      indicator.name(), locationId, period.getStartDate(), period.getEndDate())
+                  == null) {
+            if (!pending.containsKey(period)) {
+              pending.put(period, new ArrayList<CubeIndicator>());
+            }
+            pending.get(period).add(indicator);
+          }
+        }
+      }
+      for (Map.Entry<CubePeriod, List<CubeIndicator>> entry : pending.entrySet()) {
+        build(location, entry.getKey(), entry.getValue(), baseCohort, definitions);
+      }
+    }
+  }
+
+  /**
+   * @param period a period of the cube
+   * @return whether every build computes the cells of the period again, as it has days in one of
+   *     the latest months
+   */
+  public static boolean isRecomputed(CubePeriod period) {
+    return period.overlaps(CubePeriod.completeMonths(new Date(), RECENT_MONTHS));
+  }
+
+  private void build(
+      Location location,
+      CubePeriod period,
+      List<CubeIndicator> indicators,
+      Mapped<CohortDefinition> baseCohort,
+      Map<CubeIndicator, DataSetDefinition> definitions) {
+    try {
+      EvaluationContext context = new EvaluationContext();
+      context.addParameterValue("startDate", period.getStartDate());
+      context.addParameterValue("endDate", period.getEndDate());
+      context.addParameterValue("location", location);
+      context.setBaseCohort(
+          Context.getService(CohortDefinitionService.class).evaluate(baseCohort, context));
+      for (CubeIndicator indicator : indicators) {
+        long start = System.currentTimeMillis();
+        DataSet dataSet =
+            Context.getService(DataSetDefinitionService.class)
+                .evaluate(definitions.get(indicator), context);
+        Context.getService(EptsReportsService.class)
+            .saveIndicatorCubeCells(
+                indicator.name(),
+                location.getLocationId(),
+                period.getStartDate(),
+                period.getEndDate(),
+                getCells(dataSet));
+        log.info(
+            "Computed "
+                + indicator
+                + " of "
+                + location.getName()
+                + " for "
+                + period
+                + " in "
+                + (System.currentTimeMillis() - start)
+                + " ms");
+      }
+    } catch (EvaluationException e) {
+      // the next build tries again
+      log.warn(
+          "Could not compute " + indicators + " of " + location.getName() + " for " + period, e);
+    }
+  }
+
+  private Map<CubeIndicator, DataSetDefinition> getDefinitions() {
+    Map<CubeIndicator, DataSetDefinition> ret =
+        new EnumMap<CubeIndicator, DataSetDefinition>(CubeIndicator.class);
+    ret.put(CubeIndicator.TX_NEW, txNewDataset.constructTxNewDataset());
+    ret.put(CubeIndicator.TX_CURR, txCurrDataset.constructTxCurrDataset(true));
+    ret.put(CubeIndicator.TX_PVLS, txPvlsDataset.constructTxPvlsDatset());
+    ret.put(CubeIndicator.TX_ML, txMlDataset.constructtxMlDataset());
+    ret.put(CubeIndicator.TB_PREV, tbPrevDataset.constructDatset());
+    return ret;
+  }
+
+  private static Map<String, Integer> getCells(DataSet dataSet) {
+    Map<String, Integer> ret = new LinkedHashMap<String, Integer>();
+    for (DataSetRow row : dataSet) {
+      for (Map.Entry<DataSetColumn, Object> value : row.getColumnValues().entrySet()) {
+        Object count = value.getValue();
+        if (count instanceof IndicatorResult) {
+          count = ((IndicatorResult) count).getValue();
+        }
+        if (count instanceof Number) {
+          ret.put(value.getKey().getName(), ((Number) count).intValue());
+        }
+      }
+    }
+    return ret;
+  }
+}
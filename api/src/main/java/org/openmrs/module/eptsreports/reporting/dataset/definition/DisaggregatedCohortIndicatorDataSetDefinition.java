@@ -0,0 +1,31 @@
+/*
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.module.eptsreports.reporting.dataset.definition;
+
+import org.openmrs.module.reporting.dataset.definition.CohortIndicatorDataSetDefinition;
+
+/**
+ * Cohort indicator data set whose columns are counted together: each indicator cohort is evaluated
+ * once and all its columns are counted in one pass over its patients, using the dimension codes of
+ * each patient, instead of intersecting the indicator cohort with dimension cohorts per column.
+ * Columns and dimensions are defined as for {@link CohortIndicatorDataSetDefinition}.
+ */
+public class DisaggregatedCohortIndicatorDataSetDefinition
+    extends CohortIndicatorDataSetDefinition {
+
+  public DisaggregatedCohortIndicatorDataSetDefinition() {
+    super();
+  }
+}
@@ -0,0 +1,66 @@
+/*
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.module.eptsreports.reporting.dataset.definition;
+
+import org.openmrs.module.eptsreports.reporting.cube.CubeIndicator;
+import org.openmrs.module.reporting.dataset.definition.BaseDataSetDefinition;
+import org.openmrs.module.reporting.dataset.definition.DataSetDefinition;
+import org.openmrs.module.reporting.definition.configuration.ConfigurationProperty;
+import org.openmrs.module.reporting.evaluation.parameter.Parameter;
+
+/**
+ * Data set read from the indicator cube when it has the values of the period and location, and
+ * otherwise evaluated from the wrapped data set definition, which has the same parameters.
+ */
+public class IndicatorCubeDataSetDefinition extends BaseDataSetDefinition {
+
+  @ConfigurationProperty private CubeIndicator indicator;
+
+  @ConfigurationProperty private DataSetDefinition dataSetDefinition;
+
+  public IndicatorCubeDataSetDefinition() {
+    super();
+  }
+
+  /**
+   * @param indicator the indicator of the cube
+   * @param dataSetDefinition the data set computing the indicator
+   */
+  public IndicatorCubeDataSetDefinition(
+      CubeIndicator indicator, DataSetDefinition dataSetDefinition) {
+    super(dataSetDefinition.getName(), dataSetDefinition.getDescription());
+    this.indicator = indicator;
+    this.dataSetDefinition = dataSetDefinition;
+    for (Parameter parameter : dataSetDefinition.getParameters()) {
+      addParameter(parameter);
+    }
+  }
+
+  public CubeIndicator getIndicator() {
+    return indicator;
+  }
+
+  public void setIndicator(CubeIndicator indicator) {
+    this.indicator = indicator;
+  }
+
+  public DataSetDefinition getDataSetDefinition() {
+    return dataSetDefinition;
+  }
+
+  public void setDataSetDefinition(DataSetDefinition dataSetDefinition) {
+    this.dataSetDefinition = dataSetDefinition;
+  }
+}
@@ -0,0 +1,194 @@
+/*
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.module.eptsreports.reporting.dataset.evaluator;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.openmrs.annotation.Handler;
+import org.openmrs.api.context.Context;
+import org.openmrs.module.eptsreports.reporting.dataset.definition.DisaggregatedCohortIndicatorDataSetDefinition;
+import org.openmrs.module.eptsreports.reporting.evaluation.EvaluationProgress;
+import org.openmrs.module.reporting.cohort.definition.CohortDefinition;
+import org.openmrs.module.reporting.cohort.definition.service.CohortDefinitionService;
+import org.openmrs.module.reporting.dataset.DataSet;
+import org.openmrs.module.reporting.dataset.MapDataSet;
+import org.openmrs.module.reporting.dataset.definition.CohortIndicatorDataSetDefinition.CohortIndicatorAndDimensionColumn;
+import org.openmrs.module.reporting.dataset.definition.DataSetDefinition;
+import org.openmrs.module.reporting.dataset.definition.evaluator.CohortIndicatorDataSetEvaluator;
+import org.openmrs.module.reporting.dataset.definition.evaluator.DataSetEvaluator;
+import org.openmrs.module.reporting.evaluation.EvaluationContext;
+import org.openmrs.module.reporting.evaluation.EvaluationException;
+import org.openmrs.module.reporting.evaluation.parameter.Mapped;
+import org.openmrs.module.reporting.indicator.CohortIndicator;
+import org.openmrs.module.reporting.indicator.CohortIndicatorResult;
+import org.openmrs.module.reporting.indicator.dimension.CohortDefinitionDimension;
+import org.openmrs.module.reporting.indicator.dimension.CohortIndicatorAndDimensionResult;
+
+/**
+ * Evaluator for disaggregated cohort indicator data sets. The dimension options used by the
+ * columns are evaluated once into a {@link DisaggregationTable}, then each indicator cohort is
+ * evaluated once and the patients of all the columns of the indicator are found in one pass. Each
+ * column is a {@link CohortIndicatorAndDimensionResult} of its patients, for it to be drilled down
+ * like the columns of {@link CohortIndicatorDataSetEvaluator}, which evaluates the data sets with
+ * indicators other than plain counts.
+ */
+@Handler(supports = DisaggregatedCohortIndicatorDataSetDefinition.class, order = 50)
+public class DisaggregatedCohortIndicatorDataSetEvaluator implements DataSetEvaluator {
+
+  /**
+   * @see
+   *     org.openmrs.module.reporting.dataset.definition.evaluator.DataSetEvaluator#evaluate(org.openmrs.module.reporting.dataset.definition.DataSetDefinition,
+   *     org.openmrs.module.reporting.evaluation.EvaluationContext)
+   */
+  @Override
+  public DataSet evaluate(DataSetDefinition dataSetDefinition, EvaluationContext context)
+      throws EvaluationException {
+    DisaggregatedCohortIndicatorDataSetDefinition dsd =
+        (DisaggregatedCohortIndicatorDataSetDefinition) dataSetDefinition;
+    if (context == null) {
+      context = new EvaluationContext();
+    }
+
+    // columns grouped by indicator, each indicator being shared by the columns of a row
+    Map<Mapped<? extends CohortIndicator>, List<CohortIndicatorAndDimensionColumn>> rows =
+        new IdentityHashMap<
+            Mapped<? extends CohortIndicator>, List<CohortIndicatorAndDimensionColumn>>();
+    Map<String, Set<String>> usedOptions = new LinkedHashMap<String, Set<String>>();
+    int optionCount = 0;
+    for (CohortIndicatorAndDimensionColumn column : dsd.getColumns()) {
+      if (!isCount(column.getIndicator().getParameterizable())) {
+        return new CohortIndicatorDataSetEvaluator().evaluate(dsd, context);
+      }
+      List<CohortIndicatorAndDimensionColumn> row = rows.get(column.getIndicator());
+      if (row == null) {
+        row = new ArrayList<CohortIndicatorAndDimensionColumn>();
+        rows.put(column.getIndicator(), row);
+      }
+      row.add(column);
+      for (Map.Entry<String, String> option : getOptions(column).entrySet()) {
+        Set<String> options = usedOptions.get(option.getKey());
+        if (options == null) {
+          options = new LinkedHashSet<String>();
+          usedOptions.put(option.getKey(), options);
+        }
+        if (options.add(option.getValue())) {
+          optionCount++;
+        }
+      }
+    }
+    if (optionCount > DisaggregationTable.MAX_OPTIONS) {
+      return new CohortIndicatorDataSetEvaluator().evaluate(dsd, context);
+    }
+
+    EvaluationProgress.columnsStarted(dsd.getColumns().size());
+    DisaggregationTable table = new DisaggregationTable(evaluateOptions(dsd, usedOptions, context));
+    Map<CohortIndicatorAndDimensionColumn, CohortIndicatorAndDimensionResult> results =
+        new IdentityHashMap<CohortIndicatorAndDimensionColumn, CohortIndicatorAndDimensionResult>();
+    for (Mapped<? extends CohortIndicator> indicator : rows.keySet()) {
+      List<CohortIndicatorAndDimensionColumn> row = rows.get(indicator);
+      List<Map<String, String>> cells = new ArrayList<Map<String, String>>();
+      for (CohortIndicatorAndDimensionColumn column : row) {
+        cells.add(getOptions(column));
+      }
+      EvaluationContext indicatorContext = EvaluationContext.cloneForChild(context, indicator);
+      List<Set<Integer>> rowCohorts =
+          table.split(evaluateIndicatorCohort(indicator, indicatorContext), cells);
+      for (int i = 0; i < rowCohorts.size(); i++) {
+        results.put(
+            row.get(i),
+            getResult(indicator.getParameterizable(), rowCohorts.get(i), indicatorContext));
+      }
+      EvaluationProgress.columnsCompleted(row.size());
+    }
+
+    MapDataSet ret = new MapDataSet(dsd, context);
+    for (CohortIndicatorAndDimensionColumn column : dsd.getColumns()) {
+      ret.addData(column, results.get(column));
+    }
+    return ret;
+  }
+
+  private boolean isCount(CohortIndicator indicator) {
+    return (indicator.getType() == null
+            || indicator.getType() == CohortIndicator.IndicatorType.COUNT)
+        && indicator.getDenominator() == null
+        && indicator.getLocationFilter() == null;
+  }
+
+  private Map<String, String> getOptions(CohortIndicatorAndDimensionColumn column) {
+    Map<String, String> options = column.getDimensionOptions();
+    return options == null ? new HashMap<String, String>() : options;
+  }
+
+  private Map<String, Map<String, Set<Integer>>> evaluateOptions(
+      DisaggregatedCohortIndicatorDataSetDefinition dsd,
+      Map<String, Set<String>> usedOptions,
+      EvaluationContext context)
+      throws EvaluationException {
+    CohortDefinitionService cohortDefinitionService =
+        Context.getService(CohortDefinitionService.class);
+    Map<String, Map<String, Set<Integer>>> ret =
+        new LinkedHashMap<String, Map<String, Set<Integer>>>();
+    for (Map.Entry<String, Set<String>> used : usedOptions.entrySet()) {
+      Mapped<CohortDefinitionDimension> dimension = dsd.getDimensions().get(used.getKey());
+      if (dimension == null) {
+        throw new EvaluationException("dimension " + used.getKey());
+      }
+      EvaluationContext dimensionContext = EvaluationContext.cloneForChild(context, dimension);
+      Map<String, Set<Integer>> options = new LinkedHashMap<String, Set<Integer>>();
+      for (String option : used.getValue()) {
+        Mapped<CohortDefinition> cohortDefinition =
+            dimension.getParameterizable().getCohortDefinitions().get(option);
+        if (cohortDefinition == null) {
+          throw new EvaluationException("dimension option " + used.getKey() + "=" + option);
+        }
+        options.put(
+            option,
+            cohortDefinitionService.evaluate(cohortDefinition, dimensionContext).getMemberIds());
+      }
+      ret.put(used.getKey(), options);
+    }
+    return ret;
+  }
+
+  private Set<Integer> evaluateIndicatorCohort(
+      Mapped<? extends CohortIndicator> indicator, EvaluationContext indicatorContext)
+      throws EvaluationException {
+    return Context.getService(CohortDefinitionService.class)
+        .evaluate(indicator.getParameterizable().getCohortDefinition(), indicatorContext)
+        .getMemberIds();
+  }
+
+  /**
+   * The result of a cell, as the indicator evaluated on the patients of the cell, so that its
+   * value is their count and its cohort is them
+   */
+  private CohortIndicatorAndDimensionResult getResult(
+      CohortIndicator indicator, Set<Integer> patientIds, EvaluationContext indicatorContext) {
+    CohortIndicatorResult result = new CohortIndicatorResult();
+    result.setIndicator(indicator);
+    result.setContext(indicatorContext);
+    for (Integer patientId : patientIds) {
+      result.addCohortValue(patientId, 1);
+    }
+    return new CohortIndicatorAndDimensionResult(result, indicatorContext);
+  }
+}
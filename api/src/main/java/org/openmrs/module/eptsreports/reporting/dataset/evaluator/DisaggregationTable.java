@@ -0,0 +1,104 @@
+/*
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.module.eptsreports.reporting.dataset.evaluator;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Dimension codes of each patient, for splitting a cohort into all its disaggregations in one pass.
+ * Each option of each dimension is given a bit, and the code of a patient has the bits of all the
+ * options the patient belongs to, so options may overlap (like the {@code <15} and {@code 10-14}
+ * age options). A cell, given as dimension options like {@code gender=M|age=<1}, holds the
+ * patients whose code has all of its bits.
+ */
+public class DisaggregationTable {
+
+  /** The most options a table can hold, one per bit of a code */
+  public static final int MAX_OPTIONS = Long.SIZE;
+
+  private final Map<String, Map<String, Long>> bits = new HashMap<String, Map<String, Long>>();
+
+  private final Map<Integer, Long> codes = new HashMap<Integer, Long>();
+
+  /**
+   * @param dimensions the patients of each option, by dimension
+   * @throws IllegalArgumentException if there are more than {@link #MAX_OPTIONS} options
+   */
+  public DisaggregationTable(Map<String, Map<String, Set<Integer>>> dimensions) {
+    int bit = 0;
+    for (Map.Entry<String, Map<String, Set<Integer>>> dimension : dimensions.entrySet()) {
+      Map<String, Long> optionBits = new HashMap<String, Long>();
+      bits.put(dimension.getKey(), optionBits);
+      for (Map.Entry<String, Set<Integer>> option : dimension.getValue().entrySet()) {
+        if (bit == MAX_OPTIONS) {
+          throw new IllegalArgumentException("More than " + MAX_OPTIONS + " dimension options");
+        }
+        long optionBit = 1L << bit++;
+        optionBits.put(option.getKey(), optionBit);
+        for (Integer patientId : option.getValue()) {
+          Long code = codes.get(patientId);
+          codes.put(patientId, code == null ? optionBit : code | optionBit);
+        }
+      }
+    }
+  }
+
+  /**
+   * Splits a cohort into the patients of each cell, in one pass
+   *
+   * @param cohort the patient ids
+   * @param cells the dimension options of each cell, an empty map being the total
+   * @return the patients of each cell, in the order of the cells
+   * @throws IllegalArgumentException if a cell has an option not in the table
+   */
+  public List<Set<Integer>> split(Collection<Integer> cohort, List<Map<String, String>> cells) {
+    long[] masks = new long[cells.size()];
+    List<Set<Integer>> ret = new ArrayList<Set<Integer>>(masks.length);
+    for (int i = 0; i < masks.length; i++) {
+      masks[i] = getMask(cells.get(i));
+      ret.add(new HashSet<Integer>());
+    }
+    for (Integer patientId : cohort) {
+      Long code = codes.get(patientId);
+      long c = code == null ? 0L : code;
+      for (int i = 0; i < masks.length; i++) {
+        if ((c & masks[i]) == masks[i]) {
+          ret.get(i).add(patientId);
+        }
+      }
+    }
+    return ret;
+  }
+
+  private long getMask(Map<String, String> options) {
+    long mask = 0L;
+    for (Map.Entry<String, String> option : options.entrySet()) {
+      Map<String, Long> optionBits = bits.get(option.getKey());
+      Long bit = optionBits == null ? null : optionBits.get(option.getValue());
+      if (bit == null) {
+        throw new IllegalArgumentException(
+            "Unknown dimension option " + option.getKey() + "=" + option.getValue());
+      }
+      mask |= bit;
+    }
+    return mask;
+  }
+}
@@ -0,0 +1,104 @@
+/*
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.module.eptsreports.reporting.dataset.evaluator;
+
+import java.util.Date;
+import java.util.Map;
+import org.openmrs.Location;
+import org.openmrs.annotation.Handler;
+import org.openmrs.api.context.Context;
+import org.openmrs.module.eptsreports.reporting.cube.IndicatorCube;
+import org.openmrs.module.eptsreports.reporting.dataset.definition.IndicatorCubeDataSetDefinition;
+import org.openmrs.module.eptsreports.reporting.utils.EptsReportConstants;
+import org.openmrs.module.eptsreports.reporting.utils.EptsReportUtils;
+import org.openmrs.module.reporting.dataset.DataSet;
+import org.openmrs.module.reporting.dataset.DataSetColumn;
+import org.openmrs.module.reporting.dataset.MapDataSet;
+import org.openmrs.module.reporting.dataset.definition.CohortIndicatorDataSetDefinition;
+import org.openmrs.module.reporting.dataset.definition.CohortIndicatorDataSetDefinition.CohortIndicatorAndDimensionColumn;
+import org.openmrs.module.reporting.dataset.definition.DataSetDefinition;
+import org.openmrs.module.reporting.dataset.definition.evaluator.DataSetEvaluator;
+import org.openmrs.module.reporting.dataset.definition.service.DataSetDefinitionService;
+import org.openmrs.module.reporting.evaluation.EvaluationContext;
+import org.openmrs.module.reporting.evaluation.EvaluationException;
+import org.springframework.beans.factory.annotation.Autowired;
+
+/**
+ * Evaluator for indicator cube data sets. When eptsreports.readIndicatorCube is set and the cube
+ * has a value for every column of the wrapped data set, the data set is read from the cube, and
+ * otherwise the wrapped data set is evaluated. The cube is computed with the base cohort of the MER
+ * reports, so the data sets read from it must be in reports with that base cohort.
+ */
+@Handler(supports = IndicatorCubeDataSetDefinition.class)
+public class IndicatorCubeDataSetEvaluator implements DataSetEvaluator {
+
+  @Autowired private IndicatorCube indicatorCube;
+
+  /**
+   * @see
+   *     org.openmrs.module.reporting.dataset.definition.evaluator.DataSetEvaluator#evaluate(org.openmrs.module.reporting.dataset.definition.DataSetDefinition,
+   *     org.openmrs.module.reporting.evaluation.EvaluationContext)
+   */
+  @Override
+  public DataSet evaluate(DataSetDefinition dataSetDefinition, EvaluationContext context)
+      throws EvaluationException {
+    IndicatorCubeDataSetDefinition dsd = (IndicatorCubeDataSetDefinition) dataSetDefinition;
+    if (context == null) {
+      context = new EvaluationContext();
+    }
+    DataSet cached = read(dsd, context);
+    if (cached != null) {
+      return cached;
+    }
+    return Context.getService(DataSetDefinitionService.class)
+        .evaluate(dsd.getDataSetDefinition(), context);
+  }
+
+  private DataSet read(IndicatorCubeDataSetDefinition dsd, EvaluationContext context) {
+    if (!EptsReportUtils.getBooleanGlobalProperty(
+            EptsReportConstants.GLOBAL_PROPERTY_READ_INDICATOR_CUBE, false)
+        || !(dsd.getDataSetDefinition() instanceof CohortIndicatorDataSetDefinition)) {
+      return null;
+    }
+    Object startDate = context.getParameterValue("startDate");
+    Object endDate = context.getParameterValue("endDate");
+    Object location = context.getParameterValue("location");
+    if (!(startDate instanceof Date)
+        || !(endDate instanceof Date)
+        || !(location instanceof Location)) {
+      return null;
+    }
+    Map<String, Integer> cells =
+        indicatorCube.get(
+            dsd.getIndicator(),
+            ((Location) location).getLocationId(),
+            (Date) startDate,
+            (Date) endDate);
+    if (cells == null) {
+      return null;
+    }
+    CohortIndicatorDataSetDefinition wrapped =
+        (CohortIndicatorDataSetDefinition) dsd.getDataSetDefinition();
+    MapDataSet ret = new MapDataSet(dsd, context);
+    for (CohortIndicatorAndDimensionColumn column : wrapped.getColumns()) {
+      Integer value = cells.get(column.getName());
+      if (value == null) {
+        return null;
+      }
+      ret.addData(new DataSetColumn(column.getName(), column.getLabel(), Integer.class), value);
+    }
+    return ret;
+  }
+}
@@ -0,0 +1,73 @@
+/*
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.module.eptsreports.reporting.evaluation;
+
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.openmrs.api.context.Context;
+import org.openmrs.module.eptsreports.reporting.cohort.cache.PersistentCohortCache;
+import org.openmrs.module.reporting.cohort.EvaluatedCohort;
+import org.openmrs.module.reporting.cohort.definition.CohortDefinition;
+import org.openmrs.module.reporting.evaluation.EvaluationContext;
+import org.openmrs.module.reporting.evaluation.parameter.Mapped;
+
+/**
+ * Takes the cohorts evaluated by the EPTS reports from the {@link PersistentCohortCache}, and
+ * keeps those it does not have. Cohort definitions evaluated with their mappings are looked up
+ * with the parameter values they are mapped to. Only cohorts evaluated by a run of an EPTS report
+ * are cached, those of other reports are left alone. Wired around the cohort definition service in
+ * config.xml.
+ */
+public class CohortCacheAdvice implements MethodInterceptor {
+
+  @Override
+  public Object invoke(MethodInvocation invocation) throws Throwable {
+    Object[] arguments = invocation.getArguments();
+    if (EvaluationSession.current() == null
+        || !invocation.getMethod().getName().equals("evaluate")
+        || arguments.length != 2
+        || !(arguments[1] instanceof EvaluationContext)) {
+      return invocation.proceed();
+    }
+    EvaluationContext context = (EvaluationContext) arguments[1];
+    Object definition = arguments[0];
+    if (definition instanceof Mapped) {
+      Mapped<?> mapped = (Mapped<?>) definition;
+      definition = mapped.getParameterizable();
+      if (definition instanceof CohortDefinition) {
+        context = EvaluationContext.cloneForChild(context, mapped);
+      }
+    }
+    if (!(definition instanceof CohortDefinition)) {
+      return invocation.proceed();
+    }
+
+    CohortDefinition cd = (CohortDefinition) definition;
+    PersistentCohortCache cache =
+        Context.getRegisteredComponents(PersistentCohortCache.class).get(0);
+    if (!cache.isCacheable(cd, context)) {
+      return invocation.proceed();
+    }
+    EvaluatedCohort cached = cache.get(cd, context);
+    if (cached != null) {
+      return cached;
+    }
+    Object ret = invocation.proceed();
+    if (ret instanceof EvaluatedCohort) {
+      cache.put(cd, (EvaluatedCohort) ret, context);
+    }
+    return ret;
+  }
+}
@@ -0,0 +1,257 @@
+/*
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.module.eptsreports.reporting.evaluation;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.openmrs.module.eptsreports.reporting.utils.EptsReportConstants;
+import org.openmrs.module.eptsreports.reporting.utils.EptsReportUtils;
+
+/**
+ * Lets a report run be stopped while it is evaluated. The token of a run is bound to the thread
+ * evaluating it, and the evaluation checks it between cohort and data set evaluations and in its
+ * loops over patients, failing with an {@link EvaluationCancelledException} once the run is
+ * cancelled. The statements running for the evaluation are registered with the token, to be
+ * cancelled on the database rather than left to finish.
+ */
+public class EvaluationCancellation {
+
+  private static final Log log = LogFactory.getLog(EvaluationCancellation.class);
+
+  private static final ThreadLocal<EvaluationCancellation> current =
+      new ThreadLocal<EvaluationCancellation>();
+
+  /** Cancels the statements that time out, started with the first timeout */
+  private static ScheduledExecutorService watchdog;
+
+  /** Cancels the statements running for the evaluation */
+  public interface Canceller {
+
+    void cancel() throws Exception;
+  }
+
+  private final Set<Canceller> cancellers = new LinkedHashSet<Canceller>();
+
+  private volatile String reason;
+
+  /** @return the token bound to this thread, or null */
+  public static EvaluationCancellation current() {
+    return current.get();
+  }
+
+  /**
+   * Binds a token to this thread
+   *
+   * @param cancellation the token, or null
+   * @return the token bound before, to be bound again with {@link #restore}
+   */
+  public static EvaluationCancellation bind(EvaluationCancellation cancellation) {
+    EvaluationCancellation ret = current.get();
+    current.set(cancellation);
+    return ret;
+  }
+
+  /** @param previous the token returned by {@link #bind} */
+  public static void restore(EvaluationCancellation previous) {
+    if (previous == null) {
+      current.remove();
+    } else {
+      current.set(previous);
+    }
+  }
+
+  /**
+   * Stops the evaluation of this thread if its run was cancelled
+   *
+   * @throws EvaluationCancelledException if the run was cancelled
+   */
+  public static void check() {
+    EvaluationCancellation cancellation = current.get();
+    if (cancellation != null) {
+      cancellation.checkCancelled();
+    }
+  }
+
+  /** @return whether the run of this thread was cancelled */
+  public static boolean isCurrentCancelled() {
+    EvaluationCancellation cancellation = current.get();
+    return cancellation != null && cancellation.isCancelled();
+  }
+
+  /**
+   * Registers a canceller with the token of this thread, if there is one
+   *
+   * @param canceller cancels the statements of this thread
+   * @return whether it was registered, to be unregistered when the statements ended
+   */
+  public static boolean register(Canceller canceller) {
+    EvaluationCancellation cancellation = current.get();
+    return cancellation != null && cancellation.add(canceller);
+  }
+
+  /** @param canceller a canceller registered from this thread */
+  public static void unregister(Canceller canceller) {
+    EvaluationCancellation cancellation = current.get();
+    if (cancellation != null) {
+      cancellation.remove(canceller);
+    }
+  }
+
+  /**
+   * Gets the limit on the duration of each statement of the reports, from {@link
+   * EptsReportConstants#GLOBAL_PROPERTY_QUERY_TIMEOUT_SECONDS}
+   *
+   * @return the limit in seconds, 0 for none
+   */
+  public static int getQueryTimeoutSeconds() {
+    return Math.max(
+        0,
+        EptsReportUtils.getIntegerGlobalProperty(
+            EptsReportConstants.GLOBAL_PROPERTY_QUERY_TIMEOUT_SECONDS, 0));
+  }
+
+  /**
+   * Cancels statements that run for too long, for the statements whose timeout can not be set
+   * through JDBC
+   *
+   * @param canceller cancels the statements
+   * @param seconds the timeout
+   * @return a handle to stop the timeout when the statements ended
+   */
+  public static Timeout startTimeout(final Canceller canceller, int seconds) {
+    final AtomicBoolean expired = new AtomicBoolean();
+    Runnable cancel =
+        new Runnable() {
+
+          @Override
+          public void run() {
+            expired.set(true);
+            cancel(canceller);
+          }
+        };
+    return new Timeout(getWatchdog().schedule(cancel, seconds, TimeUnit.SECONDS), expired);
+  }
+
+  /** Stops the thread cancelling the statements that time out, when the module stops */
+  public static synchronized void shutdown() {
+    if (watchdog != null) {
+      watchdog.shutdownNow();
+      watchdog = null;
+    }
+  }
+
+  private static synchronized ScheduledExecutorService getWatchdog() {
+    if (watchdog == null) {
+      watchdog =
+          Executors.newSingleThreadScheduledExecutor(
+              new ThreadFactory() {
+
+                @Override
+                public Thread newThread(Runnable runnable) {
+                  Thread ret = new Thread(runnable, "eptsreports-query-timeout");
+                  ret.setDaemon(true);
+                  return ret;
+                }
+              });
+    }
+    return watchdog;
+  }
+
+  /** @return whether the run was cancelled */
+  public boolean isCancelled() {
+    return reason != null;
+  }
+
+  /** @return why the run was cancelled, or null */
+  public String getReason() {
+    return reason;
+  }
+
+  /**
+   * Cancels the run, and the statements running for it
+   *
+   * @param reason why the run is cancelled
+   */
+  public void cancel(String reason) {
+    List<Canceller> running;
+    synchronized (this) {
+      if (this.reason != null) {
+        return;
+      }
+      this.reason = reason;
+      running = new ArrayList<Canceller>(cancellers);
+    }
+    for (Canceller canceller : running) {
+      cancel(canceller);
+    }
+  }
+
+  /** @throws EvaluationCancelledException if the run was cancelled */
+  public void checkCancelled() {
+    if (reason != null) {
+      throw new EvaluationCancelledException(reason);
+    }
+  }
+
+  private synchronized boolean add(Canceller canceller) {
+    return cancellers.add(canceller);
+  }
+
+  private synchronized void remove(Canceller canceller) {
+    cancellers.remove(canceller);
+  }
+
+  private static void cancel(Canceller canceller) {
+    try {
+      canceller.cancel();
+    } catch (Exception e) {
+      // the statement may have ended meanwhile
+      log.debug("Could not cancel statement", e);
+    }
+  }
+
+  /** A running timeout of {@link #startTimeout} */
+  public static class Timeout {
+
+    private final Future<?> future;
+
+    private final AtomicBoolean expired;
+
+    private Timeout(Future<?> future, AtomicBoolean expired) {
+      this.future = future;
+      this.expired = expired;
+    }
+
+    /** Stops the timeout, the statements having ended */
+    public void stop() {
+      future.cancel(false);
+    }
+
+    /** @return whether the statements were cancelled for running too long */
+    public boolean isExpired() {
+      return expired.get();
+    }
+  }
+}
@@ -0,0 +1,38 @@
+/*
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.module.eptsreports.reporting.evaluation;
+
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.openmrs.module.reporting.evaluation.EvaluationContext;
+
+/**
+ * Stops a cancelled run before each cohort and data set it evaluates, so a run cancelled between
+ * two statements does not start the next. Wired around the cohort and data set definition services
+ * in config.xml.
+ */
+public class EvaluationCancellationAdvice implements MethodInterceptor {
+
+  @Override
+  public Object invoke(MethodInvocation invocation) throws Throwable {
+    Object[] arguments = invocation.getArguments();
+    if (invocation.getMethod().getName().equals("evaluate")
+        && arguments.length == 2
+        && arguments[1] instanceof EvaluationContext) {
+      EvaluationCancellation.check();
+    }
+    return invocation.proceed();
+  }
+}
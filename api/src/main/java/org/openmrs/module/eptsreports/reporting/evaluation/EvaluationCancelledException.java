@@ -0,0 +1,28 @@
+/*
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.module.eptsreports.reporting.evaluation;
+
+import org.openmrs.api.APIException;
+
+/** Thrown by an evaluation whose run was cancelled */
+public class EvaluationCancelledException extends APIException {
+
+  private static final long serialVersionUID = 1L;
+
+  /** @param reason why the run was cancelled */
+  public EvaluationCancelledException(String reason) {
+    super("Report evaluation cancelled: " + reason);
+  }
+}
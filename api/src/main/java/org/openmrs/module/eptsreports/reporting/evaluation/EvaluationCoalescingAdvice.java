@@ -0,0 +1,104 @@
+/*
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.module.eptsreports.reporting.evaluation;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.Callable;
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.openmrs.Cohort;
+import org.openmrs.module.eptsreports.reporting.utils.DefinitionFingerprint;
+import org.openmrs.module.reporting.evaluation.EvaluationContext;
+import org.openmrs.module.reporting.evaluation.parameter.Mapped;
+import org.openmrs.module.reporting.evaluation.parameter.Parameterizable;
+
+/**
+ * Coalesces concurrent identical evaluations of reports and data sets. An evaluation with the same
+ * definition, parameter values and base cohort as one already running, in another request, waits
+ * for the running one and shares its result. Definitions are compared by {@link
+ * DefinitionFingerprint}, so a report requested while an overlapping one is running reuses the data
+ * sets they have in common, like the TX_CURR data set of the TX_CURR and MER quarterly reports.
+ * When the shared evaluation is cancelled, the runs that joined it evaluate on their own. Wired
+ * around the report and data set definition services in config.xml, inside {@link
+ * ReportAdmissionAdvice}: a run is admitted before it joins another, so it is listed and can be
+ * cancelled while it waits, which stops its wait and not the shared evaluation.
+ */
+public class EvaluationCoalescingAdvice implements MethodInterceptor {
+
+  private static final Log log = LogFactory.getLog(EvaluationCoalescingAdvice.class);
+
+  private static final SingleFlight<String, Object> FLIGHTS = new SingleFlight<String, Object>();
+
+  @Override
+  public Object invoke(final MethodInvocation invocation) throws Throwable {
+    Method method = invocation.getMethod();
+    Object[] arguments = invocation.getArguments();
+    if (!method.getName().equals("evaluate")
+        || arguments.length != 2
+        || arguments[0] == null
+        || !(arguments[1] instanceof EvaluationContext)) {
+      return invocation.proceed();
+    }
+
+    EvaluationContext context = (EvaluationContext) arguments[1];
+    Cohort baseCohort = context.getBaseCohort();
+    String key =
+        DefinitionFingerprint.of(
+            method.getDeclaringClass(),
+            arguments[0],
+            context.getParameterValues(),
+            baseCohort == null ? null : DefinitionFingerprint.ofIds(baseCohort.getMemberIds()));
+    if (FLIGHTS.isRunning(key)) {
+      log.info("Joining the running evaluation of " + getName(arguments[0]));
+    }
+    try {
+      return FLIGHTS.execute(
+          key,
+          new Callable<Object>() {
+
+            @Override
+            public Object call() throws Exception {
+              try {
+                return invocation.proceed();
+              } catch (Exception e) {
+                throw e;
+              } catch (Error e) {
+                throw e;
+              } catch (Throwable t) {
+                throw new IllegalStateException(t);
+              }
+            }
+          });
+    } catch (EvaluationCancelledException e) {
+      if (EvaluationCancellation.isCurrentCancelled()) {
+        throw e;
+      }
+      log.info("Joined evaluation of " + getName(arguments[0]) + " was cancelled, evaluating it");
+      return invocation.proceed();
+    }
+  }
+
+  private static String getName(Object definition) {
+    if (definition instanceof Mapped) {
+      definition = ((Mapped<?>) definition).getParameterizable();
+    }
+    if (definition instanceof Parameterizable) {
+      return ((Parameterizable) definition).getName();
+    }
+    return String.valueOf(definition);
+  }
+}
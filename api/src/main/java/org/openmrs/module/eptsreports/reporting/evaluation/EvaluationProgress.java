@@ -0,0 +1,497 @@
+/*
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.module.eptsreports.reporting.evaluation;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.openmrs.Location;
+import org.openmrs.api.context.Context;
+import org.openmrs.module.eptsreports.api.EptsReportsService;
+import org.openmrs.module.reporting.dataset.definition.DataSetDefinition;
+import org.openmrs.module.reporting.evaluation.parameter.Mapped;
+import org.openmrs.module.reporting.report.definition.ReportDefinition;
+
+/**
+ * The progress of a report run: the data sets evaluated out of those of the report, the cohort
+ * definitions evaluated, the columns counted, the patients processed by calculations and the
+ * entities held by the Hibernate session, as measured by the {@link EvaluationSession}. The time
+ * left is estimated from how long each data set took in the earlier runs of the report for the
+ * same location. Like {@link EvaluationCancellation}, the progress of a run is bound to the thread
+ * evaluating it, so the evaluators report to it without it being passed around.
+ */
+public class EvaluationProgress {
+
+  private static final Log log = LogFactory.getLog(EvaluationProgress.class);
+
+  private static final ThreadLocal<EvaluationProgress> current =
+      new ThreadLocal<EvaluationProgress>();
+
+  private static final long MILLIS_PER_MINUTE = 60 * 1000L;
+
+  private final String reportUuid;
+
+  private final String reportName;
+
+  private final int locationId;
+
+  private final AtomicLong patientsProcessed = new AtomicLong();
+
+  private final Map<String, EvaluationTiming> timings =
+      new LinkedHashMap<String, EvaluationTiming>();
+
+  private ReportDefinition reportDefinition;
+
+  private List<String> dataSets = Collections.emptyList();
+
+  private Map<String, EvaluationTiming> history = Collections.emptyMap();
+
+  private long startedAt;
+
+  /** How deep the data set being evaluated is nested in the data sets of the report */
+  private int depth;
+
+  private String dataSet;
+
+  private long dataSetStartedAt;
+
+  private int dataSetDefinitions;
+
+  private int definitionsEvaluated;
+
+  private int columns;
+
+  private int columnsCompleted;
+
+  private String calculation;
+
+  private int calculationPatients;
+
+  private int sessionEntities;
+
+  private int peakSessionEntities;
+
+  private long entitiesEvicted;
+
+  /**
+   * @param reportUuid the uuid of the report definition
+   * @param reportName the name of the report
+   * @param parameterValues the parameter values of the run, whose location the timings are kept
+   *     by
+   */
+  public EvaluationProgress(
+      String reportUuid, String reportName, Map<String, Object> parameterValues) {
+    this.reportUuid = reportUuid;
+    this.reportName = reportName;
+    Object location = parameterValues.get("location");
+    this.locationId = location instanceof Location ? ((Location) location).getLocationId() : 0;
+  }
+
+  /** @return the progress bound to this thread, or null */
+  public static EvaluationProgress current() {
+    return current.get();
+  }
+
+  /**
+   * Binds a progress to this thread
+   *
+   * @param progress the progress, or null
+   * @return the progress bound before, to be bound again with {@link #restore}
+   */
+  public static EvaluationProgress bind(EvaluationProgress progress) {
+    EvaluationProgress ret = current.get();
+    current.set(progress);
+    return ret;
+  }
+
+  /** @param previous the progress returned by {@link #bind} */
+  public static void restore(EvaluationProgress previous) {
+    if (previous == null) {
+      current.remove();
+    } else {
+      current.set(previous);
+    }
+  }
+
+  /** Counts a cohort definition evaluated by the run of this thread */
+  public static void definitionEvaluated() {
+    EvaluationProgress progress = current.get();
+    if (progress != null) {
+      progress.addDefinition();
+    }
+  }
+
+  /**
+   * Starts counting the columns of the data set evaluated by the run of this thread
+   *
+   * @param count the number of columns
+   */
+  public static void columnsStarted(int count) {
+    EvaluationProgress progress = current.get();
+    if (progress != null) {
+      progress.startColumns(count);
+    }
+  }
+
+  /** @param count how many more columns of the data set are counted */
+  public static void columnsCompleted(int count) {
+    EvaluationProgress progress = current.get();
+    if (progress != null) {
+      progress.addColumns(count);
+    }
+  }
+
+  /**
+   * Notes the calculation evaluated by the run of this thread
+   *
+   * @param name the name of the calculation cohort
+   * @param patients the number of patients it is evaluated for
+   */
+  public static void calculationStarted(String name, int patients) {
+    EvaluationProgress progress = current.get();
+    if (progress != null) {
+      progress.startCalculation(name, patients);
+    }
+  }
+
+  /** Counts a patient processed by a calculation of the run of this thread */
+  public static void patientProcessed() {
+    EvaluationProgress progress = current.get();
+    if (progress != null) {
+      progress.patientsProcessed.incrementAndGet();
+    }
+  }
+
+  /**
+   * Counts patients processed together by a calculation of the run of this thread
+   *
+   * @param patients the number of patients
+   */
+  public static void patientsProcessed(int patients) {
+    EvaluationProgress progress = current.get();
+    if (progress != null) {
+      progress.patientsProcessed.addAndGet(patients);
+    }
+  }
+
+  /**
+   * Notes the entities held by the session of the run of this thread
+   *
+   * @param entities the number of entities in the session before eviction
+   * @param evicted the number of them evicted
+   */
+  public static void sessionMeasured(int entities, int evicted) {
+    EvaluationProgress progress = current.get();
+    if (progress != null) {
+      progress.measureSession(entities, evicted);
+    }
+  }
+
+  /**
+   * Starts the run, with the timings of the earlier runs of the report for its location
+   *
+   * @param reportDefinition the report definition
+   */
+  public void started(ReportDefinition reportDefinition) {
+    Map<String, EvaluationTiming> history = Collections.emptyMap();
+    try {
+      history =
+          Context.getService(EptsReportsService.class).getEvaluationTimings(reportUuid, locationId);
+    } catch (RuntimeException e) {
+      log.warn("Could not read the timings of " + reportName, e);
+    }
+    started(reportDefinition, history);
+  }
+
+  /** Ends the run, averaging its timings into those of the earlier runs for its location */
+  public void completed() {
+    if (log.isInfoEnabled()) {
+      log.info(
+          reportName
+              + " evaluated in "
+              + (now() - getStartedAt()) / 1000
+              + " seconds, at most "
+              + getPeakSessionEntities()
+              + " entities in session, "
+              + getEntitiesEvicted()
+              + " evicted");
+    }
+    try {
+      Context.getService(EptsReportsService.class)
+          .saveEvaluationTimings(reportUuid, locationId, getTimings());
+    } catch (RuntimeException e) {
+      log.warn("Could not save the timings of " + reportName, e);
+    }
+  }
+
+  /**
+   * Starts the run
+   *
+   * @param reportDefinition the report definition
+   * @param history the timings of the earlier runs by data set name, as saved from {@link
+   *     #getTimings()}
+   */
+  public synchronized void started(
+      ReportDefinition reportDefinition, Map<String, EvaluationTiming> history) {
+    this.reportDefinition = reportDefinition;
+    this.dataSets = new ArrayList<String>(reportDefinition.getDataSetDefinitions().keySet());
+    this.history = new LinkedHashMap<String, EvaluationTiming>(history);
+    startedAt = now();
+  }
+
+  /**
+   * Starts the evaluation of a data set. The data sets evaluated while another is evaluated are
+   * counted as part of it.
+   *
+   * @param definition the data set definition, or its mapping in the report
+   */
+  public synchronized void dataSetStarted(Object definition) {
+    if (depth++ > 0) {
+      return;
+    }
+    dataSet = getDataSetName(definition);
+    dataSetStartedAt = now();
+    dataSetDefinitions = 0;
+    columns = 0;
+    columnsCompleted = 0;
+  }
+
+  /**
+   * Ends the evaluation of a data set
+   *
+   * @param completed whether it was evaluated, rather than failed
+   */
+  public synchronized void dataSetEnded(boolean completed) {
+    if (--depth > 0) {
+      return;
+    }
+    if (completed && dataSet != null) {
+      timings.put(dataSet, new EvaluationTiming(now() - dataSetStartedAt, dataSetDefinitions));
+      if (log.isInfoEnabled()) {
+        log.info(reportName + ": data set " + dataSet + " evaluated, " + getSummary());
+      }
+    }
+    dataSet = null;
+  }
+
+  public String getReportUuid() {
+    return reportUuid;
+  }
+
+  public String getReportName() {
+    return reportName;
+  }
+
+  /** @return the location of the run, 0 for all locations */
+  public int getLocationId() {
+    return locationId;
+  }
+
+  /** @return when the run started, in millis, or 0 if it did not */
+  public synchronized long getStartedAt() {
+    return startedAt;
+  }
+
+  /** @return the number of data sets of the report, 0 until the run starts */
+  public synchronized int getDataSetCount() {
+    return dataSets.size();
+  }
+
+  public synchronized int getDataSetsCompleted() {
+    return timings.size();
+  }
+
+  /** @return the name of the data set being evaluated, or null */
+  public synchronized String getDataSet() {
+    return dataSet;
+  }
+
+  public synchronized int getDefinitionsEvaluated() {
+    return definitionsEvaluated;
+  }
+
+  /** @return how many cohort definitions the earlier runs evaluated, 0 if unknown */
+  public synchronized int getDefinitionsPlanned() {
+    int ret = 0;
+    for (String name : dataSets) {
+      EvaluationTiming timing = history.get(name);
+      if (timing != null) {
+        ret += timing.getDefinitions();
+      }
+    }
+    return ret;
+  }
+
+  /** @return the number of columns of the data set being evaluated, 0 if unknown */
+  public synchronized int getColumns() {
+    return columns;
+  }
+
+  /** @return the columns of the data set being evaluated that are counted */
+  public synchronized int getColumnsCompleted() {
+    return columnsCompleted;
+  }
+
+  /** @return the name of the latest calculation evaluated, or null */
+  public synchronized String getCalculation() {
+    return calculation;
+  }
+
+  /** @return the number of patients of the latest calculation evaluated */
+  public synchronized int getCalculationPatients() {
+    return calculationPatients;
+  }
+
+  public long getPatientsProcessed() {
+    return patientsProcessed.get();
+  }
+
+  /** @return the entities the session held when last measured */
+  public synchronized int getSessionEntities() {
+    return sessionEntities;
+  }
+
+  /** @return the most entities the session held when measured */
+  public synchronized int getPeakSessionEntities() {
+    return peakSessionEntities;
+  }
+
+  /** @return the entities evicted from the session so far */
+  public synchronized long getEntitiesEvicted() {
+    return entitiesEvicted;
+  }
+
+  /** @return the timings of the data sets evaluated so far, by name */
+  public synchronized Map<String, EvaluationTiming> getTimings() {
+    return new LinkedHashMap<String, EvaluationTiming>(timings);
+  }
+
+  /**
+   * Estimates how long the run will still take from the timings of the earlier runs, the data sets
+   * they do not have counting as their average
+   *
+   * @return the estimated millis left, or -1 if the report never completed for the location
+   */
+  public synchronized long getEstimatedRemainingMillis() {
+    if (reportDefinition == null || history.isEmpty()) {
+      return -1;
+    }
+    long total = 0;
+    for (EvaluationTiming timing : history.values()) {
+      total += timing.getDurationMillis();
+    }
+    long average = total / history.size();
+    long ret = 0;
+    for (String name : dataSets) {
+      if (timings.containsKey(name)) {
+        continue;
+      }
+      EvaluationTiming timing = history.get(name);
+      long duration = timing == null ? average : timing.getDurationMillis();
+      if (name.equals(dataSet)) {
+        duration = Math.max(0, duration - (now() - dataSetStartedAt));
+      }
+      ret += duration;
+    }
+    return ret;
+  }
+
+  /**
+   * @return how much of the run is done in percent, from the estimated time left or else from the
+   *     data sets evaluated
+   */
+  public synchronized int getPercentDone() {
+    if (dataSets.isEmpty()) {
+      return 0;
+    }
+    long remaining = getEstimatedRemainingMillis();
+    if (remaining < 0) {
+      return timings.size() * 100 / dataSets.size();
+    }
+    long elapsed = now() - startedAt;
+    return elapsed + remaining == 0 ? 100 : (int) (elapsed * 100 / (elapsed + remaining));
+  }
+
+  @Override
+  public synchronized String toString() {
+    return reportName + ": " + getSummary();
+  }
+
+  /** @return the current time in millis, overridden by the tests */
+  protected long now() {
+    return System.currentTimeMillis();
+  }
+
+  private synchronized void addDefinition() {
+    definitionsEvaluated++;
+    dataSetDefinitions++;
+  }
+
+  private synchronized void startColumns(int count) {
+    columns = count;
+    columnsCompleted = 0;
+  }
+
+  private synchronized void addColumns(int count) {
+    columnsCompleted += count;
+  }
+
+  private synchronized void startCalculation(String name, int patients) {
+    calculation = name;
+    calculationPatients = patients;
+  }
+
+  private synchronized void measureSession(int entities, int evicted) {
+    sessionEntities = entities;
+    peakSessionEntities = Math.max(peakSessionEntities, entities);
+    entitiesEvicted += evicted;
+  }
+
+  private String getSummary() {
+    StringBuilder ret = new StringBuilder();
+    ret.append(timings.size()).append(" of ").append(dataSets.size()).append(" data sets, ");
+    ret.append(getPercentDone()).append("% done");
+    long remaining = getEstimatedRemainingMillis();
+    if (remaining >= 0) {
+      ret.append(", about ")
+          .append((remaining + MILLIS_PER_MINUTE - 1) / MILLIS_PER_MINUTE)
+          .append(" min left");
+    }
+    return ret.toString();
+  }
+
+  /** @return the name of a data set in the report, or else the name of its definition */
+  private String getDataSetName(Object definition) {
+    Object parameterizable =
+        definition instanceof Mapped ? ((Mapped<?>) definition).getParameterizable() : definition;
+    if (reportDefinition != null) {
+      for (Map.Entry<String, Mapped<? extends DataSetDefinition>> entry :
+          reportDefinition.getDataSetDefinitions().entrySet()) {
+        if (entry.getValue() == definition
+            || entry.getValue().getParameterizable() == parameterizable) {
+          return entry.getKey();
+        }
+      }
+    }
+    return parameterizable instanceof DataSetDefinition
+        ? ((DataSetDefinition) parameterizable).getName()
+        : null;
+  }
+}
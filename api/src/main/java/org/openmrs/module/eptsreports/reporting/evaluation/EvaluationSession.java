@@ -0,0 +1,183 @@
+/*
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.module.eptsreports.reporting.evaluation;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Set;
+import org.openmrs.Encounter;
+import org.openmrs.Obs;
+import org.openmrs.PatientProgram;
+import org.openmrs.PatientState;
+
+/**
+ * Keeps the Hibernate session of a report run from growing with the run. While the run is
+ * evaluated the session is read only and only flushed by transactions that write, so the entities
+ * loaded by the evaluators are neither snapshotted nor dirty checked before every query. Once the
+ * outermost cohort definition of the run is evaluated, its result being patient ids only, the
+ * patient data it loaded is evicted, and the number of entities the session held is reported to
+ * the {@link EvaluationProgress} of the run. The patient data already in the session when the run
+ * started is kept. When the run ends, the other entities it loaded, which are still in the session,
+ * are made writable again. Like {@link EvaluationCancellation}, the session of a run is bound to
+ * the thread evaluating it.
+ */
+public class EvaluationSession {
+
+  /** The entities evicted after each definition, all patient data */
+  public static final Collection<String> EVICTED_ENTITIES =
+      Collections.unmodifiableList(
+          Arrays.asList(
+              Obs.class.getName(),
+              Encounter.class.getName(),
+              PatientProgram.class.getName(),
+              PatientState.class.getName()));
+
+  private static final ThreadLocal<EvaluationSession> current =
+      new ThreadLocal<EvaluationSession>();
+
+  /** The session a run is evaluated in */
+  public interface SessionControl {
+
+    /**
+     * @param readOnly true to make the session read only and not flushed, false to restore how it
+     *     was before
+     */
+    void setReadOnly(boolean readOnly);
+
+    /** @return the number of entities in the session */
+    int getEntityCount();
+
+    /**
+     * @param entityNames the names of the entities, or null for all entities
+     * @return the keys of the entities of these names in the session, in a new set
+     */
+    Set<Object> getEntityKeys(Collection<String> entityNames);
+
+    /**
+     * @param keys keys returned by {@link #getEntityKeys}
+     * @return the number of entities evicted, those no longer in the session being skipped
+     */
+    int evict(Collection<Object> keys);
+
+    /**
+     * Makes entities loaded while the session was read only writable again
+     *
+     * @param keys keys returned by {@link #getEntityKeys}, those no longer in the session being
+     *     skipped
+     */
+    void setWritable(Collection<Object> keys);
+  }
+
+  private final SessionControl control;
+
+  /** How deep the cohort definition being evaluated is nested */
+  private int depth;
+
+  private boolean started;
+
+  /** The keys of the entities in the session when the run started, which are left as they were */
+  private Set<Object> keptKeys = Collections.emptySet();
+
+  /** @param control the session of the run */
+  public EvaluationSession(SessionControl control) {
+    this.control = control;
+  }
+
+  /** @return the session bound to this thread, or null */
+  public static EvaluationSession current() {
+    return current.get();
+  }
+
+  /**
+   * Binds a session to this thread
+   *
+   * @param session the session, or null
+   * @return the session bound before, to be bound again with {@link #restore}
+   */
+  public static EvaluationSession bind(EvaluationSession session) {
+    EvaluationSession ret = current.get();
+    current.set(session);
+    return ret;
+  }
+
+  /** @param previous the session returned by {@link #bind} */
+  public static void restore(EvaluationSession previous) {
+    if (previous == null) {
+      current.remove();
+    } else {
+      current.set(previous);
+    }
+  }
+
+  /** Notes the start of a cohort definition evaluated by the run of this thread */
+  public static void definitionStarted() {
+    EvaluationSession session = current.get();
+    if (session != null) {
+      session.depth++;
+    }
+  }
+
+  /**
+   * Notes the end of a cohort definition evaluated by the run of this thread, evicting the patient
+   * data loaded once the outermost one ends
+   */
+  public static void definitionEnded() {
+    EvaluationSession session = current.get();
+    if (session != null && --session.depth == 0 && session.started) {
+      session.evict();
+    }
+  }
+
+  /** Makes the session read only for the run */
+  public void started() {
+    keptKeys = control.getEntityKeys(null);
+    control.setReadOnly(true);
+    started = true;
+  }
+
+  /**
+   * Restores the session as it was before the run, evicting the patient data still loaded and
+   * making the other entities loaded by the run writable. Does nothing if the run did not start or
+   * already ended.
+   */
+  public void ended() {
+    if (!started) {
+      return;
+    }
+    started = false;
+    depth = 0;
+    try {
+      evict();
+    } finally {
+      try {
+        Set<Object> loaded = control.getEntityKeys(null);
+        loaded.removeAll(keptKeys);
+        control.setWritable(loaded);
+      } finally {
+        keptKeys = Collections.emptySet();
+        control.setReadOnly(false);
+      }
+    }
+  }
+
+  private void evict() {
+    int entities = control.getEntityCount();
+    Set<Object> keys = control.getEntityKeys(EVICTED_ENTITIES);
+    keys.removeAll(keptKeys);
+    int evicted = control.evict(keys);
+    EvaluationProgress.sessionMeasured(entities, evicted);
+  }
+}
@@ -0,0 +1,44 @@
+/*
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.module.eptsreports.reporting.evaluation;
+
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.openmrs.module.reporting.evaluation.EvaluationContext;
+
+/**
+ * Reports the cohort definitions evaluated by a run to its {@link EvaluationSession}, for the
+ * patient data loaded to be evicted after each. Wired around the cohort definition service in
+ * config.xml.
+ */
+public class EvaluationSessionAdvice implements MethodInterceptor {
+
+  @Override
+  public Object invoke(MethodInvocation invocation) throws Throwable {
+    Object[] arguments = invocation.getArguments();
+    if (EvaluationSession.current() == null
+        || !invocation.getMethod().getName().equals("evaluate")
+        || arguments.length != 2
+        || !(arguments[1] instanceof EvaluationContext)) {
+      return invocation.proceed();
+    }
+    EvaluationSession.definitionStarted();
+    try {
+      return invocation.proceed();
+    } finally {
+      EvaluationSession.definitionEnded();
+    }
+  }
+}
@@ -0,0 +1,61 @@
+/*
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.module.eptsreports.reporting.evaluation;
+
+/**
+ * How long a data set of a report took to evaluate, and how many cohort definitions it evaluated,
+ * averaged over the runs of the report for a location
+ */
+public class EvaluationTiming {
+
+  private final long durationMillis;
+
+  private final int definitions;
+
+  /**
+   * @param durationMillis how long the data set took to evaluate
+   * @param definitions how many cohort definitions it evaluated
+   */
+  public EvaluationTiming(long durationMillis, int definitions) {
+    this.durationMillis = durationMillis;
+    this.definitions = definitions;
+  }
+
+  public long getDurationMillis() {
+    return durationMillis;
+  }
+
+  public int getDefinitions() {
+    return definitions;
+  }
+
+  /**
+   * Averages this timing with a later one, weighting the later one by a quarter so that the
+   * average follows changes in the data of the location
+   *
+   * @param later the timing of a later run
+   * @return the average
+   */
+  public EvaluationTiming average(EvaluationTiming later) {
+    return new EvaluationTiming(
+        Math.round((durationMillis * 3 + later.durationMillis) / 4.0),
+        (int) Math.round((definitions * 3 + later.definitions) / 4.0));
+  }
+
+  @Override
+  public String toString() {
+    return durationMillis + " ms, " + definitions + " definitions";
+  }
+}
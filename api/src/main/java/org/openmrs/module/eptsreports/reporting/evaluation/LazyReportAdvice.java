@@ -0,0 +1,70 @@
+/*
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.module.eptsreports.reporting.evaluation;
+
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.openmrs.api.context.Context;
+import org.openmrs.module.eptsreports.reporting.reports.manager.EptsReportManager;
+import org.openmrs.module.eptsreports.reporting.reports.manager.LazyReportSetup;
+import org.openmrs.module.eptsreports.reporting.utils.EptsReportUtils;
+import org.openmrs.module.reporting.evaluation.EvaluationContext;
+import org.openmrs.module.reporting.evaluation.parameter.Mapped;
+import org.openmrs.module.reporting.report.definition.ReportDefinition;
+
+/**
+ * Sets up the EPTS reports registered with the {@link LazyReportSetup} on their first evaluation,
+ * and evaluates the full definition in place of the saved stub. Wired around the report definition
+ * service in config.xml, ahead of the other advice.
+ */
+public class LazyReportAdvice implements MethodInterceptor {
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public Object invoke(MethodInvocation invocation) throws Throwable {
+    Object[] arguments = invocation.getArguments();
+    if (!invocation.getMethod().getName().equals("evaluate")
+        || arguments.length != 2
+        || !(arguments[1] instanceof EvaluationContext)) {
+      return invocation.proceed();
+    }
+    Object definition = arguments[0];
+    if (definition instanceof Mapped) {
+      definition = ((Mapped<?>) definition).getParameterizable();
+    }
+    if (!(definition instanceof ReportDefinition)) {
+      return invocation.proceed();
+    }
+    String uuid = ((ReportDefinition) definition).getUuid();
+    LazyReportSetup lazyReportSetup =
+        Context.getRegisteredComponents(LazyReportSetup.class).get(0);
+    if (!lazyReportSetup.isPending(uuid)) {
+      return invocation.proceed();
+    }
+    for (EptsReportManager manager : Context.getRegisteredComponents(EptsReportManager.class)) {
+      if (uuid.equals(manager.getUuid())) {
+        lazyReportSetup.setUp(manager);
+      }
+    }
+
+    ReportDefinition full = EptsReportUtils.findReportDefinition(uuid);
+    if (arguments[0] instanceof Mapped) {
+      ((Mapped<ReportDefinition>) arguments[0]).setParameterizable(full);
+    } else {
+      arguments[0] = full;
+    }
+    return invocation.proceed();
+  }
+}
@@ -0,0 +1,136 @@
+/*
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.module.eptsreports.reporting.evaluation;
+
+import java.util.HashMap;
+import java.util.Map;
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.openmrs.api.context.Context;
+import org.openmrs.module.eptsreports.reporting.evaluation.ReportAdmissionController.Priority;
+import org.openmrs.module.eptsreports.reporting.reports.manager.EptsReportManager;
+import org.openmrs.module.reporting.evaluation.EvaluationContext;
+import org.openmrs.module.reporting.evaluation.parameter.Mapped;
+import org.openmrs.module.reporting.report.ReportRequest;
+import org.openmrs.module.reporting.report.definition.ReportDefinition;
+
+/**
+ * Runs the evaluations of the EPTS reports through the {@link ReportAdmissionController}, with the
+ * weight of their report manager. Report requests are admitted around the report service's
+ * runReport, before it opens the transaction of the run, so a queued run waits without holding a
+ * connection: requests run from the reporting module UI are interactive, scheduled or low priority
+ * requests are batch runs. Evaluations of the report definition service that do not come from a
+ * request are admitted as batch runs on their own, within the transaction of their caller. The
+ * cancellation token of the run is bound to the evaluating thread, so the run can be cancelled
+ * while it waits or runs, and so is its {@link EvaluationProgress}. Wired around the report
+ * definition service and the report service in config.xml.
+ */
+public class ReportAdmissionAdvice implements MethodInterceptor {
+
+  /** The run admitted for the report request being run by the thread */
+  private static final ThreadLocal<ReportRunScope> admitted = new ThreadLocal<ReportRunScope>();
+
+  @Override
+  public Object invoke(MethodInvocation invocation) throws Throwable {
+    Object[] arguments = invocation.getArguments();
+    if (invocation.getMethod().getName().equals("runReport")
+        && arguments.length == 1
+        && arguments[0] instanceof ReportRequest) {
+      return runReport(invocation, (ReportRequest) arguments[0]);
+    }
+    if (!invocation.getMethod().getName().equals("evaluate")
+        || arguments.length != 2
+        || !(arguments[1] instanceof EvaluationContext)) {
+      return invocation.proceed();
+    }
+    Object definition = arguments[0];
+    if (definition instanceof Mapped) {
+      definition = ((Mapped<?>) definition).getParameterizable();
+    }
+    EptsReportManager manager =
+        definition instanceof ReportDefinition
+            ? getReportManagers().get(((ReportDefinition) definition).getUuid())
+            : null;
+    if (manager == null) {
+      return invocation.proceed();
+    }
+    ReportRunScope scope = admitted.get();
+    if (scope != null) {
+      return evaluate(invocation, scope, (ReportDefinition) definition);
+    }
+
+    EvaluationContext context = (EvaluationContext) arguments[1];
+    scope = newScope(manager, Priority.BATCH, context.getParameterValues());
+    try {
+      scope.open();
+      return evaluate(invocation, scope, (ReportDefinition) definition);
+    } finally {
+      scope.close();
+    }
+  }
+
+  private Object runReport(MethodInvocation invocation, ReportRequest request) throws Throwable {
+    Mapped<ReportDefinition> mapped = request.getReportDefinition();
+    EptsReportManager manager =
+        mapped == null || mapped.getParameterizable() == null
+            ? null
+            : getReportManagers().get(mapped.getParameterizable().getUuid());
+    if (manager == null || admitted.get() != null) {
+      return invocation.proceed();
+    }
+    boolean batch =
+        request.getSchedule() != null
+            || request.getPriority() == ReportRequest.Priority.LOW
+            || request.getPriority() == ReportRequest.Priority.LOWEST;
+    ReportRunScope scope =
+        newScope(
+            manager, batch ? Priority.BATCH : Priority.INTERACTIVE, mapped.getParameterMappings());
+    try {
+      admitted.set(scope);
+      scope.open();
+      return invocation.proceed();
+    } finally {
+      admitted.remove();
+      scope.close();
+    }
+  }
+
+  private Object evaluate(
+      MethodInvocation invocation, ReportRunScope scope, ReportDefinition definition)
+      throws Throwable {
+    scope.getProgress().started(definition);
+    scope.started();
+    Object ret = invocation.proceed();
+    scope.ended();
+    scope.getProgress().completed();
+    return ret;
+  }
+
+  private ReportRunScope newScope(
+      EptsReportManager manager, Priority priority, Map<String, Object> parameterValues) {
+    EvaluationProgress progress =
+        new EvaluationProgress(manager.getUuid(), manager.getName(), parameterValues);
+    return new ReportRunScope(
+        manager.getName(), manager.getWeight(), priority, new EvaluationCancellation(), progress);
+  }
+
+  private Map<String, EptsReportManager> getReportManagers() {
+    Map<String, EptsReportManager> ret = new HashMap<String, EptsReportManager>();
+    for (EptsReportManager manager : Context.getRegisteredComponents(EptsReportManager.class)) {
+      ret.put(manager.getUuid(), manager);
+    }
+    return ret;
+  }
+}
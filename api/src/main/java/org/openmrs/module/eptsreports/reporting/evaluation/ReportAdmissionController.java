@@ -0,0 +1,377 @@
+/*
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.module.eptsreports.reporting.evaluation;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.openmrs.api.APIException;
+import org.openmrs.module.eptsreports.reporting.utils.EptsReportConstants;
+import org.openmrs.module.eptsreports.reporting.utils.EptsReportUtils;
+import org.springframework.stereotype.Component;
+
+/**
+ * Limits how many reports run at once. Each report has a weight class with its own number of
+ * concurrent runs, and runs over the limit wait in a queue where interactive runs go before batch
+ * ones. No run starts while the free heap is under the configured headroom, unless nothing else is
+ * running, and a run is rejected when its queue is full or it waited too long. Each run has an
+ * {@link EvaluationCancellation} token, with which it can be cancelled while waiting or running.
+ */
+@Component
+public class ReportAdmissionController {
+
+  private static final Log log = LogFactory.getLog(ReportAdmissionController.class);
+
+  private static final long MILLIS_PER_MINUTE = 60L * 1000L;
+
+  private static final long BYTES_PER_MB = 1024L * 1024L;
+
+  /** How often waiting runs check the free heap again */
+  private static final long HEAP_CHECK_MILLIS = 1000L;
+
+  /** The weight of a report, from the cost of its evaluation */
+  public enum Weight {
+    LIGHT(EptsReportConstants.GLOBAL_PROPERTY_CONCURRENT_LIGHT_REPORTS, 4),
+    MEDIUM(EptsReportConstants.GLOBAL_PROPERTY_CONCURRENT_MEDIUM_REPORTS, 2),
+    HEAVY(EptsReportConstants.GLOBAL_PROPERTY_CONCURRENT_HEAVY_REPORTS, 1);
+
+    private final String concurrencyProperty;
+
+    private final int defaultConcurrency;
+
+    Weight(String concurrencyProperty, int defaultConcurrency) {
+      this.concurrencyProperty = concurrencyProperty;
+      this.defaultConcurrency = defaultConcurrency;
+    }
+  }
+
+  /** The priority of a run, interactive runs being started first */
+  public enum Priority {
+    /** A run with a user waiting for it */
+    INTERACTIVE,
+    BATCH
+  }
+
+  /** A run admitted or waiting to be admitted */
+  public static class Ticket implements Comparable<Ticket> {
+
+    private final String name;
+
+    private final Weight weight;
+
+    private final Priority priority;
+
+    private final long sequence;
+
+    private final long queuedAt;
+
+    private final EvaluationCancellation cancellation;
+
+    private volatile long startedAt;
+
+    private volatile EvaluationProgress progress;
+
+    private Ticket(
+        String name,
+        Weight weight,
+        Priority priority,
+        long sequence,
+        long queuedAt,
+        EvaluationCancellation cancellation) {
+      this.name = name;
+      this.weight = weight;
+      this.priority = priority;
+      this.sequence = sequence;
+      this.queuedAt = queuedAt;
+      this.cancellation = cancellation;
+    }
+
+    /** @return the id of the run, unique until restart */
+    public long getId() {
+      return sequence;
+    }
+
+    public String getName() {
+      return name;
+    }
+
+    public Weight getWeight() {
+      return weight;
+    }
+
+    public Priority getPriority() {
+      return priority;
+    }
+
+    /** @return when the run was queued, in millis */
+    public long getQueuedAt() {
+      return queuedAt;
+    }
+
+    /** @return when the run started, in millis, or 0 if it is waiting */
+    public long getStartedAt() {
+      return startedAt;
+    }
+
+    public EvaluationCancellation getCancellation() {
+      return cancellation;
+    }
+
+    /** @return the progress of the run, or null until it starts */
+    public EvaluationProgress getProgress() {
+      return progress;
+    }
+
+    void setProgress(EvaluationProgress progress) {
+      this.progress = progress;
+    }
+
+    @Override
+    public int compareTo(Ticket other) {
+      int ret = priority.compareTo(other.priority);
+      return ret != 0 ? ret : Long.compare(sequence, other.sequence);
+    }
+  }
+
+  private final Map<Weight, PriorityQueue<Ticket>> queues =
+      new EnumMap<Weight, PriorityQueue<Ticket>>(Weight.class);
+
+  private final Map<Weight, Integer> running = new EnumMap<Weight, Integer>(Weight.class);
+
+  private final Set<Ticket> admitted = new LinkedHashSet<Ticket>();
+
+  /** Average duration of the runs of each weight, in millis */
+  private final Map<Weight, Long> averageDurations = new EnumMap<Weight, Long>(Weight.class);
+
+  private long sequence;
+
+  public ReportAdmissionController() {
+    for (Weight weight : Weight.values()) {
+      queues.put(weight, new PriorityQueue<Ticket>());
+      running.put(weight, 0);
+    }
+  }
+
+  /**
+   * Waits until a run can start
+   *
+   * @param name the name of the report
+   * @param weight the weight of the report
+   * @param priority the priority of the run
+   * @return the ticket of the run, to be released when it ends
+   * @throws APIException if the run is rejected
+   * @throws InterruptedException if interrupted while waiting
+   */
+  public Ticket admit(String name, Weight weight, Priority priority) throws InterruptedException {
+    return admit(name, weight, priority, new EvaluationCancellation());
+  }
+
+  /**
+   * Waits until a run can start
+   *
+   * @param name the name of the report
+   * @param weight the weight of the report
+   * @param priority the priority of the run
+   * @param cancellation the token of the run
+   * @return the ticket of the run, to be released when it ends
+   * @throws APIException if the run is rejected
+   * @throws EvaluationCancelledException if the run is cancelled while waiting
+   * @throws InterruptedException if interrupted while waiting
+   */
+  public Ticket admit(
+      String name, Weight weight, Priority priority, EvaluationCancellation cancellation)
+      throws InterruptedException {
+    // read once and outside the lock, as global properties are read from the database
+    int maxQueued = getMaxQueued();
+    long maxWait = getMaxWaitMillis();
+    int concurrency = getConcurrency(weight);
+    long minFreeHeapBytes = getMinFreeHeapBytes();
+    synchronized (this) {
+      cancellation.checkCancelled();
+      PriorityQueue<Ticket> queue = queues.get(weight);
+      if (queue.size() >= maxQueued) {
+        throw new APIException(
+            "Too many " + weight + " reports waiting to run, " + name + " was not started");
+      }
+      Ticket ticket = new Ticket(name, weight, priority, sequence++, now(), cancellation);
+      queue.add(ticket);
+      try {
+        if (!canStart(ticket, concurrency, minFreeHeapBytes)) {
+          log.info(
+              "Report "
+                  + name
+                  + " queued, estimated wait "
+                  + getEstimatedWaitMillis(ticket, concurrency) / MILLIS_PER_MINUTE
+                  + " minutes");
+        }
+        while (!canStart(ticket, concurrency, minFreeHeapBytes)) {
+          cancellation.checkCancelled();
+          long waited = now() - ticket.queuedAt;
+          if (waited >= maxWait) {
+            throw new APIException(
+                "Report " + name + " waited " + waited / MILLIS_PER_MINUTE + " minutes to run");
+          }
+          wait(Math.min(HEAP_CHECK_MILLIS, maxWait - waited));
+        }
+      } finally {
+        queue.remove(ticket);
+        notifyAll();
+      }
+      running.put(weight, running.get(weight) + 1);
+      admitted.add(ticket);
+      ticket.startedAt = now();
+      return ticket;
+    }
+  }
+
+  /**
+   * Ends a run, letting the next one start
+   *
+   * @param ticket the ticket of the run
+   */
+  public synchronized void release(Ticket ticket) {
+    Weight weight = ticket.weight;
+    running.put(weight, running.get(weight) - 1);
+    admitted.remove(ticket);
+    long duration = now() - ticket.startedAt;
+    Long average = averageDurations.get(weight);
+    averageDurations.put(weight, average == null ? duration : (average * 3 + duration) / 4);
+    notifyAll();
+  }
+
+  /**
+   * Estimates how long a run will wait, from the average duration of the runs of its weight, the
+   * runs ahead of it in the queue and the concurrent runs allowed
+   *
+   * @param ticket a waiting run
+   * @return the estimated wait in millis, 0 when no run of the weight ended yet
+   */
+  public long getEstimatedWaitMillis(Ticket ticket) {
+    int concurrency = getConcurrency(ticket.weight);
+    synchronized (this) {
+      return getEstimatedWaitMillis(ticket, concurrency);
+    }
+  }
+
+  private long getEstimatedWaitMillis(Ticket ticket, int concurrency) {
+    Long average = averageDurations.get(ticket.weight);
+    if (average == null) {
+      return 0;
+    }
+    int ahead = running.get(ticket.weight);
+    for (Ticket other : queues.get(ticket.weight)) {
+      if (other.compareTo(ticket) < 0) {
+        ahead++;
+      }
+    }
+    int slots = Math.max(1, concurrency);
+    return (ahead / slots) * average;
+  }
+
+  /** @return the runs that are running, then the waiting runs in the order they will start */
+  public synchronized List<Ticket> getTickets() {
+    List<Ticket> ret = new ArrayList<Ticket>(admitted);
+    for (PriorityQueue<Ticket> queue : queues.values()) {
+      List<Ticket> waiting = new ArrayList<Ticket>(queue);
+      Collections.sort(waiting);
+      ret.addAll(waiting);
+    }
+    return ret;
+  }
+
+  /**
+   * Cancels a run, which leaves the queue or stops at its next check
+   *
+   * @param id the id of the run
+   * @param reason why it is cancelled
+   * @return whether the run was found
+   */
+  public boolean cancel(long id, String reason) {
+    Ticket found = null;
+    for (Ticket ticket : getTickets()) {
+      if (ticket.getId() == id) {
+        found = ticket;
+      }
+    }
+    if (found == null) {
+      return false;
+    }
+    // outside the lock, as cancelling statements goes to the database
+    found.cancellation.cancel(reason);
+    synchronized (this) {
+      notifyAll();
+    }
+    return true;
+  }
+
+  /** @return the number of runs of the weight that are running */
+  public synchronized int getRunning(Weight weight) {
+    return running.get(weight);
+  }
+
+  private boolean canStart(Ticket ticket, int concurrency, long minFreeHeapBytes) {
+    if (queues.get(ticket.weight).peek() != ticket || running.get(ticket.weight) >= concurrency) {
+      return false;
+    }
+    return getFreeHeapBytes() >= minFreeHeapBytes || isIdle();
+  }
+
+  private boolean isIdle() {
+    for (Integer count : running.values()) {
+      if (count > 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  protected int getConcurrency(Weight weight) {
+    return EptsReportUtils.getIntegerGlobalProperty(
+        weight.concurrencyProperty, weight.defaultConcurrency);
+  }
+
+  protected int getMaxQueued() {
+    return EptsReportUtils.getIntegerGlobalProperty(
+        EptsReportConstants.GLOBAL_PROPERTY_MAX_QUEUED_REPORTS, 20);
+  }
+
+  protected long getMaxWaitMillis() {
+    return EptsReportUtils.getIntegerGlobalProperty(
+            EptsReportConstants.GLOBAL_PROPERTY_MAX_REPORT_WAIT_MINUTES, 60)
+        * MILLIS_PER_MINUTE;
+  }
+
+  protected long getMinFreeHeapBytes() {
+    return EptsReportUtils.getIntegerGlobalProperty(
+            EptsReportConstants.GLOBAL_PROPERTY_MIN_FREE_HEAP_MB, 256)
+        * BYTES_PER_MB;
+  }
+
+  protected long getFreeHeapBytes() {
+    Runtime runtime = Runtime.getRuntime();
+    return runtime.maxMemory() - (runtime.totalMemory() - runtime.freeMemory());
+  }
+
+  protected long now() {
+    return System.currentTimeMillis();
+  }
+}
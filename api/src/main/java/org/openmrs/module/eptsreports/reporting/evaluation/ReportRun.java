@@ -0,0 +1,211 @@
+/*
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.module.eptsreports.reporting.evaluation;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import org.openmrs.User;
+
+/**
+ * A run of a report submitted to the {@link ReportRunner}, holding the results of its data sets as
+ * they are evaluated, in the order of the report definition
+ */
+public class ReportRun {
+
+  /** The state of a run */
+  public enum Status {
+    /** Waiting to be admitted */
+    QUEUED,
+    RUNNING,
+    COMPLETED,
+    FAILED,
+    CANCELLED
+  }
+
+  private final String id = UUID.randomUUID().toString();
+
+  private final String reportUuid;
+
+  private final String reportName;
+
+  private final Map<String, Object> parameterValues;
+
+  private final boolean patientIds;
+
+  private final User submitter;
+
+  private final Date dateSubmitted = new Date();
+
+  private final EvaluationCancellation cancellation = new EvaluationCancellation();
+
+  private final EvaluationProgress progress;
+
+  private final List<ReportRunDataSet> dataSets = new ArrayList<ReportRunDataSet>();
+
+  private int dataSetCount;
+
+  private Status status = Status.QUEUED;
+
+  private Date dateStarted;
+
+  private Date dateFinished;
+
+  private String error;
+
+  /**
+   * @param reportUuid the uuid of the report definition
+   * @param reportName the name of the report
+   * @param parameterValues the parameter values of the report
+   * @param patientIds whether the ids of the patients counted in each cell are kept
+   * @param submitter the user who submitted the run
+   */
+  public ReportRun(
+      String reportUuid,
+      String reportName,
+      Map<String, Object> parameterValues,
+      boolean patientIds,
+      User submitter) {
+    this.reportUuid = reportUuid;
+    this.reportName = reportName;
+    this.parameterValues =
+        Collections.unmodifiableMap(new LinkedHashMap<String, Object>(parameterValues));
+    this.patientIds = patientIds;
+    this.submitter = submitter;
+    this.progress = new EvaluationProgress(reportUuid, reportName, this.parameterValues);
+  }
+
+  public String getId() {
+    return id;
+  }
+
+  public String getReportUuid() {
+    return reportUuid;
+  }
+
+  public String getReportName() {
+    return reportName;
+  }
+
+  public Map<String, Object> getParameterValues() {
+    return parameterValues;
+  }
+
+  public boolean isPatientIds() {
+    return patientIds;
+  }
+
+  public User getSubmitter() {
+    return submitter;
+  }
+
+  public Date getDateSubmitted() {
+    return dateSubmitted;
+  }
+
+  public synchronized Status getStatus() {
+    return status;
+  }
+
+  public synchronized Date getDateStarted() {
+    return dateStarted;
+  }
+
+  public synchronized Date getDateFinished() {
+    return dateFinished;
+  }
+
+  /** @return the token that cancels the run */
+  public EvaluationCancellation getCancellation() {
+    return cancellation;
+  }
+
+  public EvaluationProgress getProgress() {
+    return progress;
+  }
+
+  /** @return why the run failed or was cancelled, or null */
+  public synchronized String getError() {
+    return error;
+  }
+
+  /** @return the number of data sets of the report, 0 until the run starts */
+  public synchronized int getDataSetCount() {
+    return dataSetCount;
+  }
+
+  /** @return the data sets evaluated so far */
+  public synchronized List<ReportRunDataSet> getDataSets() {
+    return new ArrayList<ReportRunDataSet>(dataSets);
+  }
+
+  public synchronized boolean isFinished() {
+    return status == Status.COMPLETED || status == Status.FAILED || status == Status.CANCELLED;
+  }
+
+  /**
+   * Waits for a data set to be evaluated
+   *
+   * @param index the position of the data set among the evaluated data sets
+   * @param timeoutMillis how long to wait at most
+   * @return the data set, or null if the run finished without it or the timeout elapsed
+   * @throws InterruptedException if interrupted while waiting
+   */
+  public synchronized ReportRunDataSet awaitDataSet(int index, long timeoutMillis)
+      throws InterruptedException {
+    long deadline = System.currentTimeMillis() + timeoutMillis;
+    while (dataSets.size() <= index && !isFinished()) {
+      long remaining = deadline - System.currentTimeMillis();
+      if (remaining <= 0) {
+        return null;
+      }
+      wait(remaining);
+    }
+    return dataSets.size() > index ? dataSets.get(index) : null;
+  }
+
+  synchronized void started(int dataSetCount) {
+    this.dataSetCount = dataSetCount;
+    status = Status.RUNNING;
+    dateStarted = new Date();
+    notifyAll();
+  }
+
+  synchronized void addDataSet(ReportRunDataSet dataSet) {
+    dataSets.add(dataSet);
+    notifyAll();
+  }
+
+  synchronized void completed() {
+    status = Status.COMPLETED;
+    dateFinished = new Date();
+    notifyAll();
+  }
+
+  synchronized void failed(Throwable cause) {
+    status = cancellation.isCancelled() ? Status.CANCELLED : Status.FAILED;
+    if (cancellation.isCancelled()) {
+      error = cancellation.getReason();
+    } else {
+      error = cause.getMessage() == null ? cause.getClass().getName() : cause.getMessage();
+    }
+    dateFinished = new Date();
+    notifyAll();
+  }
+}
@@ -0,0 +1,104 @@
+/*
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.module.eptsreports.reporting.evaluation;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.openmrs.Cohort;
+import org.openmrs.OpenmrsObject;
+import org.openmrs.module.reporting.dataset.DataSet;
+import org.openmrs.module.reporting.dataset.DataSetColumn;
+import org.openmrs.module.reporting.dataset.DataSetRow;
+import org.openmrs.module.reporting.indicator.IndicatorResult;
+import org.openmrs.module.reporting.indicator.dimension.CohortIndicatorAndDimensionResult;
+
+/**
+ * The result of a data set of a {@link ReportRun}, detached from the evaluation: its columns, the
+ * values of its rows as numbers, booleans, dates or strings, and the patients counted in each
+ * indicator cell when they are wanted and known
+ */
+public class ReportRunDataSet {
+
+  private final String name;
+
+  private final List<DataSetColumn> columns = new ArrayList<DataSetColumn>();
+
+  private final List<List<Object>> rows = new ArrayList<List<Object>>();
+
+  private final Map<String, List<Integer>> patientIds = new LinkedHashMap<String, List<Integer>>();
+
+  /**
+   * @param name the key of the data set in the report definition
+   * @param dataSet the evaluated data set
+   * @param patientIds whether to keep the ids of the patients counted in each indicator cell
+   */
+  public ReportRunDataSet(String name, DataSet dataSet, boolean patientIds) {
+    this.name = name;
+    columns.addAll(dataSet.getMetaData().getColumns());
+    for (DataSetRow row : dataSet) {
+      List<Object> values = new ArrayList<Object>();
+      for (DataSetColumn column : columns) {
+        Object value = row.getColumnValue(column);
+        if (patientIds && value instanceof CohortIndicatorAndDimensionResult) {
+          Cohort cohort =
+              ((CohortIndicatorAndDimensionResult) value).getCohortIndicatorAndDimensionCohort();
+          if (cohort != null && rows.isEmpty()) {
+            this.patientIds.put(column.getName(), new ArrayList<Integer>(cohort.getMemberIds()));
+          }
+        }
+        values.add(toValue(value));
+      }
+      rows.add(values);
+    }
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public List<DataSetColumn> getColumns() {
+    return Collections.unmodifiableList(columns);
+  }
+
+  public List<List<Object>> getRows() {
+    return Collections.unmodifiableList(rows);
+  }
+
+  /** @return the ids of the patients counted in each cell of the first row, by column name */
+  public Map<String, List<Integer>> getPatientIds() {
+    return Collections.unmodifiableMap(patientIds);
+  }
+
+  private static Object toValue(Object value) {
+    if (value instanceof IndicatorResult) {
+      value = ((IndicatorResult) value).getValue();
+    }
+    if (value == null
+        || value instanceof Number
+        || value instanceof Boolean
+        || value instanceof Date
+        || value instanceof String) {
+      return value;
+    }
+    if (value instanceof OpenmrsObject) {
+      return ((OpenmrsObject) value).getUuid();
+    }
+    return value.toString();
+  }
+}
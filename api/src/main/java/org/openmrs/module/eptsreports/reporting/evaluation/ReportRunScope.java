@@ -0,0 +1,133 @@
+/*
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.module.eptsreports.reporting.evaluation;
+
+import org.openmrs.api.context.Context;
+import org.openmrs.module.eptsreports.api.dao.EptsReportsDao;
+import org.openmrs.module.eptsreports.reporting.evaluation.ReportAdmissionController.Priority;
+import org.openmrs.module.eptsreports.reporting.evaluation.ReportAdmissionController.Ticket;
+import org.openmrs.module.eptsreports.reporting.evaluation.ReportAdmissionController.Weight;
+
+/**
+ * The admission of a report run by the {@link ReportAdmissionController} and what is bound to the
+ * thread evaluating it: its {@link EvaluationCancellation} with the canceller of its statements,
+ * its {@link EvaluationProgress} and its {@link EvaluationSession}. Opened before the run and
+ * closed in a finally block, which undoes whatever was done even if opening failed half way.
+ */
+class ReportRunScope {
+
+  private final String name;
+
+  private final Weight weight;
+
+  private final Priority priority;
+
+  private final EvaluationCancellation cancellation;
+
+  private final EvaluationProgress progress;
+
+  private ReportAdmissionController controller;
+
+  private boolean bound;
+
+  private EvaluationCancellation previousCancellation;
+
+  private EvaluationCancellation.Canceller canceller;
+
+  private EvaluationProgress previousProgress;
+
+  private Ticket ticket;
+
+  private EvaluationSession session;
+
+  private EvaluationSession previousSession;
+
+  /**
+   * @param name the name of the report
+   * @param weight the weight of the report
+   * @param priority the priority of the run
+   * @param cancellation the token of the run
+   * @param progress the progress of the run
+   */
+  ReportRunScope(
+      String name,
+      Weight weight,
+      Priority priority,
+      EvaluationCancellation cancellation,
+      EvaluationProgress progress) {
+    this.name = name;
+    this.weight = weight;
+    this.priority = priority;
+    this.cancellation = cancellation;
+    this.progress = progress;
+  }
+
+  /**
+   * Binds the run to this thread and waits for it to be admitted
+   *
+   * @throws InterruptedException if interrupted while waiting
+   * @see ReportAdmissionController#admit(String, Weight, Priority, EvaluationCancellation)
+   */
+  void open() throws InterruptedException {
+    controller = Context.getRegisteredComponents(ReportAdmissionController.class).get(0);
+    previousCancellation = EvaluationCancellation.bind(cancellation);
+    previousProgress = EvaluationProgress.bind(progress);
+    previousSession = EvaluationSession.bind(null);
+    bound = true;
+    EptsReportsDao dao = Context.getRegisteredComponents(EptsReportsDao.class).get(0);
+    canceller = dao.getQueryCanceller();
+    EvaluationCancellation.register(canceller);
+    session = new EvaluationSession(dao.getSessionControl());
+    EvaluationSession.bind(session);
+    ticket = controller.admit(name, weight, priority, cancellation);
+    ticket.setProgress(progress);
+  }
+
+  /** @return the progress of the run */
+  EvaluationProgress getProgress() {
+    return progress;
+  }
+
+  /** Makes the session read only while the run is evaluated */
+  void started() {
+    session.started();
+  }
+
+  /** Evicts the patient data the run loaded and restores the session, once the run ended */
+  void ended() {
+    session.ended();
+  }
+
+  /** Undoes what {@link #open()} did, releasing the admission if it was granted */
+  void close() {
+    try {
+      if (session != null) {
+        session.ended();
+      }
+    } finally {
+      if (bound) {
+        EvaluationSession.restore(previousSession);
+        EvaluationProgress.restore(previousProgress);
+        if (canceller != null) {
+          EvaluationCancellation.unregister(canceller);
+        }
+        EvaluationCancellation.restore(previousCancellation);
+      }
+      if (ticket != null) {
+        controller.release(ticket);
+      }
+    }
+  }
+}
@@ -0,0 +1,244 @@
+/*
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.module.eptsreports.reporting.evaluation;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.openmrs.api.APIException;
+import org.openmrs.api.context.Context;
+import org.openmrs.api.context.Daemon;
+import org.openmrs.module.DaemonToken;
+import org.openmrs.module.eptsreports.reporting.dataset.definition.IndicatorCubeDataSetDefinition;
+import org.openmrs.module.eptsreports.reporting.evaluation.ReportAdmissionController.Priority;
+import org.openmrs.module.eptsreports.reporting.reports.manager.EptsReportManager;
+import org.openmrs.module.eptsreports.reporting.reports.manager.LazyReportSetup;
+import org.openmrs.module.eptsreports.reporting.utils.EptsReportUtils;
+import org.openmrs.module.reporting.cohort.definition.service.CohortDefinitionService;
+import org.openmrs.module.reporting.dataset.DataSet;
+import org.openmrs.module.reporting.dataset.definition.DataSetDefinition;
+import org.openmrs.module.reporting.dataset.definition.service.DataSetDefinitionService;
+import org.openmrs.module.reporting.evaluation.EvaluationContext;
+import org.openmrs.module.reporting.evaluation.EvaluationException;
+import org.openmrs.module.reporting.evaluation.parameter.Mapped;
+import org.openmrs.module.reporting.report.definition.ReportDefinition;
+import org.springframework.stereotype.Component;
+
+/**
+ * Runs EPTS reports in daemon threads, one data set at a time, so the results of each data set
+ * can be read as soon as it is evaluated. Runs are admitted by the {@link
+ * ReportAdmissionController} like the runs of the reporting module, and the latest finished runs
+ * are kept for their results to be read.
+ */
+@Component
+public class ReportRunner {
+
+  private static final Log log = LogFactory.getLog(ReportRunner.class);
+
+  /** How many finished runs are kept */
+  private static final int MAX_FINISHED_RUNS = 20;
+
+  private final Map<String, ReportRun> runs = new LinkedHashMap<String, ReportRun>();
+
+  private volatile DaemonToken daemonToken;
+
+  /** @param daemonToken the token of the module, to run reports in daemon threads */
+  public void setDaemonToken(DaemonToken daemonToken) {
+    this.daemonToken = daemonToken;
+  }
+
+  /**
+   * Starts a run, submitted by the authenticated user
+   *
+   * @param reportUuid the uuid of the report definition of an EPTS report
+   * @param parameterValues the parameter values of the report
+   * @param patientIds whether to keep the ids of the patients counted in each indicator cell
+   * @param priority the priority the run is admitted with
+   * @return the run
+   * @throws IllegalArgumentException if there is no such EPTS report
+   * @throws APIException if the module is not started
+   */
+  public ReportRun submit(
+      String reportUuid,
+      Map<String, Object> parameterValues,
+      boolean patientIds,
+      final Priority priority) {
+    final EptsReportManager manager = getReportManager(reportUuid);
+    if (manager == null) {
+      throw new IllegalArgumentException("No EPTS report " + reportUuid);
+    }
+    if (daemonToken == null) {
+      throw new APIException("EPTS reports are not started");
+    }
+    final ReportRun run =
+        new ReportRun(
+            reportUuid,
+            manager.getName(),
+            parameterValues,
+            patientIds,
+            Context.getAuthenticatedUser());
+    register(run);
+    Daemon.runInDaemonThread(
+        new Runnable() {
+
+          @Override
+          public void run() {
+            evaluate(manager, run, priority);
+          }
+        },
+        daemonToken);
+    return run;
+  }
+
+  /**
+   * @param id the id of the run
+   * @return the run, or null if it is unknown or no longer kept
+   */
+  public synchronized ReportRun getRun(String id) {
+    return runs.get(id);
+  }
+
+  /**
+   * Cancels a run, which stops at its next check, its running statement being cancelled
+   *
+   * @param id the id of the run
+   * @param reason why it is cancelled
+   * @return the run, or null if it is unknown or no longer kept
+   */
+  public ReportRun cancel(String id, String reason) {
+    ReportRun run = getRun(id);
+    if (run != null && !run.isFinished()) {
+      run.getCancellation().cancel(reason);
+    }
+    return run;
+  }
+
+  /** @return the runs kept, the oldest first */
+  public synchronized List<ReportRun> getRuns() {
+    return new ArrayList<ReportRun>(runs.values());
+  }
+
+  private synchronized void register(ReportRun run) {
+    runs.put(run.getId(), run);
+    int finished = 0;
+    for (ReportRun other : runs.values()) {
+      if (other.isFinished()) {
+        finished++;
+      }
+    }
+    for (Iterator<ReportRun> i = runs.values().iterator();
+        i.hasNext() && finished > MAX_FINISHED_RUNS; ) {
+      if (i.next().isFinished()) {
+        i.remove();
+        finished--;
+      }
+    }
+  }
+
+  private void evaluate(EptsReportManager manager, ReportRun run, Priority priority) {
+    EvaluationProgress progress = run.getProgress();
+    ReportRunScope scope =
+        new ReportRunScope(
+            manager.getName(), manager.getWeight(), priority, run.getCancellation(), progress);
+    try {
+      scope.open();
+      ReportDefinition reportDefinition = getReportDefinition(manager);
+      progress.started(reportDefinition);
+      run.started(reportDefinition.getDataSetDefinitions().size());
+      scope.started();
+
+      EvaluationContext context = new EvaluationContext();
+      context.setParameterValues(new LinkedHashMap<String, Object>(run.getParameterValues()));
+      if (reportDefinition.getBaseCohortDefinition() != null) {
+        context.setBaseCohort(
+            Context.getService(CohortDefinitionService.class)
+                .evaluate(reportDefinition.getBaseCohortDefinition(), context));
+      }
+      for (Map.Entry<String, Mapped<? extends DataSetDefinition>> entry :
+          reportDefinition.getDataSetDefinitions().entrySet()) {
+        EvaluationCancellation.check();
+        boolean completed = false;
+        progress.dataSetStarted(entry.getValue());
+        try {
+          DataSet dataSet = evaluate(entry.getValue(), context, run.isPatientIds());
+          run.addDataSet(new ReportRunDataSet(entry.getKey(), dataSet, run.isPatientIds()));
+          completed = true;
+        } finally {
+          progress.dataSetEnded(completed);
+        }
+      }
+      scope.ended();
+      // the patient ids make the indicator data sets slower than other runs
+      if (!run.isPatientIds()) {
+        progress.completed();
+      }
+      run.completed();
+    } catch (Exception e) {
+      if (run.getCancellation().isCancelled()) {
+        log.info(
+            "Run of " + manager.getName() + " cancelled: " + run.getCancellation().getReason());
+      } else {
+        log.error("Run of " + manager.getName() + " failed", e);
+      }
+      run.failed(e);
+    } finally {
+      scope.close();
+    }
+  }
+
+  /**
+   * Evaluates a data set, without its indicator cube when the ids of the patients are wanted, as
+   * the cube only keeps the counts
+   */
+  private DataSet evaluate(
+      Mapped<? extends DataSetDefinition> mapped, EvaluationContext context, boolean patientIds)
+      throws EvaluationException {
+    DataSetDefinition definition = mapped.getParameterizable();
+    if (patientIds && definition instanceof IndicatorCubeDataSetDefinition) {
+      return Context.getService(DataSetDefinitionService.class)
+          .evaluate(
+              ((IndicatorCubeDataSetDefinition) definition).getDataSetDefinition(),
+              EvaluationContext.cloneForChild(context, mapped));
+    }
+    return Context.getService(DataSetDefinitionService.class).evaluate(mapped, context);
+  }
+
+  private ReportDefinition getReportDefinition(EptsReportManager manager) {
+    LazyReportSetup lazyReportSetup =
+        Context.getRegisteredComponents(LazyReportSetup.class).get(0);
+    if (lazyReportSetup.isPending(manager.getUuid())) {
+      lazyReportSetup.setUp(manager);
+    }
+    ReportDefinition ret = EptsReportUtils.findReportDefinition(manager.getUuid());
+    if (ret == null) {
+      throw new APIException("Report " + manager.getName() + " is not set up");
+    }
+    return ret;
+  }
+
+  private EptsReportManager getReportManager(String uuid) {
+    for (EptsReportManager manager : Context.getRegisteredComponents(EptsReportManager.class)) {
+      if (manager.getUuid().equals(uuid)
+          && manager.getClass().getAnnotation(Deprecated.class) == null) {
+        return manager;
+      }
+    }
+    return null;
+  }
+}
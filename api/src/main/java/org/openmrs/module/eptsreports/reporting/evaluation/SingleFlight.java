@@ -0,0 +1,96 @@
+/*
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.module.eptsreports.reporting.evaluation;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Runs at most one task at a time for each key: a caller asking for a key that is already being
+ * computed waits for the running task and gets its result, or its exception, instead of running
+ * the task again. Results are not kept once the task is done. A waiting caller stops waiting when
+ * the {@link EvaluationCancellation} bound to its thread is cancelled.
+ */
+public class SingleFlight<K, V> {
+
+  /** How often a caller waiting for a running task checks whether it was cancelled */
+  private static final long CANCELLATION_CHECK_MILLIS = 500L;
+
+  private final ConcurrentMap<K, FutureTask<V>> flights = new ConcurrentHashMap<K, FutureTask<V>>();
+
+  /**
+   * @param key the key of the task
+   * @param task the task, run in the calling thread unless one is running for the key
+   * @return the result of the task, or of the one running for the key
+   * @throws EvaluationCancelledException if cancelled while waiting for the running task
+   * @throws Exception the exception thrown by the task
+   */
+  public V execute(K key, Callable<V> task) throws Exception {
+    FutureTask<V> flight = new FutureTask<V>(task);
+    FutureTask<V> running = flights.putIfAbsent(key, flight);
+    if (running != null) {
+      return join(running);
+    }
+    try {
+      flight.run();
+    } finally {
+      flights.remove(key, flight);
+    }
+    return getResult(flight);
+  }
+
+  /**
+   * @param key the key of a task
+   * @return whether a task is running for the key
+   */
+  public boolean isRunning(K key) {
+    return flights.containsKey(key);
+  }
+
+  private V join(FutureTask<V> running) throws Exception {
+    while (true) {
+      EvaluationCancellation.check();
+      try {
+        return getResult(running, CANCELLATION_CHECK_MILLIS);
+      } catch (TimeoutException e) {
+        // still running, check again
+      }
+    }
+  }
+
+  private V getResult(FutureTask<V> flight) throws Exception {
+    return getResult(flight, Long.MAX_VALUE);
+  }
+
+  private V getResult(FutureTask<V> flight, long timeoutMillis) throws Exception {
+    try {
+      return flight.get(timeoutMillis, TimeUnit.MILLISECONDS);
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof Exception) {
+        throw (Exception) cause;
+      }
+      if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw e;
+    }
+  }
+}
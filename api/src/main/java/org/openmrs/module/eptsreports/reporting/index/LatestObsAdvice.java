@@ -0,0 +1,139 @@
+/*
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.module.eptsreports.reporting.index;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.openmrs.Obs;
+import org.openmrs.api.context.Context;
+import org.openmrs.module.eptsreports.api.EptsReportsService;
+import org.openmrs.module.eptsreports.api.dao.LatestObsDao;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Sets again the latest obs of the patients whose obs are saved, voided, unvoided or purged, for
+ * the indexed concepts of these obs both before and after the change. Obs of other concepts are
+ * passed through without touching the database. The index is updated once the change is
+ * committed, each key in a transaction of its own, so a failure to update it is logged and left to
+ * the daily rebuild instead of rolling the change back. Wired around the obs service in config.xml.
+ */
+public class LatestObsAdvice implements MethodInterceptor {
+
+  private static final Log log = LogFactory.getLog(LatestObsAdvice.class);
+
+  private static final Set<String> METHODS =
+      new LinkedHashSet<String>(Arrays.asList("saveObs", "voidObs", "unvoidObs", "purgeObs"));
+
+  @Override
+  public Object invoke(MethodInvocation invocation) throws Throwable {
+    Object[] arguments = invocation.getArguments();
+    if (!METHODS.contains(invocation.getMethod().getName())
+        || arguments.length == 0
+        || !(arguments[0] instanceof Obs)) {
+      return invocation.proceed();
+    }
+    LatestObsIndex index = Context.getRegisteredComponents(LatestObsIndex.class).get(0);
+    Obs obs = (Obs) arguments[0];
+    List<Obs> indexed = new ArrayList<Obs>();
+    addIndexed(indexed, index, obs);
+    if (indexed.isEmpty()) {
+      return invocation.proceed();
+    }
+
+    Set<List<Integer>> keys = new LinkedHashSet<List<Integer>>();
+    for (Obs changed : indexed) {
+      if (changed.getObsId() != null) {
+        addStoredKey(keys, changed.getObsId());
+      }
+    }
+
+    Object ret = invocation.proceed();
+
+    if (ret instanceof Obs) {
+      addIndexed(indexed, index, (Obs) ret);
+    }
+    for (Obs changed : indexed) {
+      keys.add(
+          Arrays.asList(
+              changed.getPerson() == null ? null : changed.getPerson().getPersonId(),
+              changed.getConcept().getConceptId()));
+    }
+    updateAfterCommit(keys);
+    return ret;
+  }
+
+  /** Adds an obs and the members of its group whose concepts are indexed */
+  private void addIndexed(List<Obs> indexed, LatestObsIndex index, Obs obs) {
+    if (obs.getConcept() != null && index.isIndexed(obs.getConcept().getConceptId())) {
+      indexed.add(obs);
+    }
+    if (obs.hasGroupMembers(true)) {
+      for (Obs member : obs.getGroupMembers(true)) {
+        addIndexed(indexed, index, member);
+      }
+    }
+  }
+
+  /** Adds the key of an obs as it is stored, before it is changed */
+  private void addStoredKey(Set<List<Integer>> keys, Integer obsId) {
+    try {
+      Integer[] stored = Context.getRegisteredComponents(LatestObsDao.class).get(0).getKey(obsId);
+      if (stored != null) {
+        keys.add(Arrays.asList(stored));
+      }
+    } catch (RuntimeException e) {
+      log.warn("Could not read obs " + obsId + " for the latest obs index", e);
+    }
+  }
+
+  private void updateAfterCommit(final Set<List<Integer>> keys) {
+    if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+      update(keys);
+      return;
+    }
+    TransactionSynchronizationManager.registerSynchronization(
+        new TransactionSynchronizationAdapter() {
+
+          @Override
+          public void afterCommit() {
+            update(keys);
+          }
+        });
+  }
+
+  private void update(Set<List<Integer>> keys) {
+    for (List<Integer> key : keys) {
+      try {
+        Context.getService(EptsReportsService.class).updateLatestObs(key.get(0), key.get(1));
+      } catch (RuntimeException e) {
+        log.warn(
+            "Could not update the latest obs of concept "
+                + key.get(1)
+                + " of patient "
+                + key.get(0)
+                + ", left to the daily rebuild",
+            e);
+      }
+    }
+  }
+}
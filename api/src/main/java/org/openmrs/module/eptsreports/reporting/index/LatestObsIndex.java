@@ -0,0 +1,140 @@
+/*
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.module.eptsreports.reporting.index;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.TreeSet;
+import org.apache.commons.lang.StringUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.openmrs.Concept;
+import org.openmrs.api.context.Context;
+import org.openmrs.module.eptsreports.api.dao.LatestObsDao;
+import org.openmrs.module.eptsreports.metadata.HivMetadata;
+import org.openmrs.module.eptsreports.reporting.utils.EptsReportConstants;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * Keeps the latest obs ever of each person in the eptsreports_latest_obs table, for the concepts
+ * the reports look up through {@link
+ * org.openmrs.module.eptsreports.reporting.library.queries.QueryFragments#latestObs} and those
+ * listed in eptsreports.latestObsConcepts. The rows of a patient are set again as the obs service
+ * saves, voids, unvoids or purges the obs, by the {@link LatestObsAdvice}. The concepts not built
+ * yet are built in the background once the module has started, and all of them are rebuilt daily,
+ * to pick up obs written with SQL.
+ */
+@Component
+public class LatestObsIndex {
+
+  private static final Log log = LogFactory.getLog(LatestObsIndex.class);
+
+  @Autowired private LatestObsDao latestObsDao;
+
+  @Autowired private HivMetadata hivMetadata;
+
+  /** The concepts built, set once the module has built the index */
+  private volatile Set<Integer> built;
+
+  /**
+   * Builds the configured concepts that were not built yet, and removes the others. Must be called
+   * in a transaction.
+   */
+  public void build() {
+    Set<Integer> configured = getConfiguredConceptIds();
+    latestObsDao.retain(configured);
+    Set<Integer> missing = new TreeSet<Integer>(configured);
+    missing.removeAll(latestObsDao.getBuiltConceptIds());
+    build(configured, missing);
+  }
+
+  /**
+   * Rebuilds the latest obs of the configured concepts from the obs table, to pick up obs written
+   * with SQL. Must be called in a transaction.
+   */
+  public void rebuild() {
+    Set<Integer> configured = getConfiguredConceptIds();
+    latestObsDao.retain(configured);
+    build(configured, configured);
+  }
+
+  /**
+   * Tells without reading the database whether the latest obs of a concept are kept. No concept is
+   * until the index is built after the module starts.
+   *
+   * @param conceptId the concept
+   * @return true if the latest obs of the concept are kept
+   */
+  public boolean isIndexed(Integer conceptId) {
+    Set<Integer> ret = built;
+    return ret != null && ret.contains(conceptId);
+  }
+
+  /**
+   * Sets again the latest obs of a concept of a patient. Does nothing when the concept is not
+   * indexed or a key is missing. Must be called in a transaction, after the change of the obs is
+   * committed.
+   *
+   * @param patientId the patient
+   * @param conceptId the concept
+   */
+  public void update(Integer patientId, Integer conceptId) {
+    if (patientId == null || conceptId == null || !isIndexed(conceptId)) {
+      return;
+    }
+    latestObsDao.update(patientId, conceptId);
+  }
+
+  private void build(Set<Integer> configured, Set<Integer> conceptIds) {
+    for (Integer conceptId : conceptIds) {
+      long start = System.currentTimeMillis();
+      int count = latestObsDao.build(conceptId);
+      log.info(
+          "Built "
+              + count
+              + " latest obs of concept "
+              + conceptId
+              + " in "
+              + (System.currentTimeMillis() - start)
+              + " ms");
+    }
+    built = Collections.unmodifiableSet(new HashSet<Integer>(configured));
+  }
+
+  private Set<Integer> getConfiguredConceptIds() {
+    Set<Integer> ret = new TreeSet<Integer>();
+    ret.add(hivMetadata.getAcceptContactConcept().getConceptId());
+    String uuids =
+        Context.getAdministrationService()
+            .getGlobalProperty(EptsReportConstants.GLOBAL_PROPERTY_LATEST_OBS_CONCEPTS);
+    if (StringUtils.isBlank(uuids)) {
+      return ret;
+    }
+    for (String uuid : uuids.split(",")) {
+      if (StringUtils.isBlank(uuid)) {
+        continue;
+      }
+      Concept concept = Context.getConceptService().getConceptByUuid(uuid.trim());
+      if (concept == null) {
+        log.warn("Not indexing the latest obs of concept " + uuid.trim() + ", which was not found");
+      } else {
+        ret.add(concept.getConceptId());
+      }
+    }
+    return ret;
+  }
+}
@@ -14,11 +14,12 @@ package org.openmrs.module.eptsreports.reporting.library.cohorts;
 import java.util.Date;
 import org.openmrs.Location;
 import org.openmrs.module.eptsreports.metadata.HivMetadata;
+import org.openmrs.module.eptsreports.reporting.cohort.definition.BoundSqlCohortDefinition;
+import org.openmrs.module.eptsreports.reporting.cohort.definition.EriOutcomeCohortDefinition;
 import org.openmrs.module.eptsreports.reporting.library.queries.Eri2MonthsQueries;
 import org.openmrs.module.eptsreports.reporting.utils.EptsReportUtils;
 import org.openmrs.module.reporting.cohort.definition.CohortDefinition;
 import org.openmrs.module.reporting.cohort.definition.CompositionCohortDefinition;
-import org.openmrs.module.reporting.cohort.definition.SqlCohortDefinition;
 import org.openmrs.module.reporting.evaluation.parameter.Parameter;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
@@ -39,12 +40,12 @@ public class Eri2MonthsCohortQueries {
    */
   public CohortDefinition
       getAllPatientsWhoReturnedFor2ndConsultationOR2ndDrugsPickUpWithin33Days() {
-    SqlCohortDefinition cd = new SqlCohortDefinition();
+    BoundSqlCohortDefinition cd = new BoundSqlCohortDefinition();
     cd.setName("Patients who picked up drugs in 33 days");
     cd.addParameter(new Parameter("startDate", "Start Date", Date.class));
     cd.addParameter(new Parameter("endDate", "End Date", Date.class));
     cd.addParameter(new Parameter("location", "Location", Location.class));
-    cd.setQuery(
+    cd.setBoundQuery(
         Eri2MonthsQueries.getAllPatientsWhoReturnedFor2ndConsultationOR2ndDrugsPickUpWithin33Days(
             hivMetadata.getARVPharmaciaEncounterType().getEncounterTypeId(),
             hivMetadata.getAdultoSeguimentoEncounterType().getEncounterTypeId(),
@@ -243,4 +244,22 @@ public class Eri2MonthsCohortQueries {
     cd.setCompositionString("initiatedArtAndNotTransferIns AND transferredOut");
     return cd;
   }
+
+  /**
+   * Get the patients who initiated ART with an ERI-2 months outcome, retained being a second
+   * consultation or drug pick up within 33 days
+   *
+   * @param outcome the outcome
+   * @return CohortDefinition
+   */
+  public CohortDefinition getPatientsWithEri2MonthsOutcome(
+      EriOutcomeCohortDefinition.Outcome outcome) {
+    return eriCohortQueries.getEriOutcome(
+        "ERI-2 months outcomes",
+        outcome,
+        EptsReportUtils.map(
+            getAllPatientsWhoReturnedFor2ndConsultationOR2ndDrugsPickUpWithin33Days(),
+            "startDate=${cohortStartDate},endDate=${cohortEndDate},location=${location}"),
+        null);
+  }
 }
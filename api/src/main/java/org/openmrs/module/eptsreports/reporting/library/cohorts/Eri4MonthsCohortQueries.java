@@ -14,6 +14,8 @@ package org.openmrs.module.eptsreports.reporting.library.cohorts;
 import java.util.Date;
 import org.openmrs.Location;
 import org.openmrs.module.eptsreports.metadata.HivMetadata;
+import org.openmrs.module.eptsreports.reporting.cohort.definition.BoundSqlCohortDefinition;
+import org.openmrs.module.eptsreports.reporting.cohort.definition.EriOutcomeCohortDefinition;
 import org.openmrs.module.eptsreports.reporting.library.queries.Eri4MonthsQueries;
 import org.openmrs.module.eptsreports.reporting.utils.EptsReportUtils;
 import org.openmrs.module.reporting.cohort.definition.CohortDefinition;
@@ -42,12 +44,12 @@ public class Eri4MonthsCohortQueries {
    */
   public CohortDefinition
       getAllPatientsWhoHaveEitherClinicalConsultationOrDrugsPickupBetween61And120OfEncounterDate() {
-    SqlCohortDefinition cd = new SqlCohortDefinition();
+    BoundSqlCohortDefinition cd = new BoundSqlCohortDefinition();
     cd.setName("Patients who had consultation between 61 to 120 days from encounter date");
     cd.addParameter(new Parameter("startDate", "Start Date", Date.class));
     cd.addParameter(new Parameter("endDate", "End Date", Date.class));
     cd.addParameter(new Parameter("location", "Location", Location.class));
-    cd.setQuery(
+    cd.setBoundQuery(
         Eri4MonthsQueries
             .allPatientsWhoHaveEitherClinicalConsultationOrDrugsPickupBetween61And120OfEncounterDate(
                 hivMetadata.getARVPharmaciaEncounterType().getEncounterTypeId(),
@@ -95,11 +97,11 @@ public class Eri4MonthsCohortQueries {
   }
 
   private SqlCohortDefinition getPatientsLostToFollowUpOnConsultation(int daysThreshold) {
-    SqlCohortDefinition cd = new SqlCohortDefinition();
+    BoundSqlCohortDefinition cd = new BoundSqlCohortDefinition();
     cd.addParameter(new Parameter("startDate", "Start Date", Date.class));
     cd.addParameter(new Parameter("endDate", "End Date", Date.class));
     cd.addParameter(new Parameter("location", "Location", Location.class));
-    cd.setQuery(
+    cd.setBoundQuery(
         Eri4MonthsQueries.getPatientsLostToFollowUpOnConsultation(
             hivMetadata.getAdultoSeguimentoEncounterType().getEncounterTypeId(),
             hivMetadata.getARVPediatriaSeguimentoEncounterType().getEncounterTypeId(),
@@ -109,11 +111,11 @@ public class Eri4MonthsCohortQueries {
   }
 
   private SqlCohortDefinition getPatientsLostToFollowUpOnDrugPickup(int daysThreshold) {
-    SqlCohortDefinition cd = new SqlCohortDefinition();
+    BoundSqlCohortDefinition cd = new BoundSqlCohortDefinition();
     cd.addParameter(new Parameter("startDate", "Start Date", Date.class));
     cd.addParameter(new Parameter("endDate", "End Date", Date.class));
     cd.addParameter(new Parameter("location", "Location", Location.class));
-    cd.setQuery(
+    cd.setBoundQuery(
         Eri4MonthsQueries.getPatientsLostToFollowUpOnDrugPickup(
             hivMetadata.getARVPharmaciaEncounterType().getEncounterTypeId(),
             hivMetadata.getReturnVisitDateForArvDrugConcept().getConceptId(),
@@ -242,4 +244,24 @@ public class Eri4MonthsCohortQueries {
     cd.setCompositionString("initiatedArt AND NOT (consultation OR dead OR transfersOut)");
     return cd;
   }
+
+  /**
+   * Get the patients who initiated ART with an ERI-4 months outcome, retained being a consultation
+   * or drug pick up between 61 and 120 days from ART initiation
+   *
+   * @param outcome the outcome
+   * @return CohortDefinition
+   */
+  public CohortDefinition getPatientsWithEri4MonthsOutcome(
+      EriOutcomeCohortDefinition.Outcome outcome) {
+    return eriCohortQueries.getEriOutcome(
+        "ERI-4 months outcomes",
+        outcome,
+        EptsReportUtils.map(
+            getAllPatientsWhoHaveEitherClinicalConsultationOrDrugsPickupBetween61And120OfEncounterDate(),
+            "startDate=${cohortStartDate},endDate=${cohortEndDate},location=${location}"),
+        EptsReportUtils.map(
+            getPatientsWhoAreLostToFollowUpWithinPeriod(),
+            "startDate=${cohortStartDate},endDate=${reportingEndDate},location=${location}"));
+  }
 }
@@ -14,9 +14,11 @@ package org.openmrs.module.eptsreports.reporting.library.cohorts;
 import java.util.Date;
 import org.openmrs.Location;
 import org.openmrs.module.eptsreports.metadata.HivMetadata;
+import org.openmrs.module.eptsreports.reporting.cohort.definition.EriOutcomeCohortDefinition;
 import org.openmrs.module.eptsreports.reporting.utils.EptsReportUtils;
 import org.openmrs.module.reporting.cohort.definition.CohortDefinition;
 import org.openmrs.module.reporting.cohort.definition.CompositionCohortDefinition;
+import org.openmrs.module.reporting.evaluation.parameter.Mapped;
 import org.openmrs.module.reporting.evaluation.parameter.Parameter;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
@@ -61,6 +63,56 @@ public class EriCohortQueries {
     return cd;
   }
 
+  /**
+   * Get the patients who initiated ART (A and not B) with an ERI outcome. The outcomes of the
+   * definitions with the same name are classified together, so each search is evaluated once for
+   * all of them.
+   *
+   * @param name the name, shared by the outcomes classified together
+   * @param outcome the outcome
+   * @param retained the patients who came back, mapped to the cohort parameters
+   * @param lostToFollowUp the patients who missed their visits, mapped to the cohort parameters,
+   *     or null
+   * @return CohortDefinition
+   */
+  public CohortDefinition getEriOutcome(
+      String name,
+      EriOutcomeCohortDefinition.Outcome outcome,
+      Mapped<CohortDefinition> retained,
+      Mapped<CohortDefinition> lostToFollowUp) {
+    EriOutcomeCohortDefinition cd = new EriOutcomeCohortDefinition();
+    cd.setName(name);
+    cd.addParameter(new Parameter("cohortStartDate", "Cohort Start Date", Date.class));
+    cd.addParameter(new Parameter("cohortEndDate", "Cohort End Date", Date.class));
+    cd.addParameter(new Parameter("reportingEndDate", "Reporting End Date", Date.class));
+    cd.addParameter(new Parameter("location", "Location", Location.class));
+    cd.setOutcome(outcome);
+    cd.setInitiated(
+        EptsReportUtils.map(
+            getAllPatientsWhoInitiatedArt(),
+            "cohortStartDate=${cohortStartDate},cohortEndDate=${cohortEndDate},location=${location}"));
+    cd.setRetained(retained);
+    cd.setLostToFollowUp(lostToFollowUp);
+    String statesMappings =
+        "startDate=${cohortStartDate},endDate=${reportingEndDate},location=${location}";
+    cd.setDead(EptsReportUtils.map(genericCohortQueries.getDeceasedPatients(), statesMappings));
+    cd.setTransferredOut(
+        EptsReportUtils.map(
+            genericCohortQueries.getPatientsBasedOnPatientStates(
+                hivMetadata.getARTProgram().getProgramId(),
+                hivMetadata
+                    .getTransferredOutToAnotherHealthFacilityWorkflowState()
+                    .getProgramWorkflowStateId()),
+            statesMappings));
+    cd.setSuspended(
+        EptsReportUtils.map(
+            genericCohortQueries.getPatientsBasedOnPatientStates(
+                hivMetadata.getARTProgram().getProgramId(),
+                hivMetadata.getSuspendedTreatmentWorkflowState().getProgramWorkflowStateId()),
+            statesMappings));
+    return cd;
+  }
+
   /**
    * Get pregnant women who have more than 2 months retention on ART
    *
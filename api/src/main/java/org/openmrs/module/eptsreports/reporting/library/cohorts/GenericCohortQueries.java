@@ -27,8 +27,11 @@ import org.openmrs.module.eptsreports.metadata.HivMetadata;
 import org.openmrs.module.eptsreports.reporting.calculation.generic.AgeOnArtStartDateCalculation;
 import org.openmrs.module.eptsreports.reporting.calculation.generic.StartedArtBeforeDateCalculation;
 import org.openmrs.module.eptsreports.reporting.calculation.generic.StartedArtOnPeriodCalculation;
+import org.openmrs.module.eptsreports.reporting.cohort.definition.BoundSqlCohortDefinition;
 import org.openmrs.module.eptsreports.reporting.cohort.definition.CalculationCohortDefinition;
+import org.openmrs.module.eptsreports.reporting.cohort.definition.CodedObsMatrixCohortDefinition;
 import org.openmrs.module.eptsreports.reporting.library.queries.BaseQueries;
+import org.openmrs.module.eptsreports.reporting.library.queries.BoundQuery;
 import org.openmrs.module.eptsreports.reporting.utils.EptsReportUtils;
 import org.openmrs.module.reporting.cohort.definition.BaseObsCohortDefinition;
 import org.openmrs.module.reporting.cohort.definition.BaseObsCohortDefinition.TimeModifier;
@@ -36,7 +39,6 @@ import org.openmrs.module.reporting.cohort.definition.CodedObsCohortDefinition;
 import org.openmrs.module.reporting.cohort.definition.CohortDefinition;
 import org.openmrs.module.reporting.cohort.definition.CompositionCohortDefinition;
 import org.openmrs.module.reporting.cohort.definition.InProgramCohortDefinition;
-import org.openmrs.module.reporting.cohort.definition.SqlCohortDefinition;
 import org.openmrs.module.reporting.common.SetComparator;
 import org.openmrs.module.reporting.definition.library.DocumentedDefinition;
 import org.openmrs.module.reporting.evaluation.parameter.Parameter;
@@ -88,6 +90,35 @@ public class GenericCohortQueries {
         question, BaseObsCohortDefinition.TimeModifier.ANY, SetComparator.IN, null, values);
   }
 
+  /**
+   * Coded Observation cohort answered from a single scan of the obs of all the matrix questions,
+   * shared with the other matrix cohorts of the same questions and encounter types
+   *
+   * @param matrixQuestions the questions scanned together, including the question
+   * @param encounterTypes the encounter types of the obs
+   * @param question the question concept
+   * @param values the answers to include, or null for any answer
+   * @return the cohort definition
+   */
+  public CohortDefinition hasCodedObsInMatrix(
+      List<Concept> matrixQuestions,
+      List<EncounterType> encounterTypes,
+      Concept question,
+      List<Concept> values) {
+    CodedObsMatrixCohortDefinition cd = new CodedObsMatrixCohortDefinition();
+    cd.setName("has obs between dates");
+    cd.setMatrixQuestions(matrixQuestions);
+    cd.setEncounterTypeList(encounterTypes);
+    cd.setQuestion(question);
+    cd.setValueList(values);
+
+    cd.addParameter(new Parameter("onOrBefore", "Before Date", Date.class));
+    cd.addParameter(new Parameter("onOrAfter", "After Date", Date.class));
+    cd.addParameter(new Parameter("locationList", "Location", Location.class));
+
+    return cd;
+  }
+
   /**
    * Generic SQL cohort
    *
@@ -95,7 +126,7 @@ public class GenericCohortQueries {
    */
   @DocumentedDefinition(value = "generalSql")
   public CohortDefinition generalSql(String name, String query) {
-    SqlCohortDefinition sql = new SqlCohortDefinition();
+    BoundSqlCohortDefinition sql = new BoundSqlCohortDefinition();
     sql.setName(name);
     sql.addParameter(new Parameter("startDate", "Start Date", Date.class));
     sql.addParameter(new Parameter("endDate", "End Date", Date.class));
@@ -104,6 +135,20 @@ public class GenericCohortQueries {
     return sql;
   }
 
+  /**
+   * Generic SQL cohort, with the metadata ids of the query bound as parameters
+   *
+   * @return CohortDefinition
+   */
+  public CohortDefinition generalSql(String name, BoundQuery query) {
+    BoundSqlCohortDefinition sql = new BoundSqlCohortDefinition(query);
+    sql.setName(name);
+    sql.addParameter(new Parameter("startDate", "Start Date", Date.class));
+    sql.addParameter(new Parameter("endDate", "End Date", Date.class));
+    sql.addParameter(new Parameter("location", "Facility", Location.class));
+    return sql;
+  }
+
   /**
    * Generic InProgram Cohort
    *
@@ -129,16 +174,15 @@ public class GenericCohortQueries {
    * @return CohortDefinition
    */
   public CohortDefinition getBaseCohort() {
-    Map<String, String> parameters = new HashMap<String, String>();
+    Map<String, Integer> parameters = new HashMap<String, Integer>();
     parameters.put(
         "arvAdultInitialEncounterTypeId",
-        String.valueOf(hivMetadata.getARVAdultInitialEncounterType().getEncounterTypeId()));
+        hivMetadata.getARVAdultInitialEncounterType().getEncounterTypeId());
     parameters.put(
         "arvPediatriaInitialEncounterTypeId",
-        String.valueOf(hivMetadata.getARVPediatriaInitialEncounterType().getEncounterTypeId()));
-    parameters.put(
-        "hivCareProgramId", String.valueOf(hivMetadata.getHIVCareProgram().getProgramId()));
-    parameters.put("artProgramId", String.valueOf(hivMetadata.getARTProgram().getProgramId()));
+        hivMetadata.getARVPediatriaInitialEncounterType().getEncounterTypeId());
+    parameters.put("hivCareProgramId", hivMetadata.getHIVCareProgram().getProgramId());
+    parameters.put("artProgramId", hivMetadata.getARTProgram().getProgramId());
     return generalSql("baseCohort", BaseQueries.getBaseCohortQuery(parameters));
   }
 
@@ -150,7 +194,7 @@ public class GenericCohortQueries {
    * @return
    */
   public CohortDefinition getPatientsBasedOnPatientStates(int program, int state) {
-    SqlCohortDefinition cd = new SqlCohortDefinition();
+    BoundSqlCohortDefinition cd = new BoundSqlCohortDefinition();
     cd.setName("Patient states based on end of reporting period");
     cd.addParameter(new Parameter("startDate", "Start Date", Date.class));
     cd.addParameter(new Parameter("endDate", "End Date", Date.class));
@@ -175,7 +219,7 @@ public class GenericCohortQueries {
    * @return
    */
   public CohortDefinition getPatientsBasedOnPatientStatesBeforeDate(int program, int state) {
-    SqlCohortDefinition cd = new SqlCohortDefinition();
+    BoundSqlCohortDefinition cd = new BoundSqlCohortDefinition();
     cd.setName("Patient states based on end of reporting period");
     cd.addParameter(new Parameter("endDate", "End Date", Date.class));
     cd.addParameter(new Parameter("location", "Location", Location.class));
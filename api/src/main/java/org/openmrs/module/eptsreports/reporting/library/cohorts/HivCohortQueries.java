@@ -17,9 +17,9 @@ import java.util.Collections;
 import java.util.Date;
 import org.openmrs.Location;
 import org.openmrs.module.eptsreports.metadata.HivMetadata;
+import org.openmrs.module.eptsreports.reporting.cohort.definition.BoundSqlCohortDefinition;
 import org.openmrs.module.eptsreports.reporting.library.queries.ViralLoadQueries;
 import org.openmrs.module.reporting.cohort.definition.CohortDefinition;
-import org.openmrs.module.reporting.cohort.definition.SqlCohortDefinition;
 import org.openmrs.module.reporting.definition.library.DocumentedDefinition;
 import org.openmrs.module.reporting.evaluation.parameter.Parameter;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -42,12 +42,12 @@ public class HivCohortQueries {
    */
   @DocumentedDefinition(value = "suppressedViralLoadWithin12Months")
   public CohortDefinition getPatientsWithSuppressedViralLoadWithin12Months() {
-    SqlCohortDefinition sql = new SqlCohortDefinition();
+    BoundSqlCohortDefinition sql = new BoundSqlCohortDefinition();
     sql.setName("suppressedViralLoadWithin12Months");
     sql.addParameter(new Parameter("startDate", "Start Date", Date.class));
     sql.addParameter(new Parameter("endDate", "End Date", Date.class));
     sql.addParameter(new Parameter("location", "Location", Location.class));
-    sql.setQuery(
+    sql.setBoundQuery(
         ViralLoadQueries.getPatientsWithViralLoadSuppression(
             hivMetadata.getMisauLaboratorioEncounterType().getEncounterTypeId(),
             hivMetadata.getAdultoSeguimentoEncounterType().getEncounterTypeId(),
@@ -64,12 +64,12 @@ public class HivCohortQueries {
    */
   @DocumentedDefinition(value = "viralLoadWithin12Months")
   public CohortDefinition getPatientsViralLoadWithin12Months() {
-    SqlCohortDefinition sql = new SqlCohortDefinition();
+    BoundSqlCohortDefinition sql = new BoundSqlCohortDefinition();
     sql.setName("viralLoadWithin12Months");
     sql.addParameter(new Parameter("startDate", "Start Date", Date.class));
     sql.addParameter(new Parameter("endDate", "End Date", Date.class));
     sql.addParameter(new Parameter("location", "Location", Location.class));
-    sql.setQuery(
+    sql.setBoundQuery(
         ViralLoadQueries.getPatientsHavingViralLoadInLast12Months(
             hivMetadata.getMisauLaboratorioEncounterType().getEncounterTypeId(),
             hivMetadata.getAdultoSeguimentoEncounterType().getEncounterTypeId(),
@@ -99,7 +99,7 @@ public class HivCohortQueries {
    */
   @DocumentedDefinition(value = "transferredFromOtherHealthFacility")
   public CohortDefinition getPatientsTransferredFromOtherHealthFacility() {
-    SqlCohortDefinition transferredFromOtherHealthFacility = new SqlCohortDefinition();
+    BoundSqlCohortDefinition transferredFromOtherHealthFacility = new BoundSqlCohortDefinition();
     transferredFromOtherHealthFacility.setName("transferredFromOtherHealthFacility");
     String query =
         "select p.patient_id from patient p "
@@ -134,7 +134,7 @@ public class HivCohortQueries {
    */
   @DocumentedDefinition(value = "patientWithHistoricalDrugStartDateObs")
   public CohortDefinition getPatientWithHistoricalDrugStartDateObsBeforeOrOnEndDate() {
-    SqlCohortDefinition patientWithHistoricalDrugStartDateObs = new SqlCohortDefinition();
+    BoundSqlCohortDefinition patientWithHistoricalDrugStartDateObs = new BoundSqlCohortDefinition();
     patientWithHistoricalDrugStartDateObs.setName("patientWithHistoricalDrugStartDateObs");
     String query =
         "SELECT p.patient_id FROM patient p INNER JOIN encounter e ON p.patient_id=e.patient_id "
@@ -2,6 +2,8 @@ package org.openmrs.module.eptsreports.reporting.library.cohorts;
 
 import java.util.Arrays;
 import java.util.Date;
+import java.util.List;
+import org.openmrs.Concept;
 import org.openmrs.Location;
 import org.openmrs.Program;
 import org.openmrs.api.context.Context;
@@ -48,6 +50,20 @@ public class TXTBCohortQueries {
         EptsReportUtils.removeMissingParameterMappingsFromCohortDefintion(cd, parameterMappings));
   }
 
+  /**
+   * TB screening and investigation result obs of the adult and pediatric follow-up consultations,
+   * which are all read by the same scan of the obs table
+   */
+  private CohortDefinition tbScreeningObs(Concept question, List<Concept> values) {
+    return genericCohortQueries.hasCodedObsInMatrix(
+        Arrays.asList(tbMetadata.getTbScreeningConcept(), tbMetadata.getResearchResultConcept()),
+        Arrays.asList(
+            hivMetadata.getAdultoSeguimentoEncounterType(),
+            hivMetadata.getARVPediatriaSeguimentoEncounterType()),
+        question,
+        values);
+  }
+
   private void addGeneralParameters(CohortDefinition cd) {
     cd.addParameter(new Parameter("startDate", "Start Date", Date.class));
     cd.addParameter(new Parameter("endDate", "End Date", Date.class));
@@ -446,14 +462,8 @@ public class TXTBCohortQueries {
   /** PACIENTES COM RASTREIO DE TUBERCULOSE NEGATIVO codes: RASTREIOTBNEG */
   public CohortDefinition codedNoTbScreening() {
     CohortDefinition cd =
-        genericCohortQueries.hasCodedObs(
-            tbMetadata.getTbScreeningConcept(),
-            TimeModifier.ANY,
-            SetComparator.IN,
-            Arrays.asList(
-                hivMetadata.getAdultoSeguimentoEncounterType(),
-                hivMetadata.getARVPediatriaSeguimentoEncounterType()),
-            Arrays.asList(commonMetadata.getNoConcept()));
+        tbScreeningObs(
+            tbMetadata.getTbScreeningConcept(), Arrays.asList(commonMetadata.getNoConcept()));
     addGeneralParameters(cd);
     return cd;
   }
@@ -461,28 +471,14 @@ public class TXTBCohortQueries {
   /** PACIENTES COM RASTREIO DE TUBERCULOSE POSITIVO codes: RASTREIOTBPOS */
   public CohortDefinition codedYesTbScreening() {
     CohortDefinition cd =
-        genericCohortQueries.hasCodedObs(
-            tbMetadata.getTbScreeningConcept(),
-            TimeModifier.ANY,
-            SetComparator.IN,
-            Arrays.asList(
-                hivMetadata.getAdultoSeguimentoEncounterType(),
-                hivMetadata.getARVPediatriaSeguimentoEncounterType()),
-            Arrays.asList(commonMetadata.getYesConcept()));
+        tbScreeningObs(
+            tbMetadata.getTbScreeningConcept(), Arrays.asList(commonMetadata.getYesConcept()));
     addGeneralParameters(cd);
     return cd;
   }
 
   public CohortDefinition tbScreening() {
-    CohortDefinition cd =
-        genericCohortQueries.hasCodedObs(
-            tbMetadata.getTbScreeningConcept(),
-            TimeModifier.ANY,
-            SetComparator.IN,
-            Arrays.asList(
-                hivMetadata.getAdultoSeguimentoEncounterType(),
-                hivMetadata.getARVPediatriaSeguimentoEncounterType()),
-            null);
+    CohortDefinition cd = tbScreeningObs(tbMetadata.getTbScreeningConcept(), null);
     addGeneralParameters(cd);
     return cd;
   }
@@ -601,28 +597,16 @@ public class TXTBCohortQueries {
 
   public CohortDefinition positiveInvesitionResult() {
     CohortDefinition cd =
-        genericCohortQueries.hasCodedObs(
-            tbMetadata.getResearchResultConcept(),
-            TimeModifier.ANY,
-            SetComparator.IN,
-            Arrays.asList(
-                hivMetadata.getAdultoSeguimentoEncounterType(),
-                hivMetadata.getARVPediatriaSeguimentoEncounterType()),
-            Arrays.asList(tbMetadata.getPositiveConcept()));
+        tbScreeningObs(
+            tbMetadata.getResearchResultConcept(), Arrays.asList(tbMetadata.getPositiveConcept()));
     addGeneralParameters(cd);
     return cd;
   }
 
   public CohortDefinition negativeInvesitionResult() {
     CohortDefinition cd =
-        genericCohortQueries.hasCodedObs(
-            tbMetadata.getResearchResultConcept(),
-            TimeModifier.ANY,
-            SetComparator.IN,
-            Arrays.asList(
-                hivMetadata.getAdultoSeguimentoEncounterType(),
-                hivMetadata.getARVPediatriaSeguimentoEncounterType()),
-            Arrays.asList(tbMetadata.getNegativeConcept()));
+        tbScreeningObs(
+            tbMetadata.getResearchResultConcept(), Arrays.asList(tbMetadata.getNegativeConcept()));
     addGeneralParameters(cd);
     return cd;
   }
@@ -16,10 +16,11 @@ import java.util.Date;
 import org.apache.commons.lang3.StringUtils;
 import org.openmrs.Location;
 import org.openmrs.module.eptsreports.metadata.HivMetadata;
+import org.openmrs.module.eptsreports.reporting.cohort.definition.BoundSqlCohortDefinition;
+import org.openmrs.module.eptsreports.reporting.cohort.definition.TxCurrCohortDefinition;
+import org.openmrs.module.eptsreports.reporting.cohort.definition.TxCurrCohortDefinition.Spec;
 import org.openmrs.module.eptsreports.reporting.utils.EptsReportUtils;
 import org.openmrs.module.reporting.cohort.definition.CohortDefinition;
-import org.openmrs.module.reporting.cohort.definition.CompositionCohortDefinition;
-import org.openmrs.module.reporting.cohort.definition.SqlCohortDefinition;
 import org.openmrs.module.reporting.definition.library.DocumentedDefinition;
 import org.openmrs.module.reporting.evaluation.parameter.Parameter;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -35,10 +36,6 @@ public class TxCurrCohortQueries {
           + "and obs.obs_datetime = (select max(encounter.encounter_datetime) from encounter "
           + "where encounter.encounter_type in (%s) and encounter.patient_id = obs.person_id and encounter.location_id = obs.location_id and encounter.voided = false and encounter.encounter_datetime <= :onOrBefore) ";
 
-  private static final int OLD_SPEC_ABANDONMENT_DAYS = 60;
-
-  private static final int CURRENT_SPEC_ABANDONMENT_DAYS = 31;
-
   @Autowired private HivMetadata hivMetadata;
 
   @Autowired private GenericCohortQueries genericCohortQueries;
@@ -52,104 +49,60 @@ public class TxCurrCohortQueries {
    */
   @DocumentedDefinition(value = "getTxCurrCompositionCohort")
   public CohortDefinition getTxCurrCompositionCohort(String cohortName, boolean currentSpec) {
+    return getTxCurrCohort(cohortName, currentSpec ? Spec.CURRENT : Spec.OLD, null);
+  }
 
-    final int abandonmentDays =
-        currentSpec ? CURRENT_SPEC_ABANDONMENT_DAYS : OLD_SPEC_ABANDONMENT_DAYS;
-    CompositionCohortDefinition txCurrComposition = new CompositionCohortDefinition();
-    txCurrComposition.setName(cohortName);
-
-    txCurrComposition.addParameter(new Parameter("onOrBefore", "onOrBefore", Date.class));
-    txCurrComposition.addParameter(new Parameter("location", "location", Location.class));
-    txCurrComposition.addParameter(new Parameter("effectiveDate", "effectiveDate", Date.class));
-    txCurrComposition.addParameter(new Parameter("locations", "location", Location.class));
+  /**
+   * The patients currently on ART under a specification who are not under another one, to reconcile
+   * the two specifications. The searches are shared with the TX_CURR cohorts of both
+   * specifications evaluated for the same report.
+   *
+   * @param cohortName Cohort name
+   * @param spec the specification
+   * @param excludedSpec the specification whose patients are excluded
+   * @return TxCurr difference cohort definition
+   */
+  @DocumentedDefinition(value = "getTxCurrSpecDifferenceCohort")
+  public CohortDefinition getTxCurrSpecDifferenceCohort(
+      String cohortName, Spec spec, Spec excludedSpec) {
+    return getTxCurrCohort(cohortName, spec, excludedSpec);
+  }
 
-    CohortDefinition inARTProgramAtEndDate =
-        genericCohortQueries.createInProgram("InARTProgram", hivMetadata.getARTProgram());
-    txCurrComposition
-        .getSearches()
-        .put(
-            "1",
-            EptsReportUtils.map(
-                inARTProgramAtEndDate, "onOrBefore=${onOrBefore},locations=${location}"));
-    txCurrComposition
-        .getSearches()
-        .put(
-            "2",
-            EptsReportUtils.map(
-                getPatientWithSTARTDRUGSObsBeforeOrOnEndDate(),
-                "onOrBefore=${onOrBefore},location=${location}"));
-    txCurrComposition
-        .getSearches()
-        .put(
-            "3",
-            EptsReportUtils.map(
-                hivCohortQueries.getPatientWithHistoricalDrugStartDateObsBeforeOrOnEndDate(),
-                "onOrBefore=${onOrBefore},location=${location}"));
-    txCurrComposition
-        .getSearches()
-        .put(
-            "4",
-            EptsReportUtils.map(
-                getPatientWithFirstDrugPickupEncounterBeforeOrOnEndDate(),
-                "onOrBefore=${onOrBefore},location=${location}"));
-    txCurrComposition
-        .getSearches()
-        .put(
-            "5",
-            EptsReportUtils.map(
-                getPatientsWhoLeftARTProgramBeforeOrOnEndDate(),
-                "onOrBefore=${onOrBefore},location=${location}"));
-    txCurrComposition
-        .getSearches()
-        .put(
-            "6",
-            EptsReportUtils.map(
-                getPatientsThatMissedNexPickup(),
-                String.format(
-                    "onOrBefore=${onOrBefore},location=${location},abandonmentDays=%s",
-                    abandonmentDays)));
-    txCurrComposition
-        .getSearches()
-        .put(
-            "7",
-            EptsReportUtils.map(
-                getPatientsThatDidNotMissNextConsultation(),
-                String.format(
-                    "onOrBefore=${onOrBefore},location=${location},abandonmentDays=%s",
-                    abandonmentDays)));
-    txCurrComposition
-        .getSearches()
-        .put(
-            "8",
-            EptsReportUtils.map(
-                getPatientsReportedAsAbandonmentButStillInPeriod(),
-                String.format(
-                    "onOrBefore=${onOrBefore},location=${location},abandonmentDays=%s",
-                    abandonmentDays)));
-    txCurrComposition
-        .getSearches()
-        .put(
-            "11",
-            EptsReportUtils.map(
-                getPatientsWithNextPickupDate(), "onOrBefore=${onOrBefore},location=${location}"));
-    txCurrComposition
-        .getSearches()
-        .put(
-            "12",
-            EptsReportUtils.map(
-                getPatientsWithNextConsultationDate(),
-                "onOrBefore=${onOrBefore},location=${location}"));
+  private CohortDefinition getTxCurrCohort(String cohortName, Spec spec, Spec excludedSpec) {
+    TxCurrCohortDefinition txCurr = new TxCurrCohortDefinition();
+    txCurr.setName(cohortName);
+    txCurr.setSpec(spec);
+    txCurr.setExcludedSpec(excludedSpec);
 
-    String compositionString;
-    if (currentSpec) {
-      compositionString =
-          "(1 OR 2 OR 3 OR 4) AND (NOT (5 OR ((6 OR (NOT 11)) AND (NOT (7 OR 8))))) AND (11 OR 12)";
-    } else {
-      compositionString = "(1 OR 2 OR 3 OR 4) AND (NOT (5 OR (6 AND (NOT (7 OR 8)))))";
-    }
+    txCurr.addParameter(new Parameter("onOrBefore", "onOrBefore", Date.class));
+    txCurr.addParameter(new Parameter("location", "location", Location.class));
+    txCurr.addParameter(new Parameter("effectiveDate", "effectiveDate", Date.class));
+    txCurr.addParameter(new Parameter("locations", "location", Location.class));
 
-    txCurrComposition.setCompositionString(compositionString);
-    return txCurrComposition;
+    String mappings = "onOrBefore=${onOrBefore},location=${location}";
+    txCurr.setInArtProgram(
+        EptsReportUtils.map(
+            genericCohortQueries.createInProgram("InARTProgram", hivMetadata.getARTProgram()),
+            "onOrBefore=${onOrBefore},locations=${location}"));
+    txCurr.setStartDrugs(
+        EptsReportUtils.map(getPatientWithSTARTDRUGSObsBeforeOrOnEndDate(), mappings));
+    txCurr.setHistoricalStartDate(
+        EptsReportUtils.map(
+            hivCohortQueries.getPatientWithHistoricalDrugStartDateObsBeforeOrOnEndDate(),
+            mappings));
+    txCurr.setFirstPickup(
+        EptsReportUtils.map(getPatientWithFirstDrugPickupEncounterBeforeOrOnEndDate(), mappings));
+    txCurr.setLeftArtProgram(
+        EptsReportUtils.map(getPatientsWhoLeftARTProgramBeforeOrOnEndDate(), mappings));
+    txCurr.setMissedNextPickup(EptsReportUtils.map(getPatientsThatMissedNexPickup(), mappings));
+    txCurr.setDidNotMissNextConsultation(
+        EptsReportUtils.map(getPatientsThatDidNotMissNextConsultation(), mappings));
+    txCurr.setAbandonedButStillInPeriod(
+        EptsReportUtils.map(getPatientsReportedAsAbandonmentButStillInPeriod(), mappings));
+    txCurr.setWithNextPickupDate(EptsReportUtils.map(getPatientsWithNextPickupDate(), mappings));
+    txCurr.setWithNextConsultationDate(
+        EptsReportUtils.map(getPatientsWithNextConsultationDate(), mappings));
+    return txCurr;
   }
 
   /**
@@ -158,7 +111,7 @@ public class TxCurrCohortQueries {
    */
   @DocumentedDefinition(value = "patientWithFirstDrugPickupEncounter")
   private CohortDefinition getPatientWithFirstDrugPickupEncounterBeforeOrOnEndDate() {
-    SqlCohortDefinition patientWithFirstDrugPickupEncounter = new SqlCohortDefinition();
+    BoundSqlCohortDefinition patientWithFirstDrugPickupEncounter = new BoundSqlCohortDefinition();
     patientWithFirstDrugPickupEncounter.setName("patientWithFirstDrugPickupEncounter");
     String query =
         "SELECT p.patient_id "
@@ -183,7 +136,7 @@ public class TxCurrCohortQueries {
    */
   @DocumentedDefinition(value = "patientWithSTARTDRUGSObs")
   private CohortDefinition getPatientWithSTARTDRUGSObsBeforeOrOnEndDate() {
-    SqlCohortDefinition patientWithSTARTDRUGSObs = new SqlCohortDefinition();
+    BoundSqlCohortDefinition patientWithSTARTDRUGSObs = new BoundSqlCohortDefinition();
     patientWithSTARTDRUGSObs.setName("patientWithSTARTDRUGSObs");
     String query =
         "SELECT p.patient_id FROM patient p INNER JOIN encounter e ON p.patient_id=e.patient_id "
@@ -211,7 +164,7 @@ public class TxCurrCohortQueries {
    */
   @DocumentedDefinition(value = "leftARTProgramBeforeOrOnEndDate")
   private CohortDefinition getPatientsWhoLeftARTProgramBeforeOrOnEndDate() {
-    SqlCohortDefinition leftARTProgramBeforeOrOnEndDate = new SqlCohortDefinition();
+    BoundSqlCohortDefinition leftARTProgramBeforeOrOnEndDate = new BoundSqlCohortDefinition();
     leftARTProgramBeforeOrOnEndDate.setName("leftARTProgramBeforeOrOnEndDate");
 
     String leftARTProgramQueryString =
@@ -249,7 +202,7 @@ public class TxCurrCohortQueries {
    */
   @DocumentedDefinition(value = "patientsThatMissedNexPickup")
   private CohortDefinition getPatientsThatMissedNexPickup() {
-    SqlCohortDefinition definition = new SqlCohortDefinition();
+    BoundSqlCohortDefinition definition = new BoundSqlCohortDefinition();
     definition.setName("patientsThatMissedNexPickup");
     String query =
         "SELECT patient_id FROM (SELECT p.patient_id,max(encounter_datetime) encounter_datetime FROM patient p INNER JOIN encounter e on e.patient_id=p.patient_id WHERE p.voided=0 AND e.voided=0 AND e.encounter_type=%s"
@@ -272,7 +225,7 @@ public class TxCurrCohortQueries {
    */
   @DocumentedDefinition(value = "patientsThatDidNotMissNextConsultation")
   private CohortDefinition getPatientsThatDidNotMissNextConsultation() {
-    SqlCohortDefinition definition = new SqlCohortDefinition();
+    BoundSqlCohortDefinition definition = new BoundSqlCohortDefinition();
     definition.setName("patientsThatDidNotMissNextConsultation");
     String query =
         "SELECT patient_id FROM "
@@ -302,7 +255,7 @@ public class TxCurrCohortQueries {
    */
   @DocumentedDefinition(value = "patientsReportedAsAbandonmentButStillInPeriod")
   private CohortDefinition getPatientsReportedAsAbandonmentButStillInPeriod() {
-    SqlCohortDefinition definition = new SqlCohortDefinition();
+    BoundSqlCohortDefinition definition = new BoundSqlCohortDefinition();
     definition.setName("patientsReportedAsAbandonmentButStillInPeriod");
     String query =
         "SELECT abandono.patient_id FROM (SELECT pg.patient_id FROM patient p INNER JOIN patient_program pg ON p.patient_id=pg.patient_id INNER JOIN patient_state ps ON pg.patient_program_id=ps.patient_program_id WHERE pg.voided=0 AND ps.voided=0 AND p.voided=0 AND pg.program_id=%d "
@@ -330,7 +283,7 @@ public class TxCurrCohortQueries {
    */
   @DocumentedDefinition(value = "patientsWithNextPickupDate")
   private CohortDefinition getPatientsWithNextPickupDate() {
-    SqlCohortDefinition definition = new SqlCohortDefinition();
+    BoundSqlCohortDefinition definition = new BoundSqlCohortDefinition();
     definition.setName("patientsWithNextPickupDate");
     String encounterTypes =
         StringUtils.join(
@@ -352,7 +305,7 @@ public class TxCurrCohortQueries {
    */
   @DocumentedDefinition(value = "patientsWithNextConsultationDate")
   private CohortDefinition getPatientsWithNextConsultationDate() {
-    SqlCohortDefinition definition = new SqlCohortDefinition();
+    BoundSqlCohortDefinition definition = new BoundSqlCohortDefinition();
     definition.setName("patientsWithNextConsultationDate");
     String encounterTypes =
         StringUtils.join(
@@ -21,6 +21,7 @@ import org.openmrs.EncounterType;
 import org.openmrs.Location;
 import org.openmrs.module.eptsreports.metadata.CommonMetadata;
 import org.openmrs.module.eptsreports.metadata.HivMetadata;
+import org.openmrs.module.eptsreports.reporting.cohort.definition.BoundSqlCohortDefinition;
 import org.openmrs.module.eptsreports.reporting.library.queries.BreastfeedingQueries;
 import org.openmrs.module.eptsreports.reporting.library.queries.PregnantQueries;
 import org.openmrs.module.eptsreports.reporting.utils.EptsReportUtils;
@@ -28,7 +29,6 @@ import org.openmrs.module.reporting.cohort.definition.BaseObsCohortDefinition;
 import org.openmrs.module.reporting.cohort.definition.CohortDefinition;
 import org.openmrs.module.reporting.cohort.definition.CompositionCohortDefinition;
 import org.openmrs.module.reporting.cohort.definition.DateObsCohortDefinition;
-import org.openmrs.module.reporting.cohort.definition.SqlCohortDefinition;
 import org.openmrs.module.reporting.common.RangeComparator;
 import org.openmrs.module.reporting.common.SetComparator;
 import org.openmrs.module.reporting.definition.library.DocumentedDefinition;
@@ -88,12 +88,12 @@ public class TxNewCohortQueries {
    * @return CohortDefinition
    */
   public CohortDefinition getPatientsPregnantEnrolledOnART() {
-    SqlCohortDefinition cd = new SqlCohortDefinition();
+    BoundSqlCohortDefinition cd = new BoundSqlCohortDefinition();
     cd.setName("patientsPregnantEnrolledOnART");
     cd.addParameter(new Parameter("startDate", "Start Date", Date.class));
     cd.addParameter(new Parameter("endDate", "End Date", Date.class));
     cd.addParameter(new Parameter("location", "Location", Location.class));
-    cd.setQuery(
+    cd.setBoundQuery(
         PregnantQueries.getPregnantWhileOnArt(
             commonMetadata.getPregnantConcept().getConceptId(),
             hivMetadata.getGestationConcept().getConceptId(),
@@ -112,12 +112,12 @@ public class TxNewCohortQueries {
    * @return CohortDefinition
    */
   public CohortDefinition getPatientsWhoGaveBirthWithinReportingPeriod() {
-    SqlCohortDefinition cd = new SqlCohortDefinition();
+    BoundSqlCohortDefinition cd = new BoundSqlCohortDefinition();
     cd.setName("patientsWhoGaveBirthWithinReportingPeriod");
     cd.addParameter(new Parameter("startDate", "Start Date", Date.class));
     cd.addParameter(new Parameter("endDate", "End Date", Date.class));
     cd.addParameter(new Parameter("location", "Location", Location.class));
-    cd.setQuery(
+    cd.setBoundQuery(
         BreastfeedingQueries.getPatientsWhoGaveBirthWithinReportingPeriod(
             hivMetadata.getPtvEtvProgram().getProgramId(), 27));
 
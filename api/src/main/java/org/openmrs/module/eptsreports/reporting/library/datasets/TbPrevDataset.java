@@ -15,6 +15,7 @@ package org.openmrs.module.eptsreports.reporting.library.datasets;
 
 import java.util.Arrays;
 import java.util.List;
+import org.openmrs.module.eptsreports.reporting.dataset.definition.DisaggregatedCohortIndicatorDataSetDefinition;
 import org.openmrs.module.eptsreports.reporting.library.cohorts.TbPrevCohortQueries;
 import org.openmrs.module.eptsreports.reporting.library.dimensions.AgeDimensionCohortInterface;
 import org.openmrs.module.eptsreports.reporting.library.dimensions.EptsCommonDimension;
@@ -40,7 +41,7 @@ public class TbPrevDataset extends BaseDataSet {
   private AgeDimensionCohortInterface ageDimensionCohort;
 
   public DataSetDefinition constructDatset() {
-    CohortIndicatorDataSetDefinition dsd = new CohortIndicatorDataSetDefinition();
+    CohortIndicatorDataSetDefinition dsd = new DisaggregatedCohortIndicatorDataSetDefinition();
     String mappings = "startDate=${startDate},endDate=${endDate},location=${location}";
     dsd.setName("TB PREV Data Set");
     dsd.addParameters(getParameters());
@@ -14,6 +14,7 @@ package org.openmrs.module.eptsreports.reporting.library.datasets;
 
 import java.util.Arrays;
 import java.util.List;
+import org.openmrs.module.eptsreports.reporting.dataset.definition.DisaggregatedCohortIndicatorDataSetDefinition;
 import org.openmrs.module.eptsreports.reporting.library.cohorts.TxCurrCohortQueries;
 import org.openmrs.module.eptsreports.reporting.library.dimensions.AgeDimensionCohortInterface;
 import org.openmrs.module.eptsreports.reporting.library.dimensions.EptsCommonDimension;
@@ -41,7 +42,8 @@ public class TxCurrDataset extends BaseDataSet {
 
   public CohortIndicatorDataSetDefinition constructTxCurrDataset(boolean currentSpec) {
 
-    CohortIndicatorDataSetDefinition dataSetDefinition = new CohortIndicatorDataSetDefinition();
+    CohortIndicatorDataSetDefinition dataSetDefinition =
+        new DisaggregatedCohortIndicatorDataSetDefinition();
     dataSetDefinition.setName("TX_CURR Data Set");
     dataSetDefinition.addParameters(getParameters());
     String mappings = "startDate=${startDate},endDate=${endDate},location=${location}";
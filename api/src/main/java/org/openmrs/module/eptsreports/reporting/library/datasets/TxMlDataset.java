@@ -2,6 +2,7 @@ package org.openmrs.module.eptsreports.reporting.library.datasets;
 
 import java.util.Arrays;
 import java.util.List;
+import org.openmrs.module.eptsreports.reporting.dataset.definition.DisaggregatedCohortIndicatorDataSetDefinition;
 import org.openmrs.module.eptsreports.reporting.library.cohorts.TxMlCohortQueries;
 import org.openmrs.module.eptsreports.reporting.library.dimensions.AgeDimensionCohortInterface;
 import org.openmrs.module.eptsreports.reporting.library.dimensions.EptsCommonDimension;
@@ -27,7 +28,7 @@ public class TxMlDataset extends BaseDataSet {
   @Autowired private TxMlCohortQueries txMlCohortQueries;
 
   public DataSetDefinition constructtxMlDataset() {
-    CohortIndicatorDataSetDefinition dsd = new CohortIndicatorDataSetDefinition();
+    CohortIndicatorDataSetDefinition dsd = new DisaggregatedCohortIndicatorDataSetDefinition();
     String mappings = "startDate=${startDate},endDate=${endDate},location=${location}";
     dsd.setName("Tx_Ml Data Set");
     dsd.addParameters(getParameters());
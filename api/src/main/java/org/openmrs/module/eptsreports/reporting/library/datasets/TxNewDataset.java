@@ -16,6 +16,7 @@ package org.openmrs.module.eptsreports.reporting.library.datasets;
 
 import java.util.Arrays;
 import java.util.List;
+import org.openmrs.module.eptsreports.reporting.dataset.definition.DisaggregatedCohortIndicatorDataSetDefinition;
 import org.openmrs.module.eptsreports.reporting.library.cohorts.TxNewCohortQueries;
 import org.openmrs.module.eptsreports.reporting.library.dimensions.AgeDimensionCohortInterface;
 import org.openmrs.module.eptsreports.reporting.library.dimensions.EptsCommonDimension;
@@ -44,7 +45,8 @@ public class TxNewDataset extends BaseDataSet {
 
   public DataSetDefinition constructTxNewDataset() {
 
-    CohortIndicatorDataSetDefinition dataSetDefinition = new CohortIndicatorDataSetDefinition();
+    CohortIndicatorDataSetDefinition dataSetDefinition =
+        new DisaggregatedCohortIndicatorDataSetDefinition();
     dataSetDefinition.setName("TX_NEW Data Set");
     dataSetDefinition.addParameters(getParameters());
 
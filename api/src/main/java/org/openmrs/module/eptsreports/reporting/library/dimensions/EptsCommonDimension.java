@@ -13,12 +13,10 @@ package org.openmrs.module.eptsreports.reporting.library.dimensions;
 
 import java.util.Date;
 import org.openmrs.Location;
-import org.openmrs.module.eptsreports.metadata.HivMetadata;
+import org.openmrs.module.eptsreports.reporting.cohort.definition.EriOutcomeCohortDefinition;
 import org.openmrs.module.eptsreports.reporting.library.cohorts.Eri2MonthsCohortQueries;
 import org.openmrs.module.eptsreports.reporting.library.cohorts.Eri4MonthsCohortQueries;
-import org.openmrs.module.eptsreports.reporting.library.cohorts.EriCohortQueries;
 import org.openmrs.module.eptsreports.reporting.library.cohorts.GenderCohortQueries;
-import org.openmrs.module.eptsreports.reporting.library.cohorts.GenericCohortQueries;
 import org.openmrs.module.eptsreports.reporting.library.cohorts.TbPrevCohortQueries;
 import org.openmrs.module.eptsreports.reporting.library.cohorts.TxNewCohortQueries;
 import org.openmrs.module.eptsreports.reporting.utils.EptsReportUtils;
@@ -34,16 +32,10 @@ public class EptsCommonDimension {
 
   @Autowired private TxNewCohortQueries txNewCohortQueries;
 
-  @Autowired private GenericCohortQueries genericCohortQueries;
-
-  @Autowired private HivMetadata hivMetadata;
-
   @Autowired private Eri4MonthsCohortQueries eri4MonthsCohortQueries;
 
   @Autowired private Eri2MonthsCohortQueries eri2MonthsCohortQueries;
 
-  @Autowired private EriCohortQueries eriCohortQueries;
-
   @Autowired private TbPrevCohortQueries tbPrevCohortQueries;
 
   /**
@@ -145,53 +137,16 @@ public class EptsCommonDimension {
     dim.addParameter(new Parameter("location", "location", Location.class));
     dim.setName("Get patient states");
 
-    dim.addCohortDefinition(
-        "IART",
-        EptsReportUtils.map(
-            eriCohortQueries.getAllPatientsWhoInitiatedArt(),
-            "cohortStartDate=${cohortStartDate},cohortEndDate=${cohortEndDate},location=${location}"));
-
-    dim.addCohortDefinition(
-        "AIT",
-        EptsReportUtils.map(
-            eri4MonthsCohortQueries.getPatientsWhoAreAliveAndOnTreatment(),
-            "cohortStartDate=${cohortStartDate},cohortEndDate=${cohortEndDate},reportingEndDate=${reportingEndDate},location=${location}"));
-
-    dim.addCohortDefinition(
-        "DP",
-        EptsReportUtils.map(
-            genericCohortQueries.getDeceasedPatients(),
-            "startDate=${cohortStartDate},endDate=${reportingEndDate},location=${location}"));
-
-    dim.addCohortDefinition(
-        "LTFU",
-        EptsReportUtils.map(
-            eri4MonthsCohortQueries.getAllPatientsWhoAreLostToFollowUpDuringPeriod(),
-            "cohortStartDate=${cohortStartDate},cohortEndDate=${cohortEndDate},reportingEndDate=${reportingEndDate},location=${location}"));
-
-    dim.addCohortDefinition(
-        "TOP",
-        EptsReportUtils.map(
-            genericCohortQueries.getPatientsBasedOnPatientStates(
-                hivMetadata.getARTProgram().getProgramId(),
-                hivMetadata
-                    .getTransferredOutToAnotherHealthFacilityWorkflowState()
-                    .getProgramWorkflowStateId()),
-            "startDate=${cohortStartDate},endDate=${reportingEndDate},location=${location}"));
-
-    dim.addCohortDefinition(
-        "STP",
-        EptsReportUtils.map(
-            genericCohortQueries.getPatientsBasedOnPatientStates(
-                hivMetadata.getARTProgram().getProgramId(),
-                hivMetadata.getSuspendedTreatmentWorkflowState().getProgramWorkflowStateId()),
-            "startDate=${cohortStartDate},endDate=${reportingEndDate},location=${location}"));
-
-    dim.addCohortDefinition(
-        "ANIT",
-        EptsReportUtils.map(
-            eri4MonthsCohortQueries.getPatientsWhoAreAliveAndNotOnTreatment(),
-            "cohortStartDate=${cohortStartDate},cohortEndDate=${cohortEndDate},reportingEndDate=${reportingEndDate},location=${location}"));
+    String mappings =
+        "cohortStartDate=${cohortStartDate},cohortEndDate=${cohortEndDate},reportingEndDate=${reportingEndDate},location=${location}";
+    addEri4MonthsOutcome(dim, "IART", EriOutcomeCohortDefinition.Outcome.INITIATED, mappings);
+    addEri4MonthsOutcome(dim, "AIT", EriOutcomeCohortDefinition.Outcome.RETAINED, mappings);
+    addEri4MonthsOutcome(dim, "DP", EriOutcomeCohortDefinition.Outcome.DEAD, mappings);
+    addEri4MonthsOutcome(
+        dim, "LTFU", EriOutcomeCohortDefinition.Outcome.LOST_TO_FOLLOW_UP, mappings);
+    addEri4MonthsOutcome(dim, "TOP", EriOutcomeCohortDefinition.Outcome.TRANSFERRED_OUT, mappings);
+    addEri4MonthsOutcome(dim, "STP", EriOutcomeCohortDefinition.Outcome.SUSPENDED, mappings);
+    addEri4MonthsOutcome(dim, "ANIT", EriOutcomeCohortDefinition.Outcome.NOT_RETAINED, mappings);
     return dim;
   }
 
@@ -207,37 +162,37 @@ public class EptsCommonDimension {
     dim.addParameter(new Parameter("reportingEndDate", "Reporting End Date", Date.class));
     dim.addParameter(new Parameter("location", "location", Location.class));
     dim.setName("Get patients dimensions for Eri2Months");
+    String mappings =
+        "cohortStartDate=${cohortStartDate},cohortEndDate=${cohortEndDate},reportingEndDate=${reportingEndDate},location=${location}";
+    addEri2MonthsOutcome(dim, "IART", EriOutcomeCohortDefinition.Outcome.INITIATED, mappings);
+    addEri2MonthsOutcome(dim, "DNPUD", EriOutcomeCohortDefinition.Outcome.NOT_RETAINED, mappings);
+    addEri2MonthsOutcome(dim, "PUD", EriOutcomeCohortDefinition.Outcome.RETAINED, mappings);
+    addEri2MonthsOutcome(dim, "DP", EriOutcomeCohortDefinition.Outcome.DEAD, mappings);
+    addEri2MonthsOutcome(dim, "TOP", EriOutcomeCohortDefinition.Outcome.TRANSFERRED_OUT, mappings);
+    addEri2MonthsOutcome(dim, "STP", EriOutcomeCohortDefinition.Outcome.SUSPENDED, mappings);
+    return dim;
+  }
+
+  private void addEri4MonthsOutcome(
+      CohortDefinitionDimension dim,
+      String key,
+      EriOutcomeCohortDefinition.Outcome outcome,
+      String mappings) {
     dim.addCohortDefinition(
-        "IART",
-        EptsReportUtils.map(
-            eriCohortQueries.getAllPatientsWhoInitiatedArt(),
-            "cohortStartDate=${cohortStartDate},cohortEndDate=${cohortEndDate},location=${location}"));
-    dim.addCohortDefinition(
-        "DNPUD",
-        EptsReportUtils.map(
-            eri2MonthsCohortQueries.getPatientsWhoDidNotPickDrugsOnTheirSecondVisit(),
-            "cohortStartDate=${cohortStartDate},cohortEndDate=${cohortEndDate},reportingEndDate=${reportingEndDate},location=${location}"));
-    dim.addCohortDefinition(
-        "PUD",
-        EptsReportUtils.map(
-            eri2MonthsCohortQueries.getPatientsWhoPickedUpDrugsOnTheirSecondVisit(),
-            "cohortStartDate=${cohortStartDate},cohortEndDate=${cohortEndDate},reportingEndDate=${reportingEndDate},location=${location}"));
-    dim.addCohortDefinition(
-        "DP",
-        EptsReportUtils.map(
-            eri2MonthsCohortQueries.getPatientsWhoInitiatedArtAndDead(),
-            "cohortStartDate=${cohortStartDate},cohortEndDate=${cohortEndDate},reportingEndDate=${reportingEndDate},location=${location}"));
-    dim.addCohortDefinition(
-        "TOP",
+        key,
         EptsReportUtils.map(
-            eri2MonthsCohortQueries.getPatientsWhoInitiatedArtButTransferredOut(),
-            "cohortStartDate=${cohortStartDate},cohortEndDate=${cohortEndDate},reportingEndDate=${reportingEndDate},location=${location}"));
+            eri4MonthsCohortQueries.getPatientsWithEri4MonthsOutcome(outcome), mappings));
+  }
+
+  private void addEri2MonthsOutcome(
+      CohortDefinitionDimension dim,
+      String key,
+      EriOutcomeCohortDefinition.Outcome outcome,
+      String mappings) {
     dim.addCohortDefinition(
-        "STP",
+        key,
         EptsReportUtils.map(
-            eri2MonthsCohortQueries.getPatientsWhoInitiatedArtButSuspendedTreatment(),
-            "cohortStartDate=${cohortStartDate},cohortEndDate=${cohortEndDate},reportingEndDate=${reportingEndDate},location=${location}"));
-    return dim;
+            eri2MonthsCohortQueries.getPatientsWithEri2MonthsOutcome(outcome), mappings));
   }
 
   public CohortDefinitionDimension getArtStatusDimension() {
@@ -15,7 +15,6 @@ package org.openmrs.module.eptsreports.reporting.library.queries;
 
 import java.util.Arrays;
 import java.util.Map;
-import org.apache.commons.lang3.StringUtils;
 
 public class BaseQueries {
 
@@ -23,29 +22,25 @@ public class BaseQueries {
   // concept
   // they map to concept_id=1369 - TRANSFER FROM OTHER FACILITY
   // TODO: Query needs to be refactored
-  public static String getBaseCohortQuery(Map<String, String> parameters) {
+  public static BoundQuery getBaseCohortQuery(Map<String, Integer> parameters) {
     String query =
         "select p.patient_id from patient p join encounter e on e.patient_id=p.patient_id "
-            + "where e.voided=0 and p.voided=0 and e.encounter_type in (%s) and e.encounter_datetime<=:endDate and e.location_id = :location "
+            + "where e.voided=0 and p.voided=0 and e.encounter_type in (:encounterTypes) and e.encounter_datetime<=:endDate and e.location_id = :location "
             + "union "
-            + "select pg.patient_id from patient p join patient_program pg on p.patient_id=pg.patient_id where pg.voided=0 and p.voided=0 and program_id=%s and date_enrolled<=:endDate and location_id=:location "
+            + "select pg.patient_id from patient p join patient_program pg on p.patient_id=pg.patient_id where pg.voided=0 and p.voided=0 and program_id=:hivCareProgramId and date_enrolled<=:endDate and location_id=:location "
             + "union "
             + "select pg.patient_id from patient p join patient_program pg on p.patient_id=pg.patient_id join patient_state ps on pg.patient_program_id=ps.patient_program_id "
-            + "where pg.voided=0 and ps.voided=0 and p.voided=0 and pg.program_id=%s and ps.state=28 and ps.start_date=pg.date_enrolled and ps.start_date<=:endDate and location_id=:location "
+            + "where pg.voided=0 and ps.voided=0 and p.voided=0 and pg.program_id=:hivCareProgramId and ps.state=28 and ps.start_date=pg.date_enrolled and ps.start_date<=:endDate and location_id=:location "
             + "union "
             + "select pg.patient_id from patient p join patient_program pg on p.patient_id=pg.patient_id join patient_state ps on pg.patient_program_id=ps.patient_program_id "
-            + "where pg.voided=0 and ps.voided=0 and p.voided=0 and pg.program_id=%s and ps.state=29 and ps.start_date<=:endDate and location_id=:location ";
-    String encounterTypes =
-        StringUtils.join(
+            + "where pg.voided=0 and ps.voided=0 and p.voided=0 and pg.program_id=:artProgramId and ps.state=29 and ps.start_date<=:endDate and location_id=:location ";
+    return new BoundQuery(query)
+        .bind(
+            "encounterTypes",
             Arrays.asList(
                 parameters.get("arvAdultInitialEncounterTypeId"),
-                parameters.get("arvPediatriaInitialEncounterTypeId")),
-            ',');
-    return String.format(
-        query,
-        encounterTypes,
-        parameters.get("hivCareProgramId"),
-        parameters.get("hivCareProgramId"),
-        parameters.get("artProgramId"));
+                parameters.get("arvPediatriaInitialEncounterTypeId")))
+        .bind("hivCareProgramId", parameters.get("hivCareProgramId"))
+        .bind("artProgramId", parameters.get("artProgramId"));
   }
 }
@@ -0,0 +1,107 @@
+/*
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.module.eptsreports.reporting.library.queries;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * A SQL query with its metadata ids, and other constants, given as named bind parameters rather
+ * than written into the query. The text of the query is then the same whatever the ids of a site,
+ * so the database can reuse its prepared statement and plan, and plans can be compared across
+ * sites. Lists are bound as collections, which are expanded to one placeholder per element.
+ */
+public class BoundQuery {
+
+  private final String sql;
+
+  private final Map<String, Object> values = new LinkedHashMap<String, Object>();
+
+  /** @param sql the query, with {@code :name} placeholders */
+  public BoundQuery(String sql) {
+    this.sql = sql;
+  }
+
+  /**
+   * @param name the placeholder name
+   * @param value the id or number
+   * @return this query
+   * @throws IllegalArgumentException if the query has no such placeholder
+   */
+  public BoundQuery bind(String name, Integer value) {
+    checkPlaceholder(name);
+    values.put(name, value);
+    return this;
+  }
+
+  /**
+   * @param name the placeholder name, written inside parentheses like {@code in (:name)}
+   * @param values the ids
+   * @return this query
+   * @throws IllegalArgumentException if the query has no such placeholder
+   */
+  public BoundQuery bind(String name, Collection<Integer> values) {
+    checkPlaceholder(name);
+    this.values.put(name, new ArrayList<Integer>(values));
+    return this;
+  }
+
+  /**
+   * Binds the values of a fragment written into this query, like one of {@link QueryFragments}
+   *
+   * @param fragment the fragment
+   * @return this query
+   * @throws IllegalArgumentException if the query does not include the fragment, or binds one of
+   *     its placeholders to another value
+   */
+  public BoundQuery include(BoundQuery fragment) {
+    if (!sql.contains(fragment.sql)) {
+      throw new IllegalArgumentException("Fragment not in query: " + fragment.sql);
+    }
+    for (Map.Entry<String, Object> value : fragment.values.entrySet()) {
+      Object bound = values.get(value.getKey());
+      if (bound != null && !bound.equals(value.getValue())) {
+        throw new IllegalArgumentException(
+            "Placeholder :" + value.getKey() + " already bound to " + bound);
+      }
+      values.put(value.getKey(), value.getValue());
+    }
+    return this;
+  }
+
+  public String getSql() {
+    return sql;
+  }
+
+  /** @return the bound values by placeholder name */
+  public Map<String, Object> getValues() {
+    return Collections.unmodifiableMap(values);
+  }
+
+  @Override
+  public String toString() {
+    return sql + " " + values;
+  }
+
+  private void checkPlaceholder(String name) {
+    if (!Pattern.compile(":" + Pattern.quote(name) + "\\b").matcher(sql).find()) {
+      throw new IllegalArgumentException("No placeholder :" + name + " in query");
+    }
+  }
+}
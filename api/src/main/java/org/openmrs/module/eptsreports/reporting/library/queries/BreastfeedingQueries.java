@@ -15,18 +15,18 @@ package org.openmrs.module.eptsreports.reporting.library.queries;
 
 public class BreastfeedingQueries {
 
-  public static String getPatientsWhoGaveBirthWithinReportingPeriod(
+  public static BoundQuery getPatientsWhoGaveBirthWithinReportingPeriod(
       int etvProgram, int patientState) {
-    return "select 	pg.patient_id"
-        + " from patient p"
-        + " inner join patient_program pg on p.patient_id=pg.patient_id"
-        + " inner join patient_state ps on pg.patient_program_id=ps.patient_program_id"
-        + " where pg.voided=0 and ps.voided=0 and p.voided=0 and"
-        + " pg.program_id="
-        + etvProgram
-        + " and ps.state="
-        + patientState
-        + " and ps.end_date is null and"
-        + " ps.start_date between :startDate and :endDate and location_id=:location";
+    String query =
+        "select 	pg.patient_id"
+            + " from patient p"
+            + " inner join patient_program pg on p.patient_id=pg.patient_id"
+            + " inner join patient_state ps on pg.patient_program_id=ps.patient_program_id"
+            + " where pg.voided=0 and ps.voided=0 and p.voided=0 and"
+            + " pg.program_id=:etvProgram and ps.state=:patientState and ps.end_date is null and"
+            + " ps.start_date between :startDate and :endDate and location_id=:location";
+    return new BoundQuery(query)
+        .bind("etvProgram", etvProgram)
+        .bind("patientState", patientState);
   }
 }
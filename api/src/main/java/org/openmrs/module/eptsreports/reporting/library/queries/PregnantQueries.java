@@ -18,73 +18,70 @@ public class PregnantQueries {
    * Looks for patients indicated PREGNANT in the initial or follow-up consultation between start
    * date and end date
    */
-  public static String getPregnantOnInitialOrFollowUpConsulation(
+  public static BoundQuery getPregnantOnInitialOrFollowUpConsulation(
       int pregnant, int gestation, int adultInEnc, int adultSegEnc) {
 
-    return "SELECT p.patient_id"
-        + " FROM patient p"
-        + " INNER JOIN encounter e ON p.patient_id=e.patient_id"
-        + " INNER JOIN obs o ON e.encounter_id=o.encounter_id"
-        + " WHERE p.voided=0 and e.voided=0 and o.voided=0 and concept_id="
-        + pregnant
-        + " AND value_coded="
-        + gestation
-        + " AND e.encounter_type IN ("
-        + adultInEnc
-        + ","
-        + adultSegEnc
-        + ")"
-        + " AND e.encounter_datetime BETWEEN :startDate AND :endDate AND e.location_id=:location";
+    String query =
+        "SELECT p.patient_id"
+            + " FROM patient p"
+            + " INNER JOIN encounter e ON p.patient_id=e.patient_id"
+            + " INNER JOIN obs o ON e.encounter_id=o.encounter_id"
+            + " WHERE p.voided=0 and e.voided=0 and o.voided=0 and concept_id=:pregnant AND value_coded=:gestation AND e.encounter_type IN (:adultInEnc,:adultSegEnc)"
+            + " AND e.encounter_datetime BETWEEN :startDate AND :endDate AND e.location_id=:location";
+    return new BoundQuery(query)
+        .bind("pregnant", pregnant)
+        .bind("gestation", gestation)
+        .bind("adultInEnc", adultInEnc)
+        .bind("adultSegEnc", adultSegEnc);
   }
 
   /**
    * Looks for patients with Number of Weeks Pregnant registered in the initial or follow-up
    * consultation
    */
-  public static String getWeeksPregnantOnInitialOrFollowUpConsultations(
+  public static BoundQuery getWeeksPregnantOnInitialOrFollowUpConsultations(
       int numOfWeeks, int adultInEnc, int adultSegEnc) {
-    return "SELECT p.patient_id"
-        + " FROM patient p INNER JOIN encounter e ON p.patient_id=e.patient_id"
-        + " INNER JOIN obs o ON e.encounter_id=o.encounter_id"
-        + " WHERE p.voided=0 and e.voided=0 and o.voided=0 and concept_id="
-        + numOfWeeks
-        + " AND e.encounter_type IN ("
-        + adultInEnc
-        + ","
-        + adultSegEnc
-        + ")"
-        + " AND e.encounter_datetime BETWEEN :startDate AND :endDate AND"
-        + " e.location_id=:location";
+    String query =
+        "SELECT p.patient_id"
+            + " FROM patient p INNER JOIN encounter e ON p.patient_id=e.patient_id"
+            + " INNER JOIN obs o ON e.encounter_id=o.encounter_id"
+            + " WHERE p.voided=0 and e.voided=0 and o.voided=0 and concept_id=:numOfWeeks AND e.encounter_type IN (:adultInEnc,:adultSegEnc)"
+            + " AND e.encounter_datetime BETWEEN :startDate AND :endDate AND"
+            + " e.location_id=:location";
+    return new BoundQuery(query)
+        .bind("numOfWeeks", numOfWeeks)
+        .bind("adultInEnc", adultInEnc)
+        .bind("adultSegEnc", adultSegEnc);
   }
 
   /**
    * Looks for patients with PREGNANCY DUE DATE registered in the initial or follow-up consultation
    * between start date and end date
    */
-  public static String getPregnancyDueDateRegistred(int dueDate, int adultInEnc, int adultSegEnc) {
-    return "SELECT p.patient_id FROM patient p INNER JOIN encounter"
-        + " e ON p.patient_id=e.patient_id INNER JOIN obs o ON e.encounter_id=o.encounter_id"
-        + " WHERE p.voided=0 AND e.voided=0 AND o.voided=0 AND concept_id="
-        + dueDate
-        + " AND e.encounter_type IN ("
-        + adultInEnc
-        + ","
-        + adultSegEnc
-        + ")"
-        + " AND e.encounter_datetime BETWEEN :startDate AND :endDate AND"
-        + " e.location_id=:location";
+  public static BoundQuery getPregnancyDueDateRegistred(int dueDate, int adultInEnc, int adultSegEnc) {
+    String query =
+        "SELECT p.patient_id FROM patient p INNER JOIN encounter"
+            + " e ON p.patient_id=e.patient_id INNER JOIN obs o ON e.encounter_id=o.encounter_id"
+            + " WHERE p.voided=0 AND e.voided=0 AND o.voided=0 AND concept_id=:dueDate AND e.encounter_type IN (:adultInEnc,:adultSegEnc)"
+            + " AND e.encounter_datetime BETWEEN :startDate AND :endDate AND"
+            + " e.location_id=:location";
+    return new BoundQuery(query)
+        .bind("dueDate", dueDate)
+        .bind("adultInEnc", adultInEnc)
+        .bind("adultSegEnc", adultSegEnc);
   }
 
   /** Looks for patients enrolled on PTV/ETV program between start date and end date */
-  public static String getEnrolledInPtvOrEtv(int ptvProgram) {
-    return "SELECT pp.patient_id FROM patient_program pp WHERE pp.program_id="
-        + ptvProgram
-        + " AND pp.voided=0 AND pp.date_enrolled BETWEEN "
-        + ":startDate AND :endDate AND pp.location_id=:location";
+  public static BoundQuery getEnrolledInPtvOrEtv(int ptvProgram) {
+    String query =
+        "SELECT pp.patient_id FROM patient_program pp WHERE pp.program_id=:ptvProgram AND pp.voided=0 AND pp.date_enrolled BETWEEN "
+            + ":startDate AND :endDate AND pp.location_id=:location";
+    return new BoundQuery(query)
+        .bind("ptvProgram", ptvProgram);
   }
 
   /** GRAVIDAS INSCRITAS NO SERVIÇO TARV */
-  public static String getPregnantWhileOnArt(
+  public static BoundQuery getPregnantWhileOnArt(
       int pregnantConcept,
       int gestationConcept,
       int weeksPregnantConcept,
@@ -93,53 +90,40 @@ public class PregnantQueries {
       int adultSegEncounter,
       int etvProgram) {
 
-    return "Select     p.patient_id"
-        + " from patient p"
-        + " inner join person pe on p.patient_id=pe.person_id"
-        + " inner join encounter e on p.patient_id=e.patient_id"
-        + " inner join obs o on e.encounter_id=o.encounter_id"
-        + " where p.voided=0 and e.voided=0 and o.voided=0 and concept_id="
-        + pregnantConcept
-        + " and value_coded="
-        + gestationConcept
-        + " and e.encounter_type in ("
-        + adultInitailEncounter
-        + ","
-        + adultSegEncounter
-        + ") and e.encounter_datetime between :startDate and :endDate and e.location_id=:location and pe.gender='F'"
-        + " union"
-        + " Select p.patient_id"
-        + " from patient p"
-        + " inner join person pe on p.patient_id=pe.person_id"
-        + " inner join encounter e on p.patient_id=e.patient_id"
-        + " inner join obs o on e.encounter_id=o.encounter_id"
-        + " where p.voided=0 and e.voided=0 and o.voided=0 and concept_id="
-        + weeksPregnantConcept
-        + " and"
-        + " e.encounter_type in ("
-        + adultInitailEncounter
-        + ","
-        + adultSegEncounter
-        + ") and e.encounter_datetime between :startDate and :endDate and e.location_id=:location and pe.gender='F' "
-        + " union"
-        + " Select p.patient_id"
-        + " from patient p"
-        + " inner join person pe on p.patient_id=pe.person_id"
-        + " inner join encounter e on p.patient_id=e.patient_id"
-        + " inner join obs o on e.encounter_id=o.encounter_id"
-        + " where p.voided=0 and e.voided=0 and o.voided=0 and concept_id="
-        + eddConcept
-        + " and"
-        + " e.encounter_type in ("
-        + adultInitailEncounter
-        + ","
-        + adultSegEncounter
-        + ") and e.encounter_datetime between :startDate and :endDate and e.location_id=:location and pe.gender='F'"
-        + " union"
-        + " select pp.patient_id from patient_program pp"
-        + " inner join person pe on pp.patient_id=pe.person_id"
-        + " where pp.program_id="
-        + etvProgram
-        + " and pp.voided=0 and pp.date_enrolled between :startDate and :endDate and pp.location_id=:location and pe.gender='F'";
+    String query =
+        "Select     p.patient_id"
+            + " from patient p"
+            + " inner join person pe on p.patient_id=pe.person_id"
+            + " inner join encounter e on p.patient_id=e.patient_id"
+            + " inner join obs o on e.encounter_id=o.encounter_id"
+            + " where p.voided=0 and e.voided=0 and o.voided=0 and concept_id=:pregnantConcept and value_coded=:gestationConcept and e.encounter_type in (:adultInitailEncounter,:adultSegEncounter) and e.encounter_datetime between :startDate and :endDate and e.location_id=:location and pe.gender='F'"
+            + " union"
+            + " Select p.patient_id"
+            + " from patient p"
+            + " inner join person pe on p.patient_id=pe.person_id"
+            + " inner join encounter e on p.patient_id=e.patient_id"
+            + " inner join obs o on e.encounter_id=o.encounter_id"
+            + " where p.voided=0 and e.voided=0 and o.voided=0 and concept_id=:weeksPregnantConcept and"
+            + " e.encounter_type in (:adultInitailEncounter,:adultSegEncounter) and e.encounter_datetime between :startDate and :endDate and e.location_id=:location and pe.gender='F' "
+            + " union"
+            + " Select p.patient_id"
+            + " from patient p"
+            + " inner join person pe on p.patient_id=pe.person_id"
+            + " inner join encounter e on p.patient_id=e.patient_id"
+            + " inner join obs o on e.encounter_id=o.encounter_id"
+            + " where p.voided=0 and e.voided=0 and o.voided=0 and concept_id=:eddConcept and"
+            + " e.encounter_type in (:adultInitailEncounter,:adultSegEncounter) and e.encounter_datetime between :startDate and :endDate and e.location_id=:location and pe.gender='F'"
+            + " union"
+            + " select pp.patient_id from patient_program pp"
+            + " inner join person pe on pp.patient_id=pe.person_id"
+            + " where pp.program_id=:etvProgram and pp.voided=0 and pp.date_enrolled between :startDate and :endDate and pp.location_id=:location and pe.gender='F'";
+    return new BoundQuery(query)
+        .bind("pregnantConcept", pregnantConcept)
+        .bind("gestationConcept", gestationConcept)
+        .bind("adultInitailEncounter", adultInitailEncounter)
+        .bind("adultSegEncounter", adultSegEncounter)
+        .bind("weeksPregnantConcept", weeksPregnantConcept)
+        .bind("eddConcept", eddConcept)
+        .bind("etvProgram", etvProgram);
   }
 }
@@ -0,0 +1,182 @@
+/*
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.module.eptsreports.reporting.library.queries;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Subqueries shared by the queries of the library, defined once so they can be tuned in one place.
+ * Each fragment is a {@code SELECT} to be included as a derived table, which MySQL materializes
+ * once per statement. The placeholders of a fragment are prefixed with the name it is given, so a
+ * statement can include the same fragment with different ids, and the values are bound with
+ * {@link BoundQuery#include(BoundQuery)}. Like the queries, fragments use the {@code :endDate} and
+ * {@code :location} parameters of the report.
+ */
+public class QueryFragments {
+
+  /**
+   * The earliest ART start date of each patient by the end date, from the first of: ARV plan
+   * START DRUGS in a pharmacy or follow up encounter, the historical start date in those
+   * encounters, enrollment in the ART program, and the first pharmacy encounter
+   *
+   * @param name the placeholder prefix, a word
+   * @return the {@code patient_id} and {@code data_inicio} of each patient
+   */
+  public static BoundQuery artStartDates(
+      String name,
+      int pharmacyEncounterType,
+      int adultFollowUpEncounterType,
+      int pediatricFollowUpEncounterType,
+      int arvPlanConcept,
+      int startDrugsConcept,
+      int historicalStartDateConcept,
+      int artProgram) {
+    String query =
+        "SELECT patient_id, MIN(data_inicio) data_inicio FROM ("
+            + "SELECT p.patient_id, MIN(e.encounter_datetime) data_inicio FROM patient p "
+            + "INNER JOIN encounter e ON p.patient_id = e.patient_id "
+            + "INNER JOIN obs o ON o.encounter_id = e.encounter_id "
+            + "WHERE e.voided = 0 AND o.voided = 0 AND p.voided = 0 AND e.encounter_type IN (:NAMEEncounterTypes) "
+            + "AND o.concept_id = :NAMEArvPlanConcept AND o.value_coded = :NAMEStartDrugsConcept "
+            + "AND e.encounter_datetime <= :endDate AND e.location_id = :location GROUP BY p.patient_id "
+            + "UNION SELECT p.patient_id, MIN(o.value_datetime) data_inicio FROM patient p "
+            + "INNER JOIN encounter e ON p.patient_id = e.patient_id "
+            + "INNER JOIN obs o ON e.encounter_id = o.encounter_id "
+            + "WHERE p.voided = 0 AND e.voided = 0 AND o.voided = 0 AND e.encounter_type IN (:NAMEEncounterTypes) "
+            + "AND o.concept_id = :NAMEHistoricalStartDateConcept AND o.value_datetime IS NOT NULL "
+            + "AND o.value_datetime <= :endDate AND e.location_id = :location GROUP BY p.patient_id "
+            + "UNION SELECT pg.patient_id, pg.date_enrolled data_inicio FROM patient p "
+            + "INNER JOIN patient_program pg ON p.patient_id = pg.patient_id "
+            + "WHERE pg.voided = 0 AND p.voided = 0 AND pg.program_id = :NAMEArtProgram "
+            + "AND pg.date_enrolled <= :endDate AND pg.location_id = :location "
+            + "UNION SELECT p.patient_id, MIN(e.encounter_datetime) data_inicio FROM patient p "
+            + "INNER JOIN encounter e ON p.patient_id = e.patient_id "
+            + "WHERE p.voided = 0 AND e.voided = 0 AND e.encounter_type = :NAMEPharmacyEncounterType "
+            + "AND e.encounter_datetime <= :endDate AND e.location_id = :location GROUP BY p.patient_id"
+            + ") NAME_inicio GROUP BY patient_id";
+    return new BoundQuery(query.replace("NAME", name))
+        .bind(
+            name + "EncounterTypes",
+            Arrays.asList(
+                pharmacyEncounterType, adultFollowUpEncounterType, pediatricFollowUpEncounterType))
+        .bind(name + "ArvPlanConcept", arvPlanConcept)
+        .bind(name + "StartDrugsConcept", startDrugsConcept)
+        .bind(name + "HistoricalStartDateConcept", historicalStartDateConcept)
+        .bind(name + "ArtProgram", artProgram)
+        .bind(name + "PharmacyEncounterType", pharmacyEncounterType);
+  }
+
+  /**
+   * The next visit date given in the latest encounter of each patient by the end date
+   *
+   * @param name the placeholder prefix, a word
+   * @param encounterTypes the encounters to look at
+   * @param returnVisitDateConcept the question of the next visit date
+   * @return the {@code patient_id}, {@code encounter_datetime} and {@code value_datetime} of each
+   *     patient
+   */
+  public static BoundQuery lastReturnVisitDates(
+      String name, List<Integer> encounterTypes, int returnVisitDateConcept) {
+    String query =
+        "SELECT NAME_max.patient_id, NAME_max.encounter_datetime, o.value_datetime FROM "
+            + "(SELECT p.patient_id, MAX(e.encounter_datetime) encounter_datetime FROM patient p "
+            + "INNER JOIN encounter e ON e.patient_id = p.patient_id WHERE p.voided = 0 AND e.voided = 0 "
+            + "AND e.encounter_type IN (:NAMEEncounterTypes) AND e.location_id = :location "
+            + "AND e.encounter_datetime <= :endDate GROUP BY p.patient_id) NAME_max "
+            + "INNER JOIN obs o ON o.person_id = NAME_max.patient_id "
+            + "WHERE NAME_max.encounter_datetime = o.obs_datetime AND o.voided = 0 "
+            + "AND o.concept_id = :NAMEReturnVisitDateConcept AND o.location_id = :location";
+    return new BoundQuery(query.replace("NAME", name))
+        .bind(name + "EncounterTypes", encounterTypes)
+        .bind(name + "ReturnVisitDateConcept", returnVisitDateConcept);
+  }
+
+  /**
+   * The patients in one of the states of a program by the end date, and still in it
+   *
+   * @param name the placeholder prefix, a word
+   * @param program the program
+   * @param states the workflow states
+   * @return the {@code patient_id} and state {@code start_date} of each patient
+   */
+  public static BoundQuery currentProgramStates(String name, int program, List<Integer> states) {
+    return new BoundQuery(programStatesQuery(name, ""))
+        .bind(name + "Program", program)
+        .bind(name + "States", states);
+  }
+
+  /**
+   * The patients who entered one of the states of a program in the days up to the end date, and
+   * are still in it
+   *
+   * @param name the placeholder prefix, a word
+   * @param program the program
+   * @param states the workflow states
+   * @param days how many days before the end date the state may have started
+   * @return the {@code patient_id} and state {@code start_date} of each patient
+   */
+  public static BoundQuery currentProgramStatesSince(
+      String name, int program, List<Integer> states, int days) {
+    return new BoundQuery(
+            programStatesQuery(
+                name, "AND ps.start_date >= DATE_SUB(:endDate, INTERVAL :NAMEDays DAY) "))
+        .bind(name + "Program", program)
+        .bind(name + "States", states)
+        .bind(name + "Days", days);
+  }
+
+  /**
+   * The latest obs ever of a concept of each person, voided or at any location, the lowest obs id
+   * being taken when there are several at the latest time. Looked up in the eptsreports_latest_obs
+   * table once {@link org.openmrs.module.eptsreports.reporting.index.LatestObsIndex} has built the
+   * concept, and found with a grouped pass over the obs of the concept until then.
+   *
+   * @param name the placeholder prefix, a word
+   * @param concept the concept
+   * @return the {@code patient_id}, {@code obs_id}, {@code obs_datetime}, {@code location_id},
+   *     {@code voided}, {@code value_numeric}, {@code value_coded} and {@code value_datetime} of
+   *     each person
+   */
+  public static BoundQuery latestObs(String name, int concept) {
+    String built =
+        "SELECT 1 FROM eptsreports_latest_obs_concept NAME_built WHERE NAME_built.concept_id = :NAMEConcept";
+    String query =
+        "SELECT l.patient_id, l.obs_id, l.obs_datetime, l.location_id, l.voided, l.value_numeric, l.value_coded, l.value_datetime "
+            + "FROM eptsreports_latest_obs l WHERE l.concept_id = :NAMEConcept AND EXISTS ("
+            + built
+            + ") UNION ALL "
+            + "SELECT o.person_id, o.obs_id, o.obs_datetime, o.location_id, o.voided, o.value_numeric, o.value_coded, o.value_datetime "
+            + "FROM obs o INNER JOIN (SELECT MIN(t.obs_id) obs_id FROM obs t INNER JOIN "
+            + "(SELECT person_id, MAX(obs_datetime) obs_datetime FROM obs WHERE concept_id = :NAMEConcept AND NOT EXISTS ("
+            + built
+            + ") GROUP BY person_id) NAME_latest "
+            + "ON t.person_id = NAME_latest.person_id AND t.obs_datetime = NAME_latest.obs_datetime "
+            + "WHERE t.concept_id = :NAMEConcept GROUP BY t.person_id) NAME_chosen ON NAME_chosen.obs_id = o.obs_id";
+    return new BoundQuery(query.replace("NAME", name)).bind(name + "Concept", concept);
+  }
+
+  private static String programStatesQuery(String name, String startDateBound) {
+    String query =
+        "SELECT pg.patient_id, ps.start_date FROM patient p "
+            + "INNER JOIN patient_program pg ON p.patient_id = pg.patient_id "
+            + "INNER JOIN patient_state ps ON pg.patient_program_id = ps.patient_program_id "
+            + "WHERE pg.voided = 0 AND ps.voided = 0 AND p.voided = 0 AND pg.program_id = :NAMEProgram "
+            + "AND ps.state IN (:NAMEStates) AND ps.end_date IS NULL AND ps.start_date <= :endDate "
+            + startDateBound
+            + "AND pg.location_id = :location";
+    return query.replace("NAME", name);
+  }
+}
@@ -2,7 +2,6 @@ package org.openmrs.module.eptsreports.reporting.library.queries;
 
 import java.util.Arrays;
 import java.util.List;
-import org.apache.commons.lang.StringUtils;
 
 public class TXTBQueries {
 
@@ -12,7 +11,7 @@ public class TXTBQueries {
    *
    * @return sql
    */
-  public static String arvTreatmentIncludesTransfersFromWithKnownStartData(
+  public static BoundQuery arvTreatmentIncludesTransfersFromWithKnownStartData(
       Integer arvPlanConceptId,
       Integer startDrugsConceptId,
       Integer historicalDrugsStartDateConceptId,
@@ -20,184 +19,168 @@ public class TXTBQueries {
       Integer pharmacyEncounterTypeId,
       Integer artAdultFollowupEncounterTypeId,
       Integer artPedFollowupEncounterTypeId) {
-    String encounterTypeIds =
-        StringUtils.join(
-            Arrays.asList(
-                pharmacyEncounterTypeId,
-                artAdultFollowupEncounterTypeId,
-                artPedFollowupEncounterTypeId),
-            ",");
-    return String.format(
-        "SELECT patient_id FROM (SELECT patient_id, Min(data_inicio) data_inicio "
-            + "FROM (SELECT p.patient_id, Min(e.encounter_datetime) data_inicio FROM patient p "
-            + "INNER JOIN encounter e ON p.patient_id = e.patient_id "
-            + "INNER JOIN obs o ON o.encounter_id = e.encounter_id "
-            + "WHERE e.voided = 0 AND o.voided = 0 AND p.voided = 0 AND e.encounter_type IN ( %s ) "
-            + "AND o.concept_id = %s AND o.value_coded = %s AND e.encounter_datetime <= :endDate "
-            + "AND e.location_id = :location GROUP BY p.patient_id "
-            + "UNION SELECT p.patient_id, Min(value_datetime) data_inicio FROM patient p "
-            + "INNER JOIN encounter e ON p.patient_id = e.patient_id INNER JOIN obs o ON e.encounter_id = o.encounter_id "
-            + "WHERE p.voided = 0 AND e.voided = 0 AND o.voided = 0 AND e.encounter_type IN ( %s ) "
-            + "AND o.concept_id = %s AND o.value_datetime IS NOT NULL AND o.value_datetime <= :endDate AND e.location_id = :location "
-            + "GROUP BY p.patient_id UNION SELECT pg.patient_id, date_enrolled data_inicio FROM patient p "
-            + "INNER JOIN patient_program pg ON p.patient_id = pg.patient_id WHERE pg.voided = 0 AND p.voided = 0 "
-            + "AND program_id = %s AND date_enrolled <= :endDate AND location_id = :location "
-            + "UNION SELECT e.patient_id, Min(e.encounter_datetime) AS data_inicio FROM patient p "
-            + "INNER JOIN encounter e ON p.patient_id = e.patient_id WHERE p.voided = 0 AND e.encounter_type = %s "
-            + "AND e.voided = 0 AND e.encounter_datetime <= :endDate AND e.location_id = :location GROUP BY p.patient_id) inicio_real "
-            + "GROUP BY patient_id)inicio WHERE data_inicio BETWEEN :startDate AND :endDate ",
-        encounterTypeIds,
-        arvPlanConceptId,
-        startDrugsConceptId,
-        encounterTypeIds,
-        historicalDrugsStartDateConceptId,
-        artProgramId,
-        pharmacyEncounterTypeId);
+    BoundQuery artStart =
+        QueryFragments.artStartDates(
+            "artStart",
+            pharmacyEncounterTypeId,
+            artAdultFollowupEncounterTypeId,
+            artPedFollowupEncounterTypeId,
+            arvPlanConceptId,
+            startDrugsConceptId,
+            historicalDrugsStartDateConceptId,
+            artProgramId);
+    String query =
+        "SELECT patient_id FROM ("
+            + artStart.getSql()
+            + ") inicio WHERE data_inicio BETWEEN :startDate AND :endDate ";
+    return new BoundQuery(query).include(artStart);
   }
 
   // exited by either transfer out, treatment suspension, treatment abandoned
   // or death of patient
-  public static String patientsAtProgramStates(Integer artProgramId, List<Integer> stateIds) {
-    return String.format(
-        "SELECT pg.patient_id FROM patient p  "
-            + "INNER JOIN patient_program pg  ON p.patient_id = pg.patient_id  "
-            + "INNER JOIN patient_state ps  ON pg.patient_program_id = ps.patient_program_id "
-            + "WHERE pg.voided = 0  AND ps.voided = 0  AND p.voided = 0  AND pg.program_id = %s "
-            + "AND ps.state IN ( %s )  AND ps.end_date IS NULL  AND ps.start_date <= :endDate  "
-            + "AND location_id = :location ",
-        artProgramId, StringUtils.join(stateIds, ","));
+  public static BoundQuery patientsAtProgramStates(Integer artProgramId, List<Integer> stateIds) {
+    BoundQuery states = QueryFragments.currentProgramStates("states", artProgramId, stateIds);
+    String query = "SELECT patient_id FROM (" + states.getSql() + ") states";
+    return new BoundQuery(query).include(states);
   }
 
   /** ABANDONO NÃO NOTIFICADO - TARV SqlCohortDefinition#a1145104-132f-460b-b85e-ea265916625b */
-  public static String abandonedWithNoNotification(AbandonedWithoutNotificationParams params) {
-    String stateIds =
-        StringUtils.join(
+  public static BoundQuery abandonedWithNoNotification(AbandonedWithoutNotificationParams params) {
+    BoundQuery lastPickup =
+        QueryFragments.lastReturnVisitDates(
+            "fila",
+            Arrays.asList(params.pharmacyEncounterTypeId),
+            params.returnVisitDateForARVDrugConceptId);
+    BoundQuery lastConsultation =
+        QueryFragments.lastReturnVisitDates(
+            "seguimento",
+            Arrays.asList(
+                params.artAdultFollowupEncounterTypeId, params.artPedInicioEncounterTypeId),
+            params.returnVisitDateConceptId);
+    BoundQuery exited =
+        QueryFragments.currentProgramStates(
+            "exited",
+            params.programId,
             Arrays.asList(
                 params.transferOutStateId,
                 params.treatmentSuspensionStateId,
                 params.treatmentAbandonedStateId,
-                params.deathStateId),
-            ",");
-    return String.format(
-        "SELECT patient_id FROM (SELECT p.patient_id, Max(encounter_datetime) encounter_datetime FROM patient p "
-            + "INNER JOIN encounter e ON e.patient_id = p.patient_id WHERE p.voided = 0 AND e.voided = 0 "
-            + "AND e.encounter_type = %s AND e.location_id = :location AND e.encounter_datetime <= :endDate GROUP BY p.patient_id) max_frida "
-            + "INNER JOIN obs o ON o.person_id = max_frida.patient_id WHERE max_frida.encounter_datetime = o.obs_datetime AND o.voided = 0 "
-            + "AND o.concept_id = %s AND o.location_id = :location AND patient_id "
-            + "NOT IN (SELECT pg.patient_id FROM patient p INNER JOIN patient_program pg ON p.patient_id = pg.patient_id "
-            + "INNER JOIN patient_state ps ON pg.patient_program_id = ps.patient_program_id WHERE pg.voided = 0 AND ps.voided = 0 "
-            + "AND p.voided = 0 AND pg.program_id = %s AND ps.state IN ( %s ) AND ps.end_date IS NULL AND ps.start_date <= :endDate "
-            + "AND location_id = :location) AND patient_id NOT IN(SELECT patient_id FROM "
-            + "(SELECT p.patient_id, Max(encounter_datetime) encounter_datetime FROM patient p "
-            + "INNER JOIN encounter e ON e.patient_id = p.patient_id WHERE p.voided = 0 AND e.voided = 0 "
-            + "AND e.encounter_type IN ( %s, %s ) AND e.location_id = :location AND e.encounter_datetime <= :endDate GROUP BY p.patient_id) max_mov "
-            + "INNER JOIN obs o ON o.person_id = max_mov.patient_id WHERE max_mov.encounter_datetime = o.obs_datetime AND o.voided = 0 "
-            + "AND o.concept_id = %s AND o.location_id = :location AND Datediff(:endDate, o.value_datetime) <= 60) AND patient_id "
-            + "NOT IN(SELECT abandono.patient_id FROM (SELECT pg.patient_id FROM patient p INNER JOIN patient_program pg ON p.patient_id = pg.patient_id "
-            + "INNER JOIN patient_state ps ON pg.patient_program_id = ps.patient_program_id WHERE pg.voided = 0 AND ps.voided = 0 AND p.voided = 0 AND pg.program_id = %s "
-            + "AND ps.state = %s AND ps.end_date IS NULL AND ps.start_date <= :endDate AND location_id = :location)abandono "
-            + "INNER JOIN (SELECT max_frida.patient_id, max_frida.encounter_datetime, o.value_datetime FROM "
-            + "(SELECT p.patient_id, Max(encounter_datetime) encounter_datetime FROM patient p "
-            + "INNER JOIN encounter e ON e.patient_id = p.patient_id WHERE p.voided = 0 AND e.voided = 0 AND e.encounter_type = %s"
-            + " AND e.location_id = :location "
-            + "AND e.encounter_datetime <= :endDate GROUP BY p.patient_id) max_frida INNER JOIN obs o ON o.person_id = max_frida.patient_id "
-            + "WHERE max_frida.encounter_datetime = o.obs_datetime AND o.voided = 0 AND o.concept_id = %s AND o.location_id = :location) ultimo_fila "
-            + "ON abandono.patient_id = ultimo_fila.patient_id WHERE Datediff(:endDate, ultimo_fila.value_datetime) < 60) AND Datediff(:endDate, o.value_datetime) >= 60;",
-        params.pharmacyEncounterTypeId,
-        params.returnVisitDateForARVDrugConceptId,
-        params.programId,
-        stateIds,
-        params.artAdultFollowupEncounterTypeId,
-        params.artPedInicioEncounterTypeId,
-        params.returnVisitDateConceptId,
-        params.programId,
-        params.treatmentAbandonedStateId,
-        params.pharmacyEncounterTypeId,
-        params.returnVisitDateForARVDrugConceptId);
+                params.deathStateId));
+    BoundQuery abandoned =
+        QueryFragments.currentProgramStates(
+            "abandoned", params.programId, Arrays.asList(params.treatmentAbandonedStateId));
+    // next visit dates are compared with the days before the end date, which is the same as
+    // Datediff(:endDate, value_datetime) compared with 60 as it ignores the time
+    String query =
+        "SELECT patient_id FROM ("
+            + lastPickup.getSql()
+            + ") fila WHERE patient_id NOT IN (SELECT patient_id FROM ("
+            + exited.getSql()
+            + ") exited) AND patient_id NOT IN (SELECT patient_id FROM ("
+            + lastConsultation.getSql()
+            + ") seguimento WHERE seguimento.value_datetime >= DATE_SUB(DATE(:endDate), INTERVAL 60 DAY)) "
+            + "AND patient_id NOT IN (SELECT abandono.patient_id FROM ("
+            + abandoned.getSql()
+            + ") abandono INNER JOIN ("
+            + lastPickup.getSql()
+            + ") ultimo_fila ON abandono.patient_id = ultimo_fila.patient_id "
+            + "WHERE ultimo_fila.value_datetime >= DATE_SUB(DATE(:endDate), INTERVAL 59 DAY)) "
+            + "AND fila.value_datetime < DATE_SUB(DATE(:endDate), INTERVAL 59 DAY)";
+    return new BoundQuery(query)
+        .include(lastPickup)
+        .include(lastConsultation)
+        .include(exited)
+        .include(abandoned);
   }
 
-  public static String inTBProgramWithinReportingPeriodAtLocation(Integer tbProgramId) {
-    return String.format(
+  public static BoundQuery inTBProgramWithinReportingPeriodAtLocation(Integer tbProgramId) {
+    String query =
         "select pg.patient_id from patient p inner join "
             + "patient_program pg on p.patient_id=pg.patient_id "
-            + "where pg.voided=0 and p.voided=0 and program_id=%s AND pg.date_completed is null "
-            + "  and date_enrolled between :startDate and :endDate and location_id=:location",
-        tbProgramId);
+            + "where pg.voided=0 and p.voided=0 and program_id=:tbProgramId AND pg.date_completed is null "
+            + "  and date_enrolled between :startDate and :endDate and location_id=:location";
+    return new BoundQuery(query).bind("tbProgramId", tbProgramId);
   }
 
-  public static String dateObs(
+  public static BoundQuery dateObs(
       Integer questionId, List<Integer> encounterTypeIds, boolean startDate) {
     String sql =
-        String.format(
-            "select person_id from obs "
-                + "where concept_id = %s and encounter_id in("
-                + "select distinct encounter_id "
-                + "from encounter "
-                + "where encounter_type in(%s)) and location_id = :location and ",
-            questionId, StringUtils.join(encounterTypeIds, ","));
+        "select person_id from obs "
+            + "where concept_id = :questionId and encounter_id in("
+            + "select distinct encounter_id "
+            + "from encounter "
+            + "where encounter_type in(:encounterTypeIds)) and location_id = :location and ";
     if (startDate) {
       sql += "value_datetime >= :startDate and value_datetime <= :endDate and voided=0";
     } else {
       sql += "value_datetime <= :endDate and voided=0";
     }
-    return sql;
+    return new BoundQuery(sql)
+        .bind("questionId", questionId)
+        .bind("encounterTypeIds", encounterTypeIds);
   }
 
-  public static String codedObsBeforeStartDate(
+  public static BoundQuery codedObsBeforeStartDate(
       Integer questionId, List<Integer> encounterTypeIds, List<Integer> answerIds) {
     String sql =
-        String.format(
-            "select person_id from obs where concept_id = %s and encounter_id in(select distinct encounter_id from encounter where encounter_type in(%s)) and location_id = :location and obs_datetime < :startDate and voided=0 and value_coded in (%s)",
-            questionId, StringUtils.join(encounterTypeIds, ","), StringUtils.join(answerIds, ","));
+        "select person_id from obs where concept_id = :questionId and encounter_id in(select distinct encounter_id from encounter where encounter_type in(:encounterTypeIds)) and location_id = :location and obs_datetime < :startDate and voided=0 and value_coded in (:answerIds)";
 
-    return sql;
+    return new BoundQuery(sql)
+        .bind("questionId", questionId)
+        .bind("encounterTypeIds", encounterTypeIds)
+        .bind("answerIds", answerIds);
   }
 
-  public static String dateObsBeforeStartDate(Integer questionId, List<Integer> encounterTypeIds) {
+  public static BoundQuery dateObsBeforeStartDate(
+      Integer questionId, List<Integer> encounterTypeIds) {
     String sql =
-        String.format(
-            "select person_id from obs where concept_id = %s and encounter_id in(select distinct encounter_id from encounter where encounter_type in(%s)) and location_id = :location and value_datetime < :startDate and voided=0",
-            questionId, StringUtils.join(encounterTypeIds, ","));
+        "select person_id from obs where concept_id = :questionId and encounter_id in(select distinct encounter_id from encounter where encounter_type in(:encounterTypeIds)) and location_id = :location and value_datetime < :startDate and voided=0";
 
-    return sql;
+    return new BoundQuery(sql)
+        .bind("questionId", questionId)
+        .bind("encounterTypeIds", encounterTypeIds);
   }
 
-  public static String dateObsWithinXMonthsBeforeStartDate(
+  public static BoundQuery dateObsWithinXMonthsBeforeStartDate(
       Integer questionId, List<Integer> encounterTypeIds, Integer xMonths) {
-    return String.format(
+    String query =
         "select person_id from obs "
-            + "where concept_id = %s and encounter_id in"
+            + "where concept_id = :questionId and encounter_id in"
             + "( select distinct encounter_id from encounter "
-            + "where encounter_type in(%s)) and location_id = :location "
+            + "where encounter_type in(:encounterTypeIds)) and location_id = :location "
             + "and value_datetime >= DATE_SUB(:startDate, INTERVAL "
-            + "%s MONTH) "
-            + "and value_datetime < :startDate and voided=0",
-        questionId, StringUtils.join(encounterTypeIds, ","), xMonths);
+            + ":xMonths MONTH) "
+            + "and value_datetime < :startDate and voided=0";
+    return new BoundQuery(query)
+        .bind("questionId", questionId)
+        .bind("encounterTypeIds", encounterTypeIds)
+        .bind("xMonths", xMonths);
   }
 
-  public static String encounterObs(Integer encounterTypeId) {
-    return String.format(
-        "select distinct patient_id from encounter where encounter_type =%s and location_id = :location and encounter_datetime <= :endDate and voided=0;",
-        encounterTypeId);
+  public static BoundQuery encounterObs(Integer encounterTypeId) {
+    String query =
+        "select distinct patient_id from encounter where encounter_type =:encounterTypeId and location_id = :location and encounter_datetime <= :endDate and voided=0;";
+    return new BoundQuery(query).bind("encounterTypeId", encounterTypeId);
   }
 
-  public static String patientWithFirstDrugPickupEncounterInReportingPeriod(
+  public static BoundQuery patientWithFirstDrugPickupEncounterInReportingPeriod(
       Integer encounterTypeId) {
-    return String.format(
+    String query =
         "SELECT p.patient_id "
             + "FROM patient p "
             + "INNER JOIN encounter e ON p.patient_id=e.patient_id "
-            + "WHERE p.voided=0 AND e.encounter_type=%s AND e.voided=0 AND e.encounter_datetime>=:startDate AND e.encounter_datetime<=:endDate AND e.location_id=:location GROUP BY p.patient_id",
-        encounterTypeId);
+            + "WHERE p.voided=0 AND e.encounter_type=:encounterTypeId AND e.voided=0 AND e.encounter_datetime>=:startDate AND e.encounter_datetime<=:endDate AND e.location_id=:location GROUP BY p.patient_id";
+    return new BoundQuery(query).bind("encounterTypeId", encounterTypeId);
   }
 
-  public static String patientWithFirstDrugPickupEncounterBeforeStartDate(Integer encounterTypeId) {
-    return String.format(
+  public static BoundQuery patientWithFirstDrugPickupEncounterBeforeStartDate(
+      Integer encounterTypeId) {
+    String query =
         "SELECT p.patient_id "
             + "FROM patient p "
             + "INNER JOIN encounter e ON p.patient_id=e.patient_id "
-            + "WHERE p.voided=0 AND e.encounter_type=%s AND e.voided=0 AND e.encounter_datetime<:startDate AND e.location_id=:location GROUP BY p.patient_id",
-        encounterTypeId);
+            + "WHERE p.voided=0 AND e.encounter_type=:encounterTypeId AND e.voided=0 AND e.encounter_datetime<:startDate AND e.location_id=:location GROUP BY p.patient_id";
+    return new BoundQuery(query).bind("encounterTypeId", encounterTypeId);
   }
 
   public static class AbandonedWithoutNotificationParams {
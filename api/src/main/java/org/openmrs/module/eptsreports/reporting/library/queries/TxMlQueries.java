@@ -1,8 +1,10 @@
 package org.openmrs.module.eptsreports.reporting.library.queries;
 
+import java.util.Arrays;
+
 public class TxMlQueries {
 
-  public static String getPatientsWhoMissedAppointment(
+  public static BoundQuery getPatientsWhoMissedAppointment(
       int min,
       int max,
       int returnVisitDateForDrugsConcept,
@@ -11,61 +13,57 @@ public class TxMlQueries {
       int adultoSequimento,
       int arvPediatriaSeguimento) {
 
+    // the latest return date is compared with bounds computed once from the end date, which are
+    // the same as DATEDIFF(:endDate, return_date) between min and max as it ignores the time
     String query =
-        "SELECT patient_id FROM "
-            + "(SELECT p.patient_id,MAX(o.value_datetime) return_date "
+        "SELECT p.patient_id "
             + "FROM patient p "
             + "INNER JOIN encounter e ON e.patient_id = p.patient_id AND e.encounter_datetime <=:endDate AND e.location_id=:location "
             + "INNER JOIN obs o ON o.encounter_id = e.encounter_id AND o.obs_datetime <=:endDate AND o.location_id=:location "
             + " WHERE p.voided = 0 AND e.voided = 0 AND o.voided=0 "
-            + "AND e.encounter_type IN (%d, %d, %d) "
-            + "AND o.concept_id in (%d, %d) "
-            + "AND e.location_id =:location "
+            + "AND e.encounter_type IN (:pharmacyEncounterType, :adultoSequimento, :arvPediatriaSeguimento) "
+            + "AND o.concept_id in (:returnVisitDateForDrugsConcept, :returnVisitDate) "
             + "GROUP BY p.patient_id "
-            + ")lost_patients WHERE DATEDIFF(:endDate,lost_patients.return_date)>=%d AND DATEDIFF(:endDate,lost_patients.return_date)<=%d";
-    return String.format(
-        query,
-        pharmacyEncounterType,
-        adultoSequimento,
-        arvPediatriaSeguimento,
-        returnVisitDateForDrugsConcept,
-        returnVisitDate,
-        min,
-        max);
+            + "HAVING MAX(o.value_datetime) >= DATE_SUB(DATE(:endDate), INTERVAL :max DAY) "
+            + "AND MAX(o.value_datetime) < DATE_ADD(DATE_SUB(DATE(:endDate), INTERVAL :min DAY), INTERVAL 1 DAY)";
+    return new BoundQuery(query)
+        .bind("pharmacyEncounterType", pharmacyEncounterType)
+        .bind("adultoSequimento", adultoSequimento)
+        .bind("arvPediatriaSeguimento", arvPediatriaSeguimento)
+        .bind("returnVisitDateForDrugsConcept", returnVisitDateForDrugsConcept)
+        .bind("returnVisitDate", returnVisitDate)
+        .bind("min", min)
+        .bind("max", max);
   }
 
-  public static String getNonConsistentPatients(
+  public static BoundQuery getNonConsistentPatients(
       int prevencaoPositivaInicial,
       int prevencaoPositivaSeguimento,
       int acceptContactConcept,
       int noConcept) {
+    // the latest accept contact obs of every patient, voided or not, is looked up in the latest obs
+    // index rather than found with a grouped pass over the obs of the concept
+    BoundQuery lastContact = QueryFragments.latestObs("lastContact", acceptContactConcept);
     String query =
         "SELECT distinct(pp.patient_id) FROM patient pp "
             + "INNER JOIN encounter e ON e.patient_id=pp.patient_id "
-            + "INNER JOIN obs o ON o.person_id = pp.patient_id "
-            + "INNER JOIN person p ON o.person_id = p.person_id "
-            + "WHERE pp.voided=0 AND e.voided=0 AND e.encounter_type IN(%d, %d) AND e.location_id=:location AND o.obs_datetime<=:endDate AND o.voided=0 AND o.concept_id=%d AND o.value_coded=%d AND o.location_id=:location "
-            + "AND o.obs_id = (SELECT obs_id FROM obs WHERE concept_id = %d AND pp.patient_id = person_id GROUP BY obs_datetime DESC LIMIT 1)";
+            + "INNER JOIN ("
+            + lastContact.getSql()
+            + ") last_contact ON last_contact.patient_id = pp.patient_id "
+            + "WHERE pp.voided=0 AND e.voided=0 AND e.encounter_type IN(:prevencaoPositivaInicial, :prevencaoPositivaSeguimento) AND e.location_id=:location AND last_contact.obs_datetime<=:endDate AND last_contact.voided=0 AND last_contact.value_coded=:noConcept AND last_contact.location_id=:location";
 
-    return String.format(
-        query,
-        prevencaoPositivaInicial,
-        prevencaoPositivaSeguimento,
-        acceptContactConcept,
-        noConcept,
-        acceptContactConcept);
+    return new BoundQuery(query)
+        .include(lastContact)
+        .bind("prevencaoPositivaInicial", prevencaoPositivaInicial)
+        .bind("prevencaoPositivaSeguimento", prevencaoPositivaSeguimento)
+        .bind("noConcept", noConcept);
   }
 
-  public static String getTransferredOutPatients(int program, int state) {
-    String query =
-        "SELECT pg.patient_id"
-            + " FROM patient p"
-            + " INNER JOIN patient_program pg ON p.patient_id=pg.patient_id"
-            + " INNER JOIN patient_state ps ON pg.patient_program_id=ps.patient_program_id "
-            + " WHERE pg.voided=0 AND ps.voided=0 AND p.voided=0 AND"
-            + " pg.program_id=%d"
-            + " AND ps.state=%d"
-            + " AND ps.start_date BETWEEN (:endDate - INTERVAL 183 DAY) AND  :endDate AND pg.location_id=:location AND ps.end_date is null";
-    return String.format(query, program, state);
+  public static BoundQuery getTransferredOutPatients(int program, int state) {
+    BoundQuery transferredOut =
+        QueryFragments.currentProgramStatesSince(
+            "transferredOut", program, Arrays.asList(state), 183);
+    String query = "SELECT patient_id FROM (" + transferredOut.getSql() + ") transferred_out";
+    return new BoundQuery(query).include(transferredOut);
   }
 }
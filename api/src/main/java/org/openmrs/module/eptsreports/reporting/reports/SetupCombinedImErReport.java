@@ -5,6 +5,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Properties;
+import org.openmrs.module.eptsreports.reporting.evaluation.ReportAdmissionController.Weight;
 import org.openmrs.module.eptsreports.reporting.library.cohorts.GenericCohortQueries;
 import org.openmrs.module.eptsreports.reporting.library.datasets.Eri2MonthsDataset;
 import org.openmrs.module.eptsreports.reporting.library.datasets.Eri4MonthsDataset;
@@ -54,6 +55,11 @@ public class SetupCombinedImErReport extends EptsDataExportManager {
     return "PEPFAR Early Retention Indicators";
   }
 
+  @Override
+  public Weight getWeight() {
+    return Weight.HEAVY;
+  }
+
   @Override
   public ReportDefinition constructReportDefinition() {
     ReportDefinition rd = new ReportDefinition();
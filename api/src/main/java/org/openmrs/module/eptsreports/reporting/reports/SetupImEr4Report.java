@@ -17,6 +17,7 @@ import java.io.IOException;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Properties;
+import org.openmrs.module.eptsreports.reporting.evaluation.ReportAdmissionController.Weight;
 import org.openmrs.module.eptsreports.reporting.library.cohorts.GenericCohortQueries;
 import org.openmrs.module.eptsreports.reporting.library.datasets.Eri4MonthsDataset;
 import org.openmrs.module.eptsreports.reporting.reports.manager.EptsDataExportManager;
@@ -56,6 +57,11 @@ public class SetupImEr4Report extends EptsDataExportManager {
     return "Implementation of PEPFAR Early Retention Indicators - 4 months";
   }
 
+  @Override
+  public Weight getWeight() {
+    return Weight.MEDIUM;
+  }
+
   @Override
   public ReportDefinition constructReportDefinition() {
     ReportDefinition rd = new ReportDefinition();
@@ -18,6 +18,9 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Properties;
+import org.openmrs.module.eptsreports.reporting.cube.CubeIndicator;
+import org.openmrs.module.eptsreports.reporting.dataset.definition.IndicatorCubeDataSetDefinition;
+import org.openmrs.module.eptsreports.reporting.evaluation.ReportAdmissionController.Weight;
 import org.openmrs.module.eptsreports.reporting.library.cohorts.GenericCohortQueries;
 import org.openmrs.module.eptsreports.reporting.library.datasets.TxCurrDataset;
 import org.openmrs.module.eptsreports.reporting.library.datasets.TxNewDataset;
@@ -68,6 +71,11 @@ public class SetupMERQuarterly extends EptsDataExportManager {
     return "MER Quarterly Report";
   }
 
+  @Override
+  public Weight getWeight() {
+    return Weight.HEAVY;
+  }
+
   @Override
   public ReportDefinition constructReportDefinition() {
     ReportDefinition reportDefinition = new ReportDefinition();
@@ -76,11 +84,20 @@ public class SetupMERQuarterly extends EptsDataExportManager {
     reportDefinition.setDescription(getDescription());
     reportDefinition.setParameters(getParameters());
     reportDefinition.addDataSetDefinition(
-        "N", Mapped.mapStraightThrough(txNewDataset.constructTxNewDataset()));
+        "N",
+        Mapped.mapStraightThrough(
+            new IndicatorCubeDataSetDefinition(
+                CubeIndicator.TX_NEW, txNewDataset.constructTxNewDataset())));
     reportDefinition.addDataSetDefinition(
-        "C", Mapped.mapStraightThrough(txCurrDataset.constructTxCurrDataset(true)));
+        "C",
+        Mapped.mapStraightThrough(
+            new IndicatorCubeDataSetDefinition(
+                CubeIndicator.TX_CURR, txCurrDataset.constructTxCurrDataset(true))));
     reportDefinition.addDataSetDefinition(
-        "P", Mapped.mapStraightThrough(txPvlsDataset.constructTxPvlsDatset()));
+        "P",
+        Mapped.mapStraightThrough(
+            new IndicatorCubeDataSetDefinition(
+                CubeIndicator.TX_PVLS, txPvlsDataset.constructTxPvlsDatset())));
     // add a base cohort here to help in calculations running
     reportDefinition.setBaseCohortDefinition(
         EptsReportUtils.map(
@@ -4,6 +4,9 @@ import java.io.IOException;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Properties;
+import org.openmrs.module.eptsreports.reporting.cube.CubeIndicator;
+import org.openmrs.module.eptsreports.reporting.dataset.definition.IndicatorCubeDataSetDefinition;
+import org.openmrs.module.eptsreports.reporting.evaluation.ReportAdmissionController.Weight;
 import org.openmrs.module.eptsreports.reporting.library.cohorts.GenericCohortQueries;
 import org.openmrs.module.eptsreports.reporting.library.datasets.TbPrevDataset;
 import org.openmrs.module.eptsreports.reporting.library.datasets.TxMlDataset;
@@ -11,6 +14,7 @@ import org.openmrs.module.eptsreports.reporting.library.datasets.TxTBDataset;
 import org.openmrs.module.eptsreports.reporting.reports.manager.EptsDataExportManager;
 import org.openmrs.module.reporting.ReportingException;
 import org.openmrs.module.reporting.evaluation.parameter.Mapped;
+import org.openmrs.module.reporting.evaluation.parameter.Parameter;
 import org.openmrs.module.reporting.evaluation.parameter.ParameterizableUtil;
 import org.openmrs.module.reporting.report.ReportDesign;
 import org.openmrs.module.reporting.report.definition.ReportDefinition;
@@ -53,16 +57,34 @@ public class SetupMERSemiAnnualReport extends EptsDataExportManager {
     return "PEPFAR MER 2.3 Semi-Annual Report";
   }
 
+  @Override
+  public Weight getWeight() {
+    return Weight.HEAVY;
+  }
+
+  @Override
+  public List<Parameter> getParameters() {
+    return txMlDataset.getParameters();
+  }
+
   @Override
   public ReportDefinition constructReportDefinition() {
     ReportDefinition rd = new ReportDefinition();
     rd.setUuid(getUuid());
     rd.setName(getName());
     rd.setDescription(getDescription());
-    rd.setParameters(txMlDataset.getParameters());
-    rd.addDataSetDefinition("TXML", Mapped.mapStraightThrough(txMlDataset.constructtxMlDataset()));
+    rd.setParameters(getParameters());
+    rd.addDataSetDefinition(
+        "TXML",
+        Mapped.mapStraightThrough(
+            new IndicatorCubeDataSetDefinition(
+                CubeIndicator.TX_ML, txMlDataset.constructtxMlDataset())));
     rd.addDataSetDefinition("T", Mapped.mapStraightThrough(txTBDataset.constructTxTBDataset()));
-    rd.addDataSetDefinition("TBPREV", Mapped.mapStraightThrough(tbPrevDataset.constructDatset()));
+    rd.addDataSetDefinition(
+        "TBPREV",
+        Mapped.mapStraightThrough(
+            new IndicatorCubeDataSetDefinition(
+                CubeIndicator.TB_PREV, tbPrevDataset.constructDatset())));
     // add a base cohort to the report
     rd.setBaseCohortDefinition(
         genericCohortQueries.getBaseCohort(),
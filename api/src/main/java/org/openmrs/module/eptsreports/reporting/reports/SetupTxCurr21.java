@@ -22,6 +22,7 @@ import org.openmrs.module.eptsreports.reporting.library.cohorts.GenericCohortQue
 import org.openmrs.module.eptsreports.reporting.library.datasets.TxCurrDataset;
 import org.openmrs.module.eptsreports.reporting.reports.manager.EptsDataExportManager;
 import org.openmrs.module.eptsreports.reporting.utils.EptsReportUtils;
+import org.openmrs.module.reporting.evaluation.parameter.Parameter;
 import org.openmrs.module.reporting.evaluation.parameter.ParameterizableUtil;
 import org.openmrs.module.reporting.report.ReportDesign;
 import org.openmrs.module.reporting.report.definition.ReportDefinition;
@@ -60,13 +61,18 @@ public class SetupTxCurr21 extends EptsDataExportManager {
     return "Number of adults and children currently receiving antiretroviral therapy (ART) (Old Spec).";
   }
 
+  @Override
+  public List<Parameter> getParameters() {
+    return txCurrDataset.getParameters();
+  }
+
   @Override
   public ReportDefinition constructReportDefinition() {
     ReportDefinition reportDefinition = new ReportDefinition();
     reportDefinition.setUuid(getUuid());
     reportDefinition.setName(getName());
     reportDefinition.setDescription(getDescription());
-    reportDefinition.setParameters(txCurrDataset.getParameters());
+    reportDefinition.setParameters(getParameters());
 
     reportDefinition.addDataSetDefinition(
         txCurrDataset.constructTxCurrDataset(false),
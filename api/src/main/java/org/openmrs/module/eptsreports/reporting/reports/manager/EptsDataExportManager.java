@@ -20,14 +20,13 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import org.apache.commons.lang3.StringUtils;
 import org.apache.poi.util.IOUtils;
-import org.openmrs.api.context.Context;
+import org.openmrs.module.eptsreports.reporting.reports.renderer.StreamingExcelTemplateRenderer;
 import org.openmrs.module.reporting.report.ReportDesign;
 import org.openmrs.module.reporting.report.ReportDesignResource;
 import org.openmrs.module.reporting.report.definition.ReportDefinition;
 import org.openmrs.module.reporting.report.manager.ReportManagerUtil;
-import org.openmrs.module.reporting.report.renderer.ExcelTemplateRenderer;
-import org.openmrs.module.reporting.report.service.ReportService;
 import org.openmrs.module.reporting.report.util.ReportUtil;
 import org.openmrs.util.OpenmrsClassLoader;
 
@@ -62,7 +61,10 @@ public abstract class EptsDataExportManager extends EptsReportManager {
   }
 
   /**
-   * Auto generated method comment
+   * Creates a design rendering an Excel template, xls or xlsx. Patient line lists can be appended
+   * to an xlsx template by naming their data sets in the {@value
+   * StreamingExcelTemplateRenderer#LINE_LIST_DATA_SETS_PROPERTY} property. Saved designs with the
+   * same name are replaced when the report is set up.
    *
    * @param reportDefinition the reportDesign to set
    * @param resourceName
@@ -78,23 +80,15 @@ public abstract class EptsDataExportManager extends EptsReportManager {
       String excelDesignUuid,
       Map<? extends Object, ? extends Object> properties)
       throws IOException {
-
-    ReportService rs = Context.getService(ReportService.class);
-    for (ReportDesign rdd : rs.getAllReportDesigns(false)) {
-      if (reportDesignName.equals(rdd.getName())) {
-        rs.purgeReportDesign(rdd);
-      }
-    }
-
     ReportDesignResource resource = new ReportDesignResource();
     resource.setName(resourceName);
-    resource.setExtension("xls");
+    resource.setExtension(StringUtils.substringAfterLast(resourceName, "."));
     InputStream is = OpenmrsClassLoader.getInstance().getResourceAsStream(resourceName);
     resource.setContents(IOUtils.toByteArray(is));
     final ReportDesign design = new ReportDesign();
     design.setName(reportDesignName);
     design.setReportDefinition(reportDefinition);
-    design.setRendererType(ExcelTemplateRenderer.class);
+    design.setRendererType(StreamingExcelTemplateRenderer.class);
     design.addResource(resource);
     if (properties != null) {
       design.getProperties().putAll(properties);
@@ -14,6 +14,7 @@
 
 package org.openmrs.module.eptsreports.reporting.reports.manager;
 
+import org.openmrs.module.eptsreports.reporting.evaluation.ReportAdmissionController.Weight;
 import org.openmrs.module.reporting.common.ObjectUtil;
 import org.openmrs.module.reporting.data.encounter.definition.EncounterDataDefinition;
 import org.openmrs.module.reporting.data.encounter.definition.PatientToEncounterDataDefinition;
@@ -30,6 +31,11 @@ import org.openmrs.module.reporting.report.manager.BaseReportManager;
 /** Base implementation of ReportManager that provides some common method implementations */
 public abstract class EptsReportManager extends BaseReportManager {
 
+  /** @return the weight of the report, which limits how many of its runs are admitted at once */
+  public Weight getWeight() {
+    return Weight.LIGHT;
+  }
+
   protected void addColumn(
       PatientDataSetDefinition dsd, String columnName, PatientDataDefinition pdd) {
     dsd.addColumn(columnName, pdd, Mapped.straightThroughMappings(pdd));
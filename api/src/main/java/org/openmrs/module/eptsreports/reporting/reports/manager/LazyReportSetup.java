@@ -0,0 +1,126 @@
+/*
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.module.eptsreports.reporting.reports.manager;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.openmrs.api.APIException;
+import org.openmrs.module.eptsreports.reporting.evaluation.SingleFlight;
+import org.openmrs.module.eptsreports.reporting.utils.EptsReportUtils;
+import org.openmrs.module.reporting.report.manager.ReportManager;
+import org.springframework.stereotype.Component;
+
+/**
+ * Sets up reports on first use instead of at startup. A registered report is saved as a stub, a
+ * definition with its parameters and designs but no data sets, when none is saved yet, and its
+ * full definition is constructed and saved when it is first evaluated or warmed up, whichever
+ * comes first. Until then the saved definition may be a stub or out of date, so it must not be
+ * evaluated as it is.
+ */
+@Component
+public class LazyReportSetup {
+
+  private static final Log log = LogFactory.getLog(LazyReportSetup.class);
+
+  private final Set<String> pending =
+      Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+  private final SingleFlight<String, Boolean> setups = new SingleFlight<String, Boolean>();
+
+  /**
+   * Registers a report to be set up on first use
+   *
+   * @param reportManager the report
+   * @return false if the report can not be stubbed, having no parameters of its own, and must be
+   *     set up in full
+   */
+  public boolean register(ReportManager reportManager) {
+    if (reportManager.getParameters() == null || reportManager.getParameters().isEmpty()) {
+      return false;
+    }
+    if (EptsReportUtils.setupReportStub(reportManager)) {
+      log.info("Saved a stub of report " + reportManager.getName());
+    }
+    pending.add(reportManager.getUuid());
+    return true;
+  }
+
+  /**
+   * @param uuid the report uuid
+   * @return whether the report is registered and not set up yet
+   */
+  public boolean isPending(String uuid) {
+    return pending.contains(uuid);
+  }
+
+  /**
+   * Sets up a registered report, waiting for the setup already running for it, if any
+   *
+   * @param reportManager the report
+   */
+  public void setUp(final ReportManager reportManager) {
+    final String uuid = reportManager.getUuid();
+    if (!pending.contains(uuid)) {
+      return;
+    }
+    try {
+      setups.execute(
+          uuid,
+          new Callable<Boolean>() {
+
+            @Override
+            public Boolean call() {
+              if (pending.contains(uuid)) {
+                long start = System.currentTimeMillis();
+                EptsReportUtils.setupReportDefinition(reportManager);
+                pending.remove(uuid);
+                log.info(
+                    "Set up report "
+                        + reportManager.getName()
+                        + " in "
+                        + (System.currentTimeMillis() - start)
+                        + " ms");
+              }
+              return true;
+            }
+          });
+    } catch (RuntimeException e) {
+      throw e;
+    } catch (Exception e) {
+      throw new APIException("Failed to set up report " + reportManager.getName(), e);
+    }
+  }
+
+  /**
+   * Sets up the registered reports that are still pending, one after the other, logging failures
+   * so they are retried on first use
+   *
+   * @param reportManagers the reports
+   */
+  public void warmUp(List<? extends ReportManager> reportManagers) {
+    for (ReportManager reportManager : reportManagers) {
+      try {
+        setUp(reportManager);
+      } catch (RuntimeException e) {
+        log.warn("Failed to warm up report " + reportManager.getName(), e);
+      }
+    }
+  }
+}
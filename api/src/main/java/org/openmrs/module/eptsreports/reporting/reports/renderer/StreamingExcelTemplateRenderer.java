@@ -0,0 +1,117 @@
+/*
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.module.eptsreports.reporting.reports.renderer;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.openmrs.annotation.Handler;
+import org.openmrs.module.reporting.common.Localized;
+import org.openmrs.module.reporting.dataset.DataSet;
+import org.openmrs.module.reporting.report.ReportData;
+import org.openmrs.module.reporting.report.ReportDesign;
+import org.openmrs.module.reporting.report.ReportDesignResource;
+import org.openmrs.module.reporting.report.renderer.ExcelTemplateRenderer;
+import org.openmrs.module.reporting.report.renderer.RenderingException;
+
+/**
+ * Excel template renderer that appends patient line lists as streamed sheets. The data sets named
+ * in the {@value #LINE_LIST_DATA_SETS_PROPERTY} design property are left out of the template,
+ * which is filled as usual, and written after its sheets a window of rows at a time, so their
+ * length does not change the memory taken by the workbook. Line lists need an xlsx template;
+ * designs without line lists are rendered like the {@link ExcelTemplateRenderer}.
+ */
+@Handler
+@Localized("eptsreports.StreamingExcelTemplateRenderer")
+public class StreamingExcelTemplateRenderer extends ExcelTemplateRenderer {
+
+  /** Design property with the comma separated names of the line list data sets */
+  public static final String LINE_LIST_DATA_SETS_PROPERTY = "lineListDataSets";
+
+  /** Rows of a line list kept in memory while writing it */
+  private static final int ROW_WINDOW = 100;
+
+  private static final String XLSX = "xlsx";
+
+  /**
+   * @see
+   *     org.openmrs.module.reporting.report.renderer.ExcelTemplateRenderer#render(org.openmrs.module.reporting.report.ReportData,
+   *     java.lang.String, java.io.OutputStream)
+   */
+  @Override
+  public void render(ReportData reportData, String argument, OutputStream out)
+      throws IOException, RenderingException {
+    ReportDesign design = getDesign(argument);
+    Set<String> lineListNames = getLineListNames(design);
+    if (lineListNames.isEmpty()) {
+      super.render(reportData, argument, out);
+      return;
+    }
+    ReportDesignResource template = getTemplate(design);
+    if (template == null || !XLSX.equalsIgnoreCase(template.getExtension())) {
+      throw new RenderingException("Line lists of " + design.getName() + " need an xlsx template");
+    }
+
+    Map<String, DataSet> templateDataSets = new LinkedHashMap<String, DataSet>();
+    Map<String, DataSet> lineLists = new LinkedHashMap<String, DataSet>();
+    for (Map.Entry<String, DataSet> dataSet : reportData.getDataSets().entrySet()) {
+      if (lineListNames.contains(dataSet.getKey())) {
+        lineLists.put(dataSet.getKey(), dataSet.getValue());
+      } else {
+        templateDataSets.put(dataSet.getKey(), dataSet.getValue());
+      }
+    }
+    ReportData templateData = new ReportData();
+    templateData.setDefinition(reportData.getDefinition());
+    templateData.setContext(reportData.getContext());
+    templateData.setDataSets(templateDataSets);
+    ByteArrayOutputStream filled = new ByteArrayOutputStream();
+    super.render(templateData, argument, filled);
+
+    SXSSFWorkbook workbook =
+        new SXSSFWorkbook(
+            new XSSFWorkbook(new ByteArrayInputStream(filled.toByteArray())), ROW_WINDOW);
+    try {
+      StreamingSheetWriter writer = new StreamingSheetWriter(workbook);
+      for (Map.Entry<String, DataSet> lineList : lineLists.entrySet()) {
+        writer.write(lineList.getKey(), lineList.getValue());
+      }
+      workbook.write(out);
+    } finally {
+      workbook.dispose();
+    }
+  }
+
+  private Set<String> getLineListNames(ReportDesign design) {
+    Set<String> ret = new HashSet<String>();
+    String property = design.getPropertyValue(LINE_LIST_DATA_SETS_PROPERTY, null);
+    if (property != null) {
+      for (String name : property.split(",")) {
+        if (StringUtils.isNotBlank(name)) {
+          ret.add(name.trim());
+        }
+      }
+    }
+    return ret;
+  }
+}
@@ -0,0 +1,139 @@
+/*
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.module.eptsreports.reporting.reports.renderer;
+
+import java.io.IOException;
+import java.util.Date;
+import java.util.List;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.util.WorkbookUtil;
+import org.apache.poi.xssf.streaming.SXSSFSheet;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+import org.openmrs.module.reporting.common.ObjectUtil;
+import org.openmrs.module.reporting.dataset.DataSet;
+import org.openmrs.module.reporting.dataset.DataSetColumn;
+import org.openmrs.module.reporting.dataset.DataSetRow;
+
+/**
+ * Writes data sets as sheets of a streamed workbook, a header row of column labels followed by a
+ * row per data set row. Only the last rows of a window are kept in memory, older ones being
+ * flushed to a temporary file, so a line list of any length takes the same heap. A data set with
+ * more rows than a sheet can hold is continued on further sheets.
+ */
+public class StreamingSheetWriter {
+
+  /** The most rows of a sheet, header included */
+  public static final int MAX_SHEET_ROWS = 1048576;
+
+  private static final String DATE_FORMAT = "yyyy-mm-dd";
+
+  private final SXSSFWorkbook workbook;
+
+  private final int maxSheetRows;
+
+  private CellStyle dateStyle;
+
+  /** @param workbook the streamed workbook */
+  public StreamingSheetWriter(SXSSFWorkbook workbook) {
+    this(workbook, MAX_SHEET_ROWS);
+  }
+
+  /**
+   * @param workbook the streamed workbook
+   * @param maxSheetRows the most rows of a sheet, header included
+   */
+  public StreamingSheetWriter(SXSSFWorkbook workbook, int maxSheetRows) {
+    this.workbook = workbook;
+    this.maxSheetRows = maxSheetRows;
+  }
+
+  /**
+   * Writes a data set
+   *
+   * @param name the name of the first sheet
+   * @param dataSet the data set
+   * @return the number of sheets written
+   * @throws IOException if rows can not be flushed
+   */
+  public int write(String name, DataSet dataSet) throws IOException {
+    List<DataSetColumn> columns = dataSet.getMetaData().getColumns();
+    int sheets = 1;
+    SXSSFSheet sheet = createSheet(name, sheets, columns);
+    int rowNum = 1;
+    for (DataSetRow dataSetRow : dataSet) {
+      if (rowNum == maxSheetRows) {
+        sheet.flushRows();
+        sheet = createSheet(name, ++sheets, columns);
+        rowNum = 1;
+      }
+      Row row = sheet.createRow(rowNum++);
+      for (int i = 0; i < columns.size(); i++) {
+        Object value = dataSetRow.getColumnValue(columns.get(i));
+        if (value != null) {
+          setValue(row.createCell(i), value);
+        }
+      }
+    }
+    sheet.flushRows();
+    return sheets;
+  }
+
+  private SXSSFSheet createSheet(String name, int number, List<DataSetColumn> columns) {
+    String sheetName = number == 1 ? name : name + " (" + number + ")";
+    SXSSFSheet sheet = (SXSSFSheet) workbook.createSheet(getUniqueName(sheetName));
+    Row header = sheet.createRow(0);
+    for (int i = 0; i < columns.size(); i++) {
+      DataSetColumn column = columns.get(i);
+      String label = StringUtils.defaultIfBlank(column.getLabel(), column.getName());
+      header.createCell(i).setCellValue(label);
+    }
+    sheet.createFreezePane(0, 1);
+    return sheet;
+  }
+
+  private String getUniqueName(String name) {
+    String safeName = WorkbookUtil.createSafeSheetName(name);
+    String ret = safeName;
+    for (int i = 2; workbook.getSheet(ret) != null; i++) {
+      String suffix = "~" + i;
+      ret = StringUtils.left(safeName, 31 - suffix.length()) + suffix;
+    }
+    return ret;
+  }
+
+  private void setValue(Cell cell, Object value) {
+    if (value instanceof Number) {
+      cell.setCellValue(((Number) value).doubleValue());
+    } else if (value instanceof Boolean) {
+      cell.setCellValue((Boolean) value);
+    } else if (value instanceof Date) {
+      cell.setCellValue((Date) value);
+      cell.setCellStyle(getDateStyle());
+    } else {
+      cell.setCellValue(ObjectUtil.format(value));
+    }
+  }
+
+  private CellStyle getDateStyle() {
+    if (dateStyle == null) {
+      dateStyle = workbook.createCellStyle();
+      dateStyle.setDataFormat(workbook.createDataFormat().getFormat(DATE_FORMAT));
+    }
+    return dateStyle;
+  }
+}
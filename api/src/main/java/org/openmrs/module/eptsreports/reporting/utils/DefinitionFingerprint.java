@@ -0,0 +1,258 @@
+/*
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+
+package org.openmrs.module.eptsreports.reporting.utils;
+
+import java.io.UnsupportedEncodingException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import org.hibernate.proxy.HibernateProxyHelper;
+import org.openmrs.BaseOpenmrsMetadata;
+import org.openmrs.BaseOpenmrsObject;
+import org.openmrs.OpenmrsObject;
+import org.openmrs.calculation.Calculation;
+import org.openmrs.module.reporting.evaluation.parameter.Parameterizable;
+
+/**
+ * Fingerprints of definitions, which are the same for definitions built the same way. Definitions
+ * and the other objects of this module and of the reporting module are walked field by field,
+ * leaving out their uuids, ids, names, descriptions and audit fields, so definitions rebuilt with
+ * new uuids, or built for two reports, have the same fingerprint. Metadata is given by its id and
+ * calculations by their class. {@link #withNames} also covers the names and descriptions, for
+ * saving definitions whose text changed. An object met again is given by the order it was first
+ * met in, so the elements of sets and the keys of maps, whose order is not kept, are walked on
+ * their own.
+ */
+public class DefinitionFingerprint {
+
+  private static final String[] WALKED_PACKAGES = {
+    "org.openmrs.module.reporting.", "org.openmrs.module.eptsreports."
+  };
+
+  /** The fields of {@link BaseOpenmrsMetadata} covered by {@link #withNames} */
+  private static final Set<String> NAME_FIELDS =
+      new HashSet<String>(Arrays.asList("name", "description"));
+
+  private final StringBuilder sb = new StringBuilder();
+
+  private final Map<Object, Integer> walked = new IdentityHashMap<Object, Integer>();
+
+  /** Whether the names and descriptions of the walked objects are covered */
+  private final boolean names;
+
+  private DefinitionFingerprint(boolean names) {
+    this.names = names;
+  }
+
+  /**
+   * @param values the values to fingerprint together
+   * @return the SHA-256 of the values, in hexadecimal
+   */
+  public static String of(Object... values) {
+    return new DefinitionFingerprint(false).digest(values);
+  }
+
+  /**
+   * Like {@link #of}, also covering the names and descriptions of the definitions and of the
+   * objects they hold
+   *
+   * @param values the values to fingerprint together
+   * @return the SHA-256 of the values, in hexadecimal
+   */
+  public static String withNames(Object... values) {
+    return new DefinitionFingerprint(true).digest(values);
+  }
+
+  /**
+   * @param patientIds patient ids, like the members of a base cohort
+   * @return the SHA-256 of the sorted ids, in hexadecimal
+   */
+  public static String ofIds(Collection<Integer> patientIds) {
+    List<Integer> sorted = new ArrayList<Integer>(patientIds);
+    Collections.sort(sorted);
+    return sha256(sorted.toString());
+  }
+
+  private String digest(Object... values) {
+    for (Object value : values) {
+      append(value);
+      sb.append('\n');
+    }
+    return sha256(sb.toString());
+  }
+
+  private void append(Object value) {
+    if (value == null) {
+      sb.append("null");
+    } else if (value instanceof String
+        || value instanceof Number
+        || value instanceof Boolean
+        || value instanceof Character
+        || value instanceof Enum) {
+      sb.append(value);
+    } else if (value instanceof Class) {
+      sb.append(((Class<?>) value).getName());
+    } else if (value instanceof Date) {
+      sb.append(((Date) value).getTime());
+    } else if (value instanceof Calculation) {
+      sb.append(value.getClass().getName());
+    } else if (value instanceof OpenmrsObject && !isWalked(value)) {
+      sb.append(HibernateProxyHelper.getClassWithoutInitializingProxy(value).getSimpleName());
+      sb.append('#');
+      sb.append(((OpenmrsObject) value).getId());
+    } else if (value instanceof Map) {
+      appendMap((Map<?, ?>) value);
+    } else if (value instanceof Collection) {
+      appendCollection((Collection<?>) value);
+    } else if (value instanceof byte[]) {
+      sb.append(sha256((byte[]) value));
+    } else if (value instanceof Object[]) {
+      appendCollection(Arrays.asList((Object[]) value));
+    } else if (isWalked(value)) {
+      appendFields(value);
+    } else {
+      sb.append(value.getClass().getName()).append('(').append(value).append(')');
+    }
+  }
+
+  private void appendMap(Map<?, ?> map) {
+    Map<String, Object> sorted = new TreeMap<String, Object>();
+    for (Map.Entry<?, ?> e : map.entrySet()) {
+      sorted.put(alone(e.getKey()), e.getValue());
+    }
+    sb.append('{');
+    for (Map.Entry<String, Object> e : sorted.entrySet()) {
+      sb.append(e.getKey()).append('=');
+      append(e.getValue());
+      sb.append(';');
+    }
+    sb.append('}');
+  }
+
+  private void appendCollection(Collection<?> collection) {
+    List<String> elements = new ArrayList<String>();
+    if (collection instanceof Set) {
+      for (Object element : collection) {
+        elements.add(alone(element));
+      }
+      Collections.sort(elements);
+    } else {
+      for (Object element : collection) {
+        elements.add(fingerprintOf(element));
+      }
+    }
+    sb.append('[');
+    for (String element : elements) {
+      sb.append(element).append(';');
+    }
+    sb.append(']');
+  }
+
+  private void appendFields(Object value) {
+    Integer ref = walked.get(value);
+    if (ref != null) {
+      sb.append("ref#").append(ref);
+      return;
+    }
+    walked.put(value, walked.size());
+    sb.append(value.getClass().getName()).append('{');
+    for (Class<?> c = value.getClass(); c != null && c != Object.class; c = c.getSuperclass()) {
+      if (c == BaseOpenmrsObject.class || (c == BaseOpenmrsMetadata.class && !names)) {
+        continue;
+      }
+      for (Field field : c.getDeclaredFields()) {
+        int modifiers = field.getModifiers();
+        if (Modifier.isStatic(modifiers)
+            || Modifier.isTransient(modifiers)
+            || field.getName().equals("id")
+            || field.getName().equals("uuid")
+            || (c == BaseOpenmrsMetadata.class && !NAME_FIELDS.contains(field.getName()))) {
+          continue;
+        }
+        field.setAccessible(true);
+        sb.append(field.getName()).append('=');
+        try {
+          append(field.get(value));
+        } catch (IllegalAccessException e) {
+          throw new IllegalStateException(e);
+        }
+        sb.append(';');
+      }
+    }
+    sb.append('}');
+  }
+
+  /** Fingerprints a list element, sharing the walked objects */
+  private String fingerprintOf(Object value) {
+    int start = sb.length();
+    append(value);
+    String ret = sb.substring(start);
+    sb.setLength(start);
+    return ret;
+  }
+
+  /** Fingerprints a set element or map key, whatever was walked before it */
+  private String alone(Object value) {
+    DefinitionFingerprint fingerprint = new DefinitionFingerprint(names);
+    fingerprint.append(value);
+    return fingerprint.sb.toString();
+  }
+
+  private static boolean isWalked(Object value) {
+    if (value instanceof Parameterizable) {
+      return true;
+    }
+    String name = value.getClass().getName();
+    for (String walkedPackage : WALKED_PACKAGES) {
+      if (name.startsWith(walkedPackage)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static String sha256(String s) {
+    try {
+      return sha256(s.getBytes("UTF-8"));
+    } catch (UnsupportedEncodingException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private static String sha256(byte[] bytes) {
+    try {
+      byte[] digest = MessageDigest.getInstance("SHA-256").digest(bytes);
+      StringBuilder ret = new StringBuilder();
+      for (byte b : digest) {
+        ret.append(String.format("%02x", b));
+      }
+      return ret.toString();
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+}
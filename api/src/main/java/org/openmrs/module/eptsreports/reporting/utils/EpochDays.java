@@ -0,0 +1,276 @@
+/*
+ * The contents of this file are subject to the OpenMRS Public License
+ * Version 1.0 (the "License"); you may not use this file except in
+ * compliance with the License. You may obtain a copy of the License at
+ * http://license.openmrs.org
+ *
+ * Software distributed under the License is distributed on an "AS IS"
+ * basis, WITHOUT WARRANTY OF ANY KIND, either express or implied. See the
+ * License for the specific language governing rights and limitations
+ * under the License.
+ *
+ * Copyright (C) OpenMRS, LLC.  All Rights Reserved.
+ */
+package org.openmrs.module.eptsreports.reporting.utils;
+
+import java.util.TimeZone;
+
+/**
+ * Primitive date arithmetic on local epoch days (days since 1970-01-01 in a given time zone) and
+ * local epoch millis (UTC millis shifted by the zone offset). None of the methods allocate, so they
+ * can be used inside per-patient loops where {@link java.util.Calendar} or joda objects would
+ * otherwise be created for every comparison.
+ *
+ * <p>Calendar fields follow the proleptic gregorian calendar, which is what {@link
+ * java.util.GregorianCalendar} uses for any date after 1582-10-15.
+ *
+ * <p>A year/month/day triple is packed into an int as {@code year << 9 | month << 5 | day}; use
+ * {@link #year(int)}, {@link #month(int)} and {@link #day(int)} to read it back.
+ */
+public final class EpochDays {
+
+  public static final long MILLIS_PER_DAY = 24L * 60 * 60 * 1000;
+
+  /** Days from 0000-03-01 to 1970-01-01 */
+  private static final int DAYS_0000_TO_1970 = 719468;
+
+  private static final int DAYS_PER_ERA = 146097;
+
+  /** Remainder of a year from which a leap day has been passed, as used by joda */
+  private static final long FEB_29 = (31L + 29 - 1) * MILLIS_PER_DAY;
+
+  private EpochDays() {}
+
+  /**
+   * Converts an instant into local epoch millis
+   *
+   * @param utcMillis the instant
+   * @param zone the zone to shift to
+   * @return the instant plus the zone offset at that instant
+   */
+  public static long toLocalMillis(long utcMillis, TimeZone zone) {
+    return utcMillis + zone.getOffset(utcMillis);
+  }
+
+  /**
+   * Gets the epoch day of local millis
+   *
+   * @param localMillis the local epoch millis
+   * @return the epoch day
+   */
+  public static int epochDay(long localMillis) {
+    return (int) floorDiv(localMillis, MILLIS_PER_DAY);
+  }
+
+  /**
+   * Gets the time of day of local millis
+   *
+   * @param localMillis the local epoch millis
+   * @return the millis since local midnight
+   */
+  public static int millisOfDay(long localMillis) {
+    return (int) floorMod(localMillis, MILLIS_PER_DAY);
+  }
+
+  /**
+   * Gets the epoch day of a calendar date
+   *
+   * @param year the year
+   * @param month the month, 1 to 12
+   * @param day the day of month, 1 to 31
+   * @return the epoch day
+   */
+  public static int of(int year, int month, int day) {
+    int y = month <= 2 ? year - 1 : year;
+    int era = (y >= 0 ? y : y - 399) / 400;
+    int yearOfEra = y - era * 400;
+    int dayOfYear = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+    int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+    return era * DAYS_PER_ERA + dayOfEra - DAYS_0000_TO_1970;
+  }
+
+  /**
+   * Gets the calendar date of an epoch day
+   *
+   * @param epochDay the epoch day
+   * @return the packed year, month and day
+   */
+  public static int toYearMonthDay(int epochDay) {
+    int z = epochDay + DAYS_0000_TO_1970;
+    int era = (z >= 0 ? z : z - DAYS_PER_ERA + 1) / DAYS_PER_ERA;
+    int dayOfEra = z - era * DAYS_PER_ERA;
+    int yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+    int dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+    int mp = (5 * dayOfYear + 2) / 153;
+    int day = dayOfYear - (153 * mp + 2) / 5 + 1;
+    int month = mp < 10 ? mp + 3 : mp - 9;
+    int year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+    return pack(year, month, day);
+  }
+
+  /**
+   * Packs a calendar date into an int
+   *
+   * @param year the year
+   * @param month the month, 1 to 12
+   * @param day the day of month, 1 to 31
+   * @return the packed date
+   */
+  public static int pack(int year, int month, int day) {
+    return year << 9 | month << 5 | day;
+  }
+
+  /** @return the year of a packed date */
+  public static int year(int yearMonthDay) {
+    return yearMonthDay >> 9;
+  }
+
+  /** @return the month (1 to 12) of a packed date */
+  public static int month(int yearMonthDay) {
+    return (yearMonthDay >> 5) & 0xF;
+  }
+
+  /** @return the day of month of a packed date */
+  public static int day(int yearMonthDay) {
+    return yearMonthDay & 0x1F;
+  }
+
+  /**
+   * Gets the months elapsed since year 0 for a year and month, so months can be added and
+   * subtracted as plain ints
+   *
+   * @param year the year
+   * @param month the month, 1 to 12
+   * @return the epoch month
+   */
+  public static int epochMonth(int year, int month) {
+    return year * 12 + month - 1;
+  }
+
+  public static boolean isLeapYear(int year) {
+    return (year & 3) == 0 && (year % 100 != 0 || year % 400 == 0);
+  }
+
+  public static int lengthOfMonth(int year, int month) {
+    switch (month) {
+      case 2:
+        return isLeapYear(year) ? 29 : 28;
+      case 4:
+      case 6:
+      case 9:
+      case 11:
+        return 30;
+      default:
+        return 31;
+    }
+  }
+
+  /**
+   * Adds months to an epoch day the way {@link java.util.Calendar#add(int, int)} does for {@link
+   * java.util.Calendar#MONTH}: the day of month is kept unless the target month is shorter, in
+   * which case the last day of that month is used
+   *
+   * @param epochDay the epoch day
+   * @param months the months to add, may be negative
+   * @return the resulting epoch day
+   */
+  public static int plusMonths(int epochDay, int months) {
+    int ymd = toYearMonthDay(epochDay);
+    int target = epochMonth(year(ymd), month(ymd)) + months;
+    int year = floorDiv(target, 12);
+    int month = floorMod(target, 12) + 1;
+    return of(year, month, Math.min(day(ymd), lengthOfMonth(year, month)));
+  }
+
+  /**
+   * Counts whole months between two local instants the way joda {@code Months.monthsBetween}
+   * does, so that the last day of a month is treated as a month end for longer months
+   *
+   * @param startLocalMillis the start local millis
+   * @param endLocalMillis the end local millis
+   * @return the months between, negative if end is before start
+   */
+  public static int monthsBetween(long startLocalMillis, long endLocalMillis) {
+    if (endLocalMillis < startLocalMillis) {
+      return -monthsBetween(endLocalMillis, startLocalMillis);
+    }
+    int start = toYearMonthDay(epochDay(startLocalMillis));
+    int end = toYearMonthDay(epochDay(endLocalMillis));
+    int months = epochMonth(year(end), month(end)) - epochMonth(year(start), month(start));
+    int startDay = day(start);
+    int endDay = day(end);
+    if (endDay == lengthOfMonth(year(end), month(end)) && startDay > endDay) {
+      startDay = endDay;
+    }
+    long endRemainder = (endDay - 1) * MILLIS_PER_DAY + millisOfDay(endLocalMillis);
+    long startRemainder = (startDay - 1) * MILLIS_PER_DAY + millisOfDay(startLocalMillis);
+    if (endRemainder < startRemainder) {
+      months--;
+    }
+    return months;
+  }
+
+  /**
+   * Counts whole years between two local instants the way joda {@code Years.yearsBetween} does,
+   * so someone born on the 29th of February turns a year older on the 28th in non leap years
+   *
+   * @param startLocalMillis the start local millis
+   * @param endLocalMillis the end local millis
+   * @return the years between, negative if end is before start
+   */
+  public static int yearsBetween(long startLocalMillis, long endLocalMillis) {
+    if (endLocalMillis < startLocalMillis) {
+      return -yearsBetween(endLocalMillis, startLocalMillis);
+    }
+    int startDay = epochDay(startLocalMillis);
+    int endDay = epochDay(endLocalMillis);
+    int startYear = year(toYearMonthDay(startDay));
+    int endYear = year(toYearMonthDay(endDay));
+    long startRemainder = startLocalMillis - of(startYear, 1, 1) * MILLIS_PER_DAY;
+    long endRemainder = endLocalMillis - of(endYear, 1, 1) * MILLIS_PER_DAY;
+    if (startRemainder >= FEB_29) {
+      if (isLeapYear(startYear)) {
+        if (!isLeapYear(endYear)) {
+          startRemainder -= MILLIS_PER_DAY;
+        }
+      } else if (isLeapYear(endYear)) {
+        endRemainder -= MILLIS_PER_DAY;
+      }
+    }
+    int years = endYear - startYear;
+    if (endRemainder < startRemainder) {
+      years--;
+    }
+    return years;
+  }
+
+  /**
+   * Counts whole days between two local instants, truncating partial days towards zero like joda
+   * {@code Days.daysBetween}
+   *
+   * @param startLocalMillis the start local millis
+   * @param endLocalMillis the end local millis
+   * @return the days between, negative if end is before start
+   */
+  public static int daysBetween(long startLocalMillis, long endLocalMillis) {
+    return (int) ((endLocalMillis - startLocalMillis) / MILLIS_PER_DAY);
+  }
+
+  private static long floorDiv(long x, long y) {
+    long q = x / y;
+    return (x % y != 0 && (x ^ y) < 0) ? q - 1 : q;
+  }
+
+  private static long floorMod(long x, long y) {
+    return x - floorDiv(x, y) * y;
+  }
+
+  private static int floorDiv(int x, int y) {
+    int q = x / y;
+    return (x % y != 0 && (x ^ y) < 0) ? q - 1 : q;
+  }
+
+  private static int floorMod(int x, int y) {
+    return x - floorDiv(x, y) * y;
+  }
+}
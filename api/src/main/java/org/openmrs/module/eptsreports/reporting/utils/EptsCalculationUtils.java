@@ -21,9 +21,7 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import org.joda.time.DateTime;
-import org.joda.time.Days;
-import org.joda.time.Months;
+import java.util.TimeZone;
 import org.openmrs.Cohort;
 import org.openmrs.Obs;
 import org.openmrs.api.APIException;
@@ -38,6 +36,7 @@ import org.openmrs.calculation.result.ResultUtil;
 import org.openmrs.calculation.result.SimpleResult;
 import org.openmrs.module.eptsreports.reporting.calculation.BooleanResult;
 import org.openmrs.module.eptsreports.reporting.calculation.CalculationWithResultFinder;
+import org.openmrs.module.eptsreports.reporting.calculation.PatientResultStore;
 import org.openmrs.module.reporting.data.DataDefinition;
 import org.openmrs.module.reporting.data.patient.EvaluatedPatientData;
 import org.openmrs.module.reporting.data.patient.definition.PatientDataDefinition;
@@ -85,32 +84,63 @@ public class EptsCalculationUtils {
       Map<String, Object> parameterValues,
       PatientCalculation calculation,
       PatientCalculationContext calculationContext) {
+    Map<Integer, Object> data =
+        evaluateData(dataDefinition, cohort, parameterValues, calculationContext);
+    CalculationResultMap ret = new CalculationResultMap();
+    for (Integer ptId : cohort) {
+      Object reportingResult = data.get(ptId);
+      ret.put(ptId, toCalculationResult(reportingResult, calculation, calculationContext));
+    }
+    return ret;
+  }
+
+  /**
+   * Evaluates a data definition on each patient using a reporting context, keeping the raw values
+   * in the object column of a {@link PatientResultStore} instead of wrapping each one in a
+   * calculation result
+   *
+   * @param dataDefinition the data definition
+   * @param cohort the patient ids
+   * @param parameterValues the parameters for the reporting context
+   * @param calculationContext the calculation context
+   * @return the store with a value for each patient in the cohort
+   */
+  public static PatientResultStore evaluateToStore(
+      DataDefinition dataDefinition,
+      Collection<Integer> cohort,
+      Map<String, Object> parameterValues,
+      PatientCalculationContext calculationContext) {
+    Map<Integer, Object> data =
+        evaluateData(dataDefinition, cohort, parameterValues, calculationContext);
+    PatientResultStore ret = new PatientResultStore(cohort.size());
+    for (Integer ptId : cohort) {
+      ret.putObject(ptId, data.get(ptId));
+    }
+    return ret;
+  }
+
+  private static Map<Integer, Object> evaluateData(
+      DataDefinition dataDefinition,
+      Collection<Integer> cohort,
+      Map<String, Object> parameterValues,
+      PatientCalculationContext calculationContext) {
     try {
       EvaluationContext reportingContext =
           ensureReportingContext(calculationContext, cohort, parameterValues);
-      Map<Integer, Object> data;
 
       if (dataDefinition instanceof PersonDataDefinition) {
         EvaluatedPersonData result =
             Context.getService(PersonDataService.class)
                 .evaluate((PersonDataDefinition) dataDefinition, reportingContext);
-        data = result.getData();
+        return result.getData();
       } else if (dataDefinition instanceof PatientDataDefinition) {
         EvaluatedPatientData result =
             Context.getService(PatientDataService.class)
                 .evaluate((PatientDataDefinition) dataDefinition, reportingContext);
-        data = result.getData();
+        return result.getData();
       } else {
         throw new RuntimeException("Unknown DataDefinition type: " + dataDefinition.getClass());
       }
-
-      CalculationResultMap ret = new CalculationResultMap();
-      for (Integer ptId : cohort) {
-        Object reportingResult = data.get(ptId);
-        ret.put(ptId, toCalculationResult(reportingResult, calculation, calculationContext));
-      }
-
-      return ret;
     } catch (EvaluationException ex) {
       throw new APIException(ex);
     }
@@ -257,9 +287,22 @@ public class EptsCalculationUtils {
    * @return the number of days
    */
   public static int monthsSince(Date date1, Date date2) {
-    DateTime d1 = new DateTime(date1.getTime());
-    DateTime d2 = new DateTime(date2.getTime());
-    return Math.abs(Months.monthsBetween(d1, d2).getMonths());
+    return monthsSince(date1, date2, TimeZone.getDefault());
+  }
+
+  /**
+   * Calculates the months since the given date, using a zone looked up once by the caller
+   *
+   * @param date1 the date
+   * @param date2 the date2
+   * @param zone the time zone in which months are counted
+   * @return the number of months
+   */
+  public static int monthsSince(Date date1, Date date2, TimeZone zone) {
+    return Math.abs(
+        EpochDays.monthsBetween(
+            EpochDays.toLocalMillis(date1.getTime(), zone),
+            EpochDays.toLocalMillis(date2.getTime(), zone)));
   }
 
   /**
@@ -270,9 +313,48 @@ public class EptsCalculationUtils {
    * @return the number of days
    */
   public static int daysSince(Date date1, Date date2) {
-    DateTime d1 = new DateTime(date1.getTime());
-    DateTime d2 = new DateTime(date2.getTime());
-    return Math.abs(Days.daysBetween(d1, d2).getDays());
+    return daysSince(date1, date2, TimeZone.getDefault());
+  }
+
+  /**
+   * Calculates the days since the given date, using a zone looked up once by the caller
+   *
+   * @param date1 the date
+   * @param date2 the date2
+   * @param zone the time zone in which days are counted
+   * @return the number of days
+   */
+  public static int daysSince(Date date1, Date date2, TimeZone zone) {
+    return Math.abs(
+        EpochDays.daysBetween(
+            EpochDays.toLocalMillis(date1.getTime(), zone),
+            EpochDays.toLocalMillis(date2.getTime(), zone)));
+  }
+
+  /**
+   * Calculates the age in whole years on a given date
+   *
+   * @param birthDate the birth date
+   * @param onDate the date on which the age is calculated
+   * @param zone the time zone in which years are counted
+   * @return the age in years, negative if onDate is before birthDate
+   */
+  public static int ageInYears(Date birthDate, Date onDate, TimeZone zone) {
+    return EpochDays.yearsBetween(
+        EpochDays.toLocalMillis(birthDate.getTime(), zone),
+        EpochDays.toLocalMillis(onDate.getTime(), zone));
+  }
+
+  /**
+   * Gets the local epoch day of a date, so that window boundaries can be computed once with {@link
+   * #addMonths(int, int)} and compared as ints
+   *
+   * @param date the date
+   * @param zone the time zone of the day
+   * @return the epoch day
+   */
+  public static int epochDay(Date date, TimeZone zone) {
+    return EpochDays.epochDay(EpochDays.toLocalMillis(date.getTime(), zone));
   }
 
   /**
@@ -321,6 +403,18 @@ public class EptsCalculationUtils {
     return c.getTime();
   }
 
+  /**
+   * Adds months to an epoch day, with the same day of month clamping as {@link #addMonths(Date,
+   * int)}
+   *
+   * @param epochDay, to add months to
+   * @param months, number of months to add to epochDay
+   * @return new epoch day with added months
+   */
+  public static int addMonths(int epochDay, int months) {
+    return EpochDays.plusMonths(epochDay, months);
+  }
+
   /**
    * Adds months to a date
    *
@@ -182,6 +182,62 @@ public final class EptsReportConstants {
   public static final String GLOBAL_PROPERTY_NEGATIVE_CONCEPT_UUID =
       "eptsreports.negativeConceptUuid";
 
+  // Evaluation
+  public static final String GLOBAL_PROPERTY_STREAMING_FETCH_SIZE =
+      "eptsreports.streamingFetchSize";
+
+  public static final String GLOBAL_PROPERTY_PATIENT_ID_CHUNK_SIZE =
+      "eptsreports.patientIdChunkSize";
+
+  public static final String GLOBAL_PROPERTY_COHORT_CACHE_MAX_SIZE_MB =
+      "eptsreports.cohortCacheMaxSizeMb";
+
+  public static final String GLOBAL_PROPERTY_CALCULATION_HEAP_BUDGET_MB =
+      "eptsreports.calculationHeapBudgetMb";
+
+  public static final String GLOBAL_PROPERTY_LATEST_OBS_CONCEPTS = "eptsreports.latestObsConcepts";
+
+  public static final String GLOBAL_PROPERTY_INDICATOR_CUBE_MONTHS =
+      "eptsreports.indicatorCubeMonths";
+
+  public static final String GLOBAL_PROPERTY_INDICATOR_CUBE_MAX_AGE_HOURS =
+      "eptsreports.indicatorCubeMaxAgeHours";
+
+  public static final String GLOBAL_PROPERTY_READ_INDICATOR_CUBE = "eptsreports.readIndicatorCube";
+
+  // Admission
+  public static final String GLOBAL_PROPERTY_CONCURRENT_LIGHT_REPORTS =
+      "eptsreports.concurrentLightReports";
+
+  public static final String GLOBAL_PROPERTY_CONCURRENT_MEDIUM_REPORTS =
+      "eptsreports.concurrentMediumReports";
+
+  public static final String GLOBAL_PROPERTY_CONCURRENT_HEAVY_REPORTS =
+      "eptsreports.concurrentHeavyReports";
+
+  public static final String GLOBAL_PROPERTY_MAX_QUEUED_REPORTS = "eptsreports.maxQueuedReports";
+
+  public static final String GLOBAL_PROPERTY_MAX_REPORT_WAIT_MINUTES =
+      "eptsreports.maxReportWaitMinutes";
+
+  public static final String GLOBAL_PROPERTY_MIN_FREE_HEAP_MB = "eptsreports.minFreeHeapMb";
+
+  public static final String GLOBAL_PROPERTY_REPLICA_POOL_SIZE = "eptsreports.replicaPoolSize";
+
+  public static final String GLOBAL_PROPERTY_REPLICA_MAX_LAG_SECONDS =
+      "eptsreports.replicaMaxLagSeconds";
+
+  public static final String GLOBAL_PROPERTY_REPORT_SETUP_THREADS =
+      "eptsreports.reportSetupThreads";
+
+  public static final String GLOBAL_PROPERTY_PURGE_REPORTS_ON_STOP =
+      "eptsreports.purgeReportsOnStop";
+
+  public static final String GLOBAL_PROPERTY_LAZY_REPORT_SETUP = "eptsreports.lazyReportSetup";
+
+  public static final String GLOBAL_PROPERTY_QUERY_TIMEOUT_SECONDS =
+      "eptsreports.queryTimeoutSeconds";
+
   // Enumeration
   public enum PatientsOnRoutineEnum {
     BREASTFEEDINGPREGNANT,
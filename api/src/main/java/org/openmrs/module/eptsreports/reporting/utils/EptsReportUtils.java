@@ -14,11 +14,16 @@
 
 package org.openmrs.module.eptsreports.reporting.utils;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
 import org.apache.commons.lang.StringUtils;
 import org.openmrs.GlobalProperty;
+import org.openmrs.api.AdministrationService;
 import org.openmrs.api.context.Context;
 import org.openmrs.module.reporting.ReportingException;
 import org.openmrs.module.reporting.cohort.definition.CohortDefinition;
@@ -26,14 +31,19 @@ import org.openmrs.module.reporting.evaluation.parameter.Mapped;
 import org.openmrs.module.reporting.evaluation.parameter.Parameter;
 import org.openmrs.module.reporting.evaluation.parameter.Parameterizable;
 import org.openmrs.module.reporting.evaluation.parameter.ParameterizableUtil;
+import org.openmrs.module.reporting.report.ReportDesign;
 import org.openmrs.module.reporting.report.definition.ReportDefinition;
 import org.openmrs.module.reporting.report.definition.service.ReportDefinitionService;
 import org.openmrs.module.reporting.report.manager.ReportManager;
-import org.openmrs.module.reporting.report.manager.ReportManagerUtil;
+import org.openmrs.module.reporting.report.service.ReportService;
 
 /** Epts Reports module utilities */
 public class EptsReportUtils {
 
+  private static final String SETUP_FINGERPRINT_GP_PREFIX = "eptsreports.reportManager.";
+
+  private static final String SETUP_FINGERPRINT_GP_SUFFIX = ".fingerprint";
+
   /**
    * Purges a Report Definition from the database
    *
@@ -53,6 +63,12 @@ public class EptsReportUtils {
         Context.getAdministrationService().purgeGlobalProperty(gp);
       }
     }
+    GlobalProperty fingerprint =
+        Context.getAdministrationService()
+            .getGlobalPropertyObject(getSetupFingerprintGpName(reportManager));
+    if (fingerprint != null) {
+      Context.getAdministrationService().purgeGlobalProperty(fingerprint);
+    }
   }
 
   /**
@@ -69,12 +85,140 @@ public class EptsReportUtils {
   }
 
   /**
-   * Setup a Report Definition in a database
+   * Setup a Report Definition in a database. The definition and designs are constructed and saved
+   * only when their fingerprint, which covers the version, the definition with the names and
+   * descriptions of everything it holds, and the design templates, differs from the one saved with
+   * them, so unchanged reports are not serialized again.
    *
    * @param reportManager the Report Definition
+   * @return whether the definition was saved
+   */
+  public static boolean setupReportDefinition(ReportManager reportManager) {
+    ReportDefinition definition = reportManager.constructReportDefinition();
+    List<ReportDesign> designs = reportManager.constructReportDesigns(definition);
+    List<String> designUuids = new ArrayList<String>();
+    for (ReportDesign design : designs) {
+      designUuids.add(design.getUuid());
+    }
+    String fingerprint =
+        DefinitionFingerprint.withNames(
+            reportManager.getVersion(), designUuids, definition, designs);
+
+    AdministrationService as = Context.getAdministrationService();
+    String gpName = getSetupFingerprintGpName(reportManager);
+    GlobalProperty gp = as.getGlobalPropertyObject(gpName);
+    if (gp != null
+        && fingerprint.equals(gp.getPropertyValue())
+        && findReportDefinition(reportManager.getUuid()) != null) {
+      return false;
+    }
+
+    saveReportDefinition(definition, designs);
+
+    if (gp == null) {
+      gp = new GlobalProperty(gpName);
+    }
+    gp.setPropertyValue(fingerprint);
+    as.saveGlobalProperty(gp);
+    return true;
+  }
+
+  /**
+   * Saves a definition without data sets in place of a report that is not saved yet, so it can be
+   * listed and requested before its full definition is constructed by {@link
+   * #setupReportDefinition(ReportManager)}.
+   *
+   * @param reportManager the Report Definition
+   * @return whether the stub was saved
+   */
+  public static boolean setupReportStub(ReportManager reportManager) {
+    if (findReportDefinition(reportManager.getUuid()) != null) {
+      return false;
+    }
+    ReportDefinition stub = new ReportDefinition();
+    stub.setUuid(reportManager.getUuid());
+    stub.setName(reportManager.getName());
+    stub.setDescription(reportManager.getDescription());
+    stub.setParameters(reportManager.getParameters());
+    saveReportDefinition(stub, reportManager.constructReportDesigns(stub));
+
+    // the stub must not pass for the full definition
+    GlobalProperty gp =
+        Context.getAdministrationService()
+            .getGlobalPropertyObject(getSetupFingerprintGpName(reportManager));
+    if (gp != null) {
+      Context.getAdministrationService().purgeGlobalProperty(gp);
+    }
+    return true;
+  }
+
+  private static void saveReportDefinition(
+      ReportDefinition definition, List<ReportDesign> designs) {
+    ReportDefinitionService rds = Context.getService(ReportDefinitionService.class);
+    ReportDefinition existing = rds.getDefinitionByUuid(definition.getUuid());
+    if (existing != null) {
+      // overridden rather than purged, as report requests refer to it
+      definition.setId(existing.getId());
+      Context.evictFromSession(existing);
+    }
+    rds.saveDefinition(definition);
+
+    ReportService rs = Context.getService(ReportService.class);
+    Set<String> designNames = new HashSet<String>();
+    for (ReportDesign design : designs) {
+      designNames.add(design.getName());
+    }
+    Set<ReportDesign> purged = new HashSet<ReportDesign>();
+    purged.addAll(rs.getReportDesigns(definition, null, true));
+    for (ReportDesign design : rs.getAllReportDesigns(false)) {
+      if (designNames.contains(design.getName())) {
+        purged.add(design);
+      }
+    }
+    for (ReportDesign design : purged) {
+      rs.purgeReportDesign(design);
+    }
+    for (ReportDesign design : designs) {
+      rs.saveReportDesign(design);
+    }
+  }
+
+  private static String getSetupFingerprintGpName(ReportManager reportManager) {
+    return SETUP_FINGERPRINT_GP_PREFIX + reportManager.getUuid() + SETUP_FINGERPRINT_GP_SUFFIX;
+  }
+
+  /**
+   * Reads a global property holding an integer
+   *
+   * @param name the global property name
+   * @param defaultValue returned when the property is blank or not a number
+   * @return the integer value
+   */
+  public static int getIntegerGlobalProperty(String name, int defaultValue) {
+    String value = Context.getAdministrationService().getGlobalProperty(name);
+    if (StringUtils.isBlank(value)) {
+      return defaultValue;
+    }
+    try {
+      return Integer.parseInt(value.trim());
+    } catch (NumberFormatException e) {
+      return defaultValue;
+    }
+  }
+
+  /**
+   * Reads a global property holding a boolean
+   *
+   * @param name the global property name
+   * @param defaultValue returned when the property is blank
+   * @return the boolean value
    */
-  public static void setupReportDefinition(ReportManager reportManager) {
-    ReportManagerUtil.setupReport(reportManager);
+  public static boolean getBooleanGlobalProperty(String name, boolean defaultValue) {
+    String value = Context.getAdministrationService().getGlobalProperty(name);
+    if (StringUtils.isBlank(value)) {
+      return defaultValue;
+    }
+    return Boolean.parseBoolean(value.trim());
   }
 
   /**
@@ -7,6 +7,7 @@ import static org.hamcrest.Matchers.is;
 import static org.hamcrest.Matchers.notNullValue;
 import static org.hamcrest.beans.HasPropertyWithValue.hasProperty;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Date;
@@ -19,6 +20,7 @@ import org.junit.Test;
 import org.openmrs.Concept;
 import org.openmrs.Encounter;
 import org.openmrs.EncounterType;
+import org.openmrs.GlobalProperty;
 import org.openmrs.Location;
 import org.openmrs.Obs;
 import org.openmrs.PatientProgram;
@@ -31,8 +33,10 @@ import org.openmrs.calculation.patient.PatientCalculationService;
 import org.openmrs.calculation.result.CalculationResultMap;
 import org.openmrs.calculation.result.ListResult;
 import org.openmrs.calculation.result.SimpleResult;
+import org.openmrs.module.eptsreports.reporting.calculation.PatientObsTable;
 import org.openmrs.module.eptsreports.reporting.calculation.common.EPTSCalculationService;
 import org.openmrs.module.eptsreports.reporting.utils.EptsCalculationUtils;
+import org.openmrs.module.eptsreports.reporting.utils.EptsReportConstants;
 import org.openmrs.module.reporting.common.TimeQualifier;
 import org.openmrs.test.BaseModuleContextSensitiveTest;
 
@@ -132,6 +136,67 @@ public class EPTSCalculationServiceTest extends BaseModuleContextSensitiveTest {
             allOf(hasProperty("obsId", Matchers.equalTo(7))), allOf(hasProperty("obsId", is(10)))));
   }
 
+  /**
+   * @see EPTSCalculationService#getObsTable(Concept, List, Collection, List, List, Date,
+   *     PatientCalculationContext)
+   */
+  @Test
+  public void getObsTableShouldReadTheSameObsAsTheAnyTimeQualifier() {
+    List<Location> locations = Arrays.asList(new Location(1));
+    PatientObsTable table =
+        this.eptsCalculationService.getObsTable(
+            new Concept(5089), null, Arrays.asList(7), locations, null, null, context);
+    try {
+      assertObsIds(table.getObs(7), 7, 10);
+    } finally {
+      table.close();
+    }
+  }
+
+  /**
+   * @see EPTSCalculationService#getObsTable(Concept, List, Collection, List, List, Date,
+   *     PatientCalculationContext)
+   */
+  @Test
+  public void getObsTableShouldReadTheSameObsWhenStreaming() {
+    enableStreaming();
+    List<Location> locations = Arrays.asList(new Location(1));
+    PatientObsTable table =
+        this.eptsCalculationService.getObsTable(
+            new Concept(5089), null, Arrays.asList(7), locations, null, null, context);
+    try {
+      assertObsIds(table.getObs(7), 7, 10);
+    } finally {
+      table.close();
+    }
+  }
+
+  /**
+   * @see EPTSCalculationService#getObsTable(Concept, List, Collection, List, List, Date,
+   *     PatientCalculationContext)
+   */
+  @Test
+  public void getObsTableShouldQueryACohortLargerThanAChunkInChunks() {
+    List<Integer> cohort = new ArrayList<Integer>();
+    for (int patientId = 2500; patientId > 0; patientId--) {
+      cohort.add(patientId);
+    }
+    List<Location> locations = Arrays.asList(new Location(1));
+    PatientObsTable table =
+        this.eptsCalculationService.getObsTable(
+            new Concept(5089), null, cohort, locations, null, null, context);
+    PatientObsTable withoutOthers =
+        this.eptsCalculationService.getObsTable(
+            new Concept(5089), null, Arrays.asList(7), locations, null, null, context);
+    try {
+      assertObsIds(table.getObs(7), 7, 10);
+      Assert.assertTrue(table.getObsCount() >= withoutOthers.getObsCount());
+    } finally {
+      table.close();
+      withoutOthers.close();
+    }
+  }
+
   /**
    * @see EPTSCalculationService#allPatientStates(java.util.Collection, Location,
    *     ProgramWorkflowState, PatientCalculationContext)
@@ -324,4 +389,70 @@ public class EPTSCalculationServiceTest extends BaseModuleContextSensitiveTest {
     Assert.assertEquals(Integer.valueOf(999), lastObs999.getPersonId());
     Assert.assertEquals(location.getId(), lastObs999.getLocation().getId());
   }
+
+  @Test
+  public void shouldGetSameObsWhenStreaming() {
+    enableStreaming();
+    Concept concept = new Concept(5089);
+    List<Integer> cohort = Arrays.asList(7);
+
+    Obs first =
+        EptsCalculationUtils.resultForPatient(
+            this.eptsCalculationService.firstObs(
+                concept, null, new Location(1), true, null, null, null, cohort, context),
+            7);
+    Obs last =
+        EptsCalculationUtils.resultForPatient(
+            this.eptsCalculationService.lastObs(
+                Arrays.asList(new EncounterType(6777002)),
+                new Concept(7777001),
+                new Location(1),
+                null,
+                context.getNow(),
+                Arrays.asList(7, 8, 999),
+                context),
+            999);
+
+    Assert.assertEquals(Integer.valueOf(7), first.getId());
+    Assert.assertEquals(Integer.valueOf(3777029), last.getId());
+  }
+
+  @SuppressWarnings("unchecked")
+  @Test
+  public void shouldGetSameStatesAndProgramsWhenStreaming() {
+    enableStreaming();
+    ProgramWorkflowState programWorkflowState =
+        Context.getProgramWorkflowService()
+            .getProgramWorkflowStatesByConcept(new Concept(17))
+            .get(0);
+
+    CalculationResultMap patientStateMap =
+        this.eptsCalculationService.allPatientStates(
+            Arrays.asList(2), null, programWorkflowState, context);
+    CalculationResultMap patientProgramMap =
+        this.eptsCalculationService.firstPatientProgram(
+            new Program(2), new Location(1), Arrays.asList(7, 8, 999), context);
+
+    List<PatientState> patientStateList =
+        EptsCalculationUtils.extractResultValues((ListResult) patientStateMap.get(2));
+    assertThat(patientStateList, IsCollectionWithSize.hasSize(1));
+    Assert.assertEquals(Integer.valueOf(1), patientStateList.get(0).getPatientStateId());
+    Assert.assertNull(patientProgramMap.get(7));
+    Assert.assertEquals(
+        Integer.valueOf(28077), ((PatientProgram) patientProgramMap.get(999).getValue()).getId());
+  }
+
+  private static void assertObsIds(List<Obs> obs, Integer... obsIds) {
+    List<Integer> ids = new ArrayList<Integer>();
+    for (Obs o : obs) {
+      ids.add(o.getObsId());
+    }
+    Assert.assertEquals(Arrays.asList(obsIds), ids);
+  }
+
+  private void enableStreaming() {
+    Context.getAdministrationService()
+        .saveGlobalProperty(
+            new GlobalProperty(EptsReportConstants.GLOBAL_PROPERTY_STREAMING_FETCH_SIZE, "100"));
+  }
 }
@@ -3,12 +3,17 @@ package org.openmrs.module.eptsreports.reporting.intergrated.calculation.generic
 import java.sql.Timestamp;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.Assert;
 import org.junit.Before;
+import org.junit.Test;
 import org.openmrs.api.context.Context;
 import org.openmrs.calculation.patient.PatientCalculation;
 import org.openmrs.calculation.patient.PatientCalculationContext;
 import org.openmrs.calculation.result.CalculationResultMap;
 import org.openmrs.calculation.result.SimpleResult;
+import org.openmrs.module.eptsreports.reporting.calculation.PatientResultStore;
 import org.openmrs.module.eptsreports.reporting.calculation.generic.InitialArtStartDateCalculation;
 import org.openmrs.module.eptsreports.reporting.intergrated.calculation.BasePatientCalculationTest;
 
@@ -81,4 +86,26 @@ public class InitialArtStartDateCalculationTest extends BasePatientCalculationTe
   public void initialise() throws Exception {
     executeDataSet("genericTest.xml");
   }
+
+  @Test
+  public void evaluateStartDatesShouldReuseTheStoreOfTheContextForTheSameParameters() {
+    InitialArtStartDateCalculation calculation =
+        Context.getRegisteredComponents(InitialArtStartDateCalculation.class).get(0);
+    Map<String, Object> parameters = new HashMap<String, Object>();
+    PatientCalculationContext context = getEvaluationContext();
+
+    PatientResultStore startDates =
+        calculation.evaluateStartDates(getCohort(), parameters, context);
+
+    Assert.assertSame(
+        startDates, calculation.evaluateStartDates(Arrays.asList(2, 6), parameters, context));
+    Assert.assertEquals(testsHelper.getDate("2018-06-21 00:00:00.0"), startDates.getDate(1777005));
+    parameters.put("considerPharmacyEncounter", false);
+    Assert.assertNotSame(
+        startDates, calculation.evaluateStartDates(getCohort(), parameters, context));
+    Assert.assertNotSame(
+        startDates,
+        calculation.evaluateStartDates(
+            Arrays.asList(2, 6, 1777006), new HashMap<String, Object>(), context));
+  }
 }
@@ -0,0 +1,87 @@
+package org.openmrs.module.eptsreports.reporting.intergrated.cohort;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.openmrs.Cohort;
+import org.openmrs.GlobalProperty;
+import org.openmrs.Obs;
+import org.openmrs.api.context.Context;
+import org.openmrs.module.eptsreports.reporting.cohort.cache.PersistentCohortCache;
+import org.openmrs.module.eptsreports.reporting.utils.EptsReportConstants;
+import org.openmrs.module.reporting.cohort.EvaluatedCohort;
+import org.openmrs.module.reporting.cohort.definition.SqlCohortDefinition;
+import org.openmrs.module.reporting.evaluation.EvaluationContext;
+import org.openmrs.test.BaseModuleContextSensitiveTest;
+import org.springframework.beans.factory.annotation.Autowired;
+
+/**
+ * Keeps cohorts with the data watermark of the in-memory database of the test context, each lookup
+ * being done in a new evaluation context as a later report run would
+ */
+public class PersistentCohortCacheTest extends BaseModuleContextSensitiveTest {
+
+  private static final String QUERY = "select patient_id from patient where voided = false";
+
+  private static final Set<Integer> PATIENTS = new HashSet<Integer>(Arrays.asList(2, 6, 7));
+
+  @Autowired private PersistentCohortCache persistentCohortCache;
+
+  @Before
+  public void setUp() {
+    Context.getAdministrationService()
+        .saveGlobalProperty(
+            new GlobalProperty(EptsReportConstants.GLOBAL_PROPERTY_COHORT_CACHE_MAX_SIZE_MB, "1"));
+  }
+
+  @Test
+  public void getShouldGiveBackTheCohortOfARebuiltDefinition() {
+    put(new SqlCohortDefinition(QUERY), getContext(new Date(0)));
+
+    EvaluatedCohort cached =
+        persistentCohortCache.get(new SqlCohortDefinition(QUERY), getContext(new Date(0)));
+
+    Assert.assertNotNull(cached);
+    Assert.assertEquals(PATIENTS, cached.getMemberIds());
+  }
+
+  @Test
+  public void getShouldMissForOtherParameterValues() {
+    put(new SqlCohortDefinition(QUERY), getContext(new Date(0)));
+
+    Assert.assertNull(
+        persistentCohortCache.get(new SqlCohortDefinition(QUERY), getContext(new Date(1000))));
+  }
+
+  @Test
+  public void getShouldMissOnceTheDataChanged() {
+    put(new SqlCohortDefinition(QUERY), getContext(new Date(0)));
+
+    List<Obs> obs =
+        Context.getObsService().getObservationsByPerson(Context.getPersonService().getPerson(7));
+    Context.getObsService().voidObs(obs.get(0), "test");
+    Context.flushSession();
+
+    Assert.assertNull(
+        persistentCohortCache.get(new SqlCohortDefinition(QUERY), getContext(new Date(0))));
+  }
+
+  private void put(SqlCohortDefinition cd, EvaluationContext context) {
+    persistentCohortCache.put(cd, new EvaluatedCohort(new Cohort(PATIENTS), cd, context), context);
+  }
+
+  private EvaluationContext getContext(Date endDate) {
+    Map<String, Object> parameterValues = new HashMap<String, Object>();
+    parameterValues.put("endDate", endDate);
+    EvaluationContext context = new EvaluationContext();
+    context.setParameterValues(parameterValues);
+    return context;
+  }
+}
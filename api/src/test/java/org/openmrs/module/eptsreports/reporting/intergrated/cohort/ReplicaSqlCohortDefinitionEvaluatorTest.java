@@ -0,0 +1,171 @@
+package org.openmrs.module.eptsreports.reporting.intergrated.cohort;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Properties;
+import java.util.Set;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.openmrs.api.context.Context;
+import org.openmrs.module.eptsreports.api.dao.EptsReportsDao;
+import org.openmrs.module.eptsreports.api.dao.ReportingReplicaDao;
+import org.openmrs.module.eptsreports.reporting.cohort.definition.BoundSqlCohortDefinition;
+import org.openmrs.module.eptsreports.reporting.cohort.evaluator.ReplicaSqlCohortDefinitionEvaluator;
+import org.openmrs.module.eptsreports.reporting.library.queries.BoundQuery;
+import org.openmrs.module.reporting.cohort.definition.SqlCohortDefinition;
+import org.openmrs.module.reporting.cohort.definition.evaluator.SqlCohortDefinitionEvaluator;
+import org.openmrs.module.reporting.evaluation.EvaluationContext;
+import org.openmrs.test.BaseModuleContextSensitiveTest;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.util.ReflectionTestUtils;
+
+/**
+ * Runs the SQL cohort evaluator with the in-memory database of the test context as the main
+ * database and a second in-memory database as the replica, holding other patients so the database
+ * a cohort came from can be told
+ */
+public class ReplicaSqlCohortDefinitionEvaluatorTest extends BaseModuleContextSensitiveTest {
+
+  private static final String REPLICA_URL = "jdbc:h2:mem:eptsreportsreplica;DB_CLOSE_DELAY=-1";
+
+  private static final Set<Integer> REPLICA_PATIENTS =
+      new HashSet<Integer>(Arrays.asList(1001, 1002));
+
+  @Autowired private EptsReportsDao eptsReportsDao;
+
+  private Properties runtimeProperties;
+
+  private ReportingReplicaDao replicaDao;
+
+  private ReplicaSqlCohortDefinitionEvaluator evaluator;
+
+  @Before
+  public void setUp() throws Exception {
+    runtimeProperties = Context.getRuntimeProperties();
+    Properties properties = Context.getRuntimeProperties();
+    properties.setProperty(ReportingReplicaDao.URL_PROPERTY, REPLICA_URL);
+    Context.setRuntimeProperties(properties);
+
+    // new instances, as a replica found unreachable is left alone for a while
+    replicaDao = new ReportingReplicaDao();
+    ReflectionTestUtils.setField(replicaDao, "eptsReportsDao", eptsReportsDao);
+    evaluator = new ReplicaSqlCohortDefinitionEvaluator();
+    ReflectionTestUtils.setField(evaluator, "reportingReplicaDao", replicaDao);
+    ReflectionTestUtils.setField(evaluator, "eptsReportsDao", eptsReportsDao);
+
+    Connection connection = DriverManager.getConnection(REPLICA_URL);
+    try {
+      Statement statement = connection.createStatement();
+      statement.execute("create table obs (obs_id int primary key, date_created timestamp)");
+      statement.execute("create table patient (patient_id int primary key, voided boolean)");
+      for (Integer patientId : REPLICA_PATIENTS) {
+        statement.execute("insert into patient values (" + patientId + ", false)");
+      }
+      statement.close();
+    } finally {
+      connection.close();
+    }
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    Context.setRuntimeProperties(runtimeProperties);
+    Connection connection = DriverManager.getConnection(REPLICA_URL);
+    try {
+      Statement statement = connection.createStatement();
+      statement.execute("drop all objects");
+      statement.close();
+    } finally {
+      connection.close();
+    }
+  }
+
+  @Test
+  public void evaluateShouldRunTheQueryOnAReplicaUpToDate() throws Exception {
+    setReplicaLatestObs(eptsReportsDao.getLatestObsDateCreated());
+
+    Set<Integer> patients = evaluate("select patient_id from patient where voided = false");
+
+    Assert.assertEquals(REPLICA_PATIENTS, patients);
+    Assert.assertTrue(replicaDao.isAvailable());
+  }
+
+  @Test
+  public void evaluateShouldUseTheMainDatabaseWhenTheReplicaIsBehind() throws Exception {
+    Date latest = eptsReportsDao.getLatestObsDateCreated();
+    setReplicaLatestObs(new Date(latest.getTime() - 3600 * 1000L));
+
+    String query = "select patient_id from patient where voided = false";
+    Set<Integer> patients = evaluate(query);
+
+    Assert.assertEquals(evaluateOnMainDatabase(query), patients);
+    Assert.assertFalse(patients.isEmpty());
+    Assert.assertTrue(Collections.disjoint(patients, REPLICA_PATIENTS));
+    Assert.assertTrue(replicaDao.isAvailable());
+  }
+
+  @Test
+  public void evaluateShouldFallBackToTheMainDatabaseWhenTheReplicaFails() throws Exception {
+    setReplicaLatestObs(eptsReportsDao.getLatestObsDateCreated());
+
+    // the replica has no patient_program table
+    String query = "select patient_id from patient_program where voided = false";
+    Set<Integer> patients = evaluate(query);
+
+    Assert.assertEquals(evaluateOnMainDatabase(query), patients);
+    Assert.assertFalse(patients.isEmpty());
+    Assert.assertFalse(replicaDao.isAvailable());
+
+    // later queries go to the main database while the replica is left alone
+    Set<Integer> later = evaluate("select patient_id from patient where voided = false");
+    Assert.assertTrue(Collections.disjoint(later, REPLICA_PATIENTS));
+  }
+
+  @Test
+  public void evaluateShouldUseTheMainDatabaseWithoutAReplica() throws Exception {
+    Context.setRuntimeProperties(runtimeProperties);
+    setReplicaLatestObs(eptsReportsDao.getLatestObsDateCreated());
+
+    String query = "select patient_id from patient where voided = false";
+    Set<Integer> patients = evaluate(query);
+
+    Assert.assertEquals(evaluateOnMainDatabase(query), patients);
+    Assert.assertFalse(replicaDao.isAvailable());
+  }
+
+  private Set<Integer> evaluate(String query) throws Exception {
+    return evaluator
+        .evaluate(new BoundSqlCohortDefinition(new BoundQuery(query)), new EvaluationContext())
+        .getMemberIds();
+  }
+
+  private Set<Integer> evaluateOnMainDatabase(String query) throws Exception {
+    return Context.getRegisteredComponents(SqlCohortDefinitionEvaluator.class)
+        .get(0)
+        .evaluate(new SqlCohortDefinition(query), new EvaluationContext())
+        .getMemberIds();
+  }
+
+  private void setReplicaLatestObs(Date dateCreated) throws SQLException {
+    Connection connection = DriverManager.getConnection(REPLICA_URL);
+    try {
+      PreparedStatement statement =
+          connection.prepareStatement("insert into obs (obs_id, date_created) values (1, ?)");
+      statement.setTimestamp(1, new Timestamp(dateCreated.getTime()));
+      statement.executeUpdate();
+      statement.close();
+    } finally {
+      connection.close();
+    }
+  }
+}
@@ -0,0 +1,128 @@
+package org.openmrs.module.eptsreports.reporting.unit.calculation;
+
+import java.io.File;
+import java.util.Date;
+import java.util.List;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.openmrs.Obs;
+import org.openmrs.module.eptsreports.reporting.calculation.PatientObsTable;
+
+public class PatientObsTableTest {
+
+  private File directory;
+
+  @Before
+  public void setUp() throws Exception {
+    directory = File.createTempFile("obs", "");
+    directory.delete();
+    directory.mkdirs();
+  }
+
+  @After
+  public void tearDown() {
+    for (File file : directory.listFiles()) {
+      file.delete();
+    }
+    directory.delete();
+  }
+
+  @Test
+  public void shouldKeepObsInHeapWithinBudget() {
+    PatientObsTable table = new PatientObsTable(1024 * 1024, directory);
+    table.add(3, 10, 856, new Date(1000), 20, new Date(2000), 1, null, 999.0, null);
+    table.add(3, 11, 856, new Date(3000), null, null, 1, 1065, null, new Date(4000));
+    table.add(5, 12, 856, null, null, null, null, null, null, null);
+    table.finish();
+
+    Assert.assertFalse(table.isSpilled());
+    Assert.assertEquals(2, table.getPatientCount());
+    Assert.assertEquals(3, table.getObsCount());
+
+    List<Obs> obs = table.getObs(3);
+    Assert.assertEquals(2, obs.size());
+    Obs first = obs.get(0);
+    Assert.assertEquals(Integer.valueOf(10), first.getObsId());
+    Assert.assertEquals(Integer.valueOf(3), first.getPerson().getPersonId());
+    Assert.assertEquals(Integer.valueOf(856), first.getConcept().getConceptId());
+    Assert.assertEquals(new Date(1000), first.getObsDatetime());
+    Assert.assertEquals(Integer.valueOf(20), first.getEncounter().getEncounterId());
+    Assert.assertEquals(new Date(2000), first.getEncounter().getEncounterDatetime());
+    Assert.assertEquals(Integer.valueOf(1), first.getLocation().getLocationId());
+    Assert.assertNull(first.getValueCoded());
+    Assert.assertEquals(999.0, first.getValueNumeric(), 0);
+    Assert.assertNull(first.getValueDatetime());
+    Obs second = obs.get(1);
+    Assert.assertNull(second.getEncounter());
+    Assert.assertEquals(Integer.valueOf(1065), second.getValueCoded().getConceptId());
+    Assert.assertNull(second.getValueNumeric());
+    Assert.assertEquals(new Date(4000), second.getValueDatetime());
+
+    Obs empty = table.getObs(5).get(0);
+    Assert.assertNull(empty.getObsDatetime());
+    Assert.assertNull(empty.getLocation());
+
+    Assert.assertTrue(table.getObs(4).isEmpty());
+    Assert.assertFalse(table.contains(4));
+    table.close();
+  }
+
+  @Test
+  public void shouldSpillObsOverBudgetToDisk() {
+    PatientObsTable table = new PatientObsTable(100, directory);
+    for (int patientId = 1; patientId <= 2000; patientId++) {
+      for (int i = 0; i < patientId % 4; i++) {
+        table.add(
+            patientId,
+            patientId * 10 + i,
+            856,
+            new Date(patientId * 1000L + i),
+            null,
+            null,
+            1,
+            null,
+            (double) i,
+            null);
+      }
+    }
+    table.finish();
+
+    Assert.assertTrue(table.isSpilled());
+    Assert.assertEquals(0, directory.listFiles().length);
+    Assert.assertEquals(1500, table.getPatientCount());
+    Assert.assertEquals(3000, table.getObsCount());
+    for (int patientId = 1; patientId <= 2000; patientId++) {
+      List<Obs> obs = table.getObs(patientId);
+      Assert.assertEquals(patientId % 4, obs.size());
+      for (int i = 0; i < obs.size(); i++) {
+        Assert.assertEquals(Integer.valueOf(patientId * 10 + i), obs.get(i).getObsId());
+        Assert.assertEquals(new Date(patientId * 1000L + i), obs.get(i).getObsDatetime());
+        Assert.assertEquals(i, obs.get(i).getValueNumeric(), 0);
+      }
+    }
+    table.close();
+  }
+
+  @Test
+  public void shouldReadAnEmptyTable() {
+    PatientObsTable table = new PatientObsTable(0, directory).finish();
+    Assert.assertFalse(table.isSpilled());
+    Assert.assertTrue(table.getObs(1).isEmpty());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void shouldRejectPatientsOutOfOrder() {
+    PatientObsTable table = new PatientObsTable(1024, directory);
+    table.add(5, 1, 856, null, null, null, null, null, null, null);
+    table.add(3, 2, 856, null, null, null, null, null, null, null);
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void shouldNotReadBeforeFinish() {
+    PatientObsTable table = new PatientObsTable(1024, directory);
+    table.add(5, 1, 856, null, null, null, null, null, null, null);
+    table.getObs(5);
+  }
+}
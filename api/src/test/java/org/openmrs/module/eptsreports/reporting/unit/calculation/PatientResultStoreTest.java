@@ -0,0 +1,76 @@
+package org.openmrs.module.eptsreports.reporting.unit.calculation;
+
+import java.util.Arrays;
+import java.util.Date;
+import org.junit.Assert;
+import org.junit.Test;
+import org.openmrs.calculation.result.CalculationResultMap;
+import org.openmrs.module.eptsreports.reporting.calculation.BooleanResult;
+import org.openmrs.module.eptsreports.reporting.calculation.PatientResultStore;
+
+public class PatientResultStoreTest {
+
+  @Test
+  public void shouldKeepColumnsForManyPatients() {
+    PatientResultStore store = new PatientResultStore();
+    for (int patientId = 1; patientId <= 10000; patientId++) {
+      store.putBoolean(patientId, patientId % 3 == 0);
+      store.putDate(patientId, patientId % 2 == 0 ? new Date(patientId) : null);
+      store.putObject(patientId, patientId % 5 == 0 ? "p" + patientId : null);
+    }
+    Assert.assertEquals(10000, store.size());
+    for (int patientId = 1; patientId <= 10000; patientId++) {
+      Assert.assertTrue(store.contains(patientId));
+      Assert.assertEquals(patientId % 3 == 0, store.getBoolean(patientId));
+      Assert.assertEquals(
+          patientId % 2 == 0 ? new Date(patientId) : null, store.getDate(patientId));
+      Assert.assertEquals(
+          patientId % 5 == 0 ? "p" + patientId : null, store.<String>getObject(patientId));
+    }
+    Assert.assertFalse(store.contains(10001));
+    Assert.assertFalse(store.getBoolean(10001));
+    Assert.assertNull(store.getDate(10001));
+    Assert.assertNull(store.getObject(10001));
+  }
+
+  @Test
+  public void shouldOverwriteValues() {
+    PatientResultStore store = new PatientResultStore();
+    store.putBoolean(7, true);
+    store.putBoolean(7, false);
+    store.putDate(7, new Date(1000));
+    store.putDate(7, null);
+    Assert.assertEquals(1, store.size());
+    Assert.assertFalse(store.getBoolean(7));
+    Assert.assertNull(store.getDate(7));
+  }
+
+  @Test
+  public void asBooleanResultsShouldHaveAResultForEachPatientInStore() {
+    PatientResultStore store = new PatientResultStore();
+    store.putBoolean(1, true);
+    store.putBoolean(2, false);
+    store.add(3);
+    CalculationResultMap map = store.asBooleanResults(null);
+    Assert.assertEquals(3, map.size());
+    Assert.assertEquals(Boolean.TRUE, map.get(1).getValue());
+    Assert.assertEquals(Boolean.FALSE, map.get(2).getValue());
+    Assert.assertEquals(Boolean.FALSE, map.get(3).getValue());
+    Assert.assertTrue(map.get(1) instanceof BooleanResult);
+  }
+
+  @Test
+  public void asDateResultsShouldHaveAResultForEachPatientInCohort() {
+    PatientResultStore store = new PatientResultStore();
+    store.putDate(1, new Date(1000));
+    CalculationResultMap map = store.asDateResults(Arrays.asList(1, 2), null);
+    Assert.assertEquals(2, map.size());
+    Assert.assertEquals(new Date(1000), map.get(1).getValue());
+    Assert.assertNull(map.get(2).getValue());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void shouldRejectZeroPatientId() {
+    new PatientResultStore().putBoolean(0, true);
+  }
+}
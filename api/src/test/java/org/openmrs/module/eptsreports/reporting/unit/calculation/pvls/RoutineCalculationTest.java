@@ -7,6 +7,7 @@ import static org.mockito.Matchers.eq;
 import static org.mockito.Matchers.isNull;
 import static org.mockito.Mockito.when;
 
+import java.io.File;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
@@ -31,11 +32,11 @@ import org.openmrs.calculation.patient.PatientCalculationContext;
 import org.openmrs.calculation.patient.PatientCalculationService;
 import org.openmrs.calculation.patient.PatientCalculationServiceImpl;
 import org.openmrs.calculation.result.CalculationResultMap;
-import org.openmrs.calculation.result.ListResult;
 import org.openmrs.calculation.result.ObsResult;
 import org.openmrs.calculation.result.SimpleResult;
 import org.openmrs.module.eptsreports.metadata.HivMetadata;
 import org.openmrs.module.eptsreports.reporting.calculation.BooleanResult;
+import org.openmrs.module.eptsreports.reporting.calculation.PatientObsTable;
 import org.openmrs.module.eptsreports.reporting.calculation.common.EPTSCalculationService;
 import org.openmrs.module.eptsreports.reporting.calculation.generic.InitialArtStartDateCalculation;
 import org.openmrs.module.eptsreports.reporting.calculation.pvls.OnArtForMoreThanXmonthsCalcultion;
@@ -274,22 +275,20 @@ public class RoutineCalculationTest extends BaseContextMockTest {
 
     Collection<Integer> cohort = Arrays.asList(patient.getId());
 
-    CalculationResultMap vlResultsMap = new CalculationResultMap();
-    ListResult value = new ListResult();
+    PatientObsTable vlTable =
+        new PatientObsTable(1024 * 1024, new File(System.getProperty("java.io.tmpdir")));
     for (Obs obs : vlList) {
-      value.add(new ObsResult(obs, null));
+      vlTable.add(patient.getId(), obs);
     }
-    vlResultsMap.put(patient.getId(), value);
-    when(eptsCalculationService.getObs(
+    when(eptsCalculationService.getObsTable(
             eq(viralLoadConcept),
             anyList(),
             eq(cohort),
             eq(Arrays.asList(location)),
             (List<Concept>) isNull(),
-            eq(TimeQualifier.ANY),
             any(Date.class),
             eq(calculationContext)))
-        .thenReturn(vlResultsMap);
+        .thenReturn(vlTable.finish());
 
     CalculationResultMap regimenChangeMap = new CalculationResultMap();
     regimenChangeMap.put(patient.getId(), new ObsResult(regimeChange, null));
@@ -0,0 +1,47 @@
+package org.openmrs.module.eptsreports.reporting.unit.cohort.cache;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import org.junit.Assert;
+import org.junit.Test;
+import org.openmrs.module.eptsreports.reporting.cohort.cache.CohortBitmap;
+
+public class CohortBitmapTest {
+
+  @Test
+  public void decodeShouldGiveBackSparseIds() {
+    Set<Integer> ids = new HashSet<Integer>(Arrays.asList(7, 128, 5000000, 16384, 0));
+    byte[] bytes = CohortBitmap.encode(ids);
+    Assert.assertEquals('G', bytes[0]);
+    Assert.assertEquals(ids, CohortBitmap.decode(bytes));
+  }
+
+  @Test
+  public void decodeShouldGiveBackDenseIds() {
+    Set<Integer> ids = new HashSet<Integer>();
+    for (int i = 1000; i < 3000; i++) {
+      ids.add(i);
+    }
+    byte[] bytes = CohortBitmap.encode(ids);
+    Assert.assertEquals('B', bytes[0]);
+    Assert.assertTrue(bytes.length < 400);
+    Assert.assertEquals(ids, CohortBitmap.decode(bytes));
+  }
+
+  @Test
+  public void decodeShouldGiveBackEmptyCohort() {
+    Assert.assertTrue(CohortBitmap.decode(CohortBitmap.encode(new HashSet<Integer>())).isEmpty());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void decodeShouldFailOnTruncatedIds() {
+    byte[] bytes = CohortBitmap.encode(new HashSet<Integer>(Arrays.asList(5000000)));
+    CohortBitmap.decode(Arrays.copyOf(bytes, bytes.length - 1));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void decodeShouldFailOnUnknownFormat() {
+    CohortBitmap.decode(new byte[] {'X', 1});
+  }
+}
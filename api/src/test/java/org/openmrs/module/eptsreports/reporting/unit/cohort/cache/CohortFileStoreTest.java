@@ -0,0 +1,61 @@
+package org.openmrs.module.eptsreports.reporting.unit.cohort.cache;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.openmrs.module.eptsreports.reporting.cohort.cache.CohortFileStore;
+
+public class CohortFileStoreTest {
+
+  private File directory;
+
+  @Before
+  public void setUp() throws IOException {
+    directory = Files.createTempDirectory("cohorts").toFile();
+  }
+
+  @After
+  public void tearDown() {
+    for (File file : directory.listFiles()) {
+      file.delete();
+    }
+    directory.delete();
+  }
+
+  @Test
+  public void getShouldGiveBackWhatWasPut() throws IOException {
+    CohortFileStore store = new CohortFileStore(directory, 100);
+    Assert.assertNull(store.get("a"));
+    store.put("a", new byte[] {1, 2, 3});
+    Assert.assertArrayEquals(new byte[] {1, 2, 3}, store.get("a"));
+    store.put("a", new byte[] {4});
+    Assert.assertArrayEquals(new byte[] {4}, store.get("a"));
+  }
+
+  @Test
+  public void putShouldDeleteTheLeastRecentlyUsedFilesOverTheCap() throws IOException {
+    CohortFileStore store = new CohortFileStore(directory, 25);
+    store.put("a", new byte[10]);
+    store.put("b", new byte[10]);
+    new File(directory, "a.cohort").setLastModified(System.currentTimeMillis() - 60000);
+    new File(directory, "b.cohort").setLastModified(System.currentTimeMillis() - 30000);
+    store.get("a");
+
+    store.put("c", new byte[10]);
+
+    Assert.assertNotNull(store.get("a"));
+    Assert.assertNull(store.get("b"));
+    Assert.assertNotNull(store.get("c"));
+  }
+
+  @Test
+  public void putShouldSkipFilesLargerThanTheCap() throws IOException {
+    CohortFileStore store = new CohortFileStore(directory, 5);
+    store.put("a", new byte[10]);
+    Assert.assertNull(store.get("a"));
+  }
+}
@@ -0,0 +1,123 @@
+package org.openmrs.module.eptsreports.reporting.unit.cohort.evaluator;
+
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.openmrs.Cohort;
+import org.openmrs.api.AdministrationService;
+import org.openmrs.api.context.Context;
+import org.openmrs.module.eptsreports.reporting.cohort.evaluator.ChunkedPatientDataEvaluator;
+import org.openmrs.module.eptsreports.reporting.utils.EptsReportConstants;
+import org.openmrs.module.reporting.data.patient.EvaluatedPatientData;
+import org.openmrs.module.reporting.data.patient.definition.PatientDataDefinition;
+import org.openmrs.module.reporting.data.patient.definition.PatientIdDataDefinition;
+import org.openmrs.module.reporting.evaluation.EvaluationContext;
+import org.openmrs.test.BaseContextMockTest;
+import org.powermock.api.mockito.PowerMockito;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+
+@RunWith(PowerMockRunner.class)
+@PrepareForTest({Context.class})
+public class ChunkedPatientDataEvaluatorTest extends BaseContextMockTest {
+
+  @Mock private AdministrationService administrationService;
+
+  private RecordingEvaluator evaluator;
+
+  @Before
+  public void init() {
+    PowerMockito.mockStatic(Context.class);
+    when(Context.getAdministrationService()).thenReturn(administrationService);
+    when(administrationService.getGlobalProperty(
+            EptsReportConstants.GLOBAL_PROPERTY_PATIENT_ID_CHUNK_SIZE))
+        .thenReturn("10");
+    evaluator = new RecordingEvaluator();
+  }
+
+  @Test
+  public void evaluateShouldMergeTheChunksIntoTheDataOfASingleEvaluation() throws Exception {
+    PatientDataDefinition definition = new PatientIdDataDefinition();
+    EvaluationContext context = new EvaluationContext();
+    context.setBaseCohort(new Cohort(ids(25)));
+
+    EvaluatedPatientData data = evaluator.evaluate(definition, context);
+
+    Assert.assertEquals(3, evaluator.baseCohorts.size());
+    Set<Integer> evaluated = new HashSet<Integer>();
+    for (Cohort baseCohort : evaluator.baseCohorts) {
+      Assert.assertTrue(baseCohort.size() <= 10);
+      for (Integer patientId : baseCohort.getMemberIds()) {
+        Assert.assertTrue(evaluated.add(patientId));
+      }
+    }
+    Assert.assertEquals(new HashSet<Integer>(ids(25)), evaluated);
+    Assert.assertSame(definition, data.getDefinition());
+    Assert.assertEquals(evaluator.evaluateChunk(definition, context).getData(), data.getData());
+  }
+
+  @Test
+  public void evaluateShouldNotSplitACohortNoLargerThanTheChunkSize() throws Exception {
+    EvaluationContext context = new EvaluationContext();
+    context.setBaseCohort(new Cohort(ids(10)));
+
+    EvaluatedPatientData data = evaluator.evaluate(new PatientIdDataDefinition(), context);
+
+    Assert.assertEquals(1, evaluator.baseCohorts.size());
+    Assert.assertSame(context.getBaseCohort(), evaluator.baseCohorts.get(0));
+    Assert.assertEquals(10, data.getData().size());
+  }
+
+  @Test
+  public void splitShouldCoverCohortWithChunksNoLargerThanChunkSize() {
+    List<Integer> ids = ids(25);
+    List<Cohort> chunks = ChunkedPatientDataEvaluator.split(new Cohort(ids), 10);
+
+    Assert.assertEquals(3, chunks.size());
+    Set<Integer> all = new HashSet<Integer>();
+    for (Cohort chunk : chunks) {
+      Assert.assertTrue(chunk.size() <= 10);
+      all.addAll(chunk.getMemberIds());
+    }
+    Assert.assertEquals(new HashSet<Integer>(ids), all);
+  }
+
+  @Test
+  public void splitShouldReturnNoChunksForEmptyCohort() {
+    Assert.assertTrue(
+        ChunkedPatientDataEvaluator.split(new Cohort(new ArrayList<Integer>()), 10).isEmpty());
+  }
+
+  private static List<Integer> ids(int count) {
+    List<Integer> ret = new ArrayList<Integer>();
+    for (int i = 1; i <= count; i++) {
+      ret.add(i);
+    }
+    return ret;
+  }
+
+  /** Gives each patient of the base cohort a value of its own, noting the base cohorts it got */
+  private static class RecordingEvaluator extends ChunkedPatientDataEvaluator {
+
+    private final List<Cohort> baseCohorts = new ArrayList<Cohort>();
+
+    @Override
+    public EvaluatedPatientData evaluateChunk(
+        PatientDataDefinition definition, EvaluationContext context) {
+      baseCohorts.add(context.getBaseCohort());
+      EvaluatedPatientData ret = new EvaluatedPatientData(definition, context);
+      for (Integer patientId : context.getBaseCohort().getMemberIds()) {
+        ret.addData(patientId, "patient " + patientId);
+      }
+      return ret;
+    }
+  }
+}
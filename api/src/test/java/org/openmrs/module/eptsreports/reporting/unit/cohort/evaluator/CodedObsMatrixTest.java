@@ -0,0 +1,63 @@
+package org.openmrs.module.eptsreports.reporting.unit.cohort.evaluator;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import org.junit.Assert;
+import org.junit.Test;
+import org.openmrs.module.eptsreports.reporting.cohort.evaluator.CodedObsMatrix;
+
+public class CodedObsMatrixTest {
+
+  private static final Integer SCREENING = 6257;
+
+  private static final Integer RESULT = 6277;
+
+  private static final Integer YES = 1065;
+
+  private static final Integer NO = 1066;
+
+  @Test
+  public void getPatientsShouldReturnThePatientsWithAnyOfTheAnswers() {
+    CodedObsMatrix matrix = new CodedObsMatrix();
+    matrix.add(SCREENING, YES, 1);
+    matrix.add(SCREENING, NO, 2);
+    matrix.add(SCREENING, YES, 2);
+    matrix.add(RESULT, YES, 3);
+
+    Assert.assertEquals(
+        new HashSet<Integer>(Arrays.asList(1, 2)),
+        matrix.getPatients(SCREENING, Collections.singletonList(YES)));
+    Assert.assertEquals(
+        new HashSet<Integer>(Arrays.asList(2)),
+        matrix.getPatients(SCREENING, Collections.singletonList(NO)));
+    Assert.assertEquals(
+        new HashSet<Integer>(Arrays.asList(1, 2)),
+        matrix.getPatients(SCREENING, Arrays.asList(YES, NO)));
+    Assert.assertEquals(
+        new HashSet<Integer>(Arrays.asList(3)),
+        matrix.getPatients(RESULT, Collections.singletonList(YES)));
+  }
+
+  @Test
+  public void getPatientsShouldIncludeObsWithoutCodedValueForAnyAnswer() {
+    CodedObsMatrix matrix = new CodedObsMatrix();
+    matrix.add(SCREENING, YES, 1);
+    matrix.add(SCREENING, null, 2);
+
+    Assert.assertEquals(
+        new HashSet<Integer>(Arrays.asList(1, 2)), matrix.getPatients(SCREENING, null));
+    Assert.assertEquals(
+        new HashSet<Integer>(Arrays.asList(1)),
+        matrix.getPatients(SCREENING, Collections.singletonList(YES)));
+  }
+
+  @Test
+  public void getPatientsShouldReturnNoPatientsForQuestionNotFound() {
+    CodedObsMatrix matrix = new CodedObsMatrix();
+    matrix.add(SCREENING, YES, 1);
+
+    Assert.assertTrue(matrix.getPatients(RESULT, null).isEmpty());
+    Assert.assertTrue(matrix.getPatients(SCREENING, Collections.singletonList(NO)).isEmpty());
+  }
+}
@@ -0,0 +1,53 @@
+package org.openmrs.module.eptsreports.reporting.unit.cohort.evaluator;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import org.junit.Assert;
+import org.junit.Test;
+import org.openmrs.module.eptsreports.reporting.cohort.definition.EriOutcomeCohortDefinition.Outcome;
+import org.openmrs.module.eptsreports.reporting.cohort.evaluator.EriOutcomeCohortDefinitionEvaluator;
+
+public class EriOutcomeCohortDefinitionEvaluatorTest {
+
+  @Test
+  public void classifyShouldGiveTheOutcomesOfTheEriCompositions() {
+    Map<Outcome, Set<Integer>> outcomes =
+        EriOutcomeCohortDefinitionEvaluator.classify(
+            ids(1, 2, 3, 4, 5, 6),
+            ids(1, 3, 4),
+            ids(2, 4),
+            ids(3),
+            ids(4),
+            ids(3, 5));
+
+    Assert.assertEquals(ids(1, 2, 3, 4, 5, 6), outcomes.get(Outcome.INITIATED));
+    // (initiatedArt AND consultation) AND NOT (dead OR transfersOut)
+    Assert.assertEquals(ids(1), outcomes.get(Outcome.RETAINED));
+    // initiatedArt AND NOT (consultation OR dead OR transfersOut)
+    Assert.assertEquals(ids(2, 5, 6), outcomes.get(Outcome.NOT_RETAINED));
+    // initiatedArt AND missedVisit AND NOT (dead OR transfersOut)
+    Assert.assertEquals(ids(2), outcomes.get(Outcome.LOST_TO_FOLLOW_UP));
+    Assert.assertEquals(ids(3), outcomes.get(Outcome.DEAD));
+    Assert.assertEquals(ids(4), outcomes.get(Outcome.TRANSFERRED_OUT));
+    Assert.assertEquals(ids(3, 5), outcomes.get(Outcome.SUSPENDED));
+  }
+
+  @Test
+  public void classifyShouldOnlyIncludeInitiatedPatients() {
+    Map<Outcome, Set<Integer>> outcomes =
+        EriOutcomeCohortDefinitionEvaluator.classify(
+            ids(1), ids(1, 2), null, ids(3), ids(4), ids(5));
+
+    Assert.assertEquals(ids(1), outcomes.get(Outcome.RETAINED));
+    Assert.assertTrue(outcomes.get(Outcome.LOST_TO_FOLLOW_UP).isEmpty());
+    Assert.assertTrue(outcomes.get(Outcome.DEAD).isEmpty());
+    Assert.assertTrue(outcomes.get(Outcome.TRANSFERRED_OUT).isEmpty());
+    Assert.assertTrue(outcomes.get(Outcome.SUSPENDED).isEmpty());
+  }
+
+  private static Set<Integer> ids(Integer... ids) {
+    return new HashSet<Integer>(Arrays.asList(ids));
+  }
+}
@@ -0,0 +1,101 @@
+package org.openmrs.module.eptsreports.reporting.unit.cohort.evaluator;
+
+import java.util.HashSet;
+import java.util.Set;
+import org.junit.Assert;
+import org.junit.Test;
+import org.openmrs.module.eptsreports.reporting.cohort.definition.TxCurrCohortDefinition.Spec;
+import org.openmrs.module.eptsreports.reporting.cohort.evaluator.TxCurrCohortDefinitionEvaluator;
+
+public class TxCurrCohortDefinitionEvaluatorTest {
+
+  private static final int LEFT = 1;
+
+  private static final int NEXT_PICKUP = 2;
+
+  private static final int NEXT_CONSULTATION = 4;
+
+  private static final int MISSED = 8;
+
+  private static final int RETURNED = 16;
+
+  private Set<Integer> started = new HashSet<Integer>();
+
+  private Set<Integer> left = new HashSet<Integer>();
+
+  private Set<Integer> withNextPickupDate = new HashSet<Integer>();
+
+  private Set<Integer> withNextConsultationDate = new HashSet<Integer>();
+
+  private Set<Integer> missedNextPickup = new HashSet<Integer>();
+
+  private Set<Integer> returned = new HashSet<Integer>();
+
+  /** One patient for each combination of the searches, the patient id being the combination */
+  public TxCurrCohortDefinitionEvaluatorTest() {
+    for (int p = 0; p < 32; p++) {
+      started.add(p);
+      add(p, LEFT, left);
+      add(p, NEXT_PICKUP, withNextPickupDate);
+      add(p, NEXT_CONSULTATION, withNextConsultationDate);
+      add(p, MISSED, missedNextPickup);
+      add(p, RETURNED, returned);
+    }
+    // not started
+    withNextPickupDate.add(100);
+  }
+
+  @Test
+  public void getPatientsShouldMatchTheCurrentSpecComposition() {
+    Set<Integer> expected = new HashSet<Integer>();
+    for (int p = 0; p < 32; p++) {
+      // (1 OR 2 OR 3 OR 4) AND (NOT (5 OR ((6 OR (NOT 11)) AND (NOT (7 OR 8))))) AND (11 OR 12)
+      if (!(is(p, LEFT) || ((is(p, MISSED) || !is(p, NEXT_PICKUP)) && !is(p, RETURNED)))
+          && (is(p, NEXT_PICKUP) || is(p, NEXT_CONSULTATION))) {
+        expected.add(p);
+      }
+    }
+    Assert.assertEquals(expected, getPatients(Spec.CURRENT));
+  }
+
+  @Test
+  public void getPatientsShouldMatchTheOldSpecComposition() {
+    Set<Integer> expected = new HashSet<Integer>();
+    for (int p = 0; p < 32; p++) {
+      // (1 OR 2 OR 3 OR 4) AND (NOT (5 OR (6 AND (NOT (7 OR 8)))))
+      if (!(is(p, LEFT) || (is(p, MISSED) && !is(p, RETURNED)))) {
+        expected.add(p);
+      }
+    }
+    Assert.assertEquals(expected, getPatients(Spec.OLD));
+  }
+
+  @Test
+  public void specsShouldBeEqualByValue() {
+    Assert.assertEquals(Spec.CURRENT, new Spec(31, true));
+    Assert.assertEquals(Spec.CURRENT.hashCode(), new Spec(31, true).hashCode());
+    Assert.assertFalse(Spec.CURRENT.equals(new Spec(31, false)));
+    Assert.assertFalse(Spec.OLD.equals(new Spec(31, false)));
+  }
+
+  private Set<Integer> getPatients(Spec spec) {
+    return TxCurrCohortDefinitionEvaluator.getPatients(
+        spec,
+        started,
+        left,
+        withNextPickupDate,
+        withNextConsultationDate,
+        missedNextPickup,
+        returned);
+  }
+
+  private static void add(int p, int search, Set<Integer> patients) {
+    if (is(p, search)) {
+      patients.add(p);
+    }
+  }
+
+  private static boolean is(int p, int search) {
+    return (p & search) != 0;
+  }
+}
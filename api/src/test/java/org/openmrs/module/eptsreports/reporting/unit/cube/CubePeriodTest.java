@@ -0,0 +1,90 @@
+package org.openmrs.module.eptsreports.reporting.unit.cube;
+
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.Assert;
+import org.junit.Test;
+import org.openmrs.module.eptsreports.reporting.cube.CubePeriod;
+import org.openmrs.module.eptsreports.reporting.cube.IndicatorCube;
+
+public class CubePeriodTest {
+
+  @Test
+  public void monthsShouldSplitWholeMonths() {
+    Assert.assertEquals(
+        Arrays.asList(
+            CubePeriod.month(2018, 12), CubePeriod.month(2019, 1), CubePeriod.month(2019, 2)),
+        CubePeriod.months(date(2018, 12, 1, 0), date(2019, 2, 28, 23)));
+    Assert.assertEquals(
+        Collections.singletonList(CubePeriod.month(2020, 2)),
+        CubePeriod.months(date(2020, 2, 1, 0), date(2020, 2, 29, 0)));
+  }
+
+  @Test
+  public void monthsShouldBeNullForPartialMonths() {
+    Assert.assertNull(CubePeriod.months(date(2019, 1, 2, 0), date(2019, 3, 31, 0)));
+    Assert.assertNull(CubePeriod.months(date(2019, 1, 1, 0), date(2019, 3, 30, 0)));
+  }
+
+  @Test
+  public void monthEndingOnShouldNeedTheLastDayOfAMonth() {
+    Assert.assertEquals(CubePeriod.month(2019, 6), CubePeriod.monthEndingOn(date(2019, 6, 30, 12)));
+    Assert.assertNull(CubePeriod.monthEndingOn(date(2019, 6, 29, 0)));
+  }
+
+  @Test
+  public void completeMonthsShouldEndBeforeTheCurrentMonth() {
+    Assert.assertEquals(
+        Arrays.asList(
+            CubePeriod.month(2018, 11), CubePeriod.month(2018, 12), CubePeriod.month(2019, 1)),
+        CubePeriod.completeMonths(date(2019, 2, 15, 10), 3));
+  }
+
+  @Test
+  public void quartersAndSemestersShouldBeAligned() {
+    List<CubePeriod> months = CubePeriod.completeMonths(date(2019, 11, 1, 0), 8);
+    Assert.assertEquals(CubePeriod.month(2019, 3), months.get(0));
+    Assert.assertEquals(
+        Arrays.asList(
+            CubePeriod.of(date(2019, 4, 1, 0), date(2019, 6, 30, 0)),
+            CubePeriod.of(date(2019, 4, 1, 0), date(2019, 9, 30, 0)),
+            CubePeriod.of(date(2019, 7, 1, 0), date(2019, 9, 30, 0))),
+        CubePeriod.quartersAndSemesters(months));
+  }
+
+  @Test
+  public void overlapsShouldCompareDays() {
+    CubePeriod quarter = CubePeriod.of(date(2019, 4, 1, 0), date(2019, 6, 30, 0));
+    Assert.assertTrue(quarter.overlaps(Arrays.asList(CubePeriod.month(2019, 6))));
+    Assert.assertTrue(quarter.overlaps(Arrays.asList(CubePeriod.month(2019, 4))));
+    Assert.assertFalse(
+        quarter.overlaps(Arrays.asList(CubePeriod.month(2019, 3), CubePeriod.month(2019, 7))));
+  }
+
+  @Test
+  public void sumShouldAddTheCellsOfEachColumn() {
+    Map<String, Integer> january = new HashMap<String, Integer>();
+    january.put("1all", 3);
+    january.put("2all", 1);
+    Map<String, Integer> february = new HashMap<String, Integer>();
+    february.put("1all", 4);
+    february.put("3all", 2);
+    Map<String, Integer> sum = IndicatorCube.sum(Arrays.asList(january, february));
+    Assert.assertEquals(3, sum.size());
+    Assert.assertEquals(Integer.valueOf(7), sum.get("1all"));
+    Assert.assertEquals(Integer.valueOf(1), sum.get("2all"));
+    Assert.assertEquals(Integer.valueOf(2), sum.get("3all"));
+  }
+
+  private static Date date(int year, int month, int day, int hour) {
+    Calendar calendar = Calendar.getInstance();
+    calendar.clear();
+    calendar.set(year, month - 1, day, hour, 0);
+    return calendar.getTime();
+  }
+}
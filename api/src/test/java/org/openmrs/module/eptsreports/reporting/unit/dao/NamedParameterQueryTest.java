@@ -0,0 +1,59 @@
+package org.openmrs.module.eptsreports.reporting.unit.dao;
+
+import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.Assert;
+import org.junit.Test;
+import org.openmrs.module.eptsreports.api.dao.NamedParameterQuery;
+
+public class NamedParameterQueryTest {
+
+  private final Map<String, Object> parameters = new HashMap<String, Object>();
+
+  @Test
+  public void shouldReplaceNamedParametersWithPlaceholders() {
+    Date endDate = new Date(1000L);
+    parameters.put("endDate", endDate);
+    parameters.put("location", 5);
+    NamedParameterQuery query =
+        new NamedParameterQuery(
+            "select patient_id from encounter where encounter_datetime <= :endDate"
+                + " and location_id = :location and encounter_datetime >= :endDate",
+            parameters);
+    Assert.assertEquals(
+        "select patient_id from encounter where encounter_datetime <= ?"
+            + " and location_id = ? and encounter_datetime >= ?",
+        query.getSql());
+    Assert.assertEquals(
+        Arrays.<Object>asList(new Timestamp(1000L), 5, new Timestamp(1000L)), query.getValues());
+  }
+
+  @Test
+  public void shouldExpandCollections() {
+    parameters.put("types", Arrays.asList(6, 9));
+    parameters.put("none", Collections.emptyList());
+    NamedParameterQuery query =
+        new NamedParameterQuery("encounter_type in (:types) and form_id in (:none)", parameters);
+    Assert.assertEquals("encounter_type in (?,?) and form_id in (?)", query.getSql());
+    Assert.assertEquals(Arrays.<Object>asList(6, 9, null), query.getValues());
+  }
+
+  @Test
+  public void shouldLeaveQuotedTextAlone() {
+    parameters.put("endDate", null);
+    NamedParameterQuery query =
+        new NamedParameterQuery(
+            "date_format(:endDate, '%H:%i') = `a:b` and x::int = 1", parameters);
+    Assert.assertEquals("date_format(?, '%H:%i') = `a:b` and x::int = 1", query.getSql());
+    Assert.assertEquals(1, query.getValues().size());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void shouldFailForMissingParameter() {
+    new NamedParameterQuery("location_id = :location", parameters);
+  }
+}
@@ -0,0 +1,93 @@
+package org.openmrs.module.eptsreports.reporting.unit.dao;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Assert;
+import org.junit.Test;
+import org.openmrs.module.eptsreports.api.dao.ReportingConnectionPool;
+
+public class ReportingConnectionPoolTest {
+
+  private final AtomicInteger opened = new AtomicInteger();
+
+  private final AtomicInteger closed = new AtomicInteger();
+
+  private boolean valid = true;
+
+  private final ReportingConnectionPool pool =
+      new ReportingConnectionPool(
+          new ReportingConnectionPool.ConnectionFactory() {
+
+            @Override
+            public Connection open() {
+              opened.incrementAndGet();
+              return fakeConnection();
+            }
+          },
+          2);
+
+  @Test
+  public void acquireShouldReuseReleasedConnections() throws Exception {
+    Connection first = pool.acquire(100L);
+    pool.release(first);
+    Assert.assertSame(first, pool.acquire(100L));
+    Assert.assertEquals(1, opened.get());
+  }
+
+  @Test(expected = SQLException.class)
+  public void acquireShouldTimeOutWhenAllConnectionsAreInUse() throws Exception {
+    pool.acquire(100L);
+    pool.acquire(100L);
+    pool.acquire(100L);
+  }
+
+  @Test
+  public void acquireShouldReplaceBrokenIdleConnections() throws Exception {
+    pool.release(pool.acquire(100L));
+    valid = false;
+    pool.acquire(100L);
+    Assert.assertEquals(2, opened.get());
+    Assert.assertEquals(1, closed.get());
+  }
+
+  @Test
+  public void discardShouldFreeTheSlot() throws Exception {
+    pool.acquire(100L);
+    pool.discard(pool.acquire(100L));
+    pool.acquire(100L);
+    Assert.assertEquals(1, closed.get());
+  }
+
+  @Test
+  public void closeShouldCloseIdleAndReleasedConnections() throws Exception {
+    Connection inUse = pool.acquire(100L);
+    pool.release(pool.acquire(100L));
+    pool.close();
+    pool.release(inUse);
+    Assert.assertEquals(2, closed.get());
+  }
+
+  private Connection fakeConnection() {
+    return (Connection)
+        Proxy.newProxyInstance(
+            getClass().getClassLoader(),
+            new Class<?>[] {Connection.class},
+            new InvocationHandler() {
+
+              @Override
+              public Object invoke(Object proxy, Method method, Object[] args) {
+                if (method.getName().equals("isValid")) {
+                  return valid;
+                }
+                if (method.getName().equals("close")) {
+                  closed.incrementAndGet();
+                }
+                return null;
+              }
+            });
+  }
+}
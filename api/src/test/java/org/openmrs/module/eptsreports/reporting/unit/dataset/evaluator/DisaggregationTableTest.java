@@ -0,0 +1,75 @@
+package org.openmrs.module.eptsreports.reporting.unit.dataset.evaluator;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.junit.Assert;
+import org.junit.Test;
+import org.openmrs.module.eptsreports.reporting.dataset.evaluator.DisaggregationTable;
+
+public class DisaggregationTableTest {
+
+  @Test
+  public void splitShouldFindThePatientsOfEachCell() {
+    Map<String, Map<String, Set<Integer>>> dimensions =
+        new LinkedHashMap<String, Map<String, Set<Integer>>>();
+    Map<String, Set<Integer>> gender = new LinkedHashMap<String, Set<Integer>>();
+    gender.put("M", ids(1, 2, 3));
+    gender.put("F", ids(4, 5, 6));
+    dimensions.put("gender", gender);
+    Map<String, Set<Integer>> age = new LinkedHashMap<String, Set<Integer>>();
+    age.put("<15", ids(1, 4, 5));
+    age.put("10-14", ids(4, 5));
+    dimensions.put("age", age);
+    DisaggregationTable table = new DisaggregationTable(dimensions);
+
+    List<Set<Integer>> cohorts =
+        table.split(
+            ids(1, 2, 4, 7),
+            Arrays.asList(cell("gender=M", "age=<15"), cell("age=10-14"), cell("gender=F"), cell()));
+
+    Assert.assertEquals(ids(1), cohorts.get(0));
+    Assert.assertEquals(ids(4), cohorts.get(1));
+    Assert.assertEquals(ids(4), cohorts.get(2));
+    Assert.assertEquals(ids(1, 2, 4, 7), cohorts.get(3));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void splitShouldRejectUnknownOption() {
+    Map<String, Map<String, Set<Integer>>> dimensions =
+        new HashMap<String, Map<String, Set<Integer>>>();
+    Map<String, Set<Integer>> gender = new HashMap<String, Set<Integer>>();
+    gender.put("M", ids(1));
+    dimensions.put("gender", gender);
+    new DisaggregationTable(dimensions).split(ids(1), Arrays.asList(cell("gender=X")));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void shouldRejectMoreOptionsThanBitsInACode() {
+    Map<String, Set<Integer>> options = new HashMap<String, Set<Integer>>();
+    for (int i = 0; i <= DisaggregationTable.MAX_OPTIONS; i++) {
+      options.put("option" + i, ids(i));
+    }
+    Map<String, Map<String, Set<Integer>>> dimensions =
+        new HashMap<String, Map<String, Set<Integer>>>();
+    dimensions.put("dimension", options);
+    new DisaggregationTable(dimensions);
+  }
+
+  private static Map<String, String> cell(String... options) {
+    Map<String, String> ret = new HashMap<String, String>();
+    for (String option : options) {
+      String[] keyAndValue = option.split("=");
+      ret.put(keyAndValue[0], keyAndValue[1]);
+    }
+    return ret;
+  }
+
+  private static Set<Integer> ids(Integer... ids) {
+    return new HashSet<Integer>(Arrays.asList(ids));
+  }
+}
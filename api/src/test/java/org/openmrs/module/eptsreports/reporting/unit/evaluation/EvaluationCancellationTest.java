@@ -0,0 +1,89 @@
+package org.openmrs.module.eptsreports.reporting.unit.evaluation;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.openmrs.module.eptsreports.reporting.evaluation.EvaluationCancellation;
+import org.openmrs.module.eptsreports.reporting.evaluation.EvaluationCancellation.Canceller;
+import org.openmrs.module.eptsreports.reporting.evaluation.EvaluationCancellation.Timeout;
+import org.openmrs.module.eptsreports.reporting.evaluation.EvaluationCancelledException;
+
+public class EvaluationCancellationTest {
+
+  private final List<String> cancelled = new ArrayList<String>();
+
+  @After
+  public void tearDown() {
+    EvaluationCancellation.restore(null);
+  }
+
+  @Test
+  public void checkShouldPassWithoutToken() {
+    EvaluationCancellation.check();
+    Assert.assertFalse(EvaluationCancellation.isCurrentCancelled());
+    Assert.assertFalse(EvaluationCancellation.register(canceller("statement")));
+  }
+
+  @Test(expected = EvaluationCancelledException.class)
+  public void checkShouldFailOnceTheBoundTokenIsCancelled() {
+    EvaluationCancellation cancellation = new EvaluationCancellation();
+    EvaluationCancellation.bind(cancellation);
+    EvaluationCancellation.check();
+    cancellation.cancel("test");
+    Assert.assertTrue(EvaluationCancellation.isCurrentCancelled());
+    EvaluationCancellation.check();
+  }
+
+  @Test
+  public void cancelShouldCancelTheRegisteredStatements() {
+    EvaluationCancellation cancellation = new EvaluationCancellation();
+    EvaluationCancellation.bind(cancellation);
+    Canceller first = canceller("first");
+    Canceller second = canceller("second");
+    Assert.assertTrue(EvaluationCancellation.register(first));
+    Assert.assertTrue(EvaluationCancellation.register(second));
+    EvaluationCancellation.unregister(first);
+
+    cancellation.cancel("test");
+    cancellation.cancel("again");
+    Assert.assertEquals("test", cancellation.getReason());
+    Assert.assertEquals(1, cancelled.size());
+    Assert.assertEquals("second", cancelled.get(0));
+  }
+
+  @Test
+  public void restoreShouldBindThePreviousToken() {
+    EvaluationCancellation outer = new EvaluationCancellation();
+    EvaluationCancellation.bind(outer);
+    EvaluationCancellation previous = EvaluationCancellation.bind(new EvaluationCancellation());
+    Assert.assertSame(outer, previous);
+    EvaluationCancellation.restore(previous);
+    Assert.assertSame(outer, EvaluationCancellation.current());
+  }
+
+  @Test
+  public void timeoutShouldCancelStatementsThatRunTooLong() throws Exception {
+    Timeout expiring = EvaluationCancellation.startTimeout(canceller("slow"), 0);
+    Timeout stopped = EvaluationCancellation.startTimeout(canceller("fast"), 60);
+    stopped.stop();
+    Thread.sleep(200);
+    Assert.assertTrue(expiring.isExpired());
+    Assert.assertFalse(stopped.isExpired());
+    Assert.assertEquals(1, cancelled.size());
+    Assert.assertEquals("slow", cancelled.get(0));
+  }
+
+  private Canceller canceller(final String name) {
+    return new Canceller() {
+
+      @Override
+      public void cancel() {
+        synchronized (cancelled) {
+          cancelled.add(name);
+        }
+      }
+    };
+  }
+}
@@ -0,0 +1,148 @@
+package org.openmrs.module.eptsreports.reporting.unit.evaluation;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.openmrs.Location;
+import org.openmrs.module.eptsreports.reporting.evaluation.EvaluationProgress;
+import org.openmrs.module.eptsreports.reporting.evaluation.EvaluationTiming;
+import org.openmrs.module.reporting.dataset.definition.CohortIndicatorDataSetDefinition;
+import org.openmrs.module.reporting.evaluation.parameter.Mapped;
+import org.openmrs.module.reporting.report.definition.ReportDefinition;
+
+public class EvaluationProgressTest {
+
+  private final ReportDefinition reportDefinition = new ReportDefinition();
+
+  private final CohortIndicatorDataSetDefinition first = new CohortIndicatorDataSetDefinition();
+
+  private final CohortIndicatorDataSetDefinition second = new CohortIndicatorDataSetDefinition();
+
+  private final TestProgress progress = new TestProgress();
+
+  @Before
+  public void setUp() {
+    first.setName("first definition");
+    second.setName("second definition");
+    reportDefinition.addDataSetDefinition("A", Mapped.mapStraightThrough(first));
+    reportDefinition.addDataSetDefinition("B", Mapped.mapStraightThrough(second));
+  }
+
+  @After
+  public void tearDown() {
+    EvaluationProgress.restore(null);
+  }
+
+  @Test
+  public void constructorShouldKeepTheLocationOfTheRun() {
+    Location location = new Location(7);
+    Map<String, Object> parameterValues = new LinkedHashMap<String, Object>();
+    parameterValues.put("location", location);
+    Assert.assertEquals(
+        7, new EvaluationProgress("uuid", "report", parameterValues).getLocationId());
+    Assert.assertEquals(0, progress.getLocationId());
+  }
+
+  @Test
+  public void getEstimatedRemainingMillisShouldUseTheTimingsOfEarlierRuns() {
+    Map<String, EvaluationTiming> history = new LinkedHashMap<String, EvaluationTiming>();
+    history.put("A", new EvaluationTiming(1000, 10));
+    history.put("B", new EvaluationTiming(3000, 30));
+    progress.started(reportDefinition, history);
+    Assert.assertEquals(4000, progress.getEstimatedRemainingMillis());
+    Assert.assertEquals(40, progress.getDefinitionsPlanned());
+
+    progress.dataSetStarted(reportDefinition.getDataSetDefinitions().get("A"));
+    progress.now = 400;
+    Assert.assertEquals("A", progress.getDataSet());
+    Assert.assertEquals(3600, progress.getEstimatedRemainingMillis());
+    Assert.assertEquals(10, progress.getPercentDone());
+
+    progress.now = 1500;
+    Assert.assertEquals(3000, progress.getEstimatedRemainingMillis());
+    progress.dataSetEnded(true);
+    progress.dataSetStarted(second);
+    progress.now = 2500;
+    Assert.assertEquals("B", progress.getDataSet());
+    Assert.assertEquals(2000, progress.getEstimatedRemainingMillis());
+    Assert.assertEquals(1, progress.getDataSetsCompleted());
+  }
+
+  @Test
+  public void getEstimatedRemainingMillisShouldBeUnknownWithoutEarlierRuns() {
+    Map<String, EvaluationTiming> history = Collections.emptyMap();
+    progress.started(reportDefinition, history);
+    progress.dataSetStarted(first);
+    progress.dataSetEnded(true);
+    Assert.assertEquals(-1, progress.getEstimatedRemainingMillis());
+    Assert.assertEquals(50, progress.getPercentDone());
+  }
+
+  @Test
+  public void dataSetEndedShouldCountNestedDataSetsAsPartOfTheReportDataSet() {
+    Map<String, EvaluationTiming> history = Collections.emptyMap();
+    progress.started(reportDefinition, history);
+    EvaluationProgress.bind(progress);
+    progress.dataSetStarted(first);
+    progress.dataSetStarted(new CohortIndicatorDataSetDefinition());
+    EvaluationProgress.definitionEvaluated();
+    EvaluationProgress.definitionEvaluated();
+    progress.dataSetEnded(true);
+    Assert.assertEquals("A", progress.getDataSet());
+    progress.now = 250;
+    progress.dataSetEnded(true);
+    progress.dataSetStarted(second);
+    progress.dataSetEnded(false);
+
+    Map<String, EvaluationTiming> timings = progress.getTimings();
+    Assert.assertEquals(Collections.singleton("A"), timings.keySet());
+    Assert.assertEquals(250, timings.get("A").getDurationMillis());
+    Assert.assertEquals(2, timings.get("A").getDefinitions());
+    Assert.assertNull(progress.getDataSet());
+  }
+
+  @Test
+  public void hooksShouldReportToTheProgressBoundToTheThread() {
+    EvaluationProgress.definitionEvaluated();
+    EvaluationProgress.patientProcessed();
+    Assert.assertNull(EvaluationProgress.current());
+
+    EvaluationProgress.bind(progress);
+    EvaluationProgress.columnsStarted(12);
+    EvaluationProgress.columnsCompleted(4);
+    EvaluationProgress.calculationStarted("on ART", 3);
+    EvaluationProgress.patientProcessed();
+    EvaluationProgress.patientProcessed();
+    Assert.assertEquals(12, progress.getColumns());
+    Assert.assertEquals(4, progress.getColumnsCompleted());
+    Assert.assertEquals("on ART", progress.getCalculation());
+    Assert.assertEquals(3, progress.getCalculationPatients());
+    Assert.assertEquals(2, progress.getPatientsProcessed());
+  }
+
+  @Test
+  public void averageShouldWeightTheLaterTimingByAQuarter() {
+    EvaluationTiming average =
+        new EvaluationTiming(1000, 10).average(new EvaluationTiming(2000, 14));
+    Assert.assertEquals(1250, average.getDurationMillis());
+    Assert.assertEquals(11, average.getDefinitions());
+  }
+
+  private static class TestProgress extends EvaluationProgress {
+
+    private long now;
+
+    TestProgress() {
+      super("uuid", "report", Collections.<String, Object>emptyMap());
+    }
+
+    @Override
+    protected long now() {
+      return now;
+    }
+  }
+}
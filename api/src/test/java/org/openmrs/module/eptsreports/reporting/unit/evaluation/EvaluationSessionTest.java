@@ -0,0 +1,202 @@
+package org.openmrs.module.eptsreports.reporting.unit.evaluation;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.openmrs.module.eptsreports.reporting.evaluation.EvaluationProgress;
+import org.openmrs.module.eptsreports.reporting.evaluation.EvaluationSession;
+
+public class EvaluationSessionTest {
+
+  private final TestSessionControl control = new TestSessionControl();
+
+  private final EvaluationSession session = new EvaluationSession(control);
+
+  private final EvaluationProgress progress =
+      new EvaluationProgress("uuid", "report", Collections.<String, Object>emptyMap());
+
+  @Before
+  public void setUp() {
+    EvaluationSession.bind(session);
+    EvaluationProgress.bind(progress);
+  }
+
+  @After
+  public void tearDown() {
+    EvaluationSession.restore(null);
+    EvaluationProgress.restore(null);
+  }
+
+  @Test
+  public void shouldKeepTheSessionReadOnlyDuringTheRun() {
+    session.started();
+    Assert.assertTrue(control.readOnly);
+    session.ended();
+    Assert.assertFalse(control.readOnly);
+    Assert.assertEquals(1, control.restored);
+
+    session.ended();
+    Assert.assertEquals(1, control.restored);
+  }
+
+  @Test
+  public void shouldEvictOnlyOnceTheOutermostDefinitionIsEvaluated() {
+    session.started();
+    EvaluationSession.definitionStarted();
+    EvaluationSession.definitionStarted();
+    control.entities = 500;
+    EvaluationSession.definitionEnded();
+    Assert.assertEquals(0, control.evictions);
+
+    control.entities = 1200;
+    control.load("obs", 1000);
+    EvaluationSession.definitionEnded();
+    Assert.assertEquals(1, control.evictions);
+    Assert.assertEquals(EvaluationSession.EVICTED_ENTITIES, control.entityNames);
+    Assert.assertEquals(1000, control.evicted.size());
+    Assert.assertTrue(control.keys.isEmpty());
+    Assert.assertEquals(1200, progress.getSessionEntities());
+    Assert.assertEquals(1000, progress.getEntitiesEvicted());
+
+    control.entities = 300;
+    control.load("encounter", 1000);
+    EvaluationSession.definitionStarted();
+    EvaluationSession.definitionEnded();
+    Assert.assertEquals(2, control.evictions);
+    Assert.assertEquals(300, progress.getSessionEntities());
+    Assert.assertEquals(1200, progress.getPeakSessionEntities());
+    Assert.assertEquals(2000, progress.getEntitiesEvicted());
+  }
+
+  @Test
+  public void shouldKeepThePatientDataLoadedBeforeTheRun() {
+    control.load("before", 2);
+    session.started();
+    control.load("during", 3);
+    EvaluationSession.definitionStarted();
+    EvaluationSession.definitionEnded();
+    Assert.assertEquals(
+        new HashSet<Object>(Arrays.asList("during-1", "during-2", "during-3")), control.evicted);
+    Assert.assertEquals(new HashSet<Object>(Arrays.asList("before-1", "before-2")), control.keys);
+    Assert.assertEquals(3, progress.getEntitiesEvicted());
+
+    session.ended();
+    session.started();
+    control.load("after", 1);
+    session.ended();
+    Assert.assertEquals(Collections.<Object>singleton("after-1"), control.evicted);
+    Assert.assertEquals(new HashSet<Object>(Arrays.asList("before-1", "before-2")), control.keys);
+  }
+
+  @Test
+  public void shouldMakeTheEntitiesLoadedDuringTheRunWritable() {
+    control.loadOther("before", 2);
+    session.started();
+    control.loadOther("during", 2);
+    control.load("obs", 2);
+    session.ended();
+    Assert.assertEquals(new HashSet<Object>(Arrays.asList("obs-1", "obs-2")), control.evicted);
+    Assert.assertNull(control.entityNames);
+    Assert.assertEquals(
+        new HashSet<Object>(Arrays.asList("during-1", "during-2")), control.writable);
+  }
+
+  @Test
+  public void shouldEvictWhenTheRunEnds() {
+    session.started();
+    EvaluationSession.definitionStarted();
+    control.load("obs", 1);
+    session.ended();
+    Assert.assertEquals(1, control.evictions);
+    Assert.assertTrue(control.keys.isEmpty());
+
+    EvaluationSession.definitionEnded();
+    Assert.assertEquals(1, control.evictions);
+  }
+
+  @Test
+  public void shouldDoNothingWithoutASessionBound() {
+    EvaluationSession.restore(null);
+    EvaluationSession.definitionStarted();
+    EvaluationSession.definitionEnded();
+    Assert.assertEquals(0, control.evictions);
+  }
+
+  private static class TestSessionControl implements EvaluationSession.SessionControl {
+
+    private boolean readOnly;
+
+    private int restored;
+
+    private int entities;
+
+    private int evictions;
+
+    /** The keys of the patient data in the session */
+    private Set<Object> keys = new HashSet<Object>();
+
+    /** The keys of the other entities in the session */
+    private Set<Object> otherKeys = new HashSet<Object>();
+
+    private Collection<String> entityNames;
+
+    private Set<Object> evicted;
+
+    private Set<Object> writable;
+
+    private void load(String name, int count) {
+      for (int i = 1; i <= count; i++) {
+        keys.add(name + "-" + i);
+      }
+    }
+
+    private void loadOther(String name, int count) {
+      for (int i = 1; i <= count; i++) {
+        otherKeys.add(name + "-" + i);
+      }
+    }
+
+    @Override
+    public void setReadOnly(boolean readOnly) {
+      if (this.readOnly && !readOnly) {
+        restored++;
+      }
+      this.readOnly = readOnly;
+    }
+
+    @Override
+    public int getEntityCount() {
+      return entities;
+    }
+
+    @Override
+    public Set<Object> getEntityKeys(Collection<String> entityNames) {
+      this.entityNames = entityNames;
+      Set<Object> ret = new HashSet<Object>(keys);
+      if (entityNames == null) {
+        ret.addAll(otherKeys);
+      }
+      return ret;
+    }
+
+    @Override
+    public int evict(Collection<Object> keys) {
+      evictions++;
+      evicted = new HashSet<Object>(keys);
+      evicted.retainAll(this.keys);
+      this.keys.removeAll(evicted);
+      return evicted.size();
+    }
+
+    @Override
+    public void setWritable(Collection<Object> keys) {
+      writable = new HashSet<Object>(keys);
+    }
+  }
+}
@@ -0,0 +1,207 @@
+package org.openmrs.module.eptsreports.reporting.unit.evaluation;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.openmrs.api.APIException;
+import org.openmrs.module.eptsreports.reporting.evaluation.EvaluationCancellation;
+import org.openmrs.module.eptsreports.reporting.evaluation.EvaluationCancelledException;
+import org.openmrs.module.eptsreports.reporting.evaluation.ReportAdmissionController;
+import org.openmrs.module.eptsreports.reporting.evaluation.ReportAdmissionController.Priority;
+import org.openmrs.module.eptsreports.reporting.evaluation.ReportAdmissionController.Ticket;
+import org.openmrs.module.eptsreports.reporting.evaluation.ReportAdmissionController.Weight;
+
+public class ReportAdmissionControllerTest {
+
+  private final TestController controller = new TestController();
+
+  private final ExecutorService executor = Executors.newCachedThreadPool();
+
+  private final List<String> started = Collections.synchronizedList(new ArrayList<String>());
+
+  @After
+  public void tearDown() {
+    executor.shutdownNow();
+  }
+
+  @Test
+  public void admitShouldStartInteractiveRunsBeforeBatchRuns() throws Exception {
+    Ticket first = controller.admit("first", Weight.HEAVY, Priority.BATCH);
+    Future<Ticket> batch = admitLater("batch", Weight.HEAVY, Priority.BATCH);
+    Future<Ticket> interactive = admitLater("interactive", Weight.HEAVY, Priority.INTERACTIVE);
+    Assert.assertTrue(started.isEmpty());
+
+    controller.release(first);
+    Ticket second = interactive.get(5, TimeUnit.SECONDS);
+    Assert.assertEquals(Collections.singletonList("interactive"), started);
+
+    controller.release(second);
+    controller.release(batch.get(5, TimeUnit.SECONDS));
+    Assert.assertEquals(0, controller.getRunning(Weight.HEAVY));
+  }
+
+  @Test
+  public void admitShouldNotLimitOtherWeights() throws Exception {
+    controller.admit("heavy", Weight.HEAVY, Priority.BATCH);
+    controller.admit("light", Weight.LIGHT, Priority.BATCH);
+    controller.admit("light", Weight.LIGHT, Priority.BATCH);
+    Assert.assertEquals(2, controller.getRunning(Weight.LIGHT));
+  }
+
+  @Test(expected = APIException.class)
+  public void admitShouldRejectRunsOverTheQueueSize() throws Exception {
+    controller.admit("first", Weight.HEAVY, Priority.BATCH);
+    admitLater("second", Weight.HEAVY, Priority.BATCH);
+    admitLater("third", Weight.HEAVY, Priority.BATCH);
+    controller.admit("fourth", Weight.HEAVY, Priority.BATCH);
+  }
+
+  @Test(expected = APIException.class)
+  public void admitShouldRejectRunsThatWaitedTooLong() throws Exception {
+    controller.maxWaitMillis = 100;
+    controller.admit("first", Weight.HEAVY, Priority.BATCH);
+    controller.admit("second", Weight.HEAVY, Priority.BATCH);
+  }
+
+  @Test
+  public void admitShouldWaitForHeapWhileOtherRunsAreRunning() throws Exception {
+    controller.freeHeapBytes = 0;
+    Ticket first = controller.admit("first", Weight.LIGHT, Priority.BATCH);
+    Future<Ticket> second = admitLater("second", Weight.LIGHT, Priority.BATCH);
+    Assert.assertTrue(started.isEmpty());
+
+    controller.release(first);
+    second.get(5, TimeUnit.SECONDS);
+    Assert.assertEquals(Collections.singletonList("second"), started);
+  }
+
+  @Test
+  public void admitShouldReadTheLimitsOnceAndNotWhileWaiting() throws Exception {
+    Ticket first = controller.admit("first", Weight.HEAVY, Priority.BATCH);
+    Future<Ticket> second = admitLater("second", Weight.HEAVY, Priority.BATCH);
+    // wakes the waiting run up, which checks again whether it can start
+    controller.release(controller.admit("light", Weight.LIGHT, Priority.BATCH));
+    Thread.sleep(50);
+    Assert.assertEquals(3, controller.limitReads);
+
+    controller.release(first);
+    controller.release(second.get(5, TimeUnit.SECONDS));
+    Assert.assertEquals(3, controller.limitReads);
+  }
+
+  @Test
+  public void cancelShouldRemoveWaitingRunsFromTheQueue() throws Exception {
+    Ticket first = controller.admit("first", Weight.HEAVY, Priority.BATCH);
+    Future<Ticket> second = admitLater("second", Weight.HEAVY, Priority.BATCH);
+    Ticket waiting = controller.getTickets().get(1);
+    Assert.assertEquals("second", waiting.getName());
+    Assert.assertEquals(0, waiting.getStartedAt());
+
+    Assert.assertTrue(controller.cancel(waiting.getId(), "test"));
+    try {
+      second.get(5, TimeUnit.SECONDS);
+      Assert.fail();
+    } catch (ExecutionException e) {
+      Assert.assertTrue(e.getCause() instanceof EvaluationCancelledException);
+    }
+    Assert.assertEquals(Collections.singletonList(first), controller.getTickets());
+  }
+
+  @Test
+  public void cancelShouldCancelTheTokenOfRunningRuns() throws Exception {
+    EvaluationCancellation cancellation = new EvaluationCancellation();
+    Ticket ticket = controller.admit("first", Weight.HEAVY, Priority.BATCH, cancellation);
+    Assert.assertTrue(controller.cancel(ticket.getId(), "test"));
+    Assert.assertTrue(cancellation.isCancelled());
+    Assert.assertFalse(controller.cancel(ticket.getId() + 1, "test"));
+  }
+
+  @Test
+  public void getEstimatedWaitMillisShouldCountTheRunsAhead() throws Exception {
+    controller.now = 0L;
+    Ticket ticket = controller.admit("first", Weight.HEAVY, Priority.BATCH);
+    controller.now = 1000L;
+    controller.release(ticket);
+
+    controller.admit("second", Weight.HEAVY, Priority.BATCH);
+    admitLater("third", Weight.HEAVY, Priority.BATCH);
+    admitLater("fourth", Weight.HEAVY, Priority.INTERACTIVE);
+    Ticket fourth = controller.getTickets().get(1);
+    Assert.assertEquals("fourth", fourth.getName());
+    Assert.assertEquals(1000, controller.getEstimatedWaitMillis(fourth));
+  }
+
+  /** Admits a run in another thread, returning once it is queued or running */
+  private Future<Ticket> admitLater(
+      final String name, final Weight weight, final Priority priority)
+      throws InterruptedException {
+    int tickets = controller.getTickets().size();
+    Future<Ticket> ret =
+        executor.submit(
+            new Callable<Ticket>() {
+
+              @Override
+              public Ticket call() throws Exception {
+                Ticket ticket = controller.admit(name, weight, priority);
+                started.add(name);
+                return ticket;
+              }
+            });
+    for (int i = 0; i < 100 && controller.getTickets().size() == tickets; i++) {
+      Thread.sleep(10);
+    }
+    return ret;
+  }
+
+  private static class TestController extends ReportAdmissionController {
+
+    private long freeHeapBytes = Long.MAX_VALUE;
+
+    private long maxWaitMillis = 5000;
+
+    private Long now;
+
+    /** How many times the concurrency of a weight was read */
+    private volatile int limitReads;
+
+    @Override
+    protected int getConcurrency(Weight weight) {
+      limitReads++;
+      return weight == Weight.HEAVY ? 1 : 2;
+    }
+
+    @Override
+    protected int getMaxQueued() {
+      return 2;
+    }
+
+    @Override
+    protected long getMaxWaitMillis() {
+      return maxWaitMillis;
+    }
+
+    @Override
+    protected long getMinFreeHeapBytes() {
+      return 1;
+    }
+
+    @Override
+    protected long getFreeHeapBytes() {
+      return freeHeapBytes;
+    }
+
+    @Override
+    protected long now() {
+      return now == null ? super.now() : now;
+    }
+  }
+}
@@ -0,0 +1,128 @@
+package org.openmrs.module.eptsreports.reporting.unit.evaluation;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Assert;
+import org.junit.Test;
+import org.openmrs.module.eptsreports.reporting.evaluation.EvaluationCancellation;
+import org.openmrs.module.eptsreports.reporting.evaluation.EvaluationCancelledException;
+import org.openmrs.module.eptsreports.reporting.evaluation.SingleFlight;
+
+public class SingleFlightTest {
+
+  private final SingleFlight<String, Integer> flights = new SingleFlight<String, Integer>();
+
+  private final AtomicInteger runs = new AtomicInteger();
+
+  private final CountDownLatch started = new CountDownLatch(1);
+
+  private final CountDownLatch release = new CountDownLatch(1);
+
+  @Test
+  public void executeShouldShareTheRunningTask() throws Exception {
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+    try {
+      Future<Integer> first = executor.submit(execute("a", blockingTask(42)));
+      Assert.assertTrue(started.await(5, TimeUnit.SECONDS));
+      Assert.assertTrue(flights.isRunning("a"));
+      Future<Integer> second = executor.submit(execute("a", blockingTask(0)));
+      Thread.sleep(100);
+      release.countDown();
+
+      Assert.assertEquals(42, (int) first.get(5, TimeUnit.SECONDS));
+      Assert.assertEquals(42, (int) second.get(5, TimeUnit.SECONDS));
+      Assert.assertEquals(1, runs.get());
+      Assert.assertFalse(flights.isRunning("a"));
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void executeShouldStopWaitingForTheRunningTaskWhenCancelled() throws Exception {
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+    try {
+      Future<Integer> first = executor.submit(execute("a", blockingTask(42)));
+      Assert.assertTrue(started.await(5, TimeUnit.SECONDS));
+      EvaluationCancellation cancellation = new EvaluationCancellation();
+      Future<Integer> second = executor.submit(execute("a", blockingTask(0), cancellation));
+      Thread.sleep(100);
+      cancellation.cancel("test");
+
+      try {
+        second.get(5, TimeUnit.SECONDS);
+        Assert.fail();
+      } catch (ExecutionException e) {
+        Assert.assertTrue(e.getCause() instanceof EvaluationCancelledException);
+      }
+      Assert.assertTrue(flights.isRunning("a"));
+      release.countDown();
+      Assert.assertEquals(42, (int) first.get(5, TimeUnit.SECONDS));
+      Assert.assertEquals(1, runs.get());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void executeShouldRunTasksOfOtherKeysAndLaterTasks() throws Exception {
+    release.countDown();
+    Assert.assertEquals(1, (int) flights.execute("a", blockingTask(1)));
+    Assert.assertEquals(2, (int) flights.execute("b", blockingTask(2)));
+    Assert.assertEquals(3, (int) flights.execute("a", blockingTask(3)));
+    Assert.assertEquals(3, runs.get());
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void executeShouldThrowTheExceptionOfTheTask() throws Exception {
+    flights.execute(
+        "a",
+        new Callable<Integer>() {
+
+          @Override
+          public Integer call() {
+            throw new IllegalStateException();
+          }
+        });
+  }
+
+  private Callable<Integer> blockingTask(final int result) {
+    return new Callable<Integer>() {
+
+      @Override
+      public Integer call() throws Exception {
+        runs.incrementAndGet();
+        started.countDown();
+        release.await();
+        return result;
+      }
+    };
+  }
+
+  private Callable<Integer> execute(final String key, final Callable<Integer> task) {
+    return execute(key, task, null);
+  }
+
+  /** Executes the task with the cancellation bound to the executing thread */
+  private Callable<Integer> execute(
+      final String key, final Callable<Integer> task, final EvaluationCancellation cancellation) {
+    return new Callable<Integer>() {
+
+      @Override
+      public Integer call() throws Exception {
+        EvaluationCancellation previous = EvaluationCancellation.bind(cancellation);
+        try {
+          return flights.execute(key, task);
+        } finally {
+          EvaluationCancellation.restore(previous);
+        }
+      }
+    };
+  }
+}
@@ -0,0 +1,70 @@
+package org.openmrs.module.eptsreports.reporting.unit.library.queries;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Assert;
+import org.junit.Test;
+import org.openmrs.module.eptsreports.reporting.library.queries.BoundQuery;
+import org.openmrs.module.eptsreports.reporting.library.queries.QueryFragments;
+import org.openmrs.module.eptsreports.reporting.library.queries.TXTBQueries;
+import org.openmrs.module.eptsreports.reporting.library.queries.TxMlQueries;
+
+public class BoundQueryTest {
+
+  @Test
+  public void shouldKeepIdsOutOfTheQuery() {
+    BoundQuery site1 = TxMlQueries.getTransferredOutPatients(2, 7);
+    BoundQuery site2 = TxMlQueries.getTransferredOutPatients(3, 8);
+    Assert.assertEquals(site1.getSql(), site2.getSql());
+    Assert.assertEquals(Integer.valueOf(2), site1.getValues().get("transferredOutProgram"));
+    Assert.assertEquals(Arrays.asList(8), site2.getValues().get("transferredOutStates"));
+  }
+
+  @Test
+  public void shouldCopyBoundLists() {
+    List<Integer> ids = new ArrayList<Integer>(Arrays.asList(6, 9));
+    BoundQuery query = new BoundQuery("encounter_type in (:types)").bind("types", ids);
+    ids.add(18);
+    Assert.assertEquals(Arrays.asList(6, 9), query.getValues().get("types"));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void shouldNotBindMissingPlaceholders() {
+    new BoundQuery("encounter_type = :encounterType").bind("encounter", 6);
+  }
+
+  @Test
+  public void shouldIncludeTheValuesOfFragments() {
+    BoundQuery pickups = QueryFragments.lastReturnVisitDates("fila", Arrays.asList(18), 5096);
+    BoundQuery consultations =
+        QueryFragments.lastReturnVisitDates("seguimento", Arrays.asList(6, 9), 1410);
+    BoundQuery query =
+        new BoundQuery(
+                "SELECT patient_id FROM ("
+                    + pickups.getSql()
+                    + ") fila WHERE patient_id NOT IN (SELECT patient_id FROM ("
+                    + consultations.getSql()
+                    + ") seguimento)")
+            .include(pickups)
+            .include(consultations);
+    Assert.assertEquals(Arrays.asList(18), query.getValues().get("filaEncounterTypes"));
+    Assert.assertEquals(Arrays.asList(6, 9), query.getValues().get("seguimentoEncounterTypes"));
+    Assert.assertEquals(
+        Integer.valueOf(1410), query.getValues().get("seguimentoReturnVisitDateConcept"));
+  }
+
+  @Test
+  public void shouldSelectOnlyPatientIdsFromFragmentsOfMoreColumns() {
+    BoundQuery query = TXTBQueries.patientsAtProgramStates(2, Arrays.asList(7, 8));
+    Assert.assertTrue(query.getSql().startsWith("SELECT patient_id FROM ("));
+    Assert.assertEquals(Arrays.asList(7, 8), query.getValues().get("statesStates"));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void shouldNotIncludeFragmentsBoundToOtherValues() {
+    BoundQuery first = QueryFragments.currentProgramStates("states", 2, Arrays.asList(7));
+    BoundQuery second = QueryFragments.currentProgramStates("states", 2, Arrays.asList(10));
+    new BoundQuery(first.getSql() + " UNION " + second.getSql()).include(first).include(second);
+  }
+}
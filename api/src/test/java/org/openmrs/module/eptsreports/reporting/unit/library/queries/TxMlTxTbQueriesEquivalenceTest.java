@@ -0,0 +1,553 @@
+package org.openmrs.module.eptsreports.reporting.unit.library.queries;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TimeZone;
+import java.util.TreeSet;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.openmrs.module.eptsreports.api.dao.NamedParameterQuery;
+import org.openmrs.module.eptsreports.reporting.library.queries.BoundQuery;
+import org.openmrs.module.eptsreports.reporting.library.queries.QueryFragments;
+import org.openmrs.module.eptsreports.reporting.library.queries.TXTBQueries;
+import org.openmrs.module.eptsreports.reporting.library.queries.TXTBQueries.AbandonedWithoutNotificationParams;
+import org.openmrs.module.eptsreports.reporting.library.queries.TxMlQueries;
+import org.openmrs.module.eptsreports.reporting.utils.EptsCalculationUtils;
+import org.openmrs.module.reporting.common.DateUtil;
+
+/**
+ * Checks that the rewritten TX_ML and TX_TB queries select the same patients as the queries they
+ * replaced, on synthetic patients in an in-memory H2 database holding the columns the queries
+ * read. The TX_ML query looking up the latest obs index is checked with the concept not built yet
+ * and built. The MySQL date functions of both are run as Java functions with the MySQL semantics,
+ * see {@link #toH2(String)}.
+ */
+public class TxMlTxTbQueriesEquivalenceTest {
+
+  private static final long SEED = 20190620L;
+
+  private static final int PATIENTS = 500;
+
+  private static final Date REFERENCE_DATE = DateUtil.getDateTime(2019, 6, 20);
+
+  /** End of day and midnight end dates, as DATEDIFF ignores the time */
+  private static final List<Date> END_DATES =
+      Arrays.asList(
+          REFERENCE_DATE,
+          DateUtil.getEndOfDay(REFERENCE_DATE),
+          DateUtil.adjustDate(REFERENCE_DATE, -45, DateUtil.DAYS),
+          DateUtil.getEndOfDay(DateUtil.adjustDate(REFERENCE_DATE, -120, DateUtil.DAYS)));
+
+  private static final String CURRENT_MISSED_APPOINTMENT =
+      "SELECT patient_id FROM "
+          + "(SELECT p.patient_id,MAX(o.value_datetime) return_date "
+          + "FROM patient p "
+          + "INNER JOIN encounter e ON e.patient_id = p.patient_id AND e.encounter_datetime <=:endDate AND e.location_id=:location "
+          + "INNER JOIN obs o ON o.encounter_id = e.encounter_id AND o.obs_datetime <=:endDate AND o.location_id=:location "
+          + " WHERE p.voided = 0 AND e.voided = 0 AND o.voided=0 "
+          + "AND e.encounter_type IN (:pharmacyEncounterType, :adultoSequimento, :arvPediatriaSeguimento) "
+          + "AND o.concept_id in (:returnVisitDateForDrugsConcept, :returnVisitDate) "
+          + "AND e.location_id =:location "
+          + "GROUP BY p.patient_id "
+          + ")lost_patients WHERE DATEDIFF(:endDate,lost_patients.return_date)>=:min AND DATEDIFF(:endDate,lost_patients.return_date)<=:max";
+
+  private static final String CURRENT_NON_CONSISTENT =
+      "SELECT distinct(pp.patient_id) FROM patient pp "
+          + "INNER JOIN encounter e ON e.patient_id=pp.patient_id "
+          + "INNER JOIN obs o ON o.person_id = pp.patient_id "
+          + "INNER JOIN person p ON o.person_id = p.person_id "
+          + "WHERE pp.voided=0 AND e.voided=0 AND e.encounter_type IN(:prevencaoPositivaInicial, :prevencaoPositivaSeguimento) AND e.location_id=:location AND o.obs_datetime<=:endDate AND o.voided=0 AND o.concept_id=:acceptContactConcept AND o.value_coded=:noConcept AND o.location_id=:location "
+          // GROUP BY obs_datetime DESC LIMIT 1 in MySQL, which H2 does not take, picking the obs of
+          // the latest time, single in these patients
+          + "AND o.obs_id = (SELECT obs_id FROM obs WHERE concept_id = :acceptContactConcept AND pp.patient_id = person_id ORDER BY obs_datetime DESC LIMIT 1)";
+
+  private static final String CURRENT_TRANSFERRED_OUT =
+      "SELECT pg.patient_id"
+          + " FROM patient p"
+          + " INNER JOIN patient_program pg ON p.patient_id=pg.patient_id"
+          + " INNER JOIN patient_state ps ON pg.patient_program_id=ps.patient_program_id "
+          + " WHERE pg.voided=0 AND ps.voided=0 AND p.voided=0 AND"
+          + " pg.program_id=:program"
+          + " AND ps.state=:state"
+          + " AND ps.start_date BETWEEN (:endDate - INTERVAL 183 DAY) AND  :endDate AND pg.location_id=:location AND ps.end_date is null";
+
+  private static final String CURRENT_ABANDONED =
+      "SELECT patient_id FROM (SELECT p.patient_id, Max(encounter_datetime) encounter_datetime FROM patient p "
+          + "INNER JOIN encounter e ON e.patient_id = p.patient_id WHERE p.voided = 0 AND e.voided = 0 "
+          + "AND e.encounter_type = :pharmacyEncounterTypeId AND e.location_id = :location AND e.encounter_datetime <= :endDate GROUP BY p.patient_id) max_frida "
+          + "INNER JOIN obs o ON o.person_id = max_frida.patient_id WHERE max_frida.encounter_datetime = o.obs_datetime AND o.voided = 0 "
+          + "AND o.concept_id = :returnVisitDateForARVDrugConceptId AND o.location_id = :location AND patient_id "
+          + "NOT IN (SELECT pg.patient_id FROM patient p INNER JOIN patient_program pg ON p.patient_id = pg.patient_id "
+          + "INNER JOIN patient_state ps ON pg.patient_program_id = ps.patient_program_id WHERE pg.voided = 0 AND ps.voided = 0 "
+          + "AND p.voided = 0 AND pg.program_id = :programId AND ps.state IN ( :stateIds ) AND ps.end_date IS NULL AND ps.start_date <= :endDate "
+          + "AND location_id = :location) AND patient_id NOT IN(SELECT patient_id FROM "
+          + "(SELECT p.patient_id, Max(encounter_datetime) encounter_datetime FROM patient p "
+          + "INNER JOIN encounter e ON e.patient_id = p.patient_id WHERE p.voided = 0 AND e.voided = 0 "
+          + "AND e.encounter_type IN ( :artAdultFollowupEncounterTypeId, :artPedInicioEncounterTypeId ) AND e.location_id = :location AND e.encounter_datetime <= :endDate GROUP BY p.patient_id) max_mov "
+          + "INNER JOIN obs o ON o.person_id = max_mov.patient_id WHERE max_mov.encounter_datetime = o.obs_datetime AND o.voided = 0 "
+          + "AND o.concept_id = :returnVisitDateConceptId AND o.location_id = :location AND Datediff(:endDate, o.value_datetime) <= 60) AND patient_id "
+          + "NOT IN(SELECT abandono.patient_id FROM (SELECT pg.patient_id FROM patient p INNER JOIN patient_program pg ON p.patient_id = pg.patient_id "
+          + "INNER JOIN patient_state ps ON pg.patient_program_id = ps.patient_program_id WHERE pg.voided = 0 AND ps.voided = 0 AND p.voided = 0 AND pg.program_id = :programId "
+          + "AND ps.state = :treatmentAbandonedStateId AND ps.end_date IS NULL AND ps.start_date <= :endDate AND location_id = :location)abandono "
+          + "INNER JOIN (SELECT max_frida.patient_id, max_frida.encounter_datetime, o.value_datetime FROM "
+          + "(SELECT p.patient_id, Max(encounter_datetime) encounter_datetime FROM patient p "
+          + "INNER JOIN encounter e ON e.patient_id = p.patient_id WHERE p.voided = 0 AND e.voided = 0 AND e.encounter_type = :pharmacyEncounterTypeId"
+          + " AND e.location_id = :location "
+          + "AND e.encounter_datetime <= :endDate GROUP BY p.patient_id) max_frida INNER JOIN obs o ON o.person_id = max_frida.patient_id "
+          + "WHERE max_frida.encounter_datetime = o.obs_datetime AND o.voided = 0 AND o.concept_id = :returnVisitDateForARVDrugConceptId AND o.location_id = :location) ultimo_fila "
+          + "ON abandono.patient_id = ultimo_fila.patient_id WHERE Datediff(:endDate, ultimo_fila.value_datetime) < 60) AND Datediff(:endDate, o.value_datetime) >= 60;";
+
+  private static final String[] SCHEMA = {
+    "CREATE TABLE person (person_id INT PRIMARY KEY, voided INT NOT NULL)",
+    "CREATE TABLE patient (patient_id INT PRIMARY KEY, voided INT NOT NULL)",
+    "CREATE TABLE encounter (encounter_id INT PRIMARY KEY, encounter_type INT NOT NULL,"
+        + " patient_id INT NOT NULL, location_id INT, encounter_datetime TIMESTAMP NOT NULL,"
+        + " voided INT NOT NULL)",
+    "CREATE TABLE obs (obs_id INT PRIMARY KEY, person_id INT NOT NULL, concept_id INT NOT NULL,"
+        + " encounter_id INT, obs_datetime TIMESTAMP NOT NULL, location_id INT,"
+        + " value_numeric DOUBLE, value_coded INT, value_datetime TIMESTAMP, voided INT NOT NULL)",
+    "CREATE TABLE patient_program (patient_program_id INT PRIMARY KEY, patient_id INT NOT NULL,"
+        + " program_id INT NOT NULL, date_enrolled TIMESTAMP, date_completed TIMESTAMP,"
+        + " location_id INT, voided INT NOT NULL)",
+    "CREATE TABLE patient_state (patient_state_id INT PRIMARY KEY, patient_program_id INT NOT NULL,"
+        + " state INT NOT NULL, start_date TIMESTAMP, end_date TIMESTAMP, voided INT NOT NULL)",
+    "CREATE TABLE eptsreports_latest_obs (patient_id INT NOT NULL, concept_id INT NOT NULL,"
+        + " obs_id INT NOT NULL, obs_datetime TIMESTAMP NOT NULL, location_id INT,"
+        + " voided INT NOT NULL, value_numeric DOUBLE, value_coded INT, value_datetime TIMESTAMP,"
+        + " PRIMARY KEY (concept_id, patient_id))",
+    "CREATE TABLE eptsreports_latest_obs_concept (concept_id INT PRIMARY KEY,"
+        + " date_built TIMESTAMP NOT NULL)"
+  };
+
+  /** Indexes the latest obs ever of a concept of each person, voided or at any location */
+  private static final String INDEX_LATEST_OBS =
+      "INSERT INTO eptsreports_latest_obs (patient_id, concept_id, obs_id, obs_datetime, location_id,"
+          + " voided, value_numeric, value_coded, value_datetime) "
+          + "SELECT o.person_id, o.concept_id, o.obs_id, o.obs_datetime, o.location_id, o.voided,"
+          + " o.value_numeric, o.value_coded, o.value_datetime FROM obs o WHERE o.concept_id = ? "
+          + "AND o.obs_id = (SELECT obs_id FROM obs l WHERE l.concept_id = o.concept_id AND l.person_id = o.person_id "
+          + "ORDER BY l.obs_datetime DESC, l.obs_id LIMIT 1)";
+
+  /** The Java functions run for the MySQL functions, named MYSQL_ and the MySQL name */
+  private static final Map<String, String> FUNCTIONS = new HashMap<String, String>();
+
+  static {
+    FUNCTIONS.put("DATE", "date");
+    FUNCTIONS.put("DATE_SUB", "dateSub");
+    FUNCTIONS.put("DATE_ADD", "dateAdd");
+    FUNCTIONS.put("DATEDIFF", "dateDiff");
+  }
+
+  private static final int LOCATION = 1;
+
+  private static final int OTHER_LOCATION = 2;
+
+  private static final int PHARMACY = 18;
+
+  private static final int ADULT_FOLLOW_UP = 6;
+
+  private static final int PEDIATRIC_FOLLOW_UP = 9;
+
+  private static final int PEDIATRIC_INITIAL = 7;
+
+  private static final int POSITIVE_PREVENTION_INITIAL = 34;
+
+  private static final int POSITIVE_PREVENTION_FOLLOW_UP = 35;
+
+  private static final int DRUG_PICKUP_RETURN_DATE = 5096;
+
+  private static final int RETURN_VISIT_DATE = 1410;
+
+  private static final int ACCEPT_CONTACT = 6306;
+
+  private static final int YES = 1065;
+
+  private static final int NO = 1066;
+
+  private static final int ART_PROGRAM = 2;
+
+  private static final int TRANSFERRED_OUT = 7;
+
+  private static final int SUSPENDED = 8;
+
+  private static final int ABANDONED = 9;
+
+  private static final int DIED = 10;
+
+  private final Random random = new Random(SEED);
+
+  private Connection connection;
+
+  private int lastId;
+
+  @Before
+  public void setUp() throws Exception {
+    connection = DriverManager.getConnection("jdbc:h2:mem:");
+    Statement statement = connection.createStatement();
+    try {
+      for (String table : SCHEMA) {
+        statement.execute(table);
+      }
+      for (Map.Entry<String, String> function : FUNCTIONS.entrySet()) {
+        statement.execute(
+            "CREATE ALIAS MYSQL_"
+                + function.getKey()
+                + " FOR \""
+                + getClass().getName()
+                + "."
+                + function.getValue()
+                + "\"");
+      }
+    } finally {
+      statement.close();
+    }
+    for (int i = 0; i < PATIENTS; i++) {
+      createPatient();
+    }
+  }
+
+  @After
+  public void tearDown() throws SQLException {
+    connection.close();
+  }
+
+  @Test
+  public void getPatientsWhoMissedAppointmentShouldMatchCurrentQuery() throws SQLException {
+    BoundQuery current =
+        new BoundQuery(CURRENT_MISSED_APPOINTMENT)
+            .bind("pharmacyEncounterType", PHARMACY)
+            .bind("adultoSequimento", ADULT_FOLLOW_UP)
+            .bind("arvPediatriaSeguimento", PEDIATRIC_FOLLOW_UP)
+            .bind("returnVisitDateForDrugsConcept", DRUG_PICKUP_RETURN_DATE)
+            .bind("returnVisitDate", RETURN_VISIT_DATE)
+            .bind("min", 30)
+            .bind("max", 183);
+    assertSamePatients(
+        current,
+        TxMlQueries.getPatientsWhoMissedAppointment(
+            30,
+            183,
+            DRUG_PICKUP_RETURN_DATE,
+            RETURN_VISIT_DATE,
+            PHARMACY,
+            ADULT_FOLLOW_UP,
+            PEDIATRIC_FOLLOW_UP));
+  }
+
+  @Test
+  public void getNonConsistentPatientsShouldMatchCurrentQuery() throws SQLException {
+    BoundQuery current =
+        new BoundQuery(CURRENT_NON_CONSISTENT)
+            .bind("prevencaoPositivaInicial", POSITIVE_PREVENTION_INITIAL)
+            .bind("prevencaoPositivaSeguimento", POSITIVE_PREVENTION_FOLLOW_UP)
+            .bind("acceptContactConcept", ACCEPT_CONTACT)
+            .bind("noConcept", NO);
+    assertSamePatients(
+        current,
+        TxMlQueries.getNonConsistentPatients(
+            POSITIVE_PREVENTION_INITIAL, POSITIVE_PREVENTION_FOLLOW_UP, ACCEPT_CONTACT, NO));
+  }
+
+  @Test
+  public void getNonConsistentPatientsShouldMatchCurrentQueryWithTheLatestObsIndexed()
+      throws SQLException {
+    buildLatestObs(ACCEPT_CONTACT);
+
+    getNonConsistentPatientsShouldMatchCurrentQuery();
+  }
+
+  @Test
+  public void latestObsShouldBeTheSameBuiltOrNot() throws SQLException {
+    BoundQuery latestObs = QueryFragments.latestObs("latest", ACCEPT_CONTACT);
+    BoundQuery columns =
+        new BoundQuery("SELECT patient_id, obs_id, voided FROM (" + latestObs.getSql() + ") latest")
+            .include(latestObs);
+    Set<List<Object>> scanned = getRows(columns);
+    Assert.assertFalse(scanned.isEmpty());
+
+    buildLatestObs(ACCEPT_CONTACT);
+
+    Assert.assertEquals(scanned, getRows(columns));
+  }
+
+  @Test
+  public void getTransferredOutPatientsShouldMatchCurrentQuery() throws SQLException {
+    BoundQuery current =
+        new BoundQuery(CURRENT_TRANSFERRED_OUT)
+            .bind("program", ART_PROGRAM)
+            .bind("state", TRANSFERRED_OUT);
+    assertSamePatients(
+        current, TxMlQueries.getTransferredOutPatients(ART_PROGRAM, TRANSFERRED_OUT));
+  }
+
+  @Test
+  public void abandonedWithNoNotificationShouldMatchCurrentQuery() throws SQLException {
+    BoundQuery current =
+        new BoundQuery(CURRENT_ABANDONED)
+            .bind("pharmacyEncounterTypeId", PHARMACY)
+            .bind("returnVisitDateForARVDrugConceptId", DRUG_PICKUP_RETURN_DATE)
+            .bind("programId", ART_PROGRAM)
+            .bind("stateIds", Arrays.asList(TRANSFERRED_OUT, SUSPENDED, ABANDONED, DIED))
+            .bind("artAdultFollowupEncounterTypeId", ADULT_FOLLOW_UP)
+            .bind("artPedInicioEncounterTypeId", PEDIATRIC_INITIAL)
+            .bind("returnVisitDateConceptId", RETURN_VISIT_DATE)
+            .bind("treatmentAbandonedStateId", ABANDONED);
+    assertSamePatients(
+        current,
+        TXTBQueries.abandonedWithNoNotification(
+            new AbandonedWithoutNotificationParams()
+                .programId(ART_PROGRAM)
+                .returnVisitDateConceptId(RETURN_VISIT_DATE)
+                .returnVisitDateForARVDrugConceptId(DRUG_PICKUP_RETURN_DATE)
+                .pharmacyEncounterTypeId(PHARMACY)
+                .artAdultFollowupEncounterTypeId(ADULT_FOLLOW_UP)
+                .artPedInicioEncounterTypeId(PEDIATRIC_INITIAL)
+                .transferOutStateId(TRANSFERRED_OUT)
+                .treatmentSuspensionStateId(SUSPENDED)
+                .treatmentAbandonedStateId(ABANDONED)
+                .deathStateId(DIED)));
+  }
+
+  /** MySQL DATE, the date part of a datetime */
+  public static Timestamp date(Timestamp value) {
+    return value == null ? null : new Timestamp(DateUtil.getStartOfDay(value).getTime());
+  }
+
+  /** MySQL DATE_SUB with an INTERVAL in days */
+  public static Timestamp dateSub(Timestamp value, int days) {
+    return dateAdd(value, -days);
+  }
+
+  /** MySQL DATE_ADD with an INTERVAL in days */
+  public static Timestamp dateAdd(Timestamp value, int days) {
+    return value == null
+        ? null
+        : new Timestamp(DateUtil.adjustDate(value, days, DateUtil.DAYS).getTime());
+  }
+
+  /** MySQL DATEDIFF, the days between the date parts */
+  public static Integer dateDiff(Timestamp end, Timestamp start) {
+    if (end == null || start == null) {
+      return null;
+    }
+    TimeZone zone = TimeZone.getDefault();
+    return EptsCalculationUtils.epochDay(end, zone) - EptsCalculationUtils.epochDay(start, zone);
+  }
+
+  /** Turns the MySQL date functions of a query into the Java functions created for them */
+  private static String toH2(String sql) {
+    return sql.replaceAll(";$", "")
+        .replaceAll("(?i)(:\\w+)\\s*-\\s*INTERVAL\\s+(\\w+)\\s+DAY", "MYSQL_DATE_SUB($1, $2)")
+        .replaceAll("(?i),\\s*INTERVAL\\s+(:?\\w+)\\s+DAY\\s*\\)", ", $1)")
+        .replaceAll("(?i)\\b(DATE|DATE_SUB|DATE_ADD|DATEDIFF)\\(", "MYSQL_$1(");
+  }
+
+  private void assertSamePatients(BoundQuery current, BoundQuery rewritten) throws SQLException {
+    boolean found = false;
+    for (Date endDate : END_DATES) {
+      Set<Integer> expected = getPatientIds(current, endDate);
+      Assert.assertEquals("End date " + endDate, expected, getPatientIds(rewritten, endDate));
+      found |= !expected.isEmpty();
+    }
+    Assert.assertTrue("No synthetic patient selected", found);
+  }
+
+  private Set<Integer> getPatientIds(BoundQuery query, Date endDate) throws SQLException {
+    Map<String, Object> values = new HashMap<String, Object>(query.getValues());
+    values.put("startDate", DateUtil.adjustDate(endDate, -3, DateUtil.MONTHS));
+    values.put("endDate", endDate);
+    values.put("location", LOCATION);
+    PreparedStatement statement =
+        new NamedParameterQuery(toH2(query.getSql()), values).prepare(connection);
+    try {
+      Set<Integer> ret = new TreeSet<Integer>();
+      ResultSet rs = statement.executeQuery();
+      while (rs.next()) {
+        ret.add(rs.getInt(1));
+      }
+      return ret;
+    } finally {
+      statement.close();
+    }
+  }
+
+  private Set<List<Object>> getRows(BoundQuery query) throws SQLException {
+    PreparedStatement statement =
+        new NamedParameterQuery(query.getSql(), query.getValues()).prepare(connection);
+    try {
+      Set<List<Object>> ret = new HashSet<List<Object>>();
+      ResultSet rs = statement.executeQuery();
+      while (rs.next()) {
+        List<Object> row = new ArrayList<Object>();
+        for (int i = 1; i <= rs.getMetaData().getColumnCount(); i++) {
+          row.add(rs.getObject(i));
+        }
+        ret.add(row);
+      }
+      return ret;
+    } finally {
+      statement.close();
+    }
+  }
+
+  /** Builds the latest obs of a concept the way the index does, and notes that it was built */
+  private void buildLatestObs(int concept) throws SQLException {
+    insert(INDEX_LATEST_OBS, concept);
+    insert(
+        "INSERT INTO eptsreports_latest_obs_concept (concept_id, date_built) VALUES (?, ?)",
+        concept,
+        timestamp(new Date()));
+  }
+
+  /**
+   * Creates a patient with random encounters, next visit dates, contact answers and ART program
+   * states around the end dates, some of them voided or at another location
+   */
+  private void createPatient() throws SQLException {
+    int personId = ++lastId;
+    insert("INSERT INTO person (person_id, voided) VALUES (?, 0)", personId);
+    insert("INSERT INTO patient (patient_id, voided) VALUES (?, 0)", personId);
+
+    int[] encounterTypes = {
+      PHARMACY,
+      ADULT_FOLLOW_UP,
+      PEDIATRIC_FOLLOW_UP,
+      PEDIATRIC_INITIAL,
+      POSITIVE_PREVENTION_INITIAL,
+      POSITIVE_PREVENTION_FOLLOW_UP
+    };
+    int encounters = random.nextInt(6);
+    for (int i = 0; i < encounters; i++) {
+      int encounterType = encounterTypes[random.nextInt(encounterTypes.length)];
+      // whole minutes apart, so a patient has a single latest contact answer
+      Date encounterDatetime =
+          DateUtil.adjustDate(
+              REFERENCE_DATE, -random.nextInt(400 * 24 * 60) + i, DateUtil.MINUTES);
+      int encounterLocation = random.nextInt(10) == 0 ? OTHER_LOCATION : LOCATION;
+      int encounterId = ++lastId;
+      insert(
+          "INSERT INTO encounter (encounter_id, encounter_type, patient_id, location_id,"
+              + " encounter_datetime, voided) VALUES (?, ?, ?, ?, ?, ?)",
+          encounterId,
+          encounterType,
+          personId,
+          encounterLocation,
+          timestamp(encounterDatetime),
+          randomVoided());
+      if (encounterType == POSITIVE_PREVENTION_INITIAL
+          || encounterType == POSITIVE_PREVENTION_FOLLOW_UP) {
+        createObs(
+            personId,
+            encounterId,
+            encounterLocation,
+            encounterDatetime,
+            ACCEPT_CONTACT,
+            random.nextBoolean() ? NO : YES,
+            null);
+      } else {
+        Date nextVisit =
+            DateUtil.adjustDate(
+                encounterDatetime, random.nextInt(100 * 24 * 60) - 10 * 24 * 60, DateUtil.MINUTES);
+        createObs(
+            personId,
+            encounterId,
+            encounterLocation,
+            encounterDatetime,
+            encounterType == PHARMACY ? DRUG_PICKUP_RETURN_DATE : RETURN_VISIT_DATE,
+            null,
+            nextVisit);
+      }
+    }
+
+    if (random.nextInt(10) < 6) {
+      Date enrolled = DateUtil.adjustDate(REFERENCE_DATE, -random.nextInt(2000), DateUtil.DAYS);
+      int patientProgramId = ++lastId;
+      insert(
+          "INSERT INTO patient_program (patient_program_id, patient_id, program_id, date_enrolled,"
+              + " location_id, voided) VALUES (?, ?, ?, ?, ?, ?)",
+          patientProgramId,
+          personId,
+          ART_PROGRAM,
+          timestamp(enrolled),
+          random.nextInt(10) == 0 ? OTHER_LOCATION : LOCATION,
+          randomVoided());
+      int[] states = {TRANSFERRED_OUT, SUSPENDED, ABANDONED, DIED};
+      int count = random.nextInt(3);
+      for (int i = 0; i < count; i++) {
+        Date start = DateUtil.adjustDate(REFERENCE_DATE, -random.nextInt(400), DateUtil.DAYS);
+        Date end =
+            i < count - 1 || random.nextInt(5) == 0
+                ? DateUtil.adjustDate(start, random.nextInt(60), DateUtil.DAYS)
+                : null;
+        insert(
+            "INSERT INTO patient_state (patient_state_id, patient_program_id, state, start_date,"
+                + " end_date, voided) VALUES (?, ?, ?, ?, ?, ?)",
+            ++lastId,
+            patientProgramId,
+            states[random.nextInt(states.length)],
+            timestamp(start),
+            timestamp(end),
+            randomVoided());
+      }
+    }
+  }
+
+  private void createObs(
+      int personId,
+      Integer encounterId,
+      int locationId,
+      Date obsDatetime,
+      int conceptId,
+      Integer valueCoded,
+      Date valueDatetime)
+      throws SQLException {
+    insert(
+        "INSERT INTO obs (obs_id, person_id, concept_id, encounter_id, obs_datetime, location_id,"
+            + " value_coded, value_datetime, voided) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)",
+        ++lastId,
+        personId,
+        conceptId,
+        encounterId,
+        timestamp(obsDatetime),
+        locationId,
+        valueCoded,
+        timestamp(valueDatetime),
+        randomVoided());
+  }
+
+  private int randomVoided() {
+    return random.nextInt(20) == 0 ? 1 : 0;
+  }
+
+  private static Timestamp timestamp(Date date) {
+    return date == null ? null : new Timestamp(date.getTime());
+  }
+
+  private void insert(String sql, Object... values) throws SQLException {
+    PreparedStatement statement = connection.prepareStatement(sql);
+    try {
+      for (int i = 0; i < values.length; i++) {
+        statement.setObject(i + 1, values[i]);
+      }
+      statement.executeUpdate();
+    } finally {
+      statement.close();
+    }
+  }
+}
@@ -0,0 +1,85 @@
+package org.openmrs.module.eptsreports.reporting.unit.reports.renderer;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.Assert;
+import org.junit.Test;
+import org.openmrs.module.eptsreports.reporting.reports.renderer.StreamingSheetWriter;
+import org.openmrs.module.reporting.dataset.DataSet;
+import org.openmrs.module.reporting.dataset.DataSetColumn;
+import org.openmrs.module.reporting.dataset.DataSetMetaData;
+import org.openmrs.module.reporting.dataset.DataSetRow;
+import org.openmrs.module.reporting.dataset.definition.DataSetDefinition;
+import org.openmrs.module.reporting.evaluation.EvaluationContext;
+
+public class StreamingSheetWriterTest {
+
+  private final DataSetColumn patientId = new DataSetColumn("patientId", "NID", Integer.class);
+
+  private final DataSetColumn startDate = new DataSetColumn("startDate", null, Date.class);
+
+  @Test
+  public void writeShouldContinueLongDataSetsOnFurtherSheets() throws Exception {
+    SXSSFWorkbook workbook = new SXSSFWorkbook(2);
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try {
+      Assert.assertEquals(3, new StreamingSheetWriter(workbook, 3).write("Line list", dataSet(5)));
+      workbook.write(out);
+    } finally {
+      workbook.dispose();
+    }
+
+    XSSFWorkbook written = new XSSFWorkbook(new ByteArrayInputStream(out.toByteArray()));
+    Assert.assertEquals(3, written.getNumberOfSheets());
+    Sheet first = written.getSheet("Line list");
+    Assert.assertEquals("NID", first.getRow(0).getCell(0).getStringCellValue());
+    Assert.assertEquals("startDate", first.getRow(0).getCell(1).getStringCellValue());
+    Assert.assertEquals(1, (int) first.getRow(1).getCell(0).getNumericCellValue());
+    Assert.assertEquals(new Date(2000L), first.getRow(2).getCell(1).getDateCellValue());
+    Sheet last = written.getSheet("Line list (3)");
+    Assert.assertEquals(1, last.getLastRowNum());
+    Assert.assertEquals(5, (int) last.getRow(1).getCell(0).getNumericCellValue());
+  }
+
+  private DataSet dataSet(int rows) {
+    final DataSetMetaData metaData = new DataSetMetaData();
+    metaData.addColumn(patientId);
+    metaData.addColumn(startDate);
+    final List<DataSetRow> dataSetRows = new ArrayList<DataSetRow>();
+    for (int i = 1; i <= rows; i++) {
+      DataSetRow row = new DataSetRow();
+      row.addColumnValue(patientId, i);
+      row.addColumnValue(startDate, new Date(i * 1000L));
+      dataSetRows.add(row);
+    }
+    return new DataSet() {
+
+      @Override
+      public Iterator<DataSetRow> iterator() {
+        return dataSetRows.iterator();
+      }
+
+      @Override
+      public DataSetMetaData getMetaData() {
+        return metaData;
+      }
+
+      @Override
+      public DataSetDefinition getDefinition() {
+        return null;
+      }
+
+      @Override
+      public EvaluationContext getContext() {
+        return null;
+      }
+    };
+  }
+}
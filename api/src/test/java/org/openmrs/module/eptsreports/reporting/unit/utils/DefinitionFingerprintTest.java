@@ -0,0 +1,152 @@
+package org.openmrs.module.eptsreports.reporting.unit.utils;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import org.junit.Assert;
+import org.junit.Test;
+import org.openmrs.Concept;
+import org.openmrs.module.eptsreports.reporting.cohort.definition.BoundSqlCohortDefinition;
+import org.openmrs.module.eptsreports.reporting.library.queries.BoundQuery;
+import org.openmrs.module.eptsreports.reporting.utils.DefinitionFingerprint;
+import org.openmrs.module.reporting.cohort.definition.CodedObsCohortDefinition;
+import org.openmrs.module.reporting.cohort.definition.CohortDefinition;
+import org.openmrs.module.reporting.cohort.definition.CompositionCohortDefinition;
+import org.openmrs.module.reporting.common.SetComparator;
+import org.openmrs.module.reporting.evaluation.parameter.Parameter;
+
+public class DefinitionFingerprintTest {
+
+  private static final String QUERY = "SELECT patient_id FROM obs WHERE concept_id = :concept";
+
+  @Test
+  public void ofShouldBeTheSameForRebuiltDefinitions() {
+    CohortDefinition definition = composition("onOrBefore", "${endDate}", 1065);
+    CohortDefinition rebuilt = composition("onOrBefore", "${endDate}", 1065);
+
+    Assert.assertNotEquals(definition.getUuid(), rebuilt.getUuid());
+    Assert.assertEquals(DefinitionFingerprint.of(definition), DefinitionFingerprint.of(rebuilt));
+  }
+
+  @Test
+  public void ofShouldDifferWhenANestedParameterMappingDiffers() {
+    Assert.assertNotEquals(
+        DefinitionFingerprint.of(composition("onOrBefore", "${endDate}", 1065)),
+        DefinitionFingerprint.of(composition("onOrBefore", "${startDate}", 1065)));
+    Assert.assertNotEquals(
+        DefinitionFingerprint.of(composition("onOrBefore", "${endDate}", 1065)),
+        DefinitionFingerprint.of(composition("onOrAfter", "${endDate}", 1065)));
+  }
+
+  @Test
+  public void ofShouldDifferWhenAConceptDiffers() {
+    Assert.assertNotEquals(
+        DefinitionFingerprint.of(composition("onOrBefore", "${endDate}", 1065)),
+        DefinitionFingerprint.of(composition("onOrBefore", "${endDate}", 1066)));
+  }
+
+  @Test
+  public void ofShouldDifferWhenABoundValueDiffers() {
+    Assert.assertEquals(
+        DefinitionFingerprint.of(boundSql(1065)), DefinitionFingerprint.of(boundSql(1065)));
+    Assert.assertNotEquals(
+        DefinitionFingerprint.of(boundSql(1065)), DefinitionFingerprint.of(boundSql(1066)));
+  }
+
+  @Test
+  public void ofShouldWalkSharedAndCyclicReferencesOnce() {
+    CompositionCohortDefinition shared = sharing(boundSql(1065));
+    CompositionCohortDefinition rebuilt = sharing(boundSql(1065));
+    Assert.assertEquals(DefinitionFingerprint.of(shared), DefinitionFingerprint.of(rebuilt));
+    Assert.assertNotEquals(
+        DefinitionFingerprint.of(shared), DefinitionFingerprint.of(sharing(boundSql(1066))));
+
+    CompositionCohortDefinition cyclic = sharing(boundSql(1065));
+    cyclic.addSearch("self", cyclic, new HashMap<String, Object>());
+    CompositionCohortDefinition rebuiltCyclic = sharing(boundSql(1065));
+    rebuiltCyclic.addSearch("self", rebuiltCyclic, new HashMap<String, Object>());
+    Assert.assertEquals(DefinitionFingerprint.of(cyclic), DefinitionFingerprint.of(rebuiltCyclic));
+    Assert.assertNotEquals(DefinitionFingerprint.of(shared), DefinitionFingerprint.of(cyclic));
+  }
+
+  @Test
+  public void ofShouldIgnoreTheOrderOfSetsButNotOfLists() {
+    Concept yes = new Concept(1065);
+    Concept no = new Concept(1066);
+    Assert.assertEquals(
+        DefinitionFingerprint.of(new LinkedHashSet<Concept>(Arrays.asList(yes, no))),
+        DefinitionFingerprint.of(new LinkedHashSet<Concept>(Arrays.asList(no, yes))));
+    Assert.assertNotEquals(
+        DefinitionFingerprint.of(Arrays.asList(yes, no)),
+        DefinitionFingerprint.of(Arrays.asList(no, yes)));
+
+    // definitions sharing a search, whose references must not depend on the set order
+    CohortDefinition search = boundSql(1065);
+    CohortDefinition first = sharing(search);
+    CompositionCohortDefinition second = composition("onOrBefore", "${endDate}", 1066);
+    second.addSearch("shared", search, mappings("endDate", "${endDate}"));
+    Assert.assertEquals(
+        DefinitionFingerprint.of(
+            new LinkedHashSet<CohortDefinition>(Arrays.asList(first, second))),
+        DefinitionFingerprint.of(
+            new LinkedHashSet<CohortDefinition>(Arrays.asList(second, first))));
+  }
+
+  @Test
+  public void withNamesShouldDifferWhenANestedNameOrDescriptionDiffers() {
+    CompositionCohortDefinition definition = composition("onOrBefore", "${endDate}", 1065);
+    CompositionCohortDefinition renamed = composition("onOrBefore", "${endDate}", 1065);
+    renamed.getSearches().get("obs").getParameterizable().setName("renamed");
+    CompositionCohortDefinition described = composition("onOrBefore", "${endDate}", 1065);
+    described.getSearches().get("obs").getParameterizable().setDescription("described");
+
+    Assert.assertEquals(
+        DefinitionFingerprint.withNames(definition),
+        DefinitionFingerprint.withNames(composition("onOrBefore", "${endDate}", 1065)));
+    Assert.assertEquals(DefinitionFingerprint.of(definition), DefinitionFingerprint.of(renamed));
+    Assert.assertNotEquals(
+        DefinitionFingerprint.withNames(definition), DefinitionFingerprint.withNames(renamed));
+    Assert.assertNotEquals(
+        DefinitionFingerprint.withNames(definition), DefinitionFingerprint.withNames(described));
+  }
+
+  /** A composition of a coded obs search, mapped with one parameter */
+  private static CompositionCohortDefinition composition(
+      String parameter, String mapping, int valueCoded) {
+    CodedObsCohortDefinition obs = new CodedObsCohortDefinition();
+    obs.setName("coded obs");
+    obs.addParameter(new Parameter(parameter, parameter, Date.class));
+    obs.setQuestion(new Concept(6306));
+    obs.setOperator(SetComparator.IN);
+    obs.setValueList(Arrays.asList(new Concept(valueCoded)));
+
+    CompositionCohortDefinition ret = new CompositionCohortDefinition();
+    ret.setName("composition");
+    ret.addParameter(new Parameter("startDate", "Start Date", Date.class));
+    ret.addParameter(new Parameter("endDate", "End Date", Date.class));
+    ret.addSearch("obs", obs, mappings(parameter, mapping));
+    ret.setCompositionString("obs");
+    return ret;
+  }
+
+  /** A composition of two searches mapping the same definition */
+  private static CompositionCohortDefinition sharing(CohortDefinition search) {
+    CompositionCohortDefinition ret = new CompositionCohortDefinition();
+    ret.addSearch("first", search, mappings("endDate", "${endDate}"));
+    ret.addSearch("second", search, mappings("endDate", "${startDate}"));
+    ret.setCompositionString("first AND NOT second");
+    return ret;
+  }
+
+  private static BoundSqlCohortDefinition boundSql(int concept) {
+    return new BoundSqlCohortDefinition(new BoundQuery(QUERY).bind("concept", concept));
+  }
+
+  private static Map<String, Object> mappings(String parameter, String mapping) {
+    Map<String, Object> ret = new HashMap<String, Object>();
+    ret.put(parameter, mapping);
+    return ret;
+  }
+}
@@ -0,0 +1,145 @@
+package org.openmrs.module.eptsreports.reporting.unit.utils;
+
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.Random;
+import java.util.TimeZone;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.joda.time.Days;
+import org.joda.time.Months;
+import org.joda.time.Years;
+import org.junit.Assert;
+import org.junit.Test;
+import org.openmrs.module.eptsreports.reporting.utils.EpochDays;
+
+/**
+ * Checks {@link EpochDays} against {@link Calendar} and joda on random dates, in a zone without
+ * daylight saving time and in one with it
+ */
+public class EpochDaysTest {
+
+  private static final String[] ZONES = {"UTC", "Africa/Maputo", "America/Sao_Paulo"};
+
+  private static final int SAMPLES = 20000;
+
+  /** 1900-01-01 to 2100-01-01 */
+  private static final long MIN_MILLIS = -2208988800000L;
+
+  private static final long MAX_MILLIS = 4102444800000L;
+
+  @Test
+  public void ofShouldRoundTripWithToYearMonthDay() {
+    int last = EpochDays.of(2100, 1, 1);
+    for (int epochDay = EpochDays.of(1900, 1, 1); epochDay < last; epochDay++) {
+      int ymd = EpochDays.toYearMonthDay(epochDay);
+      Assert.assertEquals(
+          epochDay, EpochDays.of(EpochDays.year(ymd), EpochDays.month(ymd), EpochDays.day(ymd)));
+    }
+    Assert.assertEquals(0, EpochDays.of(1970, 1, 1));
+    Assert.assertEquals(-1, EpochDays.of(1969, 12, 31));
+    Assert.assertEquals(EpochDays.pack(2000, 2, 29), EpochDays.toYearMonthDay(11016));
+  }
+
+  @Test
+  public void epochDayShouldMatchCalendarFields() {
+    Random random = new Random(26);
+    for (String id : ZONES) {
+      TimeZone zone = TimeZone.getTimeZone(id);
+      Calendar c = new GregorianCalendar(zone);
+      for (int i = 0; i < SAMPLES; i++) {
+        long millis = randomMillis(random);
+        c.setTimeInMillis(millis);
+        long local = EpochDays.toLocalMillis(millis, zone);
+        int ymd = EpochDays.toYearMonthDay(EpochDays.epochDay(local));
+        Assert.assertEquals(c.get(Calendar.YEAR), EpochDays.year(ymd));
+        Assert.assertEquals(c.get(Calendar.MONTH) + 1, EpochDays.month(ymd));
+        Assert.assertEquals(c.get(Calendar.DAY_OF_MONTH), EpochDays.day(ymd));
+        Assert.assertEquals(millisOfDay(c), EpochDays.millisOfDay(local));
+      }
+    }
+  }
+
+  @Test
+  public void plusMonthsShouldMatchCalendarAddMonth() {
+    Random random = new Random(27);
+    for (String id : ZONES) {
+      TimeZone zone = TimeZone.getTimeZone(id);
+      Calendar c = new GregorianCalendar(zone);
+      for (int i = 0; i < SAMPLES; i++) {
+        int epochDay = EpochDays.epochDay(EpochDays.toLocalMillis(randomMillis(random), zone));
+        int months = random.nextInt(61) - 30;
+        int ymd = EpochDays.toYearMonthDay(epochDay);
+        c.clear();
+        c.set(EpochDays.year(ymd), EpochDays.month(ymd) - 1, EpochDays.day(ymd), 12, 0);
+        c.add(Calendar.MONTH, months);
+        Assert.assertEquals(
+            EpochDays.of(
+                c.get(Calendar.YEAR), c.get(Calendar.MONTH) + 1, c.get(Calendar.DAY_OF_MONTH)),
+            EpochDays.plusMonths(epochDay, months));
+      }
+    }
+  }
+
+  @Test
+  public void betweenShouldMatchJoda() {
+    Random random = new Random(28);
+    for (String id : ZONES) {
+      TimeZone zone = TimeZone.getTimeZone(id);
+      for (int i = 0; i < SAMPLES; i++) {
+        long start = randomMillis(random);
+        // half of the samples land on midnight, like most openmrs dates
+        long end = start + (long) (random.nextDouble() * 40 * 365 * EpochDays.MILLIS_PER_DAY);
+        if (random.nextBoolean()) {
+          start = midnight(start, zone);
+          end = midnight(end, zone);
+        }
+        long localStart = EpochDays.toLocalMillis(start, zone);
+        long localEnd = EpochDays.toLocalMillis(end, zone);
+        // joda is given the same wall clock so both sides read the zone rules from the jdk
+        DateTime s = new DateTime(localStart, DateTimeZone.UTC);
+        DateTime e = new DateTime(localEnd, DateTimeZone.UTC);
+        Assert.assertEquals(
+            Months.monthsBetween(s, e).getMonths(), EpochDays.monthsBetween(localStart, localEnd));
+        Assert.assertEquals(
+            Months.monthsBetween(e, s).getMonths(), EpochDays.monthsBetween(localEnd, localStart));
+        Assert.assertEquals(
+            Years.yearsBetween(s, e).getYears(), EpochDays.yearsBetween(localStart, localEnd));
+        Assert.assertEquals(
+            Days.daysBetween(s, e).getDays(), EpochDays.daysBetween(localStart, localEnd));
+      }
+    }
+  }
+
+  @Test
+  public void yearsBetweenShouldCountLeapDayBirthdays() {
+    long birth = EpochDays.of(2000, 2, 29) * EpochDays.MILLIS_PER_DAY;
+    Assert.assertEquals(
+        0, EpochDays.yearsBetween(birth, EpochDays.of(2001, 2, 27) * EpochDays.MILLIS_PER_DAY));
+    Assert.assertEquals(
+        1, EpochDays.yearsBetween(birth, EpochDays.of(2001, 2, 28) * EpochDays.MILLIS_PER_DAY));
+    Assert.assertEquals(
+        4, EpochDays.yearsBetween(birth, EpochDays.of(2004, 2, 29) * EpochDays.MILLIS_PER_DAY));
+  }
+
+  private long randomMillis(Random random) {
+    return MIN_MILLIS + (long) (random.nextDouble() * (MAX_MILLIS - MIN_MILLIS));
+  }
+
+  private long midnight(long millis, TimeZone zone) {
+    Calendar c = new GregorianCalendar(zone);
+    c.setTimeInMillis(millis);
+    c.set(Calendar.HOUR_OF_DAY, 0);
+    c.set(Calendar.MINUTE, 0);
+    c.set(Calendar.SECOND, 0);
+    c.set(Calendar.MILLISECOND, 0);
+    return c.getTimeInMillis();
+  }
+
+  private int millisOfDay(Calendar c) {
+    return ((c.get(Calendar.HOUR_OF_DAY) * 60 + c.get(Calendar.MINUTE)) * 60
+                + c.get(Calendar.SECOND))
+            * 1000
+        + c.get(Calendar.MILLISECOND);
+  }
+}
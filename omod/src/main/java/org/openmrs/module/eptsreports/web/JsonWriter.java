@@ -0,0 +1,174 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License, v. 2.0. If a copy of
+ * the MPL was not distributed with this file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ * OpenMRS is also distributed under the terms of the Healthcare Disclaimer located at
+ * http://openmrs.org/license.
+ *
+ * <p>Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS graphic logo is a
+ * trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.eptsreports.web;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.text.SimpleDateFormat;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Date;
+import java.util.Deque;
+import java.util.Map;
+import org.openmrs.OpenmrsObject;
+
+/**
+ * Writes JSON to a stream as it is produced, so a response can be flushed a part at a time. Values
+ * may be null, numbers, booleans, strings, dates written in ISO 8601, OpenMRS objects written as
+ * their uuid, maps and collections.
+ */
+public class JsonWriter {
+
+  private final Writer out;
+
+  private final SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSSZ");
+
+  /** For each open object or array, whether it has a member yet */
+  private final Deque<Boolean> hasMember = new ArrayDeque<Boolean>();
+
+  /** Whether a name was written, its value being next */
+  private boolean afterName;
+
+  public JsonWriter(Writer out) {
+    this.out = out;
+  }
+
+  public JsonWriter beginObject() throws IOException {
+    beforeValue();
+    out.write('{');
+    hasMember.push(false);
+    return this;
+  }
+
+  public JsonWriter endObject() throws IOException {
+    hasMember.pop();
+    out.write('}');
+    return this;
+  }
+
+  public JsonWriter beginArray() throws IOException {
+    beforeValue();
+    out.write('[');
+    hasMember.push(false);
+    return this;
+  }
+
+  public JsonWriter endArray() throws IOException {
+    hasMember.pop();
+    out.write(']');
+    return this;
+  }
+
+  /**
+   * @param name the name of the next member of the current object
+   * @return this writer
+   */
+  public JsonWriter name(String name) throws IOException {
+    beforeValue();
+    string(name);
+    out.write(':');
+    afterName = true;
+    return this;
+  }
+
+  /**
+   * @param name the name of the member
+   * @param value the value of the member
+   * @return this writer
+   */
+  public JsonWriter member(String name, Object value) throws IOException {
+    return name(name).value(value);
+  }
+
+  /**
+   * @param value the next value
+   * @return this writer
+   */
+  public JsonWriter value(Object value) throws IOException {
+    if (value instanceof Map) {
+      beginObject();
+      for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+        member(String.valueOf(entry.getKey()), entry.getValue());
+      }
+      return endObject();
+    }
+    if (value instanceof Collection) {
+      beginArray();
+      for (Object element : (Collection<?>) value) {
+        value(element);
+      }
+      return endArray();
+    }
+    beforeValue();
+    if (value == null
+        || value instanceof Double && (((Double) value).isNaN() || ((Double) value).isInfinite())
+        || value instanceof Float && (((Float) value).isNaN() || ((Float) value).isInfinite())) {
+      out.write("null");
+    } else if (value instanceof Number || value instanceof Boolean) {
+      out.write(value.toString());
+    } else if (value instanceof Date) {
+      string(dateFormat.format((Date) value));
+    } else if (value instanceof OpenmrsObject) {
+      string(((OpenmrsObject) value).getUuid());
+    } else {
+      string(value.toString());
+    }
+    return this;
+  }
+
+  /** Sends what was written so far */
+  public void flush() throws IOException {
+    out.flush();
+  }
+
+  private void beforeValue() throws IOException {
+    if (afterName) {
+      afterName = false;
+      return;
+    }
+    if (!hasMember.isEmpty()) {
+      if (hasMember.pop()) {
+        out.write(',');
+      }
+      hasMember.push(true);
+    }
+  }
+
+  private void string(String value) throws IOException {
+    out.write('"');
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      switch (c) {
+        case '"':
+          out.write("\\\"");
+          break;
+        case '\\':
+          out.write("\\\\");
+          break;
+        case '\n':
+          out.write("\\n");
+          break;
+        case '\r':
+          out.write("\\r");
+          break;
+        case '\t':
+          out.write("\\t");
+          break;
+        default:
+          if (c < 0x20 || c == 0x2028 || c == 0x2029) {
+            out.write(String.format("\\u%04x", (int) c));
+          } else {
+            out.write(c);
+          }
+      }
+    }
+    out.write('"');
+  }
+}
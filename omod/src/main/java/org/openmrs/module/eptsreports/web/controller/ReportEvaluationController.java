@@ -0,0 +1,122 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License, v. 2.0. If a copy of
+ * the MPL was not distributed with this file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ * OpenMRS is also distributed under the terms of the Healthcare Disclaimer located at
+ * http://openmrs.org/license.
+ *
+ * <p>Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS graphic logo is a
+ * trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.eptsreports.web.controller;
+
+import java.io.IOException;
+import java.util.Date;
+import javax.servlet.http.HttpServletResponse;
+import org.openmrs.api.context.Context;
+import org.openmrs.module.eptsreports.reporting.evaluation.EvaluationProgress;
+import org.openmrs.module.eptsreports.reporting.evaluation.ReportAdmissionController;
+import org.openmrs.module.eptsreports.reporting.evaluation.ReportAdmissionController.Ticket;
+import org.openmrs.module.eptsreports.web.JsonWriter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+
+/**
+ * JSON API for administrators to see the report evaluations admitted by the {@link
+ * ReportAdmissionController}, running or waiting, under /ws. A GET to eptsreports/evaluations
+ * lists them, whether started from the reporting module or eptsreports/runs, with the progress
+ * and estimated time left of the running ones and the estimated wait of the others. A POST to
+ * eptsreports/evaluations/{id}/cancel cancels one.
+ */
+@Controller("eptsreports.ReportEvaluationController")
+@RequestMapping(value = "/eptsreports/evaluations")
+public class ReportEvaluationController {
+
+  private static final String CONTENT_TYPE = "application/json;charset=UTF-8";
+
+  @Autowired private ReportAdmissionController reportAdmissionController;
+
+  /** Lists the running evaluations, then the waiting ones in the order they will start */
+  @RequestMapping(method = RequestMethod.GET)
+  public void list(HttpServletResponse response) throws IOException {
+    if (!checkAccess(response)) {
+      return;
+    }
+    response.setContentType(CONTENT_TYPE);
+    JsonWriter json = new JsonWriter(response.getWriter());
+    json.beginArray();
+    for (Ticket ticket : reportAdmissionController.getTickets()) {
+      json.beginObject();
+      json.member("id", ticket.getId());
+      json.member("name", ticket.getName());
+      json.member("weight", ticket.getWeight());
+      json.member("priority", ticket.getPriority());
+      json.member("dateQueued", new Date(ticket.getQueuedAt()));
+      json.member(
+          "dateStarted", ticket.getStartedAt() > 0 ? new Date(ticket.getStartedAt()) : null);
+      json.member("cancelled", ticket.getCancellation().isCancelled());
+      if (ticket.getStartedAt() == 0) {
+        json.member(
+            "estimatedWaitMillis", reportAdmissionController.getEstimatedWaitMillis(ticket));
+      } else if (ticket.getProgress() != null) {
+        json.name("progress");
+        writeProgress(json, ticket.getProgress());
+      }
+      json.endObject();
+    }
+    json.endArray();
+    json.flush();
+  }
+
+  /** Cancels an evaluation, which leaves the queue or stops at its next check */
+  @RequestMapping(value = "/{id}/cancel", method = RequestMethod.POST)
+  public void cancel(@PathVariable("id") long id, HttpServletResponse response)
+      throws IOException {
+    if (!checkAccess(response)) {
+      return;
+    }
+    String reason = "Cancelled by " + Context.getAuthenticatedUser().getUsername();
+    if (!reportAdmissionController.cancel(id, reason)) {
+      response.sendError(HttpServletResponse.SC_NOT_FOUND, "No report evaluation " + id);
+      return;
+    }
+    response.setStatus(HttpServletResponse.SC_NO_CONTENT);
+  }
+
+  /** Writes the progress of a run, shared with {@link ReportRunController} */
+  static void writeProgress(JsonWriter json, EvaluationProgress progress) throws IOException {
+    json.beginObject();
+    json.member("percentDone", progress.getPercentDone());
+    long remaining = progress.getEstimatedRemainingMillis();
+    json.member("estimatedRemainingMillis", remaining < 0 ? null : remaining);
+    json.member("dataSetCount", progress.getDataSetCount());
+    json.member("dataSetsCompleted", progress.getDataSetsCompleted());
+    json.member("dataSet", progress.getDataSet());
+    json.member("columns", progress.getColumns());
+    json.member("columnsCompleted", progress.getColumnsCompleted());
+    json.member("definitionsEvaluated", progress.getDefinitionsEvaluated());
+    int planned = progress.getDefinitionsPlanned();
+    json.member("definitionsPlanned", planned == 0 ? null : planned);
+    json.member("calculation", progress.getCalculation());
+    json.member("calculationPatients", progress.getCalculationPatients());
+    json.member("patientsProcessed", progress.getPatientsProcessed());
+    json.member("sessionEntities", progress.getSessionEntities());
+    json.member("peakSessionEntities", progress.getPeakSessionEntities());
+    json.member("entitiesEvicted", progress.getEntitiesEvicted());
+    json.endObject();
+  }
+
+  private boolean checkAccess(HttpServletResponse response) throws IOException {
+    if (!Context.isAuthenticated()) {
+      response.sendError(HttpServletResponse.SC_UNAUTHORIZED);
+      return false;
+    }
+    if (!Context.getAuthenticatedUser().isSuperUser()) {
+      response.sendError(HttpServletResponse.SC_FORBIDDEN);
+      return false;
+    }
+    return true;
+  }
+}
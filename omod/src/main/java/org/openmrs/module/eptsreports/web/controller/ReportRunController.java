@@ -0,0 +1,328 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License, v. 2.0. If a copy of
+ * the MPL was not distributed with this file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ * OpenMRS is also distributed under the terms of the Healthcare Disclaimer located at
+ * http://openmrs.org/license.
+ *
+ * <p>Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS graphic logo is a
+ * trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.eptsreports.web.controller;
+
+import java.io.IOException;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.apache.commons.lang.StringUtils;
+import org.openmrs.Location;
+import org.openmrs.User;
+import org.openmrs.api.context.Context;
+import org.openmrs.module.eptsreports.reporting.evaluation.ReportAdmissionController.Priority;
+import org.openmrs.module.eptsreports.reporting.evaluation.ReportRun;
+import org.openmrs.module.eptsreports.reporting.evaluation.ReportRunDataSet;
+import org.openmrs.module.eptsreports.reporting.evaluation.ReportRunner;
+import org.openmrs.module.eptsreports.reporting.reports.manager.EptsReportManager;
+import org.openmrs.module.eptsreports.web.JsonWriter;
+import org.openmrs.module.reporting.dataset.DataSetColumn;
+import org.openmrs.module.reporting.evaluation.parameter.Parameter;
+import org.openmrs.util.PrivilegeConstants;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
+
+/**
+ * JSON API to run EPTS reports and read their data sets as they are evaluated, under /ws. A run is
+ * submitted with a POST to eptsreports/runs with the uuid of the report and its parameters, dates
+ * being yyyy-MM-dd and locations given by uuid or id. Its status is read from
+ * eptsreports/runs/{id}, with its progress and estimated time left while it runs, and
+ * eptsreports/runs/{id}/results streams the data sets, each being sent as soon as it is evaluated,
+ * until the run finishes. A POST to eptsreports/runs/{id}/cancel stops the run. Runs are admitted
+ * as batch runs, after the reports run from the UI. They are submitted and read with the Run
+ * Reports privilege of the reporting module, and are only cancelled by the user who submitted them
+ * or a super user.
+ */
+@Controller("eptsreports.ReportRunController")
+@RequestMapping(value = "/eptsreports/runs")
+public class ReportRunController {
+
+  /** How long the results stream waits for a data set before sending a keep alive */
+  private static final long KEEP_ALIVE_MILLIS = 15 * 1000L;
+
+  private static final String CONTENT_TYPE = "application/json;charset=UTF-8";
+
+  /** The privilege of the reporting module to run reports */
+  private static final String RUN_REPORTS = "Run Reports";
+
+  @Autowired private ReportRunner reportRunner;
+
+  /**
+   * Starts a run
+   *
+   * @param report the uuid of the report
+   * @param patientIds whether to send the ids of the patients counted in each indicator cell
+   */
+  @RequestMapping(method = RequestMethod.POST)
+  public void submit(
+      @RequestParam("report") String report,
+      @RequestParam(value = "patientIds", defaultValue = "false") boolean patientIds,
+      HttpServletRequest request,
+      HttpServletResponse response)
+      throws IOException {
+    if (!checkAccess(response, patientIds)) {
+      return;
+    }
+    ReportRun run;
+    try {
+      run =
+          reportRunner.submit(
+              report, getParameterValues(report, request), patientIds, Priority.BATCH);
+    } catch (IllegalArgumentException e) {
+      response.sendError(HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+      return;
+    }
+    response.setStatus(HttpServletResponse.SC_ACCEPTED);
+    response.setHeader("Location", request.getRequestURL() + "/" + run.getId());
+    JsonWriter json = open(response);
+    writeStatus(json, run);
+    json.flush();
+  }
+
+  /** Lists the runs kept, the oldest first */
+  @RequestMapping(method = RequestMethod.GET)
+  public void list(HttpServletResponse response) throws IOException {
+    if (!checkAccess(response, false)) {
+      return;
+    }
+    JsonWriter json = open(response);
+    json.beginArray();
+    for (ReportRun run : reportRunner.getRuns()) {
+      writeStatus(json, run);
+    }
+    json.endArray();
+    json.flush();
+  }
+
+  /** The status of a run */
+  @RequestMapping(value = "/{id}", method = RequestMethod.GET)
+  public void status(@PathVariable("id") String id, HttpServletResponse response)
+      throws IOException {
+    ReportRun run = getRun(id, response, false);
+    if (run == null) {
+      return;
+    }
+    JsonWriter json = open(response);
+    writeStatus(json, run);
+    json.flush();
+  }
+
+  /** Cancels a run, which stops at its next check, and sends its status */
+  @RequestMapping(value = "/{id}/cancel", method = RequestMethod.POST)
+  public void cancel(@PathVariable("id") String id, HttpServletResponse response)
+      throws IOException {
+    ReportRun run = getRun(id, response, false);
+    if (run == null) {
+      return;
+    }
+    User user = Context.getAuthenticatedUser();
+    if (!user.isSuperUser() && !user.equals(run.getSubmitter())) {
+      response.sendError(HttpServletResponse.SC_FORBIDDEN);
+      return;
+    }
+    run = reportRunner.cancel(id, "Cancelled by " + user.getUsername());
+    JsonWriter json = open(response);
+    writeStatus(json, run);
+    json.flush();
+  }
+
+  /** Streams the data sets of a run, flushing each one as soon as it is evaluated */
+  @RequestMapping(value = "/{id}/results", method = RequestMethod.GET)
+  public void results(@PathVariable("id") String id, HttpServletResponse response)
+      throws IOException, InterruptedException {
+    ReportRun run = getRun(id, response, true);
+    if (run == null) {
+      return;
+    }
+    JsonWriter json = open(response);
+    json.beginObject();
+    json.member("id", run.getId());
+    json.member("report", run.getReportUuid());
+    json.name("dataSets").beginArray();
+    json.flush();
+    int index = 0;
+    while (true) {
+      ReportRunDataSet dataSet = run.awaitDataSet(index, KEEP_ALIVE_MILLIS);
+      if (dataSet != null) {
+        writeDataSet(json, dataSet, run.isPatientIds());
+        index++;
+      } else if (run.isFinished() && run.getDataSets().size() <= index) {
+        break;
+      } else {
+        // whitespace between values, so proxies keep the connection open
+        response.getWriter().write(' ');
+      }
+      json.flush();
+    }
+    json.endArray();
+    json.member("status", run.getStatus());
+    json.member("error", run.getError());
+    json.endObject();
+    json.flush();
+  }
+
+  private ReportRun getRun(String id, HttpServletResponse response, boolean patientIds)
+      throws IOException {
+    if (!checkAccess(response, false)) {
+      return null;
+    }
+    ReportRun run = reportRunner.getRun(id);
+    if (run == null) {
+      response.sendError(HttpServletResponse.SC_NOT_FOUND, "No report run " + id);
+      return null;
+    }
+    if (patientIds && run.isPatientIds() && !checkAccess(response, true)) {
+      return null;
+    }
+    return run;
+  }
+
+  private boolean checkAccess(HttpServletResponse response, boolean patientIds)
+      throws IOException {
+    if (!Context.isAuthenticated()) {
+      response.sendError(HttpServletResponse.SC_UNAUTHORIZED);
+      return false;
+    }
+    if (!Context.hasPrivilege(RUN_REPORTS)) {
+      response.sendError(HttpServletResponse.SC_FORBIDDEN);
+      return false;
+    }
+    if (patientIds && !Context.hasPrivilege(PrivilegeConstants.GET_PATIENTS)) {
+      response.sendError(HttpServletResponse.SC_FORBIDDEN);
+      return false;
+    }
+    return true;
+  }
+
+  private JsonWriter open(HttpServletResponse response) throws IOException {
+    response.setContentType(CONTENT_TYPE);
+    return new JsonWriter(response.getWriter());
+  }
+
+  private void writeStatus(JsonWriter json, ReportRun run) throws IOException {
+    json.beginObject();
+    json.member("id", run.getId());
+    json.member("report", run.getReportUuid());
+    json.member("reportName", run.getReportName());
+    json.member("parameters", run.getParameterValues());
+    json.member("patientIds", run.isPatientIds());
+    json.member("submitter", run.getSubmitter() == null ? null : run.getSubmitter().getUsername());
+    json.member("status", run.getStatus());
+    json.member("dataSetCount", run.getDataSetCount());
+    List<String> completed = new ArrayList<String>();
+    for (ReportRunDataSet dataSet : run.getDataSets()) {
+      completed.add(dataSet.getName());
+    }
+    json.member("dataSetsCompleted", completed);
+    if (run.getStatus() == ReportRun.Status.RUNNING) {
+      json.name("progress");
+      ReportEvaluationController.writeProgress(json, run.getProgress());
+    }
+    json.member("dateSubmitted", run.getDateSubmitted());
+    json.member("dateStarted", run.getDateStarted());
+    json.member("dateFinished", run.getDateFinished());
+    json.member("error", run.getError());
+    json.endObject();
+  }
+
+  private void writeDataSet(JsonWriter json, ReportRunDataSet dataSet, boolean patientIds)
+      throws IOException {
+    json.beginObject();
+    json.member("name", dataSet.getName());
+    json.name("columns").beginArray();
+    for (DataSetColumn column : dataSet.getColumns()) {
+      json.beginObject();
+      json.member("name", column.getName());
+      json.member("label", column.getLabel());
+      json.endObject();
+    }
+    json.endArray();
+    json.member("rows", dataSet.getRows());
+    if (patientIds) {
+      json.member("patientIds", dataSet.getPatientIds());
+    }
+    json.endObject();
+  }
+
+  /**
+   * @return the values of the parameters of the report given in the request
+   * @throws IllegalArgumentException if the report is unknown, or a value is missing or invalid
+   */
+  private Map<String, Object> getParameterValues(String report, HttpServletRequest request) {
+    List<Parameter> parameters = null;
+    for (EptsReportManager manager : Context.getRegisteredComponents(EptsReportManager.class)) {
+      if (manager.getUuid().equals(report)) {
+        parameters = manager.getParameters();
+      }
+    }
+    if (parameters == null) {
+      throw new IllegalArgumentException("No EPTS report " + report);
+    }
+    Map<String, Object> ret = new LinkedHashMap<String, Object>();
+    for (Parameter parameter : parameters) {
+      String value = request.getParameter(parameter.getName());
+      if (StringUtils.isBlank(value)) {
+        throw new IllegalArgumentException("Parameter " + parameter.getName() + " is required");
+      }
+      ret.put(parameter.getName(), convert(parameter, value));
+    }
+    return ret;
+  }
+
+  private Object convert(Parameter parameter, String value) {
+    Class<?> type = parameter.getType();
+    if (Date.class.equals(type)) {
+      SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd");
+      format.setLenient(false);
+      try {
+        return format.parse(value);
+      } catch (ParseException e) {
+        throw new IllegalArgumentException(
+            "Parameter " + parameter.getName() + " is not a yyyy-MM-dd date: " + value);
+      }
+    }
+    if (Location.class.equals(type)) {
+      Location location = Context.getLocationService().getLocationByUuid(value);
+      if (location == null && StringUtils.isNumeric(value)) {
+        location = Context.getLocationService().getLocation(Integer.valueOf(value));
+      }
+      if (location == null) {
+        throw new IllegalArgumentException("No location " + value);
+      }
+      return location;
+    }
+    if (Integer.class.equals(type)) {
+      try {
+        return Integer.valueOf(value);
+      } catch (NumberFormatException e) {
+        throw new IllegalArgumentException(
+            "Parameter " + parameter.getName() + " is not a number: " + value);
+      }
+    }
+    if (Boolean.class.equals(type)) {
+      return Boolean.valueOf(value);
+    }
+    if (String.class.equals(type)) {
+      return value;
+    }
+    throw new IllegalArgumentException(
+        "Parameter " + parameter.getName() + " of type " + type.getSimpleName() + " not supported");
+  }
+}
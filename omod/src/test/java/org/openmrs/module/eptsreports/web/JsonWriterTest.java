@@ -0,0 +1,57 @@
+/**
+ * This Source Code Form is subject to the terms of the Mozilla Public License, v. 2.0. If a copy of
+ * the MPL was not distributed with this file, You can obtain one at http://mozilla.org/MPL/2.0/.
+ * OpenMRS is also distributed under the terms of the Healthcare Disclaimer located at
+ * http://openmrs.org/license.
+ *
+ * <p>Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS graphic logo is a
+ * trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.eptsreports.web;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.junit.Test;
+
+public class JsonWriterTest {
+
+  @Test
+  public void shouldSeparateMembersAndElements() throws IOException {
+    StringWriter out = new StringWriter();
+    JsonWriter json = new JsonWriter(out);
+    json.beginObject();
+    json.member("id", "a");
+    json.name("dataSets").beginArray();
+    json.beginObject().member("name", "N").member("rows", Arrays.asList(1, 2.5, null)).endObject();
+    json.beginObject().member("name", "C").endObject();
+    json.endArray();
+    json.member("done", true);
+    json.endObject();
+
+    assertThat(
+        out.toString(),
+        is(
+            "{\"id\":\"a\",\"dataSets\":[{\"name\":\"N\",\"rows\":[1,2.5,null]},"
+                + "{\"name\":\"C\"}],\"done\":true}"));
+  }
+
+  @Test
+  public void shouldWriteMapsAndEscapeStrings() throws IOException {
+    StringWriter out = new StringWriter();
+    Map<String, Object> value = new LinkedHashMap<String, Object>();
+    value.put("label", "a \"b\"\\\n\u0001");
+    value.put("nan", Double.NaN);
+    value.put("ids", Arrays.asList(3, 4));
+    new JsonWriter(out).value(value);
+
+    assertThat(
+        out.toString(),
+        is("{\"label\":\"a \\\"b\\\"\\\\\\n\\u0001\",\"nan\":null,\"ids\":[3,4]}"));
+  }
+}